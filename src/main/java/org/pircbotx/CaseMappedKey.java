@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import lombok.Getter;
+
+/**
+ * A nick or channel name used as a map key. Hashes and compares with a
+ * {@link CaseMapping} instead of lower casing the name, and the hash is
+ * computed once. Keys with different mappings are never equal.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public final class CaseMappedKey {
+	@Getter
+	private final String name;
+	@Getter
+	private final CaseMapping caseMapping;
+	private final int hash;
+
+	public CaseMappedKey(String name, CaseMapping caseMapping) {
+		this.name = name;
+		this.caseMapping = caseMapping;
+		this.hash = caseMapping.hashCode(name);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (!(obj instanceof CaseMappedKey))
+			return false;
+		CaseMappedKey other = (CaseMappedKey) obj;
+		return hash == other.hash && caseMapping == other.caseMapping && caseMapping.equals(name, other.name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
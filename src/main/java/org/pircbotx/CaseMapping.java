@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+/**
+ * How the server compares nicks and channel names, from the CASEMAPPING of the
+ * 005 ISUPPORT line. Folds characters one at a time so names can be hashed and
+ * compared without creating a lower case copy.
+ * @see CaseMappedKey
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public enum CaseMapping {
+	/**
+	 * Only A-Z are lower cased
+	 */
+	ASCII('Z'),
+	/**
+	 * Like {@link #ASCII} but []\ are also the upper case of {}|
+	 */
+	STRICT_RFC1459(']'),
+	/**
+	 * Like {@link #STRICT_RFC1459} but ^ is also the upper case of ~. The
+	 * default when the server doesn't send CASEMAPPING
+	 */
+	RFC1459('^');
+	/**
+	 * Characters from A to this are upper case and fold to 32 higher
+	 */
+	protected final char lastUpper;
+
+	CaseMapping(char lastUpper) {
+		this.lastUpper = lastUpper;
+	}
+
+	public char toLowerCase(char c) {
+		return c >= 'A' && c <= lastUpper ? (char) (c + 32) : c;
+	}
+
+	public int hashCode(CharSequence name) {
+		int hash = 0;
+		for (int i = 0, length = name.length(); i < length; i++)
+			hash = 31 * hash + toLowerCase(name.charAt(i));
+		return hash;
+	}
+
+	public boolean equals(CharSequence name, CharSequence otherName) {
+		int length = name.length();
+		if (length != otherName.length())
+			return false;
+		for (int i = 0; i < length; i++) {
+			char c = name.charAt(i);
+			char otherC = otherName.charAt(i);
+			if (c != otherC && toLowerCase(c) != toLowerCase(otherC))
+				return false;
+		}
+		return true;
+	}
+
+	public CaseMappedKey key(String name) {
+		return new CaseMappedKey(name, this);
+	}
+
+	/**
+	 * Get the mapping from its CASEMAPPING name
+	 * @param name Value of CASEMAPPING, eg rfc1459
+	 * @return The mapping or null if unknown
+	 */
+	public static CaseMapping fromName(String name) {
+		if (name.equalsIgnoreCase("ascii"))
+			return ASCII;
+		else if (name.equalsIgnoreCase("strict-rfc1459"))
+			return STRICT_RFC1459;
+		else if (name.equalsIgnoreCase("rfc1459"))
+			return RFC1459;
+		return null;
+	}
+}
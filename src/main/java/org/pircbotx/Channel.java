@@ -19,6 +19,7 @@
 package org.pircbotx;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
@@ -69,6 +70,12 @@ public class Channel implements Comparable<Channel> {
 			return bot.getConfiguration().getBotFactory().createOutputChannel(bot, Channel.this);
 		}
 	};
+	/**
+	 * Index of this channel in a {@link CompactUserChannelDao}, -1 if not stored in one
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	int handle = -1;
 	@Setter(AccessLevel.NONE)
 	protected String mode = "";
 	/**
@@ -300,6 +307,15 @@ public class Channel implements Comparable<Channel> {
 		return getDao().getUsers(this);
 	}
 
+	/**
+	 * Get all users in this channel in no particular order. Cheaper than
+	 * {@link #getUsers() } for large channels when the order doesn't matter
+	 * @return An <i>Unmodifiable</i> Set of users in this channel
+	 */
+	public ImmutableSet<User> getUnsortedUsers() {
+		return getDao().getUnsortedUsers(this);
+	}
+
 	/**
 	 * Get the user that set the topic. As the user may or may not be in the
 	 * channel return as a string
@@ -309,6 +325,32 @@ public class Channel implements Comparable<Channel> {
 		return topicSetter;
 	}
 
+	/**
+	 * Get the number of users in this channel without copying them
+	 * @return The number of users
+	 */
+	public int getUserCount() {
+		return getDao().getUserCount(this);
+	}
+
+	/**
+	 * Get the number of users with the level in this channel without copying them
+	 * @param level The level
+	 * @return The number of users with the level
+	 */
+	public int getUserCount(UserLevel level) {
+		return getDao().getUserCount(this, level);
+	}
+
+	/**
+	 * Checks if the given user is in this channel
+	 * @param user The user
+	 * @return True if the user is in the channel
+	 */
+	public boolean containsUser(User user) {
+		return getDao().containsEntry(user, this);
+	}
+
 	/**
 	 * Checks if the given user is an Operator in this channel
 	 * @return True if the user is an Operator, false if not
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.io.IOException;
+import java.util.List;
+import lombok.Data;
+
+/**
+ * Handles a non-numeric command from the server, eg PRIVMSG or JOIN. Handlers
+ * are registered with {@link Configuration.Builder#addCommandHandler(org.pircbotx.CommandHandler) }
+ * and replace any existing handler of the same command, which makes it possible
+ * to handle network specific commands like Twitch's CLEARCHAT or ROOMSTATE.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Data
+public abstract class CommandHandler {
+	/**
+	 * The upper case command this handler processes
+	 */
+	protected final String command;
+
+	/**
+	 * Process the command. The parsed line is only valid during this call
+	 * @param bot The bot that received the line
+	 * @param inputParser The InputParser that parsed the line
+	 * @param target The first parameter, usually a channel or nick
+	 * @param sourceNick Nick (or server name) that sent the line
+	 * @param sourceLogin Login of the user that sent the line, or empty
+	 * @param sourceHostname Hostname of the user that sent the line, or empty
+	 * @param line The raw line without any tags
+	 * @param parsedLine Parameters after the command
+	 * @param tags IRCv3 message tags, or {@link MessageTags#EMPTY}
+	 */
+	public abstract void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException;
+
+	/**
+	 * Get the channel if the target starts with a channel prefix
+	 * @return The channel or null if the target isn't a channel
+	 */
+	protected static Channel getTargetChannel(PircBotX bot, String target) {
+		return (target.length() != 0 && bot.getConfiguration().getChannelPrefixes().indexOf(target.charAt(0)) >= 0)
+				? bot.getUserChannelDao().getChannel(target) : null;
+	}
+
+	/**
+	 * Get the message (second parameter) of the line
+	 * @return The message or an empty String
+	 */
+	protected static String getMessage(List<String> parsedLine) {
+		return parsedLine.size() >= 2 ? parsedLine.get(1) : "";
+	}
+}
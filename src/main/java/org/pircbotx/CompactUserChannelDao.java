@@ -0,0 +1,973 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.*;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.pircbotx.snapshot.UserChannelDaoSnapshot;
+
+/**
+ * {@link UserChannelDao} for channels with hundreds of thousands of users. Every
+ * user and channel gets an integer handle and all relationships are stored as
+ * primitive ints instead of multimap entries:
+ * <ul>
+ * <li>Users and channels are kept in arrays indexed by handle, names are found
+ * through an open addressing table of handles</li>
+ * <li>Each user has an int[] of its channel handles, each channel an
+ * {@link IntSet} of its user handles plus one per level that's in use</li>
+ * </ul>
+ * On a 64-bit JVM with compressed oops each user costs about 24 bytes of
+ * handle tables on top of the {@link User}, its UUID and its nick. Each channel
+ * membership costs 4 bytes in the user's channel array (plus its 16 byte header)
+ * and 5-10 bytes in the channel's set. 1M Twitch JOINs into one channel take
+ * ~230 bytes per user in total versus ~455 with the default dao, and 10 JOINs
+ * per user across 10 channels ~13 bytes per extra membership versus ~80. Run
+ * {@code UserChannelDaoMemoryBenchmark} in the tests to measure both.
+ * <p>
+ * All access is guarded by a single lock like {@link UserChannelDao}. To use,
+ * return it from your {@link Configuration.BotFactory}:
+ * <pre>
+ * new Configuration.Builder()
+ *     .setBotFactory(new Configuration.BotFactory() {
+ *         public UserChannelDao createUserChannelDao(PircBotX bot) {
+ *             return new CompactUserChannelDao(bot, this);
+ *         }
+ *     })
+ * </pre>
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class CompactUserChannelDao<U extends User, C extends Channel> extends UserChannelDao<U, C> {
+	protected static final int[] NO_HANDLES = new int[0];
+	protected static final int LEVEL_COUNT = UserLevel.values().length;
+	protected final Handles users = new Handles();
+	protected final Handles channels = new Handles();
+	/**
+	 * Channel handles of each user, indexed by user handle
+	 */
+	protected int[][] userChannels = new int[Handles.INITIAL_CAPACITY][];
+	/**
+	 * User handles of each channel, indexed by channel handle
+	 */
+	protected IntSet[] channelUsers = new IntSet[Handles.INITIAL_CAPACITY];
+	/**
+	 * User handles of each level of each channel, indexed by channel handle then
+	 * level ordinal. Created when first used
+	 */
+	protected IntSet[][] channelLevels = new IntSet[Handles.INITIAL_CAPACITY][];
+	protected final IntSet privateUserHandles = new IntSet();
+	/**
+	 * Number of users in at least one channel
+	 */
+	protected int channelUserCount;
+	/**
+	 * Cached users of each channel and channels of each user like
+	 * {@link UserChannelMap}
+	 */
+	protected final ViewCache<C, ImmutableSet<U>> userViews = new ViewCache<C, ImmutableSet<U>>();
+	protected final ViewCache<U, ImmutableSet<C>> channelViews = new ViewCache<U, ImmutableSet<C>>();
+
+	public CompactUserChannelDao(PircBotX bot, Configuration.BotFactory botFactory) {
+		//Maps of the parent are unused
+		super(bot, botFactory, bot.getConfiguration().getLocale(), new UserChannelMap<U, C>(),
+				new UserLevelMap<U, C>(), ImmutableBiMap.<CaseMappedKey, U>of(),
+				ImmutableBiMap.<CaseMappedKey, C>of(), Sets.<U>newHashSet());
+	}
+
+	@Override
+	public U getUser(String nick) {
+		checkArgument(StringUtils.isNotBlank(nick), "Cannot get a blank user");
+		long lockStart = lockStart();
+		synchronized (accessLock) {
+			lockAcquired(lockStart);
+			int handle = users.find(nick);
+			if (handle != -1)
+				return castUser(users.values[handle]);
+
+			//Create new user
+			U user = createUser(nick);
+			addUserHandle(user, nick);
+			return user;
+		}
+	}
+
+	@Override
+	public boolean userExists(String nick) {
+		synchronized (accessLock) {
+			return users.find(nick) != -1;
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<U> getAllUsers() {
+		synchronized (accessLock) {
+			ImmutableSortedSet.Builder<U> builder = ImmutableSortedSet.naturalOrder();
+			for (int i = 0; i < users.limit; i++)
+				if (users.values[i] != null)
+					builder.add(castUser(users.values[i]));
+			return builder.build();
+		}
+	}
+
+	@Override
+	protected void addUserToChannel(U user, C channel) {
+		synchronized (accessLock) {
+			int userHandle = getOrAddUserHandle(user);
+			int channelHandle = getOrAddChannelHandle(channel);
+			if (channelUsers[channelHandle].add(userHandle)) {
+				userViews.invalidate(channel);
+				channelViews.invalidate(user);
+				int[] curChannels = userChannels[userHandle];
+				if (curChannels.length == 0)
+					channelUserCount++;
+				int[] newChannels = Arrays.copyOf(curChannels, curChannels.length + 1);
+				newChannels[curChannels.length] = channelHandle;
+				userChannels[userHandle] = newChannels;
+			}
+		}
+	}
+
+	@Override
+	protected void addUserToPrivate(U user) {
+		synchronized (accessLock) {
+			privateUserHandles.add(getOrAddUserHandle(user));
+		}
+	}
+
+	@Override
+	protected void addUserToLevel(UserLevel level, U user, C channel) {
+		synchronized (accessLock) {
+			int userHandle = getOrAddUserHandle(user);
+			IntSet[] levels = channelLevels[getOrAddChannelHandle(channel)];
+			IntSet levelUsers = levels[level.ordinal()];
+			if (levelUsers == null)
+				levels[level.ordinal()] = levelUsers = new IntSet();
+			levelUsers.add(userHandle);
+		}
+	}
+
+	@Override
+	protected void removeUserFromLevel(UserLevel level, U user, C channel) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			int channelHandle = getChannelHandle(channel);
+			if (userHandle == -1 || channelHandle == -1)
+				return;
+			IntSet levelUsers = channelLevels[channelHandle][level.ordinal()];
+			if (levelUsers != null)
+				levelUsers.remove(userHandle);
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<U> getNormalUsers(C channel) {
+		synchronized (accessLock) {
+			int channelHandle = getChannelHandle(channel);
+			if (channelHandle == -1)
+				return ImmutableSortedSet.of();
+			IntSet curUsers = channelUsers[channelHandle];
+			List<U> normalUsers = new ArrayList<U>();
+			for (int i = 0; i < curUsers.slots(); i++) {
+				int userHandle = curUsers.getSlot(i);
+				if (userHandle != -1 && getLevelMask(channelHandle, userHandle) == 0)
+					normalUsers.add(castUser(users.values[userHandle]));
+			}
+			return ImmutableSortedSet.copyOf(normalUsers);
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<U> getUsers(C channel, UserLevel level) {
+		synchronized (accessLock) {
+			int channelHandle = getChannelHandle(channel);
+			if (channelHandle == -1)
+				return ImmutableSortedSet.of();
+			return toUsers(channelLevels[channelHandle][level.ordinal()]);
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<UserLevel> getLevels(C channel, U user) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			int channelHandle = getChannelHandle(channel);
+			if (userHandle == -1 || channelHandle == -1)
+				return ImmutableSortedSet.of();
+			return UserLevelMap.toLevels(getLevelMask(channelHandle, userHandle));
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<C> getNormalUserChannels(U user) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			if (userHandle == -1)
+				return ImmutableSortedSet.of();
+			List<C> normalChannels = new ArrayList<C>();
+			for (int curChannel : userChannels[userHandle])
+				if (getLevelMask(curChannel, userHandle) == 0)
+					normalChannels.add(castChannel(channels.values[curChannel]));
+			return ImmutableSortedSet.copyOf(normalChannels);
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<C> getChannels(U user, UserLevel level) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			if (userHandle == -1)
+				return ImmutableSortedSet.of();
+			List<C> levelChannels = new ArrayList<C>();
+			for (int curChannel : userChannels[userHandle])
+				if (levelContains(curChannel, level, userHandle))
+					levelChannels.add(castChannel(channels.values[curChannel]));
+			return ImmutableSortedSet.copyOf(levelChannels);
+		}
+	}
+
+	@Override
+	protected void removeUserFromChannel(U user, C channel) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			int channelHandle = getChannelHandle(channel);
+			if (userHandle == -1 || channelHandle == -1)
+				return;
+			removeMembership(userHandle, channelHandle);
+			userViews.invalidate(channel);
+			channelViews.invalidate(user);
+			int[] curChannels = userChannels[userHandle];
+			int index = indexOf(curChannels, channelHandle);
+			if (index != -1) {
+				int[] newChannels = curChannels.length == 1 ? NO_HANDLES : new int[curChannels.length - 1];
+				System.arraycopy(curChannels, 0, newChannels, 0, index);
+				System.arraycopy(curChannels, index + 1, newChannels, index, newChannels.length - index);
+				userChannels[userHandle] = newChannels;
+				if (newChannels.length == 0)
+					channelUserCount--;
+			}
+
+			if (!privateUserHandles.contains(userHandle) && userChannels[userHandle].length == 0)
+				//Completely remove user
+				removeUserHandle(userHandle);
+		}
+	}
+
+	@Override
+	protected void removeUser(U user) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			if (userHandle == -1)
+				return;
+			if (userChannels[userHandle].length != 0)
+				channelUserCount--;
+			for (int curChannel : userChannels[userHandle]) {
+				removeMembership(userHandle, curChannel);
+				userViews.invalidate(castChannel(channels.values[curChannel]));
+			}
+			privateUserHandles.remove(userHandle);
+			removeUserHandle(userHandle);
+		}
+	}
+
+	@Override
+	protected boolean levelContainsUser(UserLevel level, C channel, U user) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			int channelHandle = getChannelHandle(channel);
+			return userHandle != -1 && channelHandle != -1 && levelContains(channelHandle, level, userHandle);
+		}
+	}
+
+	@Override
+	protected void renameUser(U user, String newNick) {
+		synchronized (accessLock) {
+			user.setNick(newNick);
+			int userHandle = getUserHandle(user);
+			if (userHandle == -1)
+				addUserHandle(user, newNick);
+			else {
+				users.rename(userHandle, newNick);
+				//Views are sorted by nick
+				for (int curChannel : userChannels[userHandle])
+					userViews.invalidate(castChannel(channels.values[curChannel]));
+			}
+		}
+	}
+
+	@Override
+	public C getChannel(String name) {
+		checkArgument(StringUtils.isNotBlank(name), "Cannot get a blank channel");
+		long lockStart = lockStart();
+		synchronized (accessLock) {
+			lockAcquired(lockStart);
+			int handle = channels.find(name);
+			if (handle != -1)
+				return castChannel(channels.values[handle]);
+
+			//Channel does not exist, create one
+			C channel = createChannel(name);
+			addChannelHandle(channel, name);
+			return channel;
+		}
+	}
+
+	@Override
+	public boolean channelExists(String name) {
+		synchronized (accessLock) {
+			return channels.find(name) != -1;
+		}
+	}
+
+	@Override
+	protected void setCaseMapping(CaseMapping caseMapping) {
+		checkNotNull(caseMapping, "Must specify case mapping");
+		synchronized (accessLock) {
+			this.caseMapping = caseMapping;
+			users.setCaseMapping(caseMapping);
+			channels.setCaseMapping(caseMapping);
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<U> getUsers(C channel) {
+		synchronized (accessLock) {
+			int channelHandle = getChannelHandle(channel);
+			if (channelHandle == -1)
+				return ImmutableSortedSet.of();
+			ImmutableSet<U> cachedUsers = userViews.get(channel);
+			if (cachedUsers instanceof ImmutableSortedSet)
+				return (ImmutableSortedSet<U>) cachedUsers;
+			return (ImmutableSortedSet<U>) userViews.put(channel, userViews.getVersion(channel),
+					cachedUsers != null ? ImmutableSortedSet.copyOf(cachedUsers) : toUsers(channelUsers[channelHandle]));
+		}
+	}
+
+	@Override
+	public ImmutableSet<U> getUnsortedUsers(C channel) {
+		synchronized (accessLock) {
+			int channelHandle = getChannelHandle(channel);
+			if (channelHandle == -1)
+				return ImmutableSet.of();
+			ImmutableSet<U> cachedUsers = userViews.get(channel);
+			if (cachedUsers != null)
+				return cachedUsers;
+			IntSet curUsers = channelUsers[channelHandle];
+			ImmutableSet.Builder<U> builder = ImmutableSet.builder();
+			for (int i = 0; i < curUsers.slots(); i++)
+				if (curUsers.getSlot(i) != -1)
+					builder.add(castUser(users.values[curUsers.getSlot(i)]));
+			return userViews.put(channel, userViews.getVersion(channel), builder.build());
+		}
+	}
+
+	@Override
+	public int getUserCount(C channel) {
+		synchronized (accessLock) {
+			int channelHandle = getChannelHandle(channel);
+			return channelHandle == -1 ? 0 : channelUsers[channelHandle].size();
+		}
+	}
+
+	@Override
+	public int getUserCount(C channel, UserLevel level) {
+		synchronized (accessLock) {
+			int channelHandle = getChannelHandle(channel);
+			if (channelHandle == -1)
+				return 0;
+			IntSet levelUsers = channelLevels[channelHandle][level.ordinal()];
+			return levelUsers == null ? 0 : levelUsers.size();
+		}
+	}
+
+	@Override
+	public int getUserCount() {
+		synchronized (accessLock) {
+			return channelUserCount;
+		}
+	}
+
+	@Override
+	public int getChannelCount(U user) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			return userHandle == -1 ? 0 : userChannels[userHandle].length;
+		}
+	}
+
+	@Override
+	public boolean containsEntry(U user, C channel) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			int channelHandle = getChannelHandle(channel);
+			return userHandle != -1 && channelHandle != -1 && channelUsers[channelHandle].contains(userHandle);
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<C> getAllChannels() {
+		synchronized (accessLock) {
+			ImmutableSortedSet.Builder<C> builder = ImmutableSortedSet.naturalOrder();
+			for (int i = 0; i < channels.limit; i++)
+				if (channels.values[i] != null)
+					builder.add(castChannel(channels.values[i]));
+			return builder.build();
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<C> getChannels(U user) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			if (userHandle == -1)
+				return ImmutableSortedSet.of();
+			ImmutableSet<C> cachedChannels = channelViews.get(user);
+			if (cachedChannels instanceof ImmutableSortedSet)
+				return (ImmutableSortedSet<C>) cachedChannels;
+			List<C> result = new ArrayList<C>();
+			for (int curChannel : userChannels[userHandle])
+				result.add(castChannel(channels.values[curChannel]));
+			return (ImmutableSortedSet<C>) channelViews.put(user, channelViews.getVersion(user), ImmutableSortedSet.copyOf(result));
+		}
+	}
+
+	@Override
+	public ImmutableSet<C> getUnsortedChannels(U user) {
+		synchronized (accessLock) {
+			int userHandle = getUserHandle(user);
+			if (userHandle == -1)
+				return ImmutableSet.of();
+			ImmutableSet<C> cachedChannels = channelViews.get(user);
+			if (cachedChannels != null)
+				return cachedChannels;
+			ImmutableSet.Builder<C> builder = ImmutableSet.builder();
+			for (int curChannel : userChannels[userHandle])
+				builder.add(castChannel(channels.values[curChannel]));
+			return channelViews.put(user, channelViews.getVersion(user), builder.build());
+		}
+	}
+
+	@Override
+	protected void removeChannel(C channel) {
+		synchronized (accessLock) {
+			int channelHandle = getChannelHandle(channel);
+			if (channelHandle == -1)
+				return;
+			IntSet curUsers = channelUsers[channelHandle];
+			for (int i = 0; i < curUsers.slots(); i++) {
+				int userHandle = curUsers.getSlot(i);
+				if (userHandle == -1)
+					continue;
+				channelViews.invalidate(castUser(users.values[userHandle]));
+				int[] curChannels = userChannels[userHandle];
+				int[] newChannels = curChannels.length == 1 ? NO_HANDLES : new int[curChannels.length - 1];
+				int index = indexOf(curChannels, channelHandle);
+				System.arraycopy(curChannels, 0, newChannels, 0, index);
+				System.arraycopy(curChannels, index + 1, newChannels, index, newChannels.length - index);
+				userChannels[userHandle] = newChannels;
+				if (newChannels.length == 0)
+					channelUserCount--;
+			}
+
+			//Remove remaining locations
+			channelUsers[channelHandle] = null;
+			channelLevels[channelHandle] = null;
+			channels.remove(channelHandle);
+			userViews.invalidate(channel);
+			channel.handle = -1;
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (accessLock) {
+			for (int i = 0; i < users.limit; i++)
+				if (users.values[i] != null)
+					((User) users.values[i]).handle = -1;
+			for (int i = 0; i < channels.limit; i++)
+				if (channels.values[i] != null)
+					((Channel) channels.values[i]).handle = -1;
+			users.clear();
+			channels.clear();
+			Arrays.fill(userChannels, null);
+			Arrays.fill(channelUsers, null);
+			Arrays.fill(channelLevels, null);
+			privateUserHandles.clear();
+			channelUserCount = 0;
+			userViews.clear();
+			channelViews.clear();
+		}
+	}
+
+	@Override
+	public UserChannelDaoSnapshot createSnapshot() {
+		long lockStart = lockStart();
+		synchronized (accessLock) {
+			lockAcquired(lockStart);
+			//Copy into regular maps so the parent can create the snapshot
+			Map<CaseMappedKey, U> nickMap = new HashMap<CaseMappedKey, U>();
+			for (int i = 0; i < users.limit; i++)
+				if (users.keys[i] != null)
+					nickMap.put(caseMapping.key(users.keys[i]), castUser(users.values[i]));
+			Map<CaseMappedKey, C> channelMap = new HashMap<CaseMappedKey, C>();
+			for (int i = 0; i < channels.limit; i++)
+				if (channels.keys[i] != null)
+					channelMap.put(caseMapping.key(channels.keys[i]), castChannel(channels.values[i]));
+			Set<U> privateUsersCopy = new HashSet<U>();
+			for (int i = 0; i < privateUserHandles.slots(); i++)
+				if (privateUserHandles.getSlot(i) != -1)
+					privateUsersCopy.add(castUser(users.values[privateUserHandles.getSlot(i)]));
+
+			UserChannelMap<U, C> mainMapCopy = new UserChannelMap<U, C>();
+			UserLevelMap<U, C> levelsMapCopy = new UserLevelMap<U, C>();
+			for (int i = 0; i < users.limit; i++)
+				if (users.values[i] != null)
+					copyMemberships(i, mainMapCopy, levelsMapCopy);
+			return createSnapshot(nickMap, channelMap, privateUsersCopy, mainMapCopy, levelsMapCopy);
+		}
+	}
+
+	@Override
+	public UserChannelDaoSnapshot createSnapshot(U user) {
+		return createSnapshot(user, null);
+	}
+
+	@Override
+	public UserChannelDaoSnapshot createSnapshot(U user, C channel) {
+		synchronized (accessLock) {
+			//Only the memberships of the user's channels are needed
+			UserChannelMap<U, C> mainMapCopy = new UserChannelMap<U, C>();
+			UserLevelMap<U, C> levelsMapCopy = new UserLevelMap<U, C>();
+			Set<U> privateUsersCopy = new HashSet<U>();
+			int userHandle = getUserHandle(user);
+			if (userHandle != -1) {
+				for (int curChannel : userChannels[userHandle])
+					copyChannelMemberships(curChannel, mainMapCopy, levelsMapCopy, privateUsersCopy);
+				if (privateUserHandles.contains(userHandle))
+					privateUsersCopy.add(user);
+			}
+			int channelHandle = (channel == null) ? -1 : getChannelHandle(channel);
+			if (channelHandle != -1 && (userHandle == -1 || !channelUsers[channelHandle].contains(userHandle)))
+				copyChannelMemberships(channelHandle, mainMapCopy, levelsMapCopy, privateUsersCopy);
+			return createUserSnapshot(user, channel, mainMapCopy, levelsMapCopy, privateUsersCopy);
+		}
+	}
+
+	protected void copyMemberships(int userHandle, UserChannelMap<U, C> mainMapCopy, UserLevelMap<U, C> levelsMapCopy) {
+		U user = castUser(users.values[userHandle]);
+		for (int curChannel : userChannels[userHandle]) {
+			C channel = castChannel(channels.values[curChannel]);
+			mainMapCopy.addUserToChannel(user, channel);
+			levelsMapCopy.putLevels(user, channel, getLevelMask(curChannel, userHandle));
+		}
+	}
+
+	protected void copyChannelMemberships(int channelHandle, UserChannelMap<U, C> mainMapCopy, UserLevelMap<U, C> levelsMapCopy, Set<U> privateUsersCopy) {
+		C channel = castChannel(channels.values[channelHandle]);
+		IntSet curUsers = channelUsers[channelHandle];
+		for (int i = 0; i < curUsers.slots(); i++) {
+			int userHandle = curUsers.getSlot(i);
+			if (userHandle == -1)
+				continue;
+			U user = castUser(users.values[userHandle]);
+			mainMapCopy.addUserToChannel(user, channel);
+			levelsMapCopy.putLevels(user, channel, getLevelMask(channelHandle, userHandle));
+			if (privateUserHandles.contains(userHandle))
+				privateUsersCopy.add(user);
+		}
+	}
+
+	/**
+	 * @return The handle of the user or -1 if its not stored here
+	 */
+	protected int getUserHandle(User user) {
+		int handle = user.handle;
+		return handle >= 0 && handle < users.limit && users.values[handle] == user ? handle : -1;
+	}
+
+	protected int getChannelHandle(Channel channel) {
+		int handle = channel.handle;
+		return handle >= 0 && handle < channels.limit && channels.values[handle] == channel ? handle : -1;
+	}
+
+	/**
+	 * Handles only hold users created by this dao's bot factory
+	 */
+	@SuppressWarnings("unchecked")
+	protected U castUser(Object user) {
+		return (U) user;
+	}
+
+	/**
+	 * Handles only hold channels created by this dao's bot factory
+	 */
+	@SuppressWarnings("unchecked")
+	protected C castChannel(Object channel) {
+		return (C) channel;
+	}
+
+	protected int getOrAddUserHandle(U user) {
+		int handle = getUserHandle(user);
+		return handle != -1 ? handle : addUserHandle(user, user.getNick());
+	}
+
+	protected int getOrAddChannelHandle(C channel) {
+		int handle = getChannelHandle(channel);
+		return handle != -1 ? handle : addChannelHandle(channel, channel.getName());
+	}
+
+	protected int addUserHandle(U user, String nick) {
+		int handle = users.add(user, nick);
+		if (handle >= userChannels.length)
+			userChannels = Arrays.copyOf(userChannels, users.values.length);
+		userChannels[handle] = NO_HANDLES;
+		user.handle = handle;
+		return handle;
+	}
+
+	protected int addChannelHandle(C channel, String name) {
+		int handle = channels.add(channel, name);
+		if (handle >= channelUsers.length) {
+			channelUsers = Arrays.copyOf(channelUsers, channels.values.length);
+			channelLevels = Arrays.copyOf(channelLevels, channels.values.length);
+		}
+		channelUsers[handle] = new IntSet();
+		channelLevels[handle] = new IntSet[LEVEL_COUNT];
+		channel.handle = handle;
+		return handle;
+	}
+
+	protected void removeUserHandle(int userHandle) {
+		channelViews.invalidate(castUser(users.values[userHandle]));
+		((User) users.values[userHandle]).handle = -1;
+		userChannels[userHandle] = null;
+		users.remove(userHandle);
+	}
+
+	/**
+	 * Remove the user from the channel and its levels, leaving the user's
+	 * channel array alone
+	 */
+	protected void removeMembership(int userHandle, int channelHandle) {
+		channelUsers[channelHandle].remove(userHandle);
+		for (IntSet curLevel : channelLevels[channelHandle])
+			if (curLevel != null)
+				curLevel.remove(userHandle);
+	}
+
+	protected boolean levelContains(int channelHandle, UserLevel level, int userHandle) {
+		IntSet levelUsers = channelLevels[channelHandle][level.ordinal()];
+		return levelUsers != null && levelUsers.contains(userHandle);
+	}
+
+	/**
+	 * @return Bitmask of level ordinals like {@link UserLevelMap#getLevelMask(org.pircbotx.User, org.pircbotx.Channel) }
+	 */
+	protected int getLevelMask(int channelHandle, int userHandle) {
+		IntSet[] levels = channelLevels[channelHandle];
+		int mask = 0;
+		for (int i = 0; i < levels.length; i++)
+			if (levels[i] != null && levels[i].contains(userHandle))
+				mask |= 1 << i;
+		return mask;
+	}
+
+	protected ImmutableSortedSet<U> toUsers(IntSet userHandles) {
+		if (userHandles == null)
+			return ImmutableSortedSet.of();
+		List<U> result = new ArrayList<U>(userHandles.size());
+		for (int i = 0; i < userHandles.slots(); i++)
+			if (userHandles.getSlot(i) != -1)
+				result.add(castUser(users.values[userHandles.getSlot(i)]));
+		return ImmutableSortedSet.copyOf(result);
+	}
+
+	protected static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++)
+			if (array[i] == value)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Objects indexed by handle with a case insensitive lookup by name. Freed
+	 * handles are reused. Names are found through an open addressing table of
+	 * handles by their {@link CaseMapping} hash, so lookups never copy the name
+	 * and the only per object cost is the object and key references, the cached
+	 * hash and about 6 bytes of table
+	 */
+	protected static class Handles {
+		protected static final int INITIAL_CAPACITY = 16;
+		protected Object[] values = new Object[INITIAL_CAPACITY];
+		/**
+		 * Name of each handle, null if the handle is unused or its name was taken
+		 * by a rename
+		 */
+		protected String[] keys = new String[INITIAL_CAPACITY];
+		/**
+		 * Case mapped hash of each name
+		 */
+		protected int[] hashes = new int[INITIAL_CAPACITY];
+		protected CaseMapping caseMapping = CaseMapping.RFC1459;
+		/**
+		 * Handles that have ever been used, everything at or above is free
+		 */
+		protected int limit;
+		protected int[] freeHandles = new int[INITIAL_CAPACITY];
+		protected int freeCount;
+		protected int size;
+		/**
+		 * Open addressing table of handles by name hash, -1 for empty slots
+		 */
+		protected int[] index = newIndex(INITIAL_CAPACITY * 2);
+		protected int indexSize;
+
+		protected static int[] newIndex(int capacity) {
+			int[] index = new int[capacity];
+			Arrays.fill(index, -1);
+			return index;
+		}
+
+		public int find(String key) {
+			int hash = caseMapping.hashCode(key);
+			int mask = index.length - 1;
+			for (int slot = IntSet.mix(hash) & mask;; slot = (slot + 1) & mask) {
+				int handle = index[slot];
+				if (handle == -1)
+					return -1;
+				if (hashes[handle] == hash && caseMapping.equals(key, keys[handle]))
+					return handle;
+			}
+		}
+
+		public int add(Object value, String key) {
+			int handle;
+			if (freeCount > 0)
+				handle = freeHandles[--freeCount];
+			else {
+				if (limit == values.length) {
+					values = Arrays.copyOf(values, limit * 2);
+					keys = Arrays.copyOf(keys, limit * 2);
+					hashes = Arrays.copyOf(hashes, limit * 2);
+				}
+				handle = limit++;
+			}
+			values[handle] = value;
+			size++;
+			putKey(handle, key);
+			return handle;
+		}
+
+		public void remove(int handle) {
+			removeKey(handle);
+			values[handle] = null;
+			size--;
+			if (freeCount == freeHandles.length)
+				freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+			freeHandles[freeCount++] = handle;
+		}
+
+		public void rename(int handle, String newKey) {
+			removeKey(handle);
+			putKey(handle, newKey);
+		}
+
+		protected void putKey(int handle, String key) {
+			//Another object might already use this name, it loses it like in a BiMap
+			int existing = find(key);
+			if (existing != -1)
+				removeKey(existing);
+			keys[handle] = key;
+			hashes[handle] = caseMapping.hashCode(key);
+			if ((indexSize + 1) * 4 > index.length * 3)
+				rehash(index.length * 2);
+			insert(handle);
+			indexSize++;
+		}
+
+		protected void insert(int handle) {
+			int mask = index.length - 1;
+			int slot = IntSet.mix(hashes[handle]) & mask;
+			while (index[slot] != -1)
+				slot = (slot + 1) & mask;
+			index[slot] = handle;
+		}
+
+		protected void removeKey(int handle) {
+			if (keys[handle] == null)
+				return;
+			int mask = index.length - 1;
+			int slot = IntSet.mix(hashes[handle]) & mask;
+			while (index[slot] != handle)
+				slot = (slot + 1) & mask;
+			//Shift following entries back so lookups don't stop early
+			for (int next = (slot + 1) & mask; index[next] != -1; next = (next + 1) & mask) {
+				int ideal = IntSet.mix(hashes[index[next]]) & mask;
+				if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+					index[slot] = index[next];
+					slot = next;
+				}
+			}
+			index[slot] = -1;
+			keys[handle] = null;
+			indexSize--;
+		}
+
+		protected void rehash(int capacity) {
+			index = newIndex(capacity);
+			for (int i = 0; i < limit; i++)
+				if (keys[i] != null)
+					insert(i);
+		}
+
+		/**
+		 * Re-index every name with the new mapping. If two names become equal
+		 * the one with the higher handle keeps it
+		 */
+		public void setCaseMapping(CaseMapping caseMapping) {
+			if (caseMapping == this.caseMapping)
+				return;
+			this.caseMapping = caseMapping;
+			String[] oldKeys = keys;
+			keys = new String[oldKeys.length];
+			index = newIndex(index.length);
+			indexSize = 0;
+			for (int i = 0; i < limit; i++)
+				if (oldKeys[i] != null)
+					putKey(i, oldKeys[i]);
+		}
+
+		public void clear() {
+			values = new Object[INITIAL_CAPACITY];
+			keys = new String[INITIAL_CAPACITY];
+			hashes = new int[INITIAL_CAPACITY];
+			freeHandles = new int[INITIAL_CAPACITY];
+			index = newIndex(INITIAL_CAPACITY * 2);
+			limit = freeCount = size = indexSize = 0;
+		}
+	}
+
+	/**
+	 * Open addressing set of non-negative ints. Uses 4 bytes per slot at a load
+	 * factor between 3/16 and 3/4 and shrinks when mostly empty
+	 */
+	public static class IntSet {
+		protected static final int MIN_CAPACITY = 4;
+		protected int[] table = Handles.newIndex(MIN_CAPACITY);
+		protected int size;
+
+		protected static int mix(int hash) {
+			//Spread sequential handles and poor String hashes across the table
+			hash *= 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+
+		public boolean contains(int value) {
+			int mask = table.length - 1;
+			for (int slot = mix(value) & mask;; slot = (slot + 1) & mask) {
+				if (table[slot] == value)
+					return true;
+				if (table[slot] == -1)
+					return false;
+			}
+		}
+
+		public boolean add(int value) {
+			checkArgument(value >= 0, "Value must not be negative");
+			if ((size + 1) * 4 > table.length * 3)
+				resize(table.length * 2);
+			int mask = table.length - 1;
+			int slot = mix(value) & mask;
+			for (; table[slot] != -1; slot = (slot + 1) & mask)
+				if (table[slot] == value)
+					return false;
+			table[slot] = value;
+			size++;
+			return true;
+		}
+
+		public boolean remove(int value) {
+			int mask = table.length - 1;
+			int slot = mix(value) & mask;
+			while (table[slot] != value) {
+				if (table[slot] == -1)
+					return false;
+				slot = (slot + 1) & mask;
+			}
+			//Shift following entries back so lookups don't stop early
+			for (int next = (slot + 1) & mask; table[next] != -1; next = (next + 1) & mask) {
+				int ideal = mix(table[next]) & mask;
+				if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+					table[slot] = table[next];
+					slot = next;
+				}
+			}
+			table[slot] = -1;
+			size--;
+			if (table.length > MIN_CAPACITY && size * 16 < table.length * 3)
+				resize(table.length / 2);
+			return true;
+		}
+
+		protected void resize(int capacity) {
+			int[] oldTable = table;
+			table = Handles.newIndex(capacity);
+			int mask = capacity - 1;
+			for (int value : oldTable)
+				if (value != -1) {
+					int slot = mix(value) & mask;
+					while (table[slot] != -1)
+						slot = (slot + 1) & mask;
+					table[slot] = value;
+				}
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return Number of slots for iterating with {@link #getSlot(int) }
+		 */
+		public int slots() {
+			return table.length;
+		}
+
+		/**
+		 * @return The value in the slot or -1 if empty
+		 */
+		public int getSlot(int slot) {
+			return table[slot];
+		}
+
+		public void clear() {
+			table = Handles.newIndex(MIN_CAPACITY);
+			size = 0;
+		}
+	}
+}
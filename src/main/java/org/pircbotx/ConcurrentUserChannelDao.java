@@ -0,0 +1,423 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.*;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.commons.lang3.StringUtils;
+import org.pircbotx.snapshot.UserChannelDaoSnapshot;
+
+/**
+ * {@link UserChannelDao} without a global lock, for bots in many channels with
+ * many listener threads. Users and channels are stored in ConcurrentHashMaps 
+ * and lookups by name don't lock. Relationships are stored in 
+ * {@link ConcurrentUserChannelMap}'s, which lock striped per user and per 
+ * channel locks instead of one lock for the whole map. Creating a new user or
+ * channel or renaming a user briefly locks the name maps, and 
+ * {@link #createSnapshot() } blocks modifications while it copies everything.
+ * <p>
+ * To use, return it from your {@link Configuration.BotFactory}:
+ * <pre>
+ * new Configuration.Builder()
+ *     .setBotFactory(new Configuration.BotFactory() {
+ *         public UserChannelDao createUserChannelDao(PircBotX bot) {
+ *             return new ConcurrentUserChannelDao(bot, this);
+ *         }
+ *     })
+ * </pre>
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ConcurrentUserChannelDao<U extends User, C extends Channel> extends UserChannelDao<U, C> {
+	protected final ConcurrentMap<CaseMappedKey, U> nickToUser = new ConcurrentHashMap<CaseMappedKey, U>();
+	protected final ConcurrentMap<U, CaseMappedKey> userToNick = new ConcurrentHashMap<U, CaseMappedKey>();
+	protected final ConcurrentMap<CaseMappedKey, C> nameToChannel = new ConcurrentHashMap<CaseMappedKey, C>();
+	protected final ConcurrentMap<C, CaseMappedKey> channelToName = new ConcurrentHashMap<C, CaseMappedKey>();
+	/**
+	 * Held when adding to or removing from the name maps so both directions stay
+	 * in sync
+	 */
+	protected final Object nameLock = new Object();
+	/**
+	 * Read lock is held while modifying, write lock while creating a snapshot
+	 */
+	protected final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+	public ConcurrentUserChannelDao(PircBotX bot, Configuration.BotFactory botFactory) {
+		//BiMaps of the parent are unused
+		super(bot, botFactory, bot.getConfiguration().getLocale(), new ConcurrentUserChannelMap<U, C>(),
+				new ConcurrentUserLevelMap<U, C>(), ImmutableBiMap.<CaseMappedKey, U>of(),
+				ImmutableBiMap.<CaseMappedKey, C>of(), Sets.<U>newConcurrentHashSet());
+	}
+
+	@Override
+	public U getUser(String nick) {
+		checkArgument(StringUtils.isNotBlank(nick), "Cannot get a blank user");
+		U user = nickToUser.get(caseMapping.key(nick));
+		if (user != null)
+			return user;
+
+		long lockStart = lockStart();
+		snapshotLock.readLock().lock();
+		lockAcquired(lockStart);
+		try {
+			synchronized (nameLock) {
+				//Another thread might of created the user or changed the case mapping
+				CaseMappedKey nickKey = caseMapping.key(nick);
+				user = nickToUser.get(nickKey);
+				if (user != null)
+					return user;
+
+				//Create new user
+				user = createUser(nick);
+				nickToUser.put(nickKey, user);
+				userToNick.put(user, nickKey);
+				return user;
+			}
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean userExists(String nick) {
+		return nickToUser.containsKey(caseMapping.key(nick));
+	}
+
+	@Override
+	public ImmutableSortedSet<U> getAllUsers() {
+		return ImmutableSortedSet.copyOf(nickToUser.values());
+	}
+
+	@Override
+	protected void addUserToChannel(U user, C channel) {
+		snapshotLock.readLock().lock();
+		try {
+			mainMap.addUserToChannel(user, channel);
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected void addUserToPrivate(U user) {
+		snapshotLock.readLock().lock();
+		try {
+			privateUsers.add(user);
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected void addUserToLevel(UserLevel level, U user, C channel) {
+		snapshotLock.readLock().lock();
+		try {
+			levelsMap.addUserToLevel(level, user, channel);
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected void removeUserFromLevel(UserLevel level, U user, C channel) {
+		snapshotLock.readLock().lock();
+		try {
+			levelsMap.removeUserFromLevel(level, user, channel);
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<U> getNormalUsers(C channel) {
+		return getNormalUsers(channel, mainMap, levelsMap);
+	}
+
+	@Override
+	public ImmutableSortedSet<U> getUsers(C channel, UserLevel level) {
+		return levelsMap.getUsers(channel, level);
+	}
+
+	@Override
+	public ImmutableSortedSet<UserLevel> getLevels(C channel, U user) {
+		return levelsMap.getLevels(user, channel);
+	}
+
+	@Override
+	public ImmutableSortedSet<C> getNormalUserChannels(U user) {
+		return getNormalUserChannels(user, mainMap, levelsMap);
+	}
+
+	@Override
+	public ImmutableSortedSet<C> getChannels(U user, UserLevel level) {
+		return levelsMap.getChannels(user, level);
+	}
+
+	@Override
+	protected void removeUserFromChannel(U user, C channel) {
+		snapshotLock.readLock().lock();
+		try {
+			mainMap.removeUserFromChannel(user, channel);
+			levelsMap.removeUserFromChannel(user, channel);
+
+			if (!privateUsers.contains(user) && !mainMap.containsUser(user))
+				//Completely remove user
+				removeUserNick(user);
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected void removeUser(U user) {
+		snapshotLock.readLock().lock();
+		try {
+			mainMap.removeUser(user);
+			levelsMap.removeUser(user);
+
+			//Remove remaining locations
+			removeUserNick(user);
+			privateUsers.remove(user);
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	protected void removeUserNick(U user) {
+		synchronized (nameLock) {
+			CaseMappedKey nickKey = userToNick.remove(user);
+			if (nickKey != null)
+				nickToUser.remove(nickKey, user);
+		}
+	}
+
+	@Override
+	protected boolean levelContainsUser(UserLevel level, C channel, U user) {
+		return levelsMap.containsEntry(level, user, channel);
+	}
+
+	@Override
+	protected void renameUser(U user, String newNick) {
+		snapshotLock.readLock().lock();
+		try {
+			synchronized (nameLock) {
+				user.setNick(newNick);
+				CaseMappedKey oldNickKey = userToNick.remove(user);
+				if (oldNickKey != null)
+					nickToUser.remove(oldNickKey, user);
+				CaseMappedKey newNickKey = caseMapping.key(newNick);
+				U replacedUser = nickToUser.put(newNickKey, user);
+				if (replacedUser != null && replacedUser != user)
+					userToNick.remove(replacedUser);
+				userToNick.put(user, newNickKey);
+			}
+			mainMap.invalidateUser(user);
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public C getChannel(String name) {
+		checkArgument(StringUtils.isNotBlank(name), "Cannot get a blank channel");
+		C chan = nameToChannel.get(caseMapping.key(name));
+		if (chan != null)
+			return chan;
+
+		long lockStart = lockStart();
+		snapshotLock.readLock().lock();
+		lockAcquired(lockStart);
+		try {
+			synchronized (nameLock) {
+				//Another thread might of created the channel or changed the case mapping
+				CaseMappedKey nameKey = caseMapping.key(name);
+				chan = nameToChannel.get(nameKey);
+				if (chan != null)
+					return chan;
+
+				//Channel does not exist, create one
+				chan = createChannel(name);
+				nameToChannel.put(nameKey, chan);
+				channelToName.put(chan, nameKey);
+				return chan;
+			}
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean channelExists(String name) {
+		return nameToChannel.containsKey(caseMapping.key(name));
+	}
+
+	@Override
+	protected void setCaseMapping(CaseMapping caseMapping) {
+		checkNotNull(caseMapping, "Must specify case mapping");
+		snapshotLock.writeLock().lock();
+		try {
+			synchronized (nameLock) {
+				if (caseMapping == this.caseMapping)
+					return;
+				this.caseMapping = caseMapping;
+				for (U curUser : ImmutableMap.copyOf(userToNick).keySet()) {
+					CaseMappedKey oldNickKey = userToNick.remove(curUser);
+					nickToUser.remove(oldNickKey, curUser);
+					CaseMappedKey newNickKey = caseMapping.key(curUser.getNick());
+					U replacedUser = nickToUser.put(newNickKey, curUser);
+					if (replacedUser != null)
+						userToNick.remove(replacedUser);
+					userToNick.put(curUser, newNickKey);
+				}
+				for (C curChannel : ImmutableMap.copyOf(channelToName).keySet()) {
+					CaseMappedKey oldNameKey = channelToName.remove(curChannel);
+					nameToChannel.remove(oldNameKey, curChannel);
+					CaseMappedKey newNameKey = caseMapping.key(curChannel.getName());
+					C replacedChannel = nameToChannel.put(newNameKey, curChannel);
+					if (replacedChannel != null)
+						channelToName.remove(replacedChannel);
+					channelToName.put(curChannel, newNameKey);
+				}
+			}
+		} finally {
+			snapshotLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public ImmutableSortedSet<U> getUsers(C channel) {
+		return mainMap.getUsers(channel);
+	}
+
+	@Override
+	public ImmutableSet<U> getUnsortedUsers(C channel) {
+		return mainMap.getUnsortedUsers(channel);
+	}
+
+	@Override
+	public int getUserCount(C channel) {
+		return mainMap.getUserCount(channel);
+	}
+
+	@Override
+	public int getUserCount(C channel, UserLevel level) {
+		return levelsMap.getUserCount(channel, level);
+	}
+
+	@Override
+	public int getUserCount() {
+		return mainMap.getUserCount();
+	}
+
+	@Override
+	public int getChannelCount(U user) {
+		return mainMap.getChannelCount(user);
+	}
+
+	@Override
+	public boolean containsEntry(U user, C channel) {
+		return mainMap.containsEntry(user, channel);
+	}
+
+	@Override
+	public ImmutableSortedSet<C> getAllChannels() {
+		return ImmutableSortedSet.copyOf(nameToChannel.values());
+	}
+
+	@Override
+	public ImmutableSortedSet<C> getChannels(U user) {
+		return mainMap.getChannels(user);
+	}
+
+	@Override
+	public ImmutableSet<C> getUnsortedChannels(U user) {
+		return mainMap.getUnsortedChannels(user);
+	}
+
+	@Override
+	protected void removeChannel(C channel) {
+		snapshotLock.readLock().lock();
+		try {
+			mainMap.removeChannel(channel);
+			levelsMap.removeChannel(channel);
+
+			//Remove remaining locations
+			synchronized (nameLock) {
+				CaseMappedKey nameKey = channelToName.remove(channel);
+				if (nameKey != null)
+					nameToChannel.remove(nameKey, channel);
+			}
+		} finally {
+			snapshotLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		snapshotLock.writeLock().lock();
+		try {
+			mainMap.clear();
+			levelsMap.clear();
+			synchronized (nameLock) {
+				nameToChannel.clear();
+				channelToName.clear();
+				nickToUser.clear();
+				userToNick.clear();
+			}
+			privateUsers.clear();
+		} finally {
+			snapshotLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public UserChannelDaoSnapshot createSnapshot() {
+		long lockStart = lockStart();
+		snapshotLock.writeLock().lock();
+		lockAcquired(lockStart);
+		try {
+			return createSnapshot(nickToUser, nameToChannel, privateUsers);
+		} finally {
+			snapshotLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public UserChannelDaoSnapshot createSnapshot(U user) {
+		return createSnapshot(user, null);
+	}
+
+	@Override
+	public UserChannelDaoSnapshot createSnapshot(U user, C channel) {
+		snapshotLock.writeLock().lock();
+		try {
+			return createUserSnapshot(user, channel);
+		} finally {
+			snapshotLock.writeLock().unlock();
+		}
+	}
+}
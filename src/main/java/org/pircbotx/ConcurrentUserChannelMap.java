@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import org.pircbotx.snapshot.ChannelSnapshot;
+import org.pircbotx.snapshot.UserChannelMapSnapshot;
+import org.pircbotx.snapshot.UserSnapshot;
+
+/**
+ * A many to many map of users to channels that is safe to read and modify
+ * from multiple threads without a global lock. Both directions are stored in
+ * ConcurrentHashMaps of concurrent sets and guarded by striped locks: every 
+ * change to a user's entries holds that user's lock stripe so 
+ * {@link #containsEntry(org.pircbotx.User, org.pircbotx.Channel) }
+ * and {@link #containsUser(org.pircbotx.User) } never see a half finished update.
+ * Adding to a channel's users or removing the channel also holds the channel's 
+ * lock stripe so a removed channel's user set is never written to.
+ * @see ConcurrentUserChannelDao
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ConcurrentUserChannelMap<U extends User, C extends Channel> extends UserChannelMap<U, C> {
+	protected final ConcurrentMap<U, Set<C>> userToChannels = new ConcurrentHashMap<U, Set<C>>();
+	protected final ConcurrentMap<C, Set<U>> channelToUsers = new ConcurrentHashMap<C, Set<U>>();
+	protected final Striped<Lock> userLocks = Striped.lock(64);
+	protected final Striped<Lock> channelLocks = Striped.lock(64);
+
+	public ConcurrentUserChannelMap() {
+		//Multimaps of the parent are unused
+		super(ImmutableSetMultimap.<U, C>of(), ImmutableSetMultimap.<C, U>of());
+	}
+
+	protected static <K, V> Set<V> getOrCreate(ConcurrentMap<K, Set<V>> map, K key) {
+		Set<V> values = map.get(key);
+		if (values == null) {
+			values = Sets.newConcurrentHashSet();
+			Set<V> existingValues = map.putIfAbsent(key, values);
+			if (existingValues != null)
+				values = existingValues;
+		}
+		return values;
+	}
+
+	@Override
+	public void addUserToChannel(U user, C channel) {
+		Lock lock = userLocks.get(user);
+		lock.lock();
+		try {
+			boolean userAdded = getOrCreate(userToChannels, user).add(channel);
+			boolean channelAdded;
+			//Always taken after the user lock
+			Lock channelLock = channelLocks.get(channel);
+			channelLock.lock();
+			try {
+				channelAdded = getOrCreate(channelToUsers, channel).add(user);
+			} finally {
+				channelLock.unlock();
+			}
+			if (userAdded || channelAdded)
+				invalidate(user, channel);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void removeUserFromChannel(U user, C channel) {
+		Lock lock = userLocks.get(user);
+		lock.lock();
+		try {
+			removeUserFromChannelLocked(user, channel);
+			Set<U> users = channelToUsers.get(channel);
+			if (users != null)
+				//Empty channel sets are only removed by removeChannel since other users may be joining
+				users.remove(user);
+			invalidate(user, channel);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove the channel from the user's channels. Must hold the user's lock
+	 */
+	protected void removeUserFromChannelLocked(U user, C channel) {
+		Set<C> channels = userToChannels.get(user);
+		if (channels != null) {
+			channels.remove(channel);
+			if (channels.isEmpty())
+				userToChannels.remove(user, channels);
+		}
+	}
+
+	@Override
+	public void removeUser(U user) {
+		Lock lock = userLocks.get(user);
+		lock.lock();
+		try {
+			//Remove the user from each channel
+			Set<C> channels = userToChannels.remove(user);
+			if (channels != null)
+				for (C curChannel : channels) {
+					Set<U> users = channelToUsers.get(curChannel);
+					if (users != null)
+						users.remove(user);
+					userViews.invalidate(curChannel);
+				}
+			channelViews.invalidate(user);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void removeChannel(C channel) {
+		Set<U> users = channelToUsers.get(channel);
+		if (users == null)
+			return;
+		Lock channelLock = channelLocks.get(channel);
+		while (true) {
+			//Remove both directions for each user under their lock
+			for (U curUser : users) {
+				Lock lock = userLocks.get(curUser);
+				lock.lock();
+				try {
+					users.remove(curUser);
+					removeUserFromChannelLocked(curUser, channel);
+					channelViews.invalidate(curUser);
+				} finally {
+					lock.unlock();
+				}
+			}
+
+			//Only drop the channel once no user joined it in the meantime
+			channelLock.lock();
+			try {
+				if (users.isEmpty()) {
+					channelToUsers.remove(channel, users);
+					break;
+				}
+			} finally {
+				channelLock.unlock();
+			}
+		}
+		userViews.invalidate(channel);
+	}
+
+	@Override
+	protected Collection<U> getUserSource(C channel) {
+		Set<U> users = channelToUsers.get(channel);
+		return users == null ? Collections.<U>emptySet() : users;
+	}
+
+	@Override
+	protected Collection<C> getChannelSource(U user) {
+		Set<C> channels = userToChannels.get(user);
+		return channels == null ? Collections.<C>emptySet() : channels;
+	}
+
+	@Override
+	public int getUserCount(C channel) {
+		return getUserSource(channel).size();
+	}
+
+	@Override
+	public int getChannelCount(U user) {
+		return getChannelSource(user).size();
+	}
+
+	@Override
+	public int getUserCount() {
+		//Users without channels are removed
+		return userToChannels.size();
+	}
+
+	@Override
+	public boolean containsEntry(U user, C channel) {
+		Lock lock = userLocks.get(user);
+		lock.lock();
+		try {
+			Set<U> users = channelToUsers.get(channel);
+			Set<C> channels = userToChannels.get(user);
+			boolean channelToUserContains = users != null && users.contains(user);
+			boolean userToChannelContains = channels != null && channels.contains(channel);
+			if (channelToUserContains != userToChannelContains)
+				throw new RuntimeException("Map inconsistent! User: " + user + " | Channel: " + channel + " | channelToUserMap: " + channelToUserContains + " | userToChannelMap: " + userToChannelContains);
+			return channelToUserContains;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean containsUser(User user) {
+		Lock lock = userLocks.get(user);
+		lock.lock();
+		try {
+			Set<C> channels = userToChannels.get(user);
+			boolean userToChannelContains = channels != null && !channels.isEmpty();
+			boolean channelToUserContains = false;
+			//Check the user's channels first, only scan every channel if they have none
+			if (channels != null) {
+				for (C curChannel : channels) {
+					Set<U> users = channelToUsers.get(curChannel);
+					if (users != null && users.contains(user)) {
+						channelToUserContains = true;
+						break;
+					}
+				}
+			} else
+				for (Set<U> curUsers : channelToUsers.values())
+					if (curUsers.contains(user)) {
+						channelToUserContains = true;
+						break;
+					}
+			if (channelToUserContains != userToChannelContains)
+				throw new RuntimeException("Map inconsistent! User: " + user + " | channelToUserMap: " + channelToUserContains + " | userToChannelMap: " + userToChannelContains);
+			return channelToUserContains;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		userToChannels.clear();
+		channelToUsers.clear();
+		userViews.clear();
+		channelViews.clear();
+	}
+
+	@Override
+	public UserChannelMapSnapshot createSnapshot(Map<U, UserSnapshot> userSnapshots, Map<C, ChannelSnapshot> channelSnapshots) {
+		//Create new multimaps replacing each user and channel with their respective snapshots
+		ImmutableMultimap.Builder<UserSnapshot, ChannelSnapshot> userToChannelSnapshotBuilder = ImmutableMultimap.builder();
+		for (Map.Entry<U, Set<C>> curEntry : userToChannels.entrySet())
+			for (C curChannel : curEntry.getValue())
+				userToChannelSnapshotBuilder.put(userSnapshots.get(curEntry.getKey()), channelSnapshots.get(curChannel));
+		ImmutableMultimap.Builder<ChannelSnapshot, UserSnapshot> channelToUserSnapshotBuilder = ImmutableMultimap.builder();
+		for (Map.Entry<C, Set<U>> curEntry : channelToUsers.entrySet())
+			for (U curUser : curEntry.getValue())
+				channelToUserSnapshotBuilder.put(channelSnapshots.get(curEntry.getKey()), userSnapshots.get(curUser));
+
+		//Return a snapshot of the map
+		return new UserChannelMapSnapshot(userToChannelSnapshotBuilder.build(), channelToUserSnapshotBuilder.build());
+	}
+}
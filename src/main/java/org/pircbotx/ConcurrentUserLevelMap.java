@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.Sets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link UserLevelMap} that is safe to read and modify from multiple threads.
+ * Everything is stored in concurrent maps and sets so reads don't lock, while
+ * updates hold the lock of the channel's levels so the bitmask and the level
+ * sets are changed together.
+ * @see ConcurrentUserChannelDao
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ConcurrentUserLevelMap<U extends User, C extends Channel> extends UserLevelMap<U, C> {
+	public ConcurrentUserLevelMap() {
+		super(new ConcurrentHashMap<C, ChannelLevels<U>>());
+	}
+
+	@Override
+	protected ChannelLevels<U> createChannelLevels() {
+		@SuppressWarnings("unchecked")
+		Set<U>[] levelUsers = new Set[LEVELS.length];
+		for (int i = 0; i < levelUsers.length; i++)
+			levelUsers[i] = Sets.newConcurrentHashSet();
+		return new ChannelLevels<U>(new ConcurrentHashMap<U, Integer>(), levelUsers);
+	}
+
+	@Override
+	protected ChannelLevels<U> getOrCreateLevels(C channel) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		if (levels == null) {
+			levels = createChannelLevels();
+			ChannelLevels<U> existingLevels = ((ConcurrentMap<C, ChannelLevels<U>>) channelLevels).putIfAbsent(channel, levels);
+			if (existingLevels != null)
+				levels = existingLevels;
+		}
+		return levels;
+	}
+
+	@Override
+	protected void putLevels(U user, C channel, int mask) {
+		synchronized (getOrCreateLevels(channel)) {
+			super.putLevels(user, channel, mask);
+		}
+	}
+
+	@Override
+	public void removeUserFromLevel(UserLevel level, U user, C channel) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		if (levels == null)
+			return;
+		synchronized (levels) {
+			super.removeUserFromLevel(level, user, channel);
+		}
+	}
+
+	@Override
+	public void removeUserFromChannel(U user, C channel) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		if (levels == null)
+			return;
+		synchronized (levels) {
+			super.removeUserFromChannel(user, channel);
+		}
+	}
+}
@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
 import lombok.Data;
 import lombok.ToString;
 import lombok.experimental.Accessors;
@@ -50,12 +51,23 @@ import org.pircbotx.hooks.CoreHooks;
 import org.pircbotx.hooks.Listener;
 import org.pircbotx.hooks.managers.ListenerManager;
 import org.pircbotx.hooks.managers.ThreadedListenerManager;
+import org.pircbotx.metrics.Instrumentation;
+import org.pircbotx.metrics.MetricsRegistry;
+import org.pircbotx.metrics.NoOpInstrumentation;
 import org.pircbotx.output.OutputCAP;
 import org.pircbotx.output.OutputChannel;
 import org.pircbotx.output.OutputDCC;
 import org.pircbotx.output.OutputIRC;
+import org.pircbotx.output.OutputPriority;
 import org.pircbotx.output.OutputRaw;
 import org.pircbotx.output.OutputUser;
+import org.pircbotx.output.QueuedOutputRaw;
+import org.pircbotx.output.RateLimitPolicy;
+import org.pircbotx.output.TokenBucketPolicy;
+import org.pircbotx.wirelog.AsyncWireLogger;
+import org.pircbotx.wirelog.SampledWireLogger;
+import org.pircbotx.wirelog.Slf4jWireLogger;
+import org.pircbotx.wirelog.WireLogger;
 
 /**
  * Immutable configuration for PircBotX. Use {@link Configuration.Builder} to create
@@ -91,6 +103,7 @@ public class Configuration<B extends PircBotX> {
 	protected final int serverPort;
 	protected final String serverPassword;
 	protected final SocketFactory socketFactory;
+	protected final NioSelectorGroup nioSelectorGroup;
 	protected final InetAddress localAddress;
 	protected final Charset encoding;
 	protected final Locale locale;
@@ -99,6 +112,13 @@ public class Configuration<B extends PircBotX> {
 	protected final boolean autoSplitMessage;
 	protected final boolean autoNickChange;
 	protected final long messageDelay;
+	protected final boolean outputQueueEnabled;
+	protected final int outputQueueMaxDepth;
+	protected final boolean outputQueueDropOldest;
+	protected final boolean outputQueueCoalesce;
+	protected final RateLimitPolicy rateLimitPolicy;
+	protected final WireLogger wireLogger;
+	protected final Instrumentation instrumentation;
 	protected final boolean shutdownHookEnabled;
 	protected final ImmutableMap<String, String> autoJoinChannels;
 	protected final boolean identServerEnabled;
@@ -106,9 +126,14 @@ public class Configuration<B extends PircBotX> {
 	protected final boolean autoReconnect;
 	//Bot classes
 	protected final ListenerManager<B> listenerManager;
+	protected final boolean eventNanoTimestamps;
+	protected final boolean transientMessageEvents;
 	protected final boolean capEnabled;
 	protected final ImmutableList<CapHandler> capHandlers;
 	protected final ImmutableSortedMap<Character, ChannelModeHandler> channelModeHandlers;
+	protected final ImmutableMap<String, CommandHandler> commandHandlers;
+	protected final ImmutableSortedMap<Integer, ServerResponseHandler> serverResponseHandlers;
+	protected final ImmutableList<InputFilter> inputFilters;
 	protected final BotFactory botFactory;
 
 	/**
@@ -135,13 +160,18 @@ public class Configuration<B extends PircBotX> {
 		checkArgument(StringUtils.isNotBlank(builder.getServerHostname()), "Must specify server hostname");
 		checkArgument(builder.getServerPort() > 0 && builder.getServerPort() <= 65535, "Port must be between 1 and 65535");
 		checkNotNull(builder.getSocketFactory(), "Must specify socket factory");
+		if (builder.getNioSelectorGroup() != null)
+			checkArgument(!(builder.getSocketFactory() instanceof SSLSocketFactory), "NIO transport does not support SSL");
 		checkNotNull(builder.getEncoding(), "Must specify encoding");
 		checkNotNull(builder.getLocale(), "Must specify locale");
 		checkArgument(builder.getSocketTimeout() >= 0, "Socket timeout must be positive");
 		checkArgument(builder.getMaxLineLength() > 0, "Max line length must be positive");
 		checkArgument(builder.getMessageDelay() >= 0, "Message delay must be positive");
+		checkArgument(builder.getOutputQueueMaxDepth() >= 0, "Output queue max depth must be positive");
 		if (builder.getNickservPassword() != null)
 			checkArgument(!builder.getNickservPassword().trim().equals(""), "Nickserv password cannot be empty");
+		checkNotNull(builder.getWireLogger(), "Must specify wire logger");
+		checkNotNull(builder.getInstrumentation(), "Must specify instrumentation");
 		checkNotNull(builder.getListenerManager(), "Must specify listener manager");
 		checkNotNull(builder.getBotFactory(), "Must specify bot factory");
 
@@ -167,6 +197,7 @@ public class Configuration<B extends PircBotX> {
 		this.serverPort = builder.getServerPort();
 		this.serverPassword = builder.getServerPassword();
 		this.socketFactory = builder.getSocketFactory();
+		this.nioSelectorGroup = builder.getNioSelectorGroup();
 		this.localAddress = builder.getLocalAddress();
 		this.encoding = builder.getEncoding();
 		this.locale = builder.getLocale();
@@ -175,10 +206,19 @@ public class Configuration<B extends PircBotX> {
 		this.autoSplitMessage = builder.isAutoSplitMessage();
 		this.autoNickChange = builder.isAutoNickChange();
 		this.messageDelay = builder.getMessageDelay();
+		this.outputQueueEnabled = builder.isOutputQueueEnabled();
+		this.outputQueueMaxDepth = builder.getOutputQueueMaxDepth();
+		this.outputQueueDropOldest = builder.isOutputQueueDropOldest();
+		this.outputQueueCoalesce = builder.isOutputQueueCoalesce();
+		this.rateLimitPolicy = builder.getRateLimitPolicy();
+		this.wireLogger = builder.getWireLogger();
+		this.instrumentation = builder.getInstrumentation();
 		this.identServerEnabled = builder.isIdentServerEnabled();
 		this.nickservPassword = builder.getNickservPassword();
 		this.autoReconnect = builder.isAutoReconnect();
 		this.listenerManager = builder.getListenerManager();
+		this.eventNanoTimestamps = builder.isEventNanoTimestamps();
+		this.transientMessageEvents = builder.isTransientMessageEvents();
 		this.autoJoinChannels = ImmutableMap.copyOf(builder.getAutoJoinChannels());
 		this.capEnabled = builder.isCapEnabled();
 		this.capHandlers = ImmutableList.copyOf(builder.getCapHandlers());
@@ -186,6 +226,18 @@ public class Configuration<B extends PircBotX> {
 		for (ChannelModeHandler curHandler : builder.getChannelModeHandlers())
 			channelModeHandlersBuilder.put(curHandler.getMode(), curHandler);
 		this.channelModeHandlers = channelModeHandlersBuilder.build();
+		//Later handlers replace earlier handlers of the same command
+		Map<String, CommandHandler> commandHandlersMap = Maps.newLinkedHashMap();
+		for (CommandHandler curHandler : builder.getCommandHandlers())
+			commandHandlersMap.put(curHandler.getCommand(), curHandler);
+		this.commandHandlers = ImmutableMap.copyOf(commandHandlersMap);
+		this.inputFilters = ImmutableList.copyOf(builder.getInputFilters());
+		Map<Integer, ServerResponseHandler> serverResponseHandlersMap = Maps.newHashMap();
+		for (ServerResponseHandler curHandler : builder.getServerResponseHandlers()) {
+			checkArgument(curHandler.getCode() >= 0 && curHandler.getCode() <= 999, "Server response code %s out of range", curHandler.getCode());
+			serverResponseHandlersMap.put(curHandler.getCode(), curHandler);
+		}
+		this.serverResponseHandlers = ImmutableSortedMap.copyOf(serverResponseHandlersMap);
 		this.shutdownHookEnabled = builder.isShutdownHookEnabled();
 		this.botFactory = builder.getBotFactory();
 	}
@@ -286,6 +338,11 @@ public class Configuration<B extends PircBotX> {
 		 * Socket factory for connections. Defaults to {@link SocketFactory#getDefault() }
 		 */
 		protected SocketFactory socketFactory = SocketFactory.getDefault();
+		/**
+		 * Selector threads to connect with instead of a blocking socket from the
+		 * socket factory. Share one across bots. Defaults to null (blocking)
+		 */
+		protected NioSelectorGroup nioSelectorGroup = null;
 		/**
 		 * Address to bind to when connecting to IRC server. 
 		 */
@@ -323,6 +380,45 @@ public class Configuration<B extends PircBotX> {
 		 * Defaults to 1000 milliseconds
 		 */
 		protected long messageDelay = 1000;
+		/**
+		 * Queue lines sent with {@link OutputRaw#rawLine(java.lang.String) } and 
+		 * write them from a single thread instead of blocking the caller for 
+		 * the message delay. Defaults to false
+		 */
+		protected boolean outputQueueEnabled = false;
+		/**
+		 * Maximum number of lines in the output queue, 0 for no limit. When full
+		 * new lines are dropped, except {@link OutputPriority#IMMEDIATE} lines.
+		 * Defaults to 0
+		 */
+		protected int outputQueueMaxDepth = 0;
+		/**
+		 * When the output queue is full drop the oldest {@link OutputPriority#NORMAL}
+		 * line instead of the new line. Defaults to false
+		 */
+		protected boolean outputQueueDropOldest = false;
+		/**
+		 * Don't queue a line identical to one already in the output queue, eg 
+		 * the same reply to the same channel. Defaults to false
+		 */
+		protected boolean outputQueueCoalesce = false;
+		/**
+		 * Policy to limit lines sent with {@link OutputRaw#rawLine(java.lang.String) }
+		 * in addition to the message delay, eg {@link TokenBucketPolicy}. Defaults to null
+		 */
+		protected RateLimitPolicy rateLimitPolicy = null;
+		/**
+		 * Logs every raw line read from and written to the server, eg an
+		 * {@link AsyncWireLogger} wrapped in a {@link SampledWireLogger}.
+		 * Defaults to a synchronous {@link Slf4jWireLogger}
+		 */
+		protected WireLogger wireLogger = new Slf4jWireLogger();
+		/**
+		 * Receives timings and counts of lines, events, listeners, and locks,
+		 * eg a {@link MetricsRegistry} shared between bots. Query with
+		 * {@link PircBotX#getMetrics() }. Defaults to {@link NoOpInstrumentation}
+		 */
+		protected Instrumentation instrumentation = NoOpInstrumentation.INSTANCE;
 		/**
 		 * Enable or disable creating a JVM shutdown hook which will properly QUIT
 		 * the IRC server and shutdown the bot. Defaults to true
@@ -354,6 +450,18 @@ public class Configuration<B extends PircBotX> {
 		 * The {@link ListenerManager} to use to handle events.
 		 */
 		protected ListenerManager<B> listenerManager = null;
+		/**
+		 * Record {@link System#nanoTime() } in every event for ordering events
+		 * created in the same millisecond. Defaults to false
+		 */
+		protected boolean eventNanoTimestamps = false;
+		/**
+		 * Dispatch recycled {@link MessageEvent.Transient} events for channel
+		 * messages instead of allocating a new event per line. Listeners must
+		 * call {@link MessageEvent#retain() } or {@link MessageEvent#copy() } to
+		 * keep the event after returning. Defaults to false
+		 */
+		protected boolean transientMessageEvents = false;
 		/**
 		 * Enable or disable CAP handling. Defaults to false
 		 */
@@ -363,6 +471,21 @@ public class Configuration<B extends PircBotX> {
 		 */
 		protected final List<CapHandler> capHandlers = new ArrayList<CapHandler>();
 		protected final List<ChannelModeHandler> channelModeHandlers = new ArrayList<ChannelModeHandler>();
+		/**
+		 * Registered {@link CommandHandler}'s. Later handlers replace earlier
+		 * handlers of the same command
+		 */
+		protected final List<CommandHandler> commandHandlers = new ArrayList<CommandHandler>();
+		/**
+		 * Registered {@link ServerResponseHandler}'s. Later handlers replace
+		 * earlier handlers of the same code
+		 */
+		protected final List<ServerResponseHandler> serverResponseHandlers = new ArrayList<ServerResponseHandler>();
+		/**
+		 * Registered {@link InputFilter}'s, run in order on every non-numeric
+		 * line before it's processed
+		 */
+		protected final List<InputFilter> inputFilters = new ArrayList<InputFilter>();
 		/**
 		 * The {@link BotFactory} to use
 		 */
@@ -375,6 +498,8 @@ public class Configuration<B extends PircBotX> {
 			capHandlers.add(new EnableCapHandler("multi-prefix", true));
 			capHandlers.add(new EnableCapHandler("away-notify", true));
 			channelModeHandlers.addAll(InputParser.DEFAULT_CHANNEL_MODE_HANDLERS);
+			commandHandlers.addAll(InputParser.DEFAULT_COMMAND_HANDLERS);
+			serverResponseHandlers.addAll(InputParser.DEFAULT_SERVER_RESPONSE_HANDLERS);
 		}
 
 		/**
@@ -404,6 +529,7 @@ public class Configuration<B extends PircBotX> {
 			this.serverPort = configuration.getServerPort();
 			this.serverPassword = configuration.getServerPassword();
 			this.socketFactory = configuration.getSocketFactory();
+			this.nioSelectorGroup = configuration.getNioSelectorGroup();
 			this.localAddress = configuration.getLocalAddress();
 			this.encoding = configuration.getEncoding();
 			this.locale = configuration.getLocale();
@@ -412,7 +538,16 @@ public class Configuration<B extends PircBotX> {
 			this.autoSplitMessage = configuration.isAutoSplitMessage();
 			this.autoNickChange = configuration.isAutoNickChange();
 			this.messageDelay = configuration.getMessageDelay();
+			this.outputQueueEnabled = configuration.isOutputQueueEnabled();
+			this.outputQueueMaxDepth = configuration.getOutputQueueMaxDepth();
+			this.outputQueueDropOldest = configuration.isOutputQueueDropOldest();
+			this.outputQueueCoalesce = configuration.isOutputQueueCoalesce();
+			this.rateLimitPolicy = configuration.getRateLimitPolicy();
+			this.wireLogger = configuration.getWireLogger();
+			this.instrumentation = configuration.getInstrumentation();
 			this.listenerManager = configuration.getListenerManager();
+			this.eventNanoTimestamps = configuration.isEventNanoTimestamps();
+			this.transientMessageEvents = configuration.isTransientMessageEvents();
 			this.nickservPassword = configuration.getNickservPassword();
 			this.autoReconnect = configuration.isAutoReconnect();
 			this.autoJoinChannels.putAll(configuration.getAutoJoinChannels());
@@ -420,6 +555,9 @@ public class Configuration<B extends PircBotX> {
 			this.capEnabled = configuration.isCapEnabled();
 			this.capHandlers.addAll(configuration.getCapHandlers());
 			this.channelModeHandlers.addAll(configuration.getChannelModeHandlers().values());
+			this.commandHandlers.addAll(configuration.getCommandHandlers().values());
+			this.serverResponseHandlers.addAll(configuration.getServerResponseHandlers().values());
+			this.inputFilters.addAll(configuration.getInputFilters());
 			this.shutdownHookEnabled = configuration.isShutdownHookEnabled();
 			this.botFactory = configuration.getBotFactory();
 		}
@@ -451,6 +589,7 @@ public class Configuration<B extends PircBotX> {
 			this.serverPort = otherBuilder.getServerPort();
 			this.serverPassword = otherBuilder.getServerPassword();
 			this.socketFactory = otherBuilder.getSocketFactory();
+			this.nioSelectorGroup = otherBuilder.getNioSelectorGroup();
 			this.localAddress = otherBuilder.getLocalAddress();
 			this.encoding = otherBuilder.getEncoding();
 			this.locale = otherBuilder.getLocale();
@@ -459,7 +598,16 @@ public class Configuration<B extends PircBotX> {
 			this.autoSplitMessage = otherBuilder.isAutoSplitMessage();
 			this.autoNickChange = otherBuilder.isAutoNickChange();
 			this.messageDelay = otherBuilder.getMessageDelay();
+			this.outputQueueEnabled = otherBuilder.isOutputQueueEnabled();
+			this.outputQueueMaxDepth = otherBuilder.getOutputQueueMaxDepth();
+			this.outputQueueDropOldest = otherBuilder.isOutputQueueDropOldest();
+			this.outputQueueCoalesce = otherBuilder.isOutputQueueCoalesce();
+			this.rateLimitPolicy = otherBuilder.getRateLimitPolicy();
+			this.wireLogger = otherBuilder.getWireLogger();
+			this.instrumentation = otherBuilder.getInstrumentation();
 			this.listenerManager = otherBuilder.getListenerManager();
+			this.eventNanoTimestamps = otherBuilder.isEventNanoTimestamps();
+			this.transientMessageEvents = otherBuilder.isTransientMessageEvents();
 			this.nickservPassword = otherBuilder.getNickservPassword();
 			this.autoReconnect = otherBuilder.isAutoReconnect();
 			this.autoJoinChannels.putAll(otherBuilder.getAutoJoinChannels());
@@ -467,6 +615,9 @@ public class Configuration<B extends PircBotX> {
 			this.capEnabled = otherBuilder.isCapEnabled();
 			this.capHandlers.addAll(otherBuilder.getCapHandlers());
 			this.channelModeHandlers.addAll(otherBuilder.getChannelModeHandlers());
+			this.commandHandlers.addAll(otherBuilder.getCommandHandlers());
+			this.serverResponseHandlers.addAll(otherBuilder.getServerResponseHandlers());
+			this.inputFilters.addAll(otherBuilder.getInputFilters());
 			this.shutdownHookEnabled = otherBuilder.isShutdownHookEnabled();
 			this.botFactory = otherBuilder.getBotFactory();
 		}
@@ -502,6 +653,36 @@ public class Configuration<B extends PircBotX> {
 			return this;
 		}
 
+		/**
+		 * Utility method for <code>{@link #getCommandHandlers()}.add(handler)</code>
+		 * @param handler
+		 * @return
+		 */
+		public Builder<B> addCommandHandler(CommandHandler handler) {
+			getCommandHandlers().add(handler);
+			return this;
+		}
+
+		/**
+		 * Utility method for <code>{@link #getInputFilters()}.add(filter)</code>
+		 * @param filter
+		 * @return
+		 */
+		public Builder<B> addInputFilter(InputFilter filter) {
+			getInputFilters().add(filter);
+			return this;
+		}
+
+		/**
+		 * Utility method for <code>{@link #getServerResponseHandlers()}.add(handler)</code>
+		 * @param handler
+		 * @return
+		 */
+		public Builder<B> addServerResponseHandler(ServerResponseHandler handler) {
+			getServerResponseHandlers().add(handler);
+			return this;
+		}
+
 		/**
 		 * Utility method for <code>{@link #getListenerManager().add(listener)</code>
 		 * @param listener
@@ -638,6 +819,8 @@ public class Configuration<B extends PircBotX> {
 		}
 
 		public OutputRaw createOutputRaw(PircBotX bot) {
+			if (bot.getConfiguration().isOutputQueueEnabled())
+				return new QueuedOutputRaw(bot);
 			return new OutputRaw(bot);
 		}
 
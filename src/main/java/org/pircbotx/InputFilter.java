@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+/**
+ * Filter run on every non-numeric line from the server before it is
+ * processed. Discarded lines never reach the {@link CommandHandler}, so no
+ * users or channels are looked up or changed and no events are created.
+ * <p>
+ * Filters run on the input thread and must be fast. Be careful to only
+ * discard lines that don't change state the bot tracks, like channel messages
+ * <p>
+ * Discarded lines are counted per filter, see 
+ * {@link InputParser#getInputFilterDiscards() }
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ * @see MessagePrefixFilter
+ */
+public interface InputFilter {
+	/**
+	 * Decide if the line should be processed
+	 * @param bot The bot that received the line
+	 * @param command The upper case command, eg <code>PRIVMSG</code>
+	 * @param target The first parameter, usually a channel or nick
+	 * @param parsedLine The parsed line, only valid during this call. Use 
+	 * {@link ParsedLine#paramStartsWith(int, java.lang.String) } to check 
+	 * the message without creating Strings
+	 * @param tags The IRCv3 tags of the line
+	 * @return True to process the line, false to discard it
+	 */
+	public boolean accept(PircBotX bot, String command, String target, ParsedLine parsedLine, MessageTags tags);
+}
@@ -32,10 +32,12 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -101,8 +103,11 @@ import org.pircbotx.hooks.events.UserModeEvent;
 import org.pircbotx.hooks.events.VersionEvent;
 import org.pircbotx.hooks.events.VoiceEvent;
 import org.pircbotx.hooks.events.WhoisEvent;
+import org.pircbotx.metrics.FlightRecorderEvents;
+import org.pircbotx.metrics.Instrumentation;
 import org.pircbotx.snapshot.ChannelSnapshot;
 import org.pircbotx.snapshot.UserChannelDaoSnapshot;
+import org.pircbotx.wirelog.WireLogger;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
@@ -120,6 +125,12 @@ public class InputParser implements Closeable {
 	protected static final ImmutableList<String> CONNECT_CODES = ImmutableList.of("001", "002", "003", "004", "005",
 			"251", "252", "253", "254", "255", "375", "376");
 	protected static final ImmutableList<ChannelModeHandler> DEFAULT_CHANNEL_MODE_HANDLERS;
+	protected static final ImmutableList<CommandHandler> DEFAULT_COMMAND_HANDLERS;
+	protected static final ImmutableList<ServerResponseHandler> DEFAULT_SERVER_RESPONSE_HANDLERS;
+	/**
+	 * Number of recycled message events kept so slow listeners don't stop reuse
+	 */
+	protected static final int TRANSIENT_MESSAGE_EVENTS = 8;
 
 	static {
 		DEFAULT_CHANNEL_MODE_HANDLERS = ImmutableList.<ChannelModeHandler>builder()
@@ -261,6 +272,415 @@ public class InputParser implements Closeable {
 			}
 		})
 				.build();
+
+		DEFAULT_COMMAND_HANDLERS = ImmutableList.<CommandHandler>builder()
+				.add(new CommandHandler("PRIVMSG") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				Channel channel = getTargetChannel(bot, target);
+				String message = getMessage(parsedLine);
+				if (message.startsWith("\u0001") && message.endsWith("\u0001")) {
+					// Check for CTCP requests.
+					String request = message.substring(1, message.length() - 1);
+					if (request.equals("VERSION"))
+						// VERSION request
+						Utils.dispatchEvent(bot, new VersionEvent<PircBotX>(bot, source, channel));
+					else if (request.startsWith("ACTION "))
+						// ACTION request
+						Utils.dispatchEvent(bot, new ActionEvent<PircBotX>(bot, source, channel, request.substring(7), tags));
+					else if (request.startsWith("PING "))
+						// PING request
+						Utils.dispatchEvent(bot, new PingEvent<PircBotX>(bot, source, channel, request.substring(5)));
+					else if (request.equals("TIME"))
+						// TIME request
+						Utils.dispatchEvent(bot, new TimeEvent<PircBotX>(bot, channel, source));
+					else if (request.equals("FINGER"))
+						// FINGER request
+						Utils.dispatchEvent(bot, new FingerEvent<PircBotX>(bot, source, channel));
+					else if (request.startsWith("DCC ")) {
+						// This is a DCC request.
+						boolean success = bot.getDccHandler().processDcc(source, request);
+						if (!success)
+							// The DccManager didn't know what to do with the line.
+							Utils.dispatchEvent(bot, new UnknownEvent<PircBotX>(bot, line));
+					} else
+						// An unknown CTCP message - ignore it.
+						Utils.dispatchEvent(bot, new UnknownEvent<PircBotX>(bot, line));
+				} else if (channel != null) {
+					// This is a normal message to a channel.
+					source.setLastSpokenTime(System.currentTimeMillis());
+					inputParser.dispatchMessageEvent(channel, source, message, tags);
+				} else {
+					// This is a private message to us.
+					//Add to private message
+					bot.getUserChannelDao().addUserToPrivate(source);
+					Utils.dispatchEvent(bot, new PrivateMessageEvent<PircBotX>(bot, source, message, tags));
+				}
+			}
+		})
+				.add(new CommandHandler("JOIN") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				Channel channel = getTargetChannel(bot, target);
+				// Someone is joining a channel.
+				if (sourceNick.equalsIgnoreCase(bot.getNick())) {
+					//Its us, get channel info
+					bot.sendRaw().rawLine("WHO " + target);
+					bot.sendRaw().rawLine("MODE " + target);
+				}
+				source.setLogin(sourceLogin);
+				source.setHostmask(sourceHostname);
+				bot.getUserChannelDao().addUserToChannel(source, channel);
+				Utils.dispatchEvent(bot, new JoinEvent<PircBotX>(bot, channel, source));
+			}
+		})
+				.add(new CommandHandler("PART") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				Channel channel = getTargetChannel(bot, target);
+				// Someone is parting from a channel.
+				UserChannelDaoSnapshot daoSnapshot = bot.getUserChannelDao().createSnapshot(source, channel);
+				ChannelSnapshot channelSnapshot = daoSnapshot.getChannel(channel.getName());
+				UserSnapshot sourceSnapshot = daoSnapshot.getUser(source.getNick());
+				if (sourceNick.equals(bot.getNick()))
+					//We parted the channel
+					bot.getUserChannelDao().removeChannel(channel);
+				else
+					//Just remove the user from memory
+					bot.getUserChannelDao().removeUserFromChannel(source, channel);
+				Utils.dispatchEvent(bot, new PartEvent<PircBotX>(bot, daoSnapshot, channelSnapshot, sourceSnapshot, getMessage(parsedLine)));
+			}
+		})
+				.add(new CommandHandler("NICK") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				// Somebody is changing their nick.
+				String newNick = target;
+				bot.getUserChannelDao().renameUser(source, newNick);
+				if (sourceNick.equals(bot.getNick()))
+					// Update our nick if it was us that changed nick.
+					bot.setNick(newNick);
+				Utils.dispatchEvent(bot, new NickChangeEvent<PircBotX>(bot, sourceNick, newNick, source));
+			}
+		})
+				.add(new CommandHandler("NOTICE") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				Channel channel = getTargetChannel(bot, target);
+				// Someone is sending a notice.
+				Utils.dispatchEvent(bot, new NoticeEvent<PircBotX>(bot, source, channel, getMessage(parsedLine), tags));
+			}
+		})
+				.add(new CommandHandler("QUIT") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				UserChannelDaoSnapshot daoSnapshot = bot.getUserChannelDao().createSnapshot(source);
+				UserSnapshot sourceSnapshot = daoSnapshot.getUser(source.getNick());
+				//A real target is missing, so index is off
+				String reason = target;
+				// Someone has quit from the IRC server.
+				if (!sourceNick.equals(bot.getNick()))
+					//Someone else
+					bot.getUserChannelDao().removeUser(source);
+				Utils.dispatchEvent(bot, new QuitEvent<PircBotX>(bot, daoSnapshot, sourceSnapshot, reason));
+			}
+		})
+				.add(new CommandHandler("KICK") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				Channel channel = getTargetChannel(bot, target);
+				// Somebody has been kicked from a channel.
+				User recipient = bot.getUserChannelDao().getUser(getMessage(parsedLine));
+
+				if (recipient.getNick().equals(bot.getNick()))
+					//We were just kicked
+					bot.getUserChannelDao().removeChannel(channel);
+				else
+					//Someone else
+					bot.getUserChannelDao().removeUserFromChannel(recipient, channel);
+				Utils.dispatchEvent(bot, new KickEvent<PircBotX>(bot, channel, source, recipient, parsedLine.get(2)));
+			}
+		})
+				.add(new CommandHandler("MODE") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				// Somebody is changing the mode on a channel or user (Use long form since mode isn't after a : )
+				String mode = line.substring(line.indexOf(target, 2) + target.length() + 1);
+				if (mode.startsWith(":"))
+					mode = mode.substring(1);
+				inputParser.processMode(source, target, mode);
+			}
+		})
+				.add(new CommandHandler("TOPIC") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				Channel channel = getTargetChannel(bot, target);
+				String message = getMessage(parsedLine);
+				// Someone is changing the topic.
+				long currentTime = System.currentTimeMillis();
+				String oldTopic = channel.getTopic();
+				channel.setTopic(message);
+				channel.setTopicSetter(sourceNick);
+				channel.setTopicTimestamp(currentTime);
+
+				Utils.dispatchEvent(bot, new TopicEvent<PircBotX>(bot, channel, oldTopic, message, source, currentTime, true));
+			}
+		})
+				.add(new CommandHandler("INVITE") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				User source = bot.getUserChannelDao().getUser(sourceNick);
+				// Somebody is inviting somebody else into a channel.
+				//Use line method instead of channel since channel is wrong
+				Utils.dispatchEvent(bot, new InviteEvent<PircBotX>(bot, sourceNick, getMessage(parsedLine)));
+				if (bot.getUserChannelDao().getChannels(source).isEmpty())
+					bot.getUserChannelDao().removeUser(source);
+			}
+		})
+				.add(new CommandHandler("AWAY") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+				//IRCv3 AWAY notify
+				bot.getUserChannelDao().getUser(sourceNick).setAwayMessage(parsedLine.get(0));
+			}
+		})
+				.build();
+
+		DEFAULT_SERVER_RESPONSE_HANDLERS = ImmutableList.<ServerResponseHandler>builder()
+				.add(new ServerResponseHandler(RPL_LISTSTART) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//EXAMPLE: 321 Channel :Users Name (actual text)
+				//A channel list is about to be sent
+				inputParser.channelListBuilder = ImmutableList.builder();
+				inputParser.channelListRunning = true;
+			}
+		})
+				.add(new ServerResponseHandler(RPL_LIST) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//This is part of a full channel listing as part of /LIST
+				//EXAMPLE: 322 lordquackstar #xomb 12 :xomb exokernel project @ www.xomb.org
+				String channel = parsedResponse.get(1);
+				int userCount = Utils.tryParseInt(parsedResponse.get(2), -1);
+				String topic = parsedResponse.get(3);
+				inputParser.channelListBuilder.add(new ChannelListEntry(channel, userCount, topic));
+			}
+		})
+				.add(new ServerResponseHandler(RPL_LISTEND) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//EXAMPLE: 323 :End of /LIST
+				//End of channel list, dispatch event
+				Utils.dispatchEvent(bot, new ChannelInfoEvent<PircBotX>(bot, inputParser.channelListBuilder.build()));
+				inputParser.channelListBuilder = null;
+				inputParser.channelListRunning = false;
+			}
+		})
+				.add(new ServerResponseHandler(RPL_TOPIC) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//EXAMPLE: 332 PircBotX #aChannel :I'm some random topic
+				//This is topic about a channel we've just joined. From /JOIN or /TOPIC
+				Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
+				String topic = parsedResponse.get(2);
+
+				channel.setTopic(topic);
+			}
+		})
+				.add(new ServerResponseHandler(RPL_TOPICINFO) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//EXAMPLE: 333 PircBotX #aChannel ISetTopic 1564842512
+				//This is information on the topic of the channel we've just joined. From /JOIN or /TOPIC
+				Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
+				User setBy = bot.getUserChannelDao().getUser(parsedResponse.get(2));
+				long date = Utils.tryParseLong(parsedResponse.get(3), -1);
+
+				channel.setTopicTimestamp(date * 1000);
+				channel.setTopicSetter(setBy.getNick());
+
+				Utils.dispatchEvent(bot, new TopicEvent<PircBotX>(bot, channel, null, channel.getTopic(), setBy, date, false));
+			}
+		})
+				.add(new ServerResponseHandler(RPL_WHOREPLY) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//EXAMPLE: 352 PircBotX #aChannel ~someName 74.56.56.56.my.Hostmask wolfe.freenode.net someNick H :0 Full Name
+				//Part of a WHO reply on information on individual users
+				Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
+
+				//Setup user
+				User curUser = bot.getUserChannelDao().getUser(parsedResponse.get(5));
+				curUser.setLogin(parsedResponse.get(2));
+				curUser.setHostmask(parsedResponse.get(3));
+				curUser.setServer(parsedResponse.get(4));
+				curUser.setNick(parsedResponse.get(5));
+				inputParser.processUserStatus(channel, curUser, parsedResponse.get(6));
+				//Extra parsing needed since tokenizer stopped at :
+				String rawEnding = parsedResponse.get(7);
+				int rawEndingSpaceIndex = rawEnding.indexOf(' ');
+				if (rawEndingSpaceIndex == -1) {
+					//parsedResponse data is trimmed, so if the index == -1, then there was no real name given and the space separating hops from real name was trimmed.
+					curUser.setHops(Integer.parseInt(rawEnding));
+					curUser.setRealName("");
+				} else {
+					//parsedResponse data contains a real name
+					curUser.setHops(Integer.parseInt(rawEnding.substring(0, rawEndingSpaceIndex)));
+					curUser.setRealName(rawEnding.substring(rawEndingSpaceIndex + 1));
+				}
+
+				//Associate with channel
+				bot.getUserChannelDao().addUserToChannel(curUser, channel);
+			}
+		})
+				.add(new ServerResponseHandler(RPL_ENDOFWHO) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//EXAMPLE: 315 PircBotX #aChannel :End of /WHO list
+				//End of the WHO reply
+				Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
+				Utils.dispatchEvent(bot, new UserListEvent<PircBotX>(bot, channel, bot.getUserChannelDao().getUsers(channel)));
+			}
+		})
+				.add(new ServerResponseHandler(RPL_CHANNELMODEIS) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//EXAMPLE: 324 PircBotX #aChannel +cnt
+				//Full channel mode (In response to MODE <channel>)
+				Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
+				ImmutableList<String> modeParsed = parsedResponse.subList(2, parsedResponse.size());
+				String mode = StringUtils.join(modeParsed, ' ');
+
+				channel.setMode(mode, modeParsed);
+				Utils.dispatchEvent(bot, new ModeEvent<PircBotX>(bot, channel, null, mode, modeParsed));
+			}
+		})
+				.add(new ServerResponseHandler(329) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//EXAMPLE: 329 lordquackstar #botters 1199140245
+				//Tells when channel was created. From /JOIN
+				Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
+				int createDate = Utils.tryParseInt(parsedResponse.get(2), -1);
+
+				//Set in channel
+				channel.setCreateTimestamp(createDate);
+			}
+		})
+				.add(new ServerResponseHandler(RPL_MOTDSTART) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//Example: 375 PircBotX :- wolfe.freenode.net Message of the Day -
+				//Motd is starting, reset the StringBuilder
+				inputParser.motdBuilder = new StringBuilder();
+			}
+		})
+				.add(new ServerResponseHandler(RPL_MOTD) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//Example: 372 PircBotX :- Welcome to wolfe.freenode.net in Manchester, England, Uk!  Thanks to
+				//This is part of the MOTD, add a new line
+				inputParser.motdBuilder.append(CharMatcher.WHITESPACE.trimFrom(parsedResponse.get(1).substring(1))).append("\n");
+			}
+		})
+				.add(new ServerResponseHandler(RPL_ENDOFMOTD) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//Example: PircBotX :End of /MOTD command.
+				//End of MOTD, clean it and dispatch MotdEvent
+				ServerInfo serverInfo = bot.getServerInfo();
+				serverInfo.setMotd(inputParser.motdBuilder.toString().trim());
+				inputParser.motdBuilder = null;
+				Utils.dispatchEvent(bot, new MotdEvent<PircBotX>(bot, serverInfo.getMotd()));
+			}
+		})
+				.add(new ServerInfoResponseHandler(4))
+				.add(new ServerInfoResponseHandler(5))
+				.add(new ServerResponseHandler(RPL_WHOISUSER) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//Example: 311 TheLQ Plazma ~Plazma freenode/staff/plazma * :Plazma Rooolz!
+				//New whois is starting
+				String whoisNick = parsedResponse.get(1);
+
+				WhoisEvent.Builder<PircBotX> builder = new WhoisEvent.Builder<PircBotX>();
+				builder.setNick(whoisNick);
+				builder.setLogin(parsedResponse.get(2));
+				builder.setHostname(parsedResponse.get(3));
+				builder.setRealname(parsedResponse.get(5));
+				inputParser.whoisBuilder.put(whoisNick, builder);
+			}
+		})
+				.add(new ServerResponseHandler(RPL_AWAY) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//Example: 301 PircBotXUser TheLQ_ :I'm away, sorry
+				bot.getUserChannelDao().getUser(parsedResponse.get(1)).setAwayMessage(parsedResponse.get(2));
+			}
+		})
+				.add(new ServerResponseHandler(RPL_WHOISCHANNELS) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//Example: 319 TheLQ Plazma :+#freenode
+				//Channel list from whois. Re-tokenize since they're after the :
+				String whoisNick = parsedResponse.get(1);
+				ImmutableList<String> parsedChannels = ImmutableList.copyOf(Utils.tokenizeLine(parsedResponse.get(2)));
+
+				inputParser.whoisBuilder.get(whoisNick).setChannels(parsedChannels);
+			}
+		})
+				.add(new ServerResponseHandler(RPL_WHOISSERVER) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//Server info from whois
+				//312 TheLQ Plazma leguin.freenode.net :Ume?, SE, EU
+				String whoisNick = parsedResponse.get(1);
+
+				inputParser.whoisBuilder.get(whoisNick).setServer(parsedResponse.get(2));
+				inputParser.whoisBuilder.get(whoisNick).setServerInfo(parsedResponse.get(3));
+			}
+		})
+				.add(new ServerResponseHandler(RPL_WHOISIDLE) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//Idle time from whois
+				//317 TheLQ md_5 6077 1347373349 :seconds idle, signon time
+				String whoisNick = parsedResponse.get(1);
+
+				inputParser.whoisBuilder.get(whoisNick).setIdleSeconds(Long.parseLong(parsedResponse.get(2)));
+				inputParser.whoisBuilder.get(whoisNick).setSignOnTime(Long.parseLong(parsedResponse.get(3)));
+			}
+		})
+				.add(new ServerResponseHandler(330) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//RPL_WHOISACCOUNT: Extra Whois info
+				//330 TheLQ Utoxin Utoxin :is logged in as
+				inputParser.whoisBuilder.get(parsedResponse.get(1)).setRegisteredAs(parsedResponse.get(2));
+			}
+		})
+				.add(new ServerResponseHandler(RPL_ENDOFWHOIS) {
+			@Override
+			public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+				//End of whois
+				//318 TheLQ Plazma :End of /WHOIS list.
+				String whoisNick = parsedResponse.get(1);
+
+				Utils.dispatchEvent(bot, inputParser.whoisBuilder.get(whoisNick).generateEvent(bot));
+				inputParser.whoisBuilder.remove(whoisNick);
+			}
+		})
+				.build();
 	}
 	protected final Configuration<PircBotX> configuration;
 	protected final PircBotX bot;
@@ -274,10 +694,41 @@ public class InputParser implements Closeable {
 	protected boolean channelListRunning = false;
 	protected ImmutableList.Builder<ChannelListEntry> channelListBuilder;
 	protected int nickSuffix = 0;
+	protected final ParsedLine parsedLine = new ParsedLine();
+	protected final AtomicBoolean parsedLineInUse = new AtomicBoolean();
+	/**
+	 * Recycled message events, null unless transient message events are enabled
+	 */
+	protected final AtomicReferenceArray<MessageEvent.Transient<PircBotX>> transientMessageEvents;
+
+	protected final ImmutableMap<String, CommandHandler> commandHandlers;
+	protected final CommandHandler privmsgHandler;
+	/**
+	 * Server response handlers indexed by their numeric code
+	 */
+	protected final ServerResponseHandler[] serverResponseHandlers = new ServerResponseHandler[1000];
+	protected final InputFilter[] inputFilters;
+	protected final WireLogger wireLogger;
+	protected final Instrumentation instrumentation;
+	/**
+	 * Number of lines discarded by the filter at the same index
+	 */
+	protected final AtomicLongArray inputFilterDiscards;
 
 	public InputParser(PircBotX bot) {
 		this.bot = bot;
 		this.configuration = bot.getConfiguration();
+		this.commandHandlers = configuration.getCommandHandlers();
+		this.privmsgHandler = commandHandlers.get("PRIVMSG");
+		for (ServerResponseHandler curHandler : configuration.getServerResponseHandlers().values())
+			serverResponseHandlers[curHandler.getCode()] = curHandler;
+		this.inputFilters = configuration.getInputFilters().toArray(new InputFilter[0]);
+		this.wireLogger = configuration.getWireLogger();
+		this.instrumentation = configuration.getInstrumentation();
+		this.inputFilterDiscards = new AtomicLongArray(inputFilters.length);
+		this.transientMessageEvents = configuration.isTransientMessageEvents()
+				? new AtomicReferenceArray<MessageEvent.Transient<PircBotX>>(TRANSIENT_MESSAGE_EVENTS)
+				: null;
 	}
 
 	/**
@@ -287,20 +738,57 @@ public class InputParser implements Closeable {
 	 * @param line The raw line of text from the server.
 	 */
 	public void handleLine(@NonNull String line) throws IOException, IrcException {
-		log.info(INPUT_MARKER, line);
-
-		List<String> parsedLine = Utils.tokenizeLine(line);
+		wireLogger.logInput(bot, line);
+		instrumentation.lineRead(bot, line);
 
-		String senderInfo = "";
-		if (parsedLine.get(0).charAt(0) == ':')
-			senderInfo = parsedLine.remove(0);
+		//Reuse the shared ParsedLine unless another thread or a recursive call is using it
+		boolean reuseParsedLine = parsedLineInUse.compareAndSet(false, true);
+		try {
+			ParsedLine parsedLine = reuseParsedLine ? this.parsedLine : new ParsedLine();
+			boolean timed = instrumentation.isEnabled();
+			Object jfrEvent = FlightRecorderEvents.LINE.begin();
+			long startNanos = (timed || jfrEvent != null) ? System.nanoTime() : 0;
+			long parseNanos = 0;
+			try {
+				parsedLine.parse(line);
+				if (jfrEvent != null)
+					parseNanos = System.nanoTime() - startNanos;
+				handleLine(line, parsedLine);
+			} finally {
+				if (timed || jfrEvent != null) {
+					String command = parsedLine.getCommand(configuration.getLocale());
+					if (timed)
+						instrumentation.lineProcessed(bot, command, System.nanoTime() - startNanos);
+					if (jfrEvent != null)
+						FlightRecorderEvents.LINE.commit(jfrEvent, bot.getBotId(), command, parseNanos);
+				}
+			}
+		} finally {
+			if (reuseParsedLine)
+				parsedLineInUse.set(false);
+		}
+	}
 
-		String command = parsedLine.remove(0).toUpperCase(configuration.getLocale());
+	/**
+	 * Handle an already parsed line. The {@link ParsedLine} and its parameter list
+	 * are only valid for the duration of this call.
+	 * @param line The raw line of text from the server.
+	 * @param parsedLine The parsed view of the line
+	 */
+	protected void handleLine(String line, ParsedLine parsedLine) throws IOException, IrcException {
+		MessageTags tags = MessageTags.EMPTY;
+		if (parsedLine.hasTags()) {
+			//Keep the tags out of the line given to everything else
+			tags = parsedLine.getTags();
+			line = line.substring(parsedLine.getContentStart());
+		}
+		String command = parsedLine.getCommand(configuration.getLocale());
+		List<String> params = parsedLine.getParams();
 
 		// Check for server pings.
 		if (command.equals("PING")) {
 			// Respond to the ping and return immediately.
-			configuration.getListenerManager().dispatchEvent(new ServerPingEvent<PircBotX>(bot, parsedLine.get(0)));
+			configuration.getListenerManager().dispatchEvent(new ServerPingEvent<PircBotX>(bot, parsedLine.getParam(0)));
 			return;
 		} else if (command.startsWith("ERROR")) {
 			//Server is shutting us down
@@ -311,24 +799,22 @@ public class InputParser implements Closeable {
 		String sourceNick;
 		String sourceLogin = "";
 		String sourceHostname = "";
-		String target = !parsedLine.isEmpty() ? parsedLine.get(0) : "";
+		String target = parsedLine.getParam(0, "");
 
 		if (target.startsWith(":"))
 			target = target.substring(1);
-		
-		int exclamation = senderInfo.indexOf('!');
-		int at = senderInfo.indexOf('@');
-		if (senderInfo.startsWith(":"))
-			if (exclamation > 0 && at > 0 && exclamation < at) {
-				sourceNick = senderInfo.substring(1, exclamation);
-				sourceLogin = senderInfo.substring(exclamation + 1, at);
-				sourceHostname = senderInfo.substring(at + 1);
+
+		if (parsedLine.hasPrefix())
+			if (parsedLine.isUserPrefix()) {
+				sourceNick = parsedLine.getPrefixNick();
+				sourceLogin = parsedLine.getPrefixLogin();
+				sourceHostname = parsedLine.getPrefixHostname();
 			} else {
-				int code = Utils.tryParseInt(command, -1);
+				int code = parsedLine.getNumeric();
 				if (code != -1) {
 					if (!bot.loggedIn)
-						processConnect(line, command, target, parsedLine);
-					processServerResponse(code, line, parsedLine);
+						processConnect(line, command, target, params);
+					processServerResponse(code, line, params);
 					// Return from the method.
 					return;
 				} else
@@ -336,7 +822,7 @@ public class InputParser implements Closeable {
 					// It must be a nick without login and hostname.
 					// (or maybe a NOTICE or suchlike from the server)
 					//WARNING: Changed from origional PircBot. Instead of command as target, use channel/user (setup later)
-					sourceNick = senderInfo;
+					sourceNick = parsedLine.getPrefix();
 			}
 		else {
 			// We don't know what this line means.
@@ -350,12 +836,29 @@ public class InputParser implements Closeable {
 			return;
 		}
 
-		if (sourceNick.startsWith(":"))
-			sourceNick = sourceNick.substring(1);
-
 		if (!bot.loggedIn)
-			processConnect(line, command, target, parsedLine);
-		processCommand(target, sourceNick, sourceLogin, sourceHostname, command, line, parsedLine);
+			processConnect(line, command, target, params);
+		for (int i = 0; i < inputFilters.length; i++)
+			if (!inputFilters[i].accept(bot, command, target, parsedLine, tags)) {
+				inputFilterDiscards.incrementAndGet(i);
+				return;
+			}
+		processCommand(target, sourceNick, sourceLogin, sourceHostname, command, line, params, tags);
+	}
+
+	/**
+	 * Get how many lines each {@link InputFilter} discarded. A line is only
+	 * counted for the first filter that discards it
+	 * @return Discarded line counts in filter order
+	 */
+	public ImmutableMap<InputFilter, Long> getInputFilterDiscards() {
+		//Same filter can be added more than once
+		Map<InputFilter, Long> discards = Maps.newLinkedHashMap();
+		for (int i = 0; i < inputFilters.length; i++) {
+			Long previous = discards.get(inputFilters[i]);
+			discards.put(inputFilters[i], inputFilterDiscards.get(i) + (previous != null ? previous : 0));
+		}
+		return ImmutableMap.copyOf(discards);
 	}
 
 	/**
@@ -462,134 +965,55 @@ public class InputParser implements Closeable {
 		}
 	}
 
-	public void processCommand(String target, String sourceNick, String sourceLogin, String sourceHostname, String command, String line, List<String> parsedLine) throws IOException {
-		User source = bot.getUserChannelDao().getUser(sourceNick);
-		//If the channel matches a prefix, then its a channel
-		Channel channel = (target.length() != 0 && configuration.getChannelPrefixes().indexOf(target.charAt(0)) >= 0) ? bot.getUserChannelDao().getChannel(target) : null;
-		String message = parsedLine.size() >= 2 ? parsedLine.get(1) : "";
-
-		// Check for CTCP requests.
-		if (command.equals("PRIVMSG") && message.startsWith("\u0001") && message.endsWith("\u0001")) {
-			String request = message.substring(1, message.length() - 1);
-			if (request.equals("VERSION"))
-				// VERSION request
-				configuration.getListenerManager().dispatchEvent(new VersionEvent<PircBotX>(bot, source, channel));
-			else if (request.startsWith("ACTION "))
-				// ACTION request
-				configuration.getListenerManager().dispatchEvent(new ActionEvent<PircBotX>(bot, source, channel, request.substring(7)));
-			else if (request.startsWith("PING "))
-				// PING request
-				configuration.getListenerManager().dispatchEvent(new PingEvent<PircBotX>(bot, source, channel, request.substring(5)));
-			else if (request.equals("TIME"))
-				// TIME request
-				configuration.getListenerManager().dispatchEvent(new TimeEvent<PircBotX>(bot, channel, source));
-			else if (request.equals("FINGER"))
-				// FINGER request
-				configuration.getListenerManager().dispatchEvent(new FingerEvent<PircBotX>(bot, source, channel));
-			else if (request.startsWith("DCC ")) {
-				// This is a DCC request.
-				boolean success = bot.getDccHandler().processDcc(source, request);
-				if (!success)
-					// The DccManager didn't know what to do with the line.
-					configuration.getListenerManager().dispatchEvent(new UnknownEvent<PircBotX>(bot, line));
-			} else
-				// An unknown CTCP message - ignore it.
-				configuration.getListenerManager().dispatchEvent(new UnknownEvent<PircBotX>(bot, line));
-		} else if (command.equals("PRIVMSG") && channel != null) {
-			// This is a normal message to a channel.
-			source.setLastSpoken(new Date());
-			configuration.getListenerManager().dispatchEvent(new MessageEvent<PircBotX>(bot, channel, source, message));
-		}
-		else if (command.equals("PRIVMSG")) {
-			// This is a private message to us.
-			//Add to private message
-			bot.getUserChannelDao().addUserToPrivate(source);
-			configuration.getListenerManager().dispatchEvent(new PrivateMessageEvent<PircBotX>(bot, source, message));
-		} else if (command.equals("JOIN")) {
-			// Someone is joining a channel.
-			if (sourceNick.equalsIgnoreCase(bot.getNick())) {
-				//Its us, get channel info
-				bot.sendRaw().rawLine("WHO " + target);
-				bot.sendRaw().rawLine("MODE " + target);
-			}
-			source.setLogin(sourceLogin);
-			source.setHostmask(sourceHostname);
-			bot.getUserChannelDao().addUserToChannel(source, channel);
-			configuration.getListenerManager().dispatchEvent(new JoinEvent<PircBotX>(bot, channel, source));
-		} else if (command.equals("PART")) {
-			// Someone is parting from a channel.
-			UserChannelDaoSnapshot daoSnapshot = bot.getUserChannelDao().createSnapshot();
-			ChannelSnapshot channelSnapshot = daoSnapshot.getChannel(channel.getName());
-			UserSnapshot sourceSnapshot = daoSnapshot.getUser(source.getNick());
-			if (sourceNick.equals(bot.getNick()))
-				//We parted the channel
-				bot.getUserChannelDao().removeChannel(channel);
-			else
-				//Just remove the user from memory
-				bot.getUserChannelDao().removeUserFromChannel(source, channel);
-			configuration.getListenerManager().dispatchEvent(new PartEvent<PircBotX>(bot, daoSnapshot, channelSnapshot, sourceSnapshot, message));
-		} else if (command.equals("NICK")) {
-			// Somebody is changing their nick.
-			String newNick = target;
-			bot.getUserChannelDao().renameUser(source, newNick);
-			if (sourceNick.equals(bot.getNick()))
-				// Update our nick if it was us that changed nick.
-				bot.setNick(newNick);
-			configuration.getListenerManager().dispatchEvent(new NickChangeEvent<PircBotX>(bot, sourceNick, newNick, source));
-		} else if (command.equals("NOTICE"))
-			// Someone is sending a notice.
-			configuration.getListenerManager().dispatchEvent(new NoticeEvent<PircBotX>(bot, source, channel, message));
-		else if (command.equals("QUIT")) {
-			UserChannelDaoSnapshot daoSnapshot = bot.getUserChannelDao().createSnapshot();
-			UserSnapshot sourceSnapshot = daoSnapshot.getUser(source.getNick());
-			//A real target is missing, so index is off
-			String reason = target;
-			// Someone has quit from the IRC server.
-			if (!sourceNick.equals(bot.getNick()))
-				//Someone else
-				bot.getUserChannelDao().removeUser(source);
-			configuration.getListenerManager().dispatchEvent(new QuitEvent<PircBotX>(bot, daoSnapshot, sourceSnapshot, reason));
-		} else if (command.equals("KICK")) {
-			// Somebody has been kicked from a channel.
-			User recipient = bot.getUserChannelDao().getUser(message);
-
-			if (recipient.getNick().equals(bot.getNick()))
-				//We were just kicked
-				bot.getUserChannelDao().removeChannel(channel);
-			else
-				//Someone else
-				bot.getUserChannelDao().removeUserFromChannel(recipient, channel);
-			configuration.getListenerManager().dispatchEvent(new KickEvent<PircBotX>(bot, channel, source, recipient, parsedLine.get(2)));
-		} else if (command.equals("MODE")) {
-			// Somebody is changing the mode on a channel or user (Use long form since mode isn't after a : )
-			String mode = line.substring(line.indexOf(target, 2) + target.length() + 1);
-			if (mode.startsWith(":"))
-				mode = mode.substring(1);
-			processMode(source, target, mode);
-		} else if (command.equals("TOPIC")) {
-			// Someone is changing the topic.
-			long currentTime = System.currentTimeMillis();
-			String oldTopic = channel.getTopic();
-			channel.setTopic(message);
-			channel.setTopicSetter(sourceNick);
-			channel.setTopicTimestamp(currentTime);
-
-			configuration.getListenerManager().dispatchEvent(new TopicEvent<PircBotX>(bot, channel, oldTopic, message, source, currentTime, true));
-		} else if (command.equals("INVITE")) {
-			// Somebody is inviting somebody else into a channel.
-			//Use line method instead of channel since channel is wrong
-			configuration.getListenerManager().dispatchEvent(new InviteEvent<PircBotX>(bot, sourceNick, message));
-			if (bot.getUserChannelDao().getChannels(source).isEmpty())
-				bot.getUserChannelDao().removeUser(source);
-		} else if (command.equals("AWAY"))
-			//IRCv3 AWAY notify
-			source.setAwayMessage(parsedLine.get(0));
+	/**
+	 * Dispatch a non-numeric command to its {@link CommandHandler}. PRIVMSG, by
+	 * far the most common command, is checked first without a map lookup
+	 */
+	public void processCommand(String target, String sourceNick, String sourceLogin, String sourceHostname, String command, String line, List<String> parsedLine, MessageTags tags) throws IOException {
+		CommandHandler handler = command.equals("PRIVMSG") ? privmsgHandler : commandHandlers.get(command);
+		if (handler != null)
+			handler.handleCommand(bot, this, target, sourceNick, sourceLogin, sourceHostname, line, parsedLine, tags);
 		else
 			// If we reach this point, then we've found something that the PircBotX
 			// Doesn't currently deal with.
 			configuration.getListenerManager().dispatchEvent(new UnknownEvent<PircBotX>(bot, line));
 	}
 
+	/**
+	 * Dispatch a {@link MessageEvent}, reusing a recycled event that no listener
+	 * still references when transient message events are enabled
+	 */
+	public void dispatchMessageEvent(Channel channel, User source, String message, MessageTags tags) {
+		if (transientMessageEvents == null) {
+			Utils.dispatchEvent(bot, new MessageEvent<PircBotX>(bot, channel, source, message, tags));
+			return;
+		}
+
+		MessageEvent.Transient<PircBotX> event = null;
+		for (int i = 0; i < TRANSIENT_MESSAGE_EVENTS; i++) {
+			MessageEvent.Transient<PircBotX> curEvent = transientMessageEvents.get(i);
+			if (curEvent == null || curEvent.isRetained()) {
+				//Empty or kept by a listener, replace with a new event
+				event = new MessageEvent.Transient<PircBotX>(bot, channel, source, message, tags);
+				transientMessageEvents.set(i, event);
+				break;
+			} else if (curEvent.tryReuse()) {
+				curEvent.reset(channel, source, message, tags);
+				event = curEvent;
+				break;
+			}
+		}
+		if (event == null)
+			//Every recycled event is still in use
+			event = new MessageEvent.Transient<PircBotX>(bot, channel, source, message, tags);
+
+		try {
+			Utils.dispatchEvent(bot, event);
+		} finally {
+			event.release();
+		}
+	}
+
 	/**
 	 * This method is called by the PircBotX when a numeric response
 	 * is received from the IRC server. We use this method to
@@ -606,164 +1030,9 @@ public class InputParser implements Closeable {
 		ImmutableList<String> parsedResponse = ImmutableList.copyOf(parsedResponseOrig);
 		//Parsed response format: Everything after code
 		//eg: Response 321 Channel :Users Name gives us [Channel, Users Name]
-		if (code == RPL_LISTSTART) {
-			//EXAMPLE: 321 Channel :Users Name (actual text)
-			//A channel list is about to be sent
-			channelListBuilder = ImmutableList.builder();
-			channelListRunning = true;
-		} else if (code == RPL_LIST) {
-			//This is part of a full channel listing as part of /LIST
-			//EXAMPLE: 322 lordquackstar #xomb 12 :xomb exokernel project @ www.xomb.org
-			String channel = parsedResponse.get(1);
-			int userCount = Utils.tryParseInt(parsedResponse.get(2), -1);
-			String topic = parsedResponse.get(3);
-			channelListBuilder.add(new ChannelListEntry(channel, userCount, topic));
-		} else if (code == RPL_LISTEND) {
-			//EXAMPLE: 323 :End of /LIST
-			//End of channel list, dispatch event
-			configuration.getListenerManager().dispatchEvent(new ChannelInfoEvent<PircBotX>(bot, channelListBuilder.build()));
-			channelListBuilder = null;
-			channelListRunning = false;
-		} else if (code == RPL_TOPIC) {
-			//EXAMPLE: 332 PircBotX #aChannel :I'm some random topic
-			//This is topic about a channel we've just joined. From /JOIN or /TOPIC
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			String topic = parsedResponse.get(2);
-
-			channel.setTopic(topic);
-		} else if (code == RPL_TOPICINFO) {
-			//EXAMPLE: 333 PircBotX #aChannel ISetTopic 1564842512
-			//This is information on the topic of the channel we've just joined. From /JOIN or /TOPIC
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			User setBy = bot.getUserChannelDao().getUser(parsedResponse.get(2));
-			long date = Utils.tryParseLong(parsedResponse.get(3), -1);
-
-			channel.setTopicTimestamp(date * 1000);
-			channel.setTopicSetter(setBy.getNick());
-
-			configuration.getListenerManager().dispatchEvent(new TopicEvent<PircBotX>(bot, channel, null, channel.getTopic(), setBy, date, false));
-		} else if (code == RPL_WHOREPLY) {
-			//EXAMPLE: 352 PircBotX #aChannel ~someName 74.56.56.56.my.Hostmask wolfe.freenode.net someNick H :0 Full Name
-			//Part of a WHO reply on information on individual users
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-
-			//Setup user
-			User curUser = bot.getUserChannelDao().getUser(parsedResponse.get(5));
-			curUser.setLogin(parsedResponse.get(2));
-			curUser.setHostmask(parsedResponse.get(3));
-			curUser.setServer(parsedResponse.get(4));
-			curUser.setNick(parsedResponse.get(5));
-			processUserStatus(channel, curUser, parsedResponse.get(6));
-			//Extra parsing needed since tokenizer stopped at :
-			String rawEnding = parsedResponse.get(7);
-			int rawEndingSpaceIndex = rawEnding.indexOf(' ');
-			if (rawEndingSpaceIndex == -1) {
-				//parsedResponse data is trimmed, so if the index == -1, then there was no real name given and the space separating hops from real name was trimmed.
-				curUser.setHops(Integer.parseInt(rawEnding));
-				curUser.setRealName("");
-			} else {
-				//parsedResponse data contains a real name
-				curUser.setHops(Integer.parseInt(rawEnding.substring(0, rawEndingSpaceIndex)));
-				curUser.setRealName(rawEnding.substring(rawEndingSpaceIndex + 1));
-			}
-
-			//Associate with channel
-			bot.getUserChannelDao().addUserToChannel(curUser, channel);
-		} else if (code == RPL_ENDOFWHO) {
-			//EXAMPLE: 315 PircBotX #aChannel :End of /WHO list
-			//End of the WHO reply
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			configuration.getListenerManager().dispatchEvent(new UserListEvent<PircBotX>(bot, channel, bot.getUserChannelDao().getUsers(channel)));
-		} else if (code == RPL_CHANNELMODEIS) {
-			//EXAMPLE: 324 PircBotX #aChannel +cnt
-			//Full channel mode (In response to MODE <channel>)
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			ImmutableList<String> modeParsed = parsedResponse.subList(2, parsedResponse.size());
-			String mode = StringUtils.join(modeParsed, ' ');
-			
-			channel.setMode(mode, modeParsed);
-			configuration.getListenerManager().dispatchEvent(new ModeEvent<PircBotX>(bot, channel, null, mode, modeParsed));
-		} else if (code == 329) {
-			//EXAMPLE: 329 lordquackstar #botters 1199140245
-			//Tells when channel was created. From /JOIN
-			Channel channel = bot.getUserChannelDao().getChannel(parsedResponse.get(1));
-			int createDate = Utils.tryParseInt(parsedResponse.get(2), -1);
-
-			//Set in channel
-			channel.setCreateTimestamp(createDate);
-		} else if (code == RPL_MOTDSTART)
-			//Example: 375 PircBotX :- wolfe.freenode.net Message of the Day -
-			//Motd is starting, reset the StringBuilder
-			motdBuilder = new StringBuilder();
-		else if (code == RPL_MOTD)
-			//Example: 372 PircBotX :- Welcome to wolfe.freenode.net in Manchester, England, Uk!  Thanks to
-			//This is part of the MOTD, add a new line
-			motdBuilder.append(CharMatcher.WHITESPACE.trimFrom(parsedResponse.get(1).substring(1))).append("\n");
-		else if (code == RPL_ENDOFMOTD) {
-			//Example: PircBotX :End of /MOTD command.
-			//End of MOTD, clean it and dispatch MotdEvent
-			ServerInfo serverInfo = bot.getServerInfo();
-			serverInfo.setMotd(motdBuilder.toString().trim());
-			motdBuilder = null;
-			configuration.getListenerManager().dispatchEvent(new MotdEvent<PircBotX>(bot, serverInfo.getMotd()));
-		} else if (code == 4 || code == 5) {
-			//Example: 004 PircBotX sendak.freenode.net ircd-seven-1.1.3 DOQRSZaghilopswz CFILMPQbcefgijklmnopqrstvz bkloveqjfI
-			//Server info line, remove ending comment and let ServerInfo class parse it
-			int endCommentIndex = rawResponse.lastIndexOf(" :");
-			if (endCommentIndex > 1) {
-				String endComment = rawResponse.substring(endCommentIndex + 2);
-				int lastIndex = parsedResponseOrig.size() - 1;
-				if (endComment.equals(parsedResponseOrig.get(lastIndex)))
-					parsedResponseOrig.remove(lastIndex);
-			}
-			bot.getServerInfo().parse(code, parsedResponseOrig);
-		} else if (code == RPL_WHOISUSER) {
-			//Example: 311 TheLQ Plazma ~Plazma freenode/staff/plazma * :Plazma Rooolz!
-			//New whois is starting
-			String whoisNick = parsedResponse.get(1);
-
-			WhoisEvent.Builder<PircBotX> builder = new WhoisEvent.Builder<PircBotX>();
-			builder.setNick(whoisNick);
-			builder.setLogin(parsedResponse.get(2));
-			builder.setHostname(parsedResponse.get(3));
-			builder.setRealname(parsedResponse.get(5));
-			whoisBuilder.put(whoisNick, builder);
-		} else if (code == RPL_AWAY)
-			//Example: 301 PircBotXUser TheLQ_ :I'm away, sorry
-			bot.getUserChannelDao().getUser(parsedResponse.get(1)).setAwayMessage(parsedResponse.get(2));
-		else if (code == RPL_WHOISCHANNELS) {
-			//Example: 319 TheLQ Plazma :+#freenode
-			//Channel list from whois. Re-tokenize since they're after the :
-			String whoisNick = parsedResponse.get(1);
-			ImmutableList<String> parsedChannels = ImmutableList.copyOf(Utils.tokenizeLine(parsedResponse.get(2)));
-
-			whoisBuilder.get(whoisNick).setChannels(parsedChannels);
-		} else if (code == RPL_WHOISSERVER) {
-			//Server info from whois
-			//312 TheLQ Plazma leguin.freenode.net :Ume?, SE, EU
-			String whoisNick = parsedResponse.get(1);
-
-			whoisBuilder.get(whoisNick).setServer(parsedResponse.get(2));
-			whoisBuilder.get(whoisNick).setServerInfo(parsedResponse.get(3));
-		} else if (code == RPL_WHOISIDLE) {
-			//Idle time from whois
-			//317 TheLQ md_5 6077 1347373349 :seconds idle, signon time
-			String whoisNick = parsedResponse.get(1);
-
-			whoisBuilder.get(whoisNick).setIdleSeconds(Long.parseLong(parsedResponse.get(2)));
-			whoisBuilder.get(whoisNick).setSignOnTime(Long.parseLong(parsedResponse.get(3)));
-		} else if (code == 330)
-			//RPL_WHOISACCOUNT: Extra Whois info
-			//330 TheLQ Utoxin Utoxin :is logged in as
-			whoisBuilder.get(parsedResponse.get(1)).setRegisteredAs(parsedResponse.get(2));
-		else if (code == RPL_ENDOFWHOIS) {
-			//End of whois
-			//318 TheLQ Plazma :End of /WHOIS list.
-			String whoisNick = parsedResponse.get(1);
-
-			configuration.getListenerManager().dispatchEvent(whoisBuilder.get(whoisNick).generateEvent(bot));
-			whoisBuilder.remove(whoisNick);
-		}
+		ServerResponseHandler handler = (code >= 0 && code < serverResponseHandlers.length) ? serverResponseHandlers[code] : null;
+		if (handler != null)
+			handler.handleServerResponse(bot, this, rawResponse, parsedResponse);
 		configuration.getListenerManager().dispatchEvent(new ServerResponseEvent<PircBotX>(bot, code, rawResponse, parsedResponse));
 	}
 
@@ -868,4 +1137,25 @@ public class InputParser implements Closeable {
 
 		public abstract void dispatchEvent(PircBotX bot, Channel channel, User sourceUser, User recipientUser, boolean adding);
 	}
+
+	protected static class ServerInfoResponseHandler extends ServerResponseHandler {
+		public ServerInfoResponseHandler(int code) {
+			super(code);
+		}
+
+		@Override
+		public void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse) {
+			//Example: 004 PircBotX sendak.freenode.net ircd-seven-1.1.3 DOQRSZaghilopswz CFILMPQbcefgijklmnopqrstvz bkloveqjfI
+			//Server info line, remove ending comment and let ServerInfo class parse it
+			List<String> serverInfoParsed = parsedResponse;
+			int endCommentIndex = rawResponse.lastIndexOf(" :");
+			if (endCommentIndex > 1) {
+				String endComment = rawResponse.substring(endCommentIndex + 2);
+				int lastIndex = parsedResponse.size() - 1;
+				if (endComment.equals(parsedResponse.get(lastIndex)))
+					serverInfoParsed = parsedResponse.subList(0, lastIndex);
+			}
+			bot.getServerInfo().parse(code, serverInfoParsed);
+		}
+	}
 }
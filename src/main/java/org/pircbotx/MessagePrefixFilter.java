@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableList;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Discards channel messages that don't start with one of the given prefixes,
+ * eg <code>!</code> for a bot that only responds to commands. Everything else,
+ * including private messages and CTCP requests, is processed as usual.
+ * <p>
+ * Discarded messages don't update {@link User#getLastSpoken() } or dispatch
+ * a {@link org.pircbotx.hooks.events.MessageEvent}
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class MessagePrefixFilter implements InputFilter {
+	protected final ImmutableList<String> prefixes;
+
+	public MessagePrefixFilter(String... prefixes) {
+		checkArgument(prefixes.length > 0, "Must specify at least one prefix");
+		this.prefixes = ImmutableList.copyOf(prefixes);
+	}
+
+	public boolean accept(PircBotX bot, String command, String target, ParsedLine parsedLine, MessageTags tags) {
+		if (!command.equals("PRIVMSG") || target.isEmpty()
+				|| bot.getConfiguration().getChannelPrefixes().indexOf(target.charAt(0)) == -1
+				|| parsedLine.paramStartsWith(1, "\u0001"))
+			return true;
+		for (String curPrefix : prefixes)
+			if (parsedLine.paramStartsWith(1, curPrefix))
+				return true;
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "MessagePrefixFilter" + prefixes;
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Map;
+
+/**
+ * IRCv3 message tags of a line, eg <code>@badges=moderator/1;user-id=1234</code>.
+ * Tags are not parsed until they are first accessed, and then only the offsets
+ * of each key and value are recorded. Values are unescaped (and cached) the first
+ * time they're requested, so reading one or two tags from a line with many
+ * doesn't decode the others.
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class MessageTags {
+	/**
+	 * Tags of a line without any tags
+	 */
+	public static final MessageTags EMPTY = new MessageTags("", 0, 0);
+	protected final String line;
+	protected final int start;
+	protected final int end;
+	protected volatile Index index;
+
+	/**
+	 * Create tags from the tag section of a line
+	 * @param line The raw line
+	 * @param start Start of the tag section, after the <code>@</code>
+	 * @param end End of the tag section, exclusive
+	 */
+	public MessageTags(String line, int start, int end) {
+		this.line = line;
+		this.start = start;
+		this.end = end;
+	}
+
+	protected Index getIndex() {
+		Index curIndex = index;
+		if (curIndex == null)
+			curIndex = index = new Index();
+		return curIndex;
+	}
+
+	/**
+	 * Get the unescaped value of a tag. If a tag is given multiple times the
+	 * last value is used
+	 * @param key The tag key, eg <code>user-id</code>
+	 * @return The value, an empty String if the tag has no value, or null if
+	 * the tag doesn't exist
+	 */
+	public String get(String key) {
+		Index curIndex = getIndex();
+		int tag = curIndex.indexOf(key);
+		return tag == -1 ? null : curIndex.getValue(tag);
+	}
+
+	/**
+	 * Get the unescaped value of a tag
+	 * @param key The tag key
+	 * @param defaultValue Returned if the tag doesn't exist
+	 * @return The value or the default
+	 */
+	public String get(String key, String defaultValue) {
+		String value = get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Check if a tag exists
+	 * @param key The tag key
+	 * @return True if the tag exists
+	 */
+	public boolean containsKey(String key) {
+		return getIndex().indexOf(key) != -1;
+	}
+
+	/**
+	 * Number of tags, including any duplicates
+	 * @return The number of tags
+	 */
+	public int size() {
+		return start == end ? 0 : getIndex().size;
+	}
+
+	public boolean isEmpty() {
+		return start == end;
+	}
+
+	/**
+	 * The raw, still escaped, tag section without the leading <code>@</code>
+	 * @return The raw tags
+	 */
+	public String getRaw() {
+		return line.substring(start, end);
+	}
+
+	/**
+	 * Decode every tag into a map. This is much more expensive than
+	 * {@link #get(java.lang.String) }
+	 * @return All tags
+	 */
+	public ImmutableMap<String, String> asMap() {
+		Index curIndex = getIndex();
+		Map<String, String> tags = Maps.newLinkedHashMap();
+		for (int i = 0; i < curIndex.size; i++)
+			tags.put(line.substring(curIndex.keyStarts[i], curIndex.keyEnds[i]), curIndex.getValue(i));
+		return ImmutableMap.copyOf(tags);
+	}
+
+	/**
+	 * Unescape a tag value as defined by the IRCv3 message tags specification
+	 * @param value The raw value
+	 * @param valueStart Start of the value in the raw line
+	 * @param valueEnd End of the value in the raw line
+	 * @return The unescaped value
+	 */
+	protected static String unescape(String value, int valueStart, int valueEnd) {
+		int firstEscape = value.indexOf('\\', valueStart);
+		if (firstEscape == -1 || firstEscape >= valueEnd)
+			return value.substring(valueStart, valueEnd);
+		StringBuilder builder = new StringBuilder(valueEnd - valueStart);
+		builder.append(value, valueStart, firstEscape);
+		for (int i = firstEscape; i < valueEnd; i++) {
+			char curChar = value.charAt(i);
+			if (curChar != '\\')
+				builder.append(curChar);
+			else if (++i < valueEnd) {
+				char escaped = value.charAt(i);
+				if (escaped == ':')
+					builder.append(';');
+				else if (escaped == 's')
+					builder.append(' ');
+				else if (escaped == 'r')
+					builder.append('\r');
+				else if (escaped == 'n')
+					builder.append('\n');
+				else
+					//Includes \\, invalid escapes drop the backslash
+					builder.append(escaped);
+			}
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (!(obj instanceof MessageTags))
+			return false;
+		MessageTags other = (MessageTags) obj;
+		int length = end - start;
+		return length == other.end - other.start
+				&& line.regionMatches(start, other.line, other.start, length);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + line.charAt(i);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return getRaw();
+	}
+
+	/**
+	 * Offsets of every tag in the line
+	 */
+	protected class Index {
+		protected final int size;
+		protected final int[] keyStarts;
+		protected final int[] keyEnds;
+		protected final int[] valueEnds;
+		/**
+		 * Unescaped values. Races are harmless since every thread decodes the
+		 * same value
+		 */
+		protected final String[] values;
+
+		public Index() {
+			int count = start == end ? 0 : 1;
+			for (int i = start; i < end; i++)
+				if (line.charAt(i) == ';')
+					count++;
+			keyStarts = new int[count];
+			keyEnds = new int[count];
+			valueEnds = new int[count];
+			values = new String[count];
+
+			int tag = 0;
+			int tagStart = start;
+			for (int i = start; i <= end && tag < count; i++)
+				if (i == end || line.charAt(i) == ';') {
+					if (i != tagStart) {
+						int keyEnd = line.indexOf('=', tagStart);
+						keyStarts[tag] = tagStart;
+						keyEnds[tag] = (keyEnd == -1 || keyEnd > i) ? i : keyEnd;
+						valueEnds[tag] = i;
+						tag++;
+					}
+					tagStart = i + 1;
+				}
+			size = tag;
+		}
+
+		/**
+		 * Find the last tag with the key
+		 * @return The tag number or -1
+		 */
+		public int indexOf(String key) {
+			int keyLength = key.length();
+			for (int i = size - 1; i >= 0; i--)
+				if (keyEnds[i] - keyStarts[i] == keyLength && line.regionMatches(keyStarts[i], key, 0, keyLength))
+					return i;
+			return -1;
+		}
+
+		public String getValue(int tag) {
+			String value = values[tag];
+			if (value == null) {
+				int valueStart = Math.min(keyEnds[tag] + 1, valueEnds[tag]);
+				value = values[tag] = unescape(line, valueStart, valueEnds[tag]);
+			}
+			return value;
+		}
+	}
+}
@@ -44,6 +44,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 import org.pircbotx.exception.IrcException;
+import org.pircbotx.metrics.BotMetrics;
 import org.pircbotx.output.OutputIRC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -149,7 +150,12 @@ public class MultiBotManager<B extends PircBotX> {
 
 	protected ListenableFuture<Void> startBot(final B bot) {
 		checkNotNull(bot, "Bot cannot be null");
-		ListenableFuture<Void> future = botPool.submit(new BotRunner(bot));
+		ListenableFuture<Void> future;
+		if (bot.getConfiguration().getNioSelectorGroup() != null)
+			//Only use a pool thread to connect and shutdown, not while connected
+			future = Futures.dereference(botPool.submit(new NioBotRunner(bot)));
+		else
+			future = botPool.submit(new BotRunner(bot));
 		synchronized (runningBotsLock) {
 			runningBots.put(bot, future);
 			runningBotsNumbers.put(bot, bot.getBotId());
@@ -168,11 +174,16 @@ public class MultiBotManager<B extends PircBotX> {
 			state = State.STOPPING;
 		}
 
-		for (B bot : runningBots.keySet())
+		//Iterate over a copy since bots are removed as they disconnect
+		for (B bot : getBots())
 			if (bot.isConnected())
 				bot.sendIRC().quitServer();
 
-		botPool.shutdown();
+		//NIO bots still need the pool to shutdown, so wait for the last bot to be removed
+		synchronized (runningBotsLock) {
+			if (runningBots.isEmpty())
+				botPool.shutdown();
+		}
 	}
 
 	/**
@@ -209,6 +220,21 @@ public class MultiBotManager<B extends PircBotX> {
 		return runningBotsNumbers.inverse().get(id);
 	}
 
+	/**
+	 * Add together the {@link PircBotX#getMetrics() metrics} of all managed
+	 * bots. Bots without metrics are skipped
+	 * @return A copy of the combined metrics that isn't updated
+	 */
+	public BotMetrics getMetrics() {
+		List<BotMetrics> botMetrics = new ArrayList<BotMetrics>();
+		for (B curBot : getBots()) {
+			BotMetrics curMetrics = curBot.getMetrics();
+			if (curMetrics != null)
+				botMetrics.add(curMetrics);
+		}
+		return BotMetrics.merge(botMetrics);
+	}
+
 	@RequiredArgsConstructor
 	protected class BotRunner implements Callable<Void> {
 		@NonNull
@@ -221,6 +247,16 @@ public class MultiBotManager<B extends PircBotX> {
 		}
 	}
 
+	@RequiredArgsConstructor
+	protected class NioBotRunner implements Callable<ListenableFuture<Void>> {
+		@NonNull
+		protected final B bot;
+
+		public ListenableFuture<Void> call() throws IOException, IrcException {
+			return bot.connectAsync(botPool);
+		}
+	}
+
 	@RequiredArgsConstructor
 	protected class BotFutureCallback implements FutureCallback<Void> {
 		protected final Logger log = LoggerFactory.getLogger(getClass());
@@ -243,11 +279,13 @@ public class MultiBotManager<B extends PircBotX> {
 				runningBotsNumbers.remove(bot);
 
 				//Change state to TERMINATED if this is the last but to be removed during shutdown
-				if (runningBots.isEmpty() && state == State.STOPPING)
-						synchronized (stateLock) {
-							if (state == State.STOPPING)
-								state = State.TERMINATED;
-						}
+				if (runningBots.isEmpty() && state == State.STOPPING) {
+					synchronized (stateLock) {
+						if (state == State.STOPPING)
+							state = State.TERMINATED;
+					}
+					botPool.shutdown();
+				}
 			}
 		}
 	}
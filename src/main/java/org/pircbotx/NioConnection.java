@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A bot's connection in a {@link NioSelectorGroup}. Reads are decoded into 
+ * CRLF (or bare LF) delimited lines straight from the read buffer. Writes are 
+ * attempted immediately and anything the socket doesn't accept is queued and 
+ * flushed by the selector thread.
+ * <p>
+ * Lines are handled in order on the group's input executor instead of the 
+ * selector thread, since handling a line can block on the bot's output (message
+ * delay, rate limits) and would otherwise stall every bot on the selector. 
+ * Reading stops while {@link #MAX_PENDING_LINES} lines are waiting.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public class NioConnection {
+	protected static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+	protected static final int MAX_BUFFER_SIZE = 1024 * 1024;
+	protected static final int MAX_PENDING_LINES = 1024;
+	protected final PircBotX bot;
+	@Getter
+	protected final SocketChannel channel;
+	protected final NioSelectorGroup.SelectorThread selectorThread;
+	protected final Executor inputExecutor;
+	protected final Charset encoding;
+	protected final long idleNanos;
+	@Setter(AccessLevel.PROTECTED)
+	protected SelectionKey key;
+	protected ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	/**
+	 * Offset in the read buffer that has already been searched for a line end
+	 */
+	protected int scannedPosition = 0;
+	protected final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+	protected final Queue<String> pendingLines = new ConcurrentLinkedQueue<String>();
+	protected final AtomicInteger pendingLineCount = new AtomicInteger();
+	/**
+	 * Set while a task handling pending lines is scheduled or running
+	 */
+	protected final AtomicBoolean handlingLines = new AtomicBoolean();
+	protected final Runnable lineHandler = new Runnable() {
+		public void run() {
+			handleLines();
+		}
+	};
+	protected final AtomicBoolean readPaused = new AtomicBoolean();
+	protected final AtomicBoolean closing = new AtomicBoolean();
+	protected volatile long lastActivityNanos = System.nanoTime();
+	protected final SettableFuture<Void> closeFuture = SettableFuture.create();
+	/**
+	 * Exception that closed the connection, null if the server closed it or
+	 * {@link #close() } was called
+	 */
+	@Getter
+	protected volatile Exception closeCause;
+
+	protected NioConnection(PircBotX bot, SocketChannel channel, NioSelectorGroup.SelectorThread selectorThread, Executor inputExecutor) {
+		this.bot = bot;
+		this.channel = channel;
+		this.selectorThread = selectorThread;
+		this.inputExecutor = inputExecutor;
+		this.encoding = bot.getConfiguration().getEncoding();
+		this.idleNanos = TimeUnit.MILLISECONDS.toNanos(bot.getConfiguration().getSocketTimeout());
+	}
+
+	/**
+	 * Start reading lines from the server.
+	 */
+	public void start() {
+		selectorThread.execute(new Runnable() {
+			public void run() {
+				if (key != null && key.isValid())
+					key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			}
+		});
+	}
+
+	/**
+	 * Called by the selector thread when the channel is readable.
+	 */
+	protected void handleRead() throws IOException {
+		if (channel.read(readBuffer) == -1) {
+			close(null);
+			return;
+		}
+		lastActivityNanos = System.nanoTime();
+
+		byte[] buffer = readBuffer.array();
+		int end = readBuffer.position();
+		int lineStart = 0;
+		for (int i = scannedPosition; i < end; i++) {
+			if (buffer[i] != '\n')
+				continue;
+			int lineEnd = (i > lineStart && buffer[i - 1] == '\r') ? i - 1 : i;
+			pendingLines.add(new String(buffer, lineStart, lineEnd - lineStart, encoding));
+			pendingLineCount.incrementAndGet();
+			lineStart = i + 1;
+		}
+		if (lineStart > 0)
+			scheduleLines();
+		if (pendingLineCount.get() >= MAX_PENDING_LINES) {
+			//Let the server wait instead of buffering without limit
+			readPaused.set(true);
+			//Checked again since the handler only resumes once it sees the pause
+			if (pendingLineCount.get() > MAX_PENDING_LINES / 2)
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+			else
+				readPaused.set(false);
+		}
+
+		//Move the partial line to the start of the buffer
+		if (lineStart > 0) {
+			readBuffer.flip();
+			readBuffer.position(lineStart);
+			readBuffer.compact();
+		}
+		scannedPosition = readBuffer.position();
+		if (!readBuffer.hasRemaining()) {
+			if (readBuffer.capacity() >= MAX_BUFFER_SIZE)
+				throw new IOException("Line from server longer than " + MAX_BUFFER_SIZE + " bytes");
+			ByteBuffer largerBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+			readBuffer.flip();
+			largerBuffer.put(readBuffer);
+			readBuffer = largerBuffer;
+		}
+	}
+
+	/**
+	 * Handle pending lines on the input executor unless already scheduled
+	 */
+	protected void scheduleLines() {
+		if (handlingLines.compareAndSet(false, true))
+			inputExecutor.execute(lineHandler);
+	}
+
+	/**
+	 * Handle every pending line in order. Only one call runs at a time
+	 */
+	protected void handleLines() {
+		do {
+			String line;
+			while ((line = pendingLines.poll()) != null) {
+				try {
+					bot.getInputParser().handleLine(line);
+				} catch (Exception e) {
+					//Exception in client code. Just log and continue
+					log.error("Exception encountered when parsing line", e);
+				}
+				if (pendingLineCount.decrementAndGet() <= MAX_PENDING_LINES / 2 && readPaused.compareAndSet(true, false))
+					resumeReading();
+			}
+			handlingLines.set(false);
+			//Lines added after the last poll are handled here if nothing else took them
+		} while (!pendingLines.isEmpty() && handlingLines.compareAndSet(false, true));
+
+		//Only report the close once every line read before it was handled
+		if (closing.get() && pendingLines.isEmpty())
+			closeFuture.set(null);
+	}
+
+	protected void resumeReading() {
+		selectorThread.execute(new Runnable() {
+			public void run() {
+				if (key != null && key.isValid())
+					key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			}
+		});
+	}
+
+	/**
+	 * Write the line to the server, queuing whatever the socket can't take now.
+	 * @param line Raw line including the line ending
+	 */
+	public void write(String line) throws IOException {
+		write(encoding.encode(line));
+	}
+
+	/**
+	 * Write the bytes to the server. Whatever the socket can't take now is 
+	 * copied, so the buffer can be reused once this returns
+	 * @param buffer Encoded lines including line endings
+	 */
+	public void write(ByteBuffer buffer) throws IOException {
+		synchronized (writeQueue) {
+			if (writeQueue.isEmpty()) {
+				channel.write(buffer);
+				if (!buffer.hasRemaining())
+					return;
+				selectorThread.execute(new Runnable() {
+					public void run() {
+						if (key != null && key.isValid())
+							key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					}
+				});
+			}
+			ByteBuffer remaining = ByteBuffer.allocate(buffer.remaining());
+			remaining.put(buffer);
+			remaining.flip();
+			writeQueue.add(remaining);
+		}
+	}
+
+	/**
+	 * Called by the selector thread when the channel is writable.
+	 */
+	protected void handleWrite() throws IOException {
+		synchronized (writeQueue) {
+			ByteBuffer buffer;
+			while ((buffer = writeQueue.peek()) != null) {
+				channel.write(buffer);
+				if (buffer.hasRemaining())
+					return;
+				writeQueue.poll();
+			}
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * Send a PING if nothing has been received for the configured socket timeout,
+	 * same as the blocking transport does on a read timeout.
+	 */
+	protected void checkIdle(long curNanos) {
+		if (idleNanos == 0 || curNanos - lastActivityNanos < idleNanos || !channel.isOpen())
+			return;
+		lastActivityNanos = curNanos;
+		//Sending can wait on the bot's output lock
+		inputExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					bot.sendRaw().rawLineNow("PING " + (System.currentTimeMillis() / 1000));
+				} catch (Exception e) {
+					log.error("Cannot send PING to server", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Close the connection.
+	 */
+	public void close() {
+		close(null);
+	}
+
+	protected void close(Exception cause) {
+		if (!closing.compareAndSet(false, true))
+			return;
+		if (cause != null) {
+			log.error("Exception encountered when reading next line from server", cause);
+			closeCause = cause;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.error("Cannot close channel", e);
+		}
+		//Completes the close future after the pending lines
+		scheduleLines();
+	}
+
+	/**
+	 * @return Future that completes once the connection is closed
+	 */
+	public ListenableFuture<Void> getCloseFuture() {
+		return closeFuture;
+	}
+}
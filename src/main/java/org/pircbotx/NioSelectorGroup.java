@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import static com.google.common.base.Preconditions.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * Small pool of selector threads that multiplex the server connections of 
+ * any number of bots. Set with {@link Configuration.Builder#setNioSelectorGroup(org.pircbotx.NioSelectorGroup) }
+ * and share the same instance across configurations so that, for example, 50 
+ * bots are serviced by 2 threads instead of 50 blocked readers.
+ * <p>
+ * Lines are decoded on the selector thread and passed to 
+ * {@link InputParser#handleLine(java.lang.String) } in order on a shared cached
+ * pool, so a bot waiting on its message delay or rate limit doesn't stall the 
+ * other bots on the same selector. Selector threads are started on the first 
+ * connection and are not daemon threads; call {@link #close() } once every bot
+ * has disconnected.
+ * <p>
+ * The NIO transport does not use the configured socket factory, so it supports
+ * neither SSL nor STARTTLS.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public class NioSelectorGroup implements Closeable {
+	protected static final AtomicInteger GROUP_COUNT = new AtomicInteger();
+	protected final int groupNumber;
+	protected final SelectorThread[] selectorThreads;
+	protected final AtomicInteger nextSelectorThread = new AtomicInteger();
+	/**
+	 * Handles lines of every connection, see {@link NioConnection}. Threads are
+	 * daemon threads that stop when idle so the pool is never shutdown
+	 */
+	protected final ExecutorService inputPool;
+
+	/**
+	 * Create a group with one selector thread per core, up to 2.
+	 */
+	public NioSelectorGroup() {
+		this(Math.min(2, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Create a group with the specified number of selector threads.
+	 * @param threads Number of selector threads
+	 */
+	public NioSelectorGroup(int threads) {
+		checkArgument(threads > 0, "Must have at least 1 selector thread");
+		this.groupNumber = GROUP_COUNT.getAndIncrement();
+		BasicThreadFactory factory = new BasicThreadFactory.Builder()
+				.namingPattern("nioGroup" + groupNumber + "-input%d")
+				.daemon(true)
+				.build();
+		ThreadPoolExecutor defaultPool = (ThreadPoolExecutor) Executors.newCachedThreadPool(factory);
+		defaultPool.allowCoreThreadTimeOut(true);
+		this.inputPool = defaultPool;
+		this.selectorThreads = new SelectorThread[threads];
+		try {
+			for (int i = 0; i < threads; i++)
+				selectorThreads[i] = new SelectorThread("nioGroup" + groupNumber + "-selector" + i);
+		} catch (IOException e) {
+			close();
+			throw new RuntimeException("Cannot open selector", e);
+		}
+	}
+
+	/**
+	 * Open a connection to the server and assign it to a selector thread. The 
+	 * connection doesn't read until {@link NioConnection#start() } is called
+	 */
+	protected NioConnection connect(PircBotX bot, InetSocketAddress address, InetAddress localAddress) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		try {
+			if (localAddress != null)
+				channel.socket().bind(new InetSocketAddress(localAddress, 0));
+			channel.socket().connect(address, bot.getConfiguration().getSocketTimeout());
+			channel.configureBlocking(false);
+			int index = (nextSelectorThread.getAndIncrement() & Integer.MAX_VALUE) % selectorThreads.length;
+			NioConnection connection = new NioConnection(bot, channel, selectorThreads[index], inputPool);
+			selectorThreads[index].register(connection);
+			return connection;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stop all selector threads, closing any connections still open.
+	 */
+	public void close() {
+		for (SelectorThread curThread : selectorThreads)
+			if (curThread != null)
+				curThread.close();
+	}
+
+	protected static class SelectorThread implements Runnable {
+		protected static final long IDLE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+		protected final Selector selector;
+		protected final Thread thread;
+		protected final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+		protected final AtomicBoolean started = new AtomicBoolean();
+		protected volatile boolean closed = false;
+
+		public SelectorThread(String name) throws IOException {
+			this.selector = Selector.open();
+			this.thread = new Thread(this, name);
+		}
+
+		/**
+		 * Run a task on the selector thread, needed for anything that touches
+		 * a {@link SelectionKey}.
+		 */
+		public void execute(Runnable task) {
+			checkState(!closed, "NioSelectorGroup has been closed");
+			pendingTasks.add(task);
+			if (started.compareAndSet(false, true))
+				thread.start();
+			selector.wakeup();
+		}
+
+		public void register(final NioConnection connection) {
+			execute(new Runnable() {
+				public void run() {
+					try {
+						connection.setKey(connection.getChannel().register(selector, 0, connection));
+					} catch (IOException e) {
+						connection.close(e);
+					}
+				}
+			});
+		}
+
+		public void run() {
+			long lastIdleCheck = System.nanoTime();
+			while (!closed) {
+				try {
+					selector.select(1000);
+				} catch (IOException e) {
+					log.error("Exception encountered when selecting", e);
+					continue;
+				}
+
+				Runnable curTask;
+				while ((curTask = pendingTasks.poll()) != null)
+					try {
+						curTask.run();
+					} catch (Exception e) {
+						log.error("Exception encountered when running selector task", e);
+					}
+
+				Iterator<SelectionKey> keysItr = selector.selectedKeys().iterator();
+				while (keysItr.hasNext()) {
+					SelectionKey curKey = keysItr.next();
+					keysItr.remove();
+					NioConnection connection = (NioConnection) curKey.attachment();
+					try {
+						if (curKey.isWritable())
+							connection.handleWrite();
+						if (curKey.isValid() && curKey.isReadable())
+							connection.handleRead();
+					} catch (CancelledKeyException e) {
+						connection.close(null);
+					} catch (IOException e) {
+						connection.close(e);
+					}
+				}
+
+				long curNanos = System.nanoTime();
+				if (curNanos - lastIdleCheck >= IDLE_CHECK_NANOS) {
+					lastIdleCheck = curNanos;
+					for (SelectionKey curKey : selector.keys())
+						((NioConnection) curKey.attachment()).checkIdle(curNanos);
+				}
+			}
+
+			for (SelectionKey curKey : selector.keys())
+				((NioConnection) curKey.attachment()).close(null);
+			try {
+				selector.close();
+			} catch (IOException e) {
+				log.error("Cannot close selector", e);
+			}
+		}
+
+		public void close() {
+			closed = true;
+			if (started.get())
+				selector.wakeup();
+			else
+				try {
+					selector.close();
+				} catch (IOException e) {
+					log.error("Cannot close selector", e);
+				}
+		}
+	}
+}
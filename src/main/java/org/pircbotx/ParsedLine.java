@@ -0,0 +1,393 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.base.CharMatcher;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+
+/**
+ * Reusable, zero-copy view of a raw IRC line. Parsing only records the offsets
+ * of the prefix, command, and parameters in the original line; Strings are
+ * created when (and only when) they're asked for.
+ * <p>
+ * Tokenizing follows the same rules as {@link Utils#tokenizeLine(java.lang.String) }:
+ * the line is trimmed, split on single spaces, and everything after a
+ * <code>" :"</code> is kept as a single trailing parameter.
+ * <p>
+ * <b>Note:</b> Instances are reused by {@link InputParser} for every line. Anything
+ * returned by this class (including {@link #getParams()}) is only valid until
+ * the next call to {@link #parse(java.lang.CharSequence) }. Copy the values if
+ * you need to keep them.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ParsedLine {
+	/**
+	 * Commands returned as constants by {@link #getCommand(java.util.Locale) },
+	 * most common first
+	 */
+	protected static final String[] KNOWN_COMMANDS = {"PRIVMSG", "JOIN", "PART",
+		"QUIT", "MODE", "NOTICE", "PING", "NICK", "KICK", "TOPIC", "INVITE", "AWAY",
+		"CAP", "ERROR", "CLEARCHAT", "USERNOTICE", "ROOMSTATE", "HOSTTARGET",
+		"USERSTATE", "GLOBALUSERSTATE", "WHISPER", "CLEARMSG", "RECONNECT"};
+	protected CharSequence line;
+	protected int[] tokenStarts = new int[16];
+	protected int[] tokenEnds = new int[16];
+	protected String[] tokenCache = new String[16];
+	protected int tokenCount;
+	protected boolean hasPrefix;
+	/**
+	 * Start of the IRCv3 tag section after the '@', or -1
+	 */
+	protected int tagsStart;
+	protected int tagsEnd;
+	/**
+	 * Start of the prefix or command, after any tags
+	 */
+	protected int contentStart;
+	/**
+	 * Index of the '!' in the prefix, or -1
+	 */
+	protected int prefixExclamation;
+	/**
+	 * Index of the '@' in the prefix, or -1
+	 */
+	protected int prefixAt;
+	protected final Params params = new Params();
+
+	/**
+	 * Parse the line, replacing whatever was previously parsed.
+	 * @param line The raw line from the server
+	 * @return This object
+	 */
+	public ParsedLine parse(CharSequence line) {
+		this.line = line;
+		Arrays.fill(tokenCache, 0, tokenCount, null);
+		tokenCount = 0;
+		hasPrefix = false;
+		tagsStart = -1;
+		tagsEnd = -1;
+		prefixExclamation = -1;
+		prefixAt = -1;
+
+		//Trim without copying
+		int pos = 0;
+		int end = line.length();
+		while (pos < end && CharMatcher.WHITESPACE.matches(line.charAt(pos)))
+			pos++;
+		while (end > pos && CharMatcher.WHITESPACE.matches(line.charAt(end - 1)))
+			end--;
+		if (pos < end && line.charAt(pos) == '@') {
+			//IRCv3 tags, only record where they are
+			tagsStart = pos + 1;
+			tagsEnd = pos;
+			while (tagsEnd < end && line.charAt(tagsEnd) != ' ')
+				tagsEnd++;
+			pos = tagsEnd;
+			while (pos < end && line.charAt(pos) == ' ')
+				pos++;
+		}
+		contentStart = pos;
+		if (pos == end)
+			return this;
+
+		//Split on every space until the trailing parameter
+		for (int i = pos; i < end; i++)
+			if (line.charAt(i) == ' ') {
+				addToken(pos, i);
+				pos = i + 1;
+				if (line.charAt(pos) == ':') {
+					addToken(pos + 1, end);
+					pos = -1;
+					break;
+				}
+			}
+		if (pos != -1)
+			addToken(pos, end);
+
+		//First token is the prefix if it starts with :
+		if (line.charAt(tokenStarts[0]) == ':') {
+			hasPrefix = true;
+			tokenStarts[0]++;
+			for (int i = tokenStarts[0]; i < tokenEnds[0]; i++) {
+				char curChar = line.charAt(i);
+				if (curChar == '!' && prefixExclamation == -1)
+					prefixExclamation = i;
+				else if (curChar == '@' && prefixAt == -1)
+					prefixAt = i;
+			}
+		}
+		return this;
+	}
+
+	protected void addToken(int start, int end) {
+		if (tokenCount == tokenStarts.length) {
+			int newLength = tokenCount * 2;
+			tokenStarts = Arrays.copyOf(tokenStarts, newLength);
+			tokenEnds = Arrays.copyOf(tokenEnds, newLength);
+			tokenCache = Arrays.copyOf(tokenCache, newLength);
+		}
+		tokenStarts[tokenCount] = start;
+		tokenEnds[tokenCount] = end;
+		tokenCount++;
+	}
+
+	protected String getToken(int index) {
+		String token = tokenCache[index];
+		if (token == null)
+			token = tokenCache[index] = line.subSequence(tokenStarts[index], tokenEnds[index]).toString();
+		return token;
+	}
+
+	/**
+	 * The raw line that was parsed
+	 * @return The raw line
+	 */
+	public CharSequence getLine() {
+		return line;
+	}
+
+	/**
+	 * Check if the line started with IRCv3 message tags
+	 * @return True if there are tags
+	 */
+	public boolean hasTags() {
+		return tagsStart != -1;
+	}
+
+	/**
+	 * The IRCv3 message tags of the line. Tags are decoded lazily, and unlike
+	 * everything else returned by this class can be kept after the next parse
+	 * @return The tags, or {@link MessageTags#EMPTY} if there are none
+	 */
+	public MessageTags getTags() {
+		if (!hasTags())
+			return MessageTags.EMPTY;
+		return new MessageTags(line.toString(), tagsStart, tagsEnd);
+	}
+
+	/**
+	 * Offset in the line where the prefix or command starts, after any tags
+	 * @return The offset
+	 */
+	public int getContentStart() {
+		return contentStart;
+	}
+
+	/**
+	 * Check if the line started with a <code>:prefix</code>
+	 * @return True if there is a prefix
+	 */
+	public boolean hasPrefix() {
+		return hasPrefix;
+	}
+
+	/**
+	 * Check if the prefix is in the <code>nick!login@hostname</code> format
+	 * used for users.
+	 * @return True if the prefix is from a user
+	 */
+	public boolean isUserPrefix() {
+		return hasPrefix && prefixExclamation != -1 && prefixAt != -1 && prefixExclamation < prefixAt;
+	}
+
+	/**
+	 * The prefix without the leading <code>:</code>
+	 * @return The prefix or an empty String if there is none
+	 */
+	public String getPrefix() {
+		return hasPrefix ? getToken(0) : "";
+	}
+
+	/**
+	 * The nick of a user prefix. If the prefix isn't from a user the entire
+	 * prefix is returned
+	 * @return The nick
+	 */
+	public String getPrefixNick() {
+		if (!isUserPrefix())
+			return getPrefix();
+		return line.subSequence(tokenStarts[0], prefixExclamation).toString();
+	}
+
+	/**
+	 * The login of a user prefix
+	 * @return The login or an empty String if the prefix isn't from a user
+	 */
+	public String getPrefixLogin() {
+		if (!isUserPrefix())
+			return "";
+		return line.subSequence(prefixExclamation + 1, prefixAt).toString();
+	}
+
+	/**
+	 * The hostname of a user prefix
+	 * @return The hostname or an empty String if the prefix isn't from a user
+	 */
+	public String getPrefixHostname() {
+		if (!isUserPrefix())
+			return "";
+		return line.subSequence(prefixAt + 1, tokenEnds[0]).toString();
+	}
+
+	protected int getCommandIndex() {
+		return hasPrefix ? 1 : 0;
+	}
+
+	/**
+	 * Check if the line has a command
+	 * @return True if there is a command
+	 */
+	public boolean hasCommand() {
+		return getCommandIndex() < tokenCount;
+	}
+
+	/**
+	 * The upper case command of the line, eg <code>PRIVMSG</code> or <code>001</code>.
+	 * Known commands are returned as interned constants without creating a new
+	 * String, otherwise a new String is only created if the command isn't
+	 * already upper case
+	 * @param locale Locale used for upper casing
+	 * @return The command or an empty String if there is none
+	 */
+	public String getCommand(Locale locale) {
+		if (!hasCommand())
+			return "";
+		int index = getCommandIndex();
+		if (tokenCache[index] == null)
+			for (String curCommand : KNOWN_COMMANDS)
+				if (commandEquals(curCommand))
+					return tokenCache[index] = curCommand;
+		String command = getToken(index);
+		for (int i = 0, length = command.length(); i < length; i++)
+			if (Character.isLowerCase(command.charAt(i)))
+				return tokenCache[index] = command.toUpperCase(locale);
+		return command;
+	}
+
+	/**
+	 * Check if the command matches ignoring case without creating any Strings.
+	 * @param command The upper case command to compare to
+	 * @return True if the command matches
+	 */
+	public boolean commandEquals(String command) {
+		if (!hasCommand())
+			return false;
+		int index = getCommandIndex();
+		int start = tokenStarts[index];
+		int length = tokenEnds[index] - start;
+		if (length != command.length())
+			return false;
+		for (int i = 0; i < length; i++)
+			if (Character.toUpperCase(line.charAt(start + i)) != command.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * The command as a 3 digit numeric reply, eg 353, without creating any
+	 * Strings or throwing exceptions for commands that aren't numeric
+	 * @return The numeric or -1 if the command isn't numeric
+	 */
+	public int getNumeric() {
+		if (!hasCommand())
+			return -1;
+		int index = getCommandIndex();
+		return Utils.parseNumeric(line, tokenStarts[index], tokenEnds[index]);
+	}
+
+	/**
+	 * Number of parameters after the command, including the trailing parameter
+	 * @return The number of parameters
+	 */
+	public int getParamCount() {
+		return Math.max(tokenCount - getCommandIndex() - 1, 0);
+	}
+
+	/**
+	 * Get a parameter after the command
+	 * @param index Index of the parameter, starting at 0
+	 * @return The parameter
+	 * @throws IndexOutOfBoundsException If there is no parameter at that index
+	 */
+	public String getParam(int index) {
+		if (index < 0 || index >= getParamCount())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getParamCount());
+		return getToken(getCommandIndex() + 1 + index);
+	}
+
+	/**
+	 * Get a parameter after the command, or a default value if it doesn't exist
+	 * @param index Index of the parameter, starting at 0
+	 * @param defaultValue Value to return if the parameter doesn't exist
+	 * @return The parameter or the default value
+	 */
+	public String getParam(int index, String defaultValue) {
+		return (index >= 0 && index < getParamCount()) ? getParam(index) : defaultValue;
+	}
+
+	/**
+	 * Check if a parameter starts with the given text without creating any Strings
+	 * @param index Index of the parameter, starting at 0
+	 * @param prefix Text to compare to
+	 * @return True if the parameter exists and starts with the prefix
+	 */
+	public boolean paramStartsWith(int index, String prefix) {
+		if (index < 0 || index >= getParamCount())
+			return false;
+		int tokenIndex = getCommandIndex() + 1 + index;
+		int start = tokenStarts[tokenIndex];
+		int length = prefix.length();
+		if (tokenEnds[tokenIndex] - start < length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (line.charAt(start + i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Read-only list view of all parameters after the command. Each parameter is
+	 * only converted to a String once it is accessed
+	 * @return An unmodifiable view of the parameters
+	 */
+	public List<String> getParams() {
+		return params;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(line);
+	}
+
+	protected class Params extends AbstractList<String> implements RandomAccess {
+		@Override
+		public String get(int index) {
+			return getParam(index);
+		}
+
+		@Override
+		public int size() {
+			return getParamCount();
+		}
+	}
+}
@@ -20,6 +20,9 @@ package org.pircbotx;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -27,10 +30,15 @@ import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.lang.ref.WeakReference;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -41,6 +49,7 @@ import org.pircbotx.dcc.DccHandler;
 import org.pircbotx.exception.IrcException;
 import org.pircbotx.hooks.ListenerAdapter;
 import org.pircbotx.hooks.events.*;
+import org.pircbotx.metrics.BotMetrics;
 import org.pircbotx.output.OutputCAP;
 import org.pircbotx.output.OutputDCC;
 import org.pircbotx.output.OutputIRC;
@@ -102,6 +111,12 @@ public class PircBotX implements Comparable<PircBotX> {
 	protected Socket socket;
 	protected BufferedReader inputReader;
 	protected OutputStreamWriter outputWriter;
+	protected WritableByteChannel outputChannel;
+	/**
+	 * Connection when using a {@link Configuration#getNioSelectorGroup() NioSelectorGroup}
+	 */
+	@Getter(AccessLevel.PROTECTED)
+	protected NioConnection nioConnection;
 	protected final OutputRaw outputRaw;
 	protected final OutputIRC outputIRC;
 	protected final OutputCAP outputCAP;
@@ -174,6 +189,46 @@ public class PircBotX implements Comparable<PircBotX> {
 	 * @throws NickAlreadyInUseException if our nick is already in use on the server.
 	 */
 	protected void connect() throws IOException, IrcException {
+		openConnection();
+
+		//Start input to start accepting lines
+		startLineProcessing();
+	}
+
+	/**
+	 * Connect using the configured {@link NioSelectorGroup} without blocking
+	 * the calling thread until disconnect.
+	 * @param shutdownExecutor Executor to run {@link #shutdown() } on once the 
+	 * connection closes. Must not be a selector thread
+	 * @return A future that completes once the bot has disconnected
+	 * @throws IOException if it was not possible to connect to the server.
+	 * @throws IrcException if the server would not let us join it.
+	 */
+	protected ListenableFuture<Void> connectAsync(Executor shutdownExecutor) throws IOException, IrcException {
+		if (configuration.getNioSelectorGroup() == null)
+			throw new RuntimeException("Connecting asynchronously requires a NioSelectorGroup");
+		openConnection();
+
+		final NioConnection connection = nioConnection;
+		final SettableFuture<Void> disconnectFuture = SettableFuture.create();
+		connection.getCloseFuture().addListener(new Runnable() {
+			public void run() {
+				try {
+					nioConnectionClosed(connection);
+					disconnectFuture.set(null);
+				} catch (Throwable t) {
+					disconnectFuture.setException(t);
+				}
+			}
+		}, shutdownExecutor);
+		connection.start();
+		return disconnectFuture;
+	}
+
+	/**
+	 * Connect to the server and start the login, but don't read anything yet.
+	 */
+	protected void openConnection() throws IOException, IrcException {
 		synchronized (stateLock) {
 			Utils.addBotToMDC(this);
 			if (isConnected())
@@ -191,7 +246,13 @@ public class PircBotX implements Comparable<PircBotX> {
 			for (InetAddress curAddress : InetAddress.getAllByName(configuration.getServerHostname())) {
 				log.debug("Trying address " + curAddress);
 				try {
-					socket = configuration.getSocketFactory().createSocket(curAddress, configuration.getServerPort(), configuration.getLocalAddress(), 0);
+					if (configuration.getNioSelectorGroup() != null) {
+						nioConnection = configuration.getNioSelectorGroup().connect(this,
+								new InetSocketAddress(curAddress, configuration.getServerPort()),
+								configuration.getLocalAddress());
+						socket = nioConnection.getChannel().socket();
+					} else
+						socket = configuration.getSocketFactory().createSocket(curAddress, configuration.getServerPort(), configuration.getLocalAddress(), 0);
 
 					//No exception, assume successful
 					break;
@@ -208,7 +269,8 @@ public class PircBotX implements Comparable<PircBotX> {
 			socket.setSoTimeout(configuration.getSocketTimeout());
 			log.info("Connected to server.");
 
-			changeSocket(socket);
+			if (nioConnection == null)
+				changeSocket(socket);
 		}
 
 		configuration.getListenerManager().dispatchEvent(new SocketConnectEvent<PircBotX>(this));
@@ -231,18 +293,26 @@ public class PircBotX implements Comparable<PircBotX> {
 
 		sendRaw().rawLineNow("NICK " + configuration.getName());
 		sendRaw().rawLineNow("USER " + configuration.getLogin() + " 8 * :" + configuration.getRealName());
-
-		//Start input to start accepting lines
-		startLineProcessing();
 	}
 
 	protected void changeSocket(Socket socket) throws IOException {
+		if (nioConnection != null)
+			throw new IOException("Cannot change the socket of a NIO connection");
 		this.socket = socket;
 		this.inputReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), configuration.getEncoding()));
 		this.outputWriter = new OutputStreamWriter(socket.getOutputStream(), configuration.getEncoding());
+		this.outputChannel = Channels.newChannel(socket.getOutputStream());
 	}
 
 	protected void startLineProcessing() {
+		if (nioConnection != null) {
+			//Lines are handled by the selector group, just wait for the connection to close
+			nioConnection.start();
+			Futures.getUnchecked(nioConnection.getCloseFuture());
+			nioConnectionClosed(nioConnection);
+			return;
+		}
+
 		while (true) {
 			//Get line from the server
 			String line;
@@ -287,6 +357,15 @@ public class PircBotX implements Comparable<PircBotX> {
 		shutdown();
 	}
 
+	protected void nioConnectionClosed(NioConnection connection) {
+		if (getState() == State.DISCONNECTED) {
+			log.info("Shutdown has been called, closing InputParser");
+			return;
+		}
+		disconnectException = connection.getCloseCause();
+		shutdown();
+	}
+
 	/**
 	 * Actually sends the raw line to the server. This method is NOT SYNCHRONIZED 
 	 * since it's only called from methods that handle locking
@@ -296,14 +375,32 @@ public class PircBotX implements Comparable<PircBotX> {
 		if (line.length() > configuration.getMaxLineLength() - 2)
 			line = line.substring(0, configuration.getMaxLineLength() - 2);
 		try {
-			outputWriter.write(line + "\r\n");
-			outputWriter.flush();
+			if (nioConnection != null)
+				nioConnection.write(line + "\r\n");
+			else {
+				outputWriter.write(line + "\r\n");
+				outputWriter.flush();
+			}
 		} catch (Exception e) {
 			//Not much else we can do, but this requires attention of whatever is calling this
 			throw new RuntimeException("Exception encountered when writing to socket", e);
 		}
 	}
 
+	/**
+	 * Write already encoded lines to the server. Like {@link #sendRawLineToServer(java.lang.String) }
+	 * this is NOT SYNCHRONIZED, callers must hold the output lock
+	 * @param buffer Bytes of one or more lines including line endings
+	 * @throws IOException If writing to the socket fails
+	 */
+	protected void sendRawBytesToServer(ByteBuffer buffer) throws IOException {
+		if (nioConnection != null)
+			nioConnection.write(buffer);
+		else
+			while (buffer.hasRemaining())
+				outputChannel.write(buffer);
+	}
+
 	protected void loggedIn(String nick) {
 		this.loggedIn = true;
 		setNick(nick);
@@ -407,6 +504,16 @@ public class PircBotX implements Comparable<PircBotX> {
 		return serverInfo;
 	}
 
+	/**
+	 * Get what the configured {@link org.pircbotx.metrics.Instrumentation} 
+	 * recorded for this bot, eg with a {@link org.pircbotx.metrics.MetricsRegistry}
+	 * @return Live metrics of this bot or null if the instrumentation doesn't
+	 * record any
+	 */
+	public BotMetrics getMetrics() {
+		return configuration.getInstrumentation().getMetrics(this);
+	}
+
 	public InetAddress getLocalAddress() {
 		return socket.getLocalAddress();
 	}
@@ -442,6 +549,8 @@ public class PircBotX implements Comparable<PircBotX> {
 			if (state == State.DISCONNECTED)
 				throw new RuntimeException("Cannot call shutdown twice");
 			state = State.DISCONNECTED;
+			if (nioConnection != null)
+				nioConnection.close();
 			try {
 				socket.close();
 			} catch (Exception e) {
@@ -470,6 +579,7 @@ public class PircBotX implements Comparable<PircBotX> {
 			userChannelDao.close();
 			inputParser.close();
 			dccHandler.close();
+			outputRaw.close();
 		}
 
 		//Dispatch event
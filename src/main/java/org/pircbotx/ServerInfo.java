@@ -157,8 +157,12 @@ public class ServerInfo {
 				wallVoices = true;
 			else if (key.equalsIgnoreCase("STATUSMSG"))
 				statusMessage = value;
-			else if (key.equalsIgnoreCase("CASEMAPPING"))
+			else if (key.equalsIgnoreCase("CASEMAPPING")) {
 				caseMapping = value;
+				CaseMapping mapping = CaseMapping.fromName(value);
+				if (mapping != null)
+					bot.getUserChannelDao().setCaseMapping(mapping);
+			}
 			else if (key.equalsIgnoreCase("ELIST"))
 				eList = value;
 			else if (key.equalsIgnoreCase("TOPICLEN"))
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableList;
+import lombok.Data;
+
+/**
+ * Handles a numeric server response, eg 352 (RPL_WHOREPLY). Handlers are
+ * registered with {@link Configuration.Builder#addServerResponseHandler(org.pircbotx.ServerResponseHandler) }
+ * and replace any existing handler of the same code. A
+ * {@link org.pircbotx.hooks.events.ServerResponseEvent} is always dispatched
+ * afterwards.
+ * @see ReplyConstants
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Data
+public abstract class ServerResponseHandler {
+	/**
+	 * The numeric code this handler processes, between 0 and 999
+	 */
+	protected final int code;
+
+	/**
+	 * Process the server response.
+	 * @param bot The bot that received the response
+	 * @param inputParser The InputParser that parsed the line
+	 * @param rawResponse The raw line
+	 * @param parsedResponse Parameters after the code
+	 */
+	public abstract void handleServerResponse(PircBotX bot, InputParser inputParser, String rawResponse, ImmutableList<String> parsedResponse);
+}
@@ -20,6 +20,7 @@ package org.pircbotx;
 
 import org.pircbotx.snapshot.UserSnapshot;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 
 import java.util.Date;
@@ -31,14 +32,20 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
-import org.apache.commons.lang3.concurrent.AtomicSafeInitializer;
-import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.pircbotx.hooks.WaitForQueue;
 import org.pircbotx.hooks.events.WhoisEvent;
 import org.pircbotx.output.OutputUser;
 
 /**
  * Represents a User on the server. 
+ * <p>
+ * Users are kept small since large channels can have hundreds of thousands of
+ * them: the last spoken time is a primitive, output is created on first use,
+ * a login equal to the nick shares the nick's string, and a hostmask starting
+ * with the login (eg Twitch's {@code nick.tmi.twitch.tv}) only stores the
+ * interned remainder, so {@link #getHostmask() } builds a new String on each
+ * call for those users. See {@link CompactUserChannelDao} for the matching 
+ * relationship storage
  * @since PircBot 1.0.0
  * @author Origionally by:
  * <a href="http://www.jibble.org/">Paul James Mutton</a> for <a href="http://www.jibble.org/pircbot.php">PircBot</a>
@@ -54,12 +61,14 @@ public class User implements Comparable<User> {
 	protected final UUID userId = UUID.randomUUID();
 	//Output is lazily created since it might not ever be used
 	@Getter(AccessLevel.NONE)
-	protected final AtomicSafeInitializer<OutputUser> output = new AtomicSafeInitializer<OutputUser>() {
-		@Override
-		protected OutputUser initialize() {
-			return bot.getConfiguration().getBotFactory().createOutputUser(bot, User.this);
-		}
-	};
+	@Setter(AccessLevel.NONE)
+	private volatile OutputUser output;
+	/**
+	 * Index of this user in a {@link CompactUserChannelDao}, -1 if not stored in one
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	int handle = -1;
 	@Setter(AccessLevel.PUBLIC)
 	@Getter(AccessLevel.PUBLIC)
 	private static String DonatorIcon = "";
@@ -77,9 +86,14 @@ public class User implements Comparable<User> {
 	 */
 	private String login = "";
 	/**
-	 * Hostmask of the user (user!login@hostmask). Never changes
+	 * Hostmask of the user (user!login@hostmask), without the leading login if
+	 * {@link #hostmaskHasLogin} is set. Never changes
 	 */
+	@Getter(AccessLevel.NONE)
 	private String hostmask = "";
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private boolean hostmaskHasLogin = false;
 	/**
 	 * User's away status
 	 */
@@ -97,9 +111,9 @@ public class User implements Comparable<User> {
 	 */
 	private int hops = 0;
 	/**
-	 * The last time the user spoke.
+	 * The last time the user spoke in milliseconds since the epoch, 0 if never.
 	 */
-	private Date lastSpoken;
+	private long lastSpokenTime;
 	
 	@Setter(AccessLevel.PUBLIC)
 	private boolean donator = false;
@@ -116,11 +130,52 @@ public class User implements Comparable<User> {
 	 * @return A {@link OutputUser} for this user
 	 */
 	public OutputUser send() {
-		try {
-			return output.get();
-		} catch (ConcurrentException ex) {
-			throw new RuntimeException("Could not generate OutputChannel for " + getNick(), ex);
+		OutputUser result = output;
+		if (result == null)
+			synchronized (this) {
+				result = output;
+				if (result == null)
+					output = result = bot.getConfiguration().getBotFactory().createOutputUser(bot, this);
+			}
+		return result;
+	}
+
+	protected void setLogin(String login) {
+		if (hostmaskHasLogin) {
+			//Hostmask was stored relative to the old login
+			hostmask = this.login + hostmask;
+			hostmaskHasLogin = false;
 		}
+		//Logins usually equal the nick, don't keep another copy
+		this.login = login.equals(nick) ? nick : login;
+	}
+
+	/**
+	 * Hostmask of the user (user!login@hostmask). Never changes. When the 
+	 * hostmask starts with the login this concatenates a new String on every 
+	 * call, so keep the result instead of calling this in a loop
+	 * @return The hostmask
+	 */
+	public String getHostmask() {
+		return hostmaskHasLogin ? login + hostmask : hostmask;
+	}
+
+	protected void setHostmask(String hostmask) {
+		hostmaskHasLogin = !login.isEmpty() && hostmask.length() > login.length() && hostmask.startsWith(login);
+		//Only the shared remainder is kept, eg ".tmi.twitch.tv"
+		this.hostmask = hostmaskHasLogin ? hostmask.substring(login.length()).intern() : hostmask;
+	}
+
+	/**
+	 * The last time the user spoke.
+	 * @return The time or null if the user hasn't spoken
+	 */
+	public Date getLastSpoken() {
+		return lastSpokenTime == 0 ? null : new Date(lastSpokenTime);
+	}
+
+	protected void setLastSpoken(Date lastSpoken) {
+		this.lastSpokenTime = lastSpoken == null ? 0 : lastSpoken.getTime();
 	}
 
 	/**
@@ -153,6 +208,23 @@ public class User implements Comparable<User> {
 		return new UserSnapshot(this);
 	}
 	
+	/**
+	 * Get the number of channels this user is in without copying them
+	 * @return The number of channels
+	 */
+	public int getChannelCount() {
+		return getDao().getChannelCount(this);
+	}
+
+	/**
+	 * Checks if this user is in the given channel
+	 * @param channel The channel
+	 * @return True if the user is in the channel
+	 */
+	public boolean isInChannel(Channel channel) {
+		return getDao().containsEntry(this, channel);
+	}
+
 	/**
 	 * Get all the levels this user holds in the channel.
 	 * @param channel The channel to get the levels from
@@ -170,6 +242,14 @@ public class User implements Comparable<User> {
 		return getDao().getChannels(this);
 	}
 
+	/**
+	 * Get all channels this user is a part of in no particular order.
+	 * @return All channels this user is a part of
+	 */
+	public ImmutableSet<Channel> getUnsortedChannels() {
+		return getDao().getUnsortedChannels(this);
+	}
+
 	/**
 	 * Get all channels user has Operator status in.
 	 * Be careful when storing the result from this method as it may be out of date
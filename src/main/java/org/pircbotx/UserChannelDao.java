@@ -19,15 +19,20 @@
 package org.pircbotx;
 
 import static com.google.common.base.Preconditions.*;
+import com.google.common.base.Predicate;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import java.io.Closeable;
-import java.util.EnumMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -36,9 +41,11 @@ import lombok.RequiredArgsConstructor;
 import lombok.Synchronized;
 import org.apache.commons.lang3.StringUtils;
 import org.pircbotx.hooks.events.UserListEvent;
+import org.pircbotx.metrics.FlightRecorderEvents;
 import org.pircbotx.snapshot.ChannelSnapshot;
 import org.pircbotx.snapshot.UserChannelDaoSnapshot;
 import org.pircbotx.snapshot.UserChannelMapSnapshot;
+import org.pircbotx.snapshot.UserLevelMapSnapshot;
 import org.pircbotx.snapshot.UserSnapshot;
 
 /**
@@ -55,10 +62,15 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	protected final Locale locale;
 	protected final Object accessLock = new Object();
 	protected final UserChannelMap<U, C> mainMap;
-	protected final EnumMap<UserLevel, UserChannelMap<U, C>> levelsMap;
-	protected final BiMap<String, U> userNickMap;
-	protected final BiMap<String, C> channelNameMap;
+	protected final UserLevelMap<U, C> levelsMap;
+	protected final BiMap<CaseMappedKey, U> userNickMap;
+	protected final BiMap<CaseMappedKey, C> channelNameMap;
 	protected final Set<U> privateUsers;
+	/**
+	 * How nicks and channel names are compared, changed by the server's
+	 * CASEMAPPING. Volatile for subclasses that look up names without locking
+	 */
+	protected volatile CaseMapping caseMapping = CaseMapping.RFC1459;
 
 	public UserChannelDao(PircBotX bot, Configuration.BotFactory botFactory) {
 		this.bot = bot;
@@ -68,29 +80,69 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 		this.userNickMap = HashBiMap.create();
 		this.channelNameMap = HashBiMap.create();
 		this.privateUsers = new HashSet<U>();
+		this.levelsMap = new UserLevelMap<U, C>();
+	}
 
-		//Initialize levels map with a UserChannelMap for each level
-		this.levelsMap = Maps.newEnumMap(UserLevel.class);
-		for (UserLevel level : UserLevel.values())
-			levelsMap.put(level, new UserChannelMap<U, C>());
+	/**
+	 * Start timing a wait for the access lock. Only {@link #getUser(java.lang.String) },
+	 * {@link #getChannel(java.lang.String) } and {@link #createSnapshot() } 
+	 * time the lock: nearly every line looks up its user and channel, so their
+	 * waits show how long other threads hold up the input thread. Everything
+	 * else just uses @Synchronized
+	 * @return {@link System#nanoTime() }, or 0 if the bot's 
+	 * {@link org.pircbotx.metrics.Instrumentation} is disabled
+	 */
+	protected long lockStart() {
+		return Utils.startTiming(bot);
+	}
+
+	/**
+	 * Report how long the current thread waited for the access lock to the
+	 * bot's {@link org.pircbotx.metrics.Instrumentation}
+	 * @param startNanos {@link #lockStart() } before waiting for the lock, 
+	 * does nothing if 0
+	 */
+	protected void lockAcquired(long startNanos) {
+		if (startNanos != 0)
+			bot.getConfiguration().getInstrumentation().daoLockWaited(bot, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Create a user with the bot factory, which creates the user type of this dao
+	 */
+	@SuppressWarnings("unchecked")
+	protected U createUser(String nick) {
+		return (U) botFactory.createUser(bot, nick);
+	}
+
+	/**
+	 * Create a channel with the bot factory, which creates the channel type of this dao
+	 */
+	@SuppressWarnings("unchecked")
+	protected C createChannel(String name) {
+		return (C) botFactory.createChannel(bot, name);
 	}
 
-	@Synchronized("accessLock")
 	public U getUser(String nick) {
-		checkArgument(StringUtils.isNotBlank(nick), "Cannot get a blank user");
-		U user = userNickMap.get(nick.toLowerCase(locale));
-		if (user != null)
+		long lockStart = lockStart();
+		synchronized (accessLock) {
+			lockAcquired(lockStart);
+			checkArgument(StringUtils.isNotBlank(nick), "Cannot get a blank user");
+			CaseMappedKey nickKey = caseMapping.key(nick);
+			U user = userNickMap.get(nickKey);
+			if (user != null)
+				return user;
+
+			//Create new user
+			user = createUser(nick);
+			userNickMap.put(nickKey, user);
 			return user;
-
-		//Create new user
-		user = (U) botFactory.createUser(bot, nick);
-		userNickMap.put(nick.toLowerCase(locale), user);
-		return user;
+		}
 	}
 
 	@Synchronized("accessLock")
 	public boolean userExists(String nick) {
-		return userNickMap.containsKey(nick.toLowerCase(locale));
+		return userNickMap.containsKey(caseMapping.key(nick));
 	}
 
 	/**
@@ -130,54 +182,63 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 
 	@Synchronized("accessLock")
 	protected void addUserToLevel(UserLevel level, U user, C channel) {
-		levelsMap.get(level).addUserToChannel(user, channel);
+		levelsMap.addUserToLevel(level, user, channel);
 	}
 
 	@Synchronized("accessLock")
 	protected void removeUserFromLevel(UserLevel level, U user, C channel) {
-		levelsMap.get(level).removeUserFromChannel(user, channel);
+		levelsMap.removeUserFromLevel(level, user, channel);
 	}
 
 	@Synchronized("accessLock")
 	public ImmutableSortedSet<U> getNormalUsers(C channel) {
-		Set<U> remainingUsers = new HashSet<U>(mainMap.getUsers(channel));
-		for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-			remainingUsers.removeAll(curLevelMap.getUsers(channel));
-		return ImmutableSortedSet.copyOf(remainingUsers);
+		return getNormalUsers(channel, mainMap, levelsMap);
+	}
+
+	/**
+	 * Filter the already sorted users of the channel down to those without a
+	 * level instead of subtracting every level
+	 */
+	protected static <U extends User, C extends Channel> ImmutableSortedSet<U> getNormalUsers(final C channel, UserChannelMap<U, C> mainMap, final UserLevelMap<U, C> levelsMap) {
+		return ImmutableSortedSet.copyOfSorted(Sets.filter(mainMap.getUsers(channel), new Predicate<U>() {
+			public boolean apply(U user) {
+				return levelsMap.getLevelMask(user, channel) == 0;
+			}
+		}));
 	}
 
 	@Synchronized("accessLock")
 	public ImmutableSortedSet<U> getUsers(C channel, UserLevel level) {
-		return levelsMap.get(level).getUsers(channel);
+		return levelsMap.getUsers(channel, level);
 	}
 
 	@Synchronized("accessLock")
 	public ImmutableSortedSet<UserLevel> getLevels(C channel, U user) {
-		ImmutableSortedSet.Builder<UserLevel> builder = ImmutableSortedSet.naturalOrder();
-		for (Map.Entry<UserLevel, UserChannelMap<U, C>> curEntry : levelsMap.entrySet())
-			if (curEntry.getValue().containsEntry(user, channel))
-				builder.add(curEntry.getKey());
-		return builder.build();
+		return levelsMap.getLevels(user, channel);
 	}
 
 	@Synchronized("accessLock")
 	public ImmutableSortedSet<C> getNormalUserChannels(U user) {
-		Set<C> remainingChannels = new HashSet<C>(mainMap.getChannels(user));
-		for (UserChannelMap<U, C>  curLevelMap : levelsMap.values())
-			remainingChannels.removeAll(curLevelMap.getChannels(user));
-		return ImmutableSortedSet.copyOf(remainingChannels);
+		return getNormalUserChannels(user, mainMap, levelsMap);
+	}
+
+	protected static <U extends User, C extends Channel> ImmutableSortedSet<C> getNormalUserChannels(final U user, UserChannelMap<U, C> mainMap, final UserLevelMap<U, C> levelsMap) {
+		return ImmutableSortedSet.copyOfSorted(Sets.filter(mainMap.getChannels(user), new Predicate<C>() {
+			public boolean apply(C channel) {
+				return levelsMap.getLevelMask(user, channel) == 0;
+			}
+		}));
 	}
 
 	@Synchronized("accessLock")
 	public ImmutableSortedSet<C> getChannels(U user, UserLevel level) {
-		return levelsMap.get(level).getChannels(user);
+		return levelsMap.getChannels(user, level);
 	}
 
 	@Synchronized("accessLock")
 	protected void removeUserFromChannel(U user, C channel) {
 		mainMap.removeUserFromChannel(user, channel);
-		for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-			curLevelMap.removeUserFromChannel(user, channel);
+		levelsMap.removeUserFromChannel(user, channel);
 
 		if (!privateUsers.contains(user) && !mainMap.containsUser(user))
 			//Completely remove user
@@ -187,8 +248,7 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	@Synchronized("accessLock")
 	protected void removeUser(U user) {
 		mainMap.removeUser(user);
-		for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-			curLevelMap.removeUser(user);
+		levelsMap.removeUser(user);
 
 		//Remove remaining locations
 		userNickMap.inverse().remove(user);
@@ -197,27 +257,32 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 
 	@Synchronized("accessLock")
 	protected boolean levelContainsUser(UserLevel level, C channel, U user) {
-		return levelsMap.get(level).containsEntry(user, channel);
+		return levelsMap.containsEntry(level, user, channel);
 	}
 
 	@Synchronized("accessLock")
 	protected void renameUser(U user, String newNick) {
 		user.setNick(newNick);
 		userNickMap.inverse().remove(user);
-		userNickMap.put(newNick.toLowerCase(locale), user);
+		userNickMap.put(caseMapping.key(newNick), user);
+		mainMap.invalidateUser(user);
 	}
 
-	@Synchronized("accessLock")
 	public C getChannel(String name) {
-		checkArgument(StringUtils.isNotBlank(name), "Cannot get a blank channel");
-		C chan = channelNameMap.get(name.toLowerCase(locale));
-		if (chan != null)
+		long lockStart = lockStart();
+		synchronized (accessLock) {
+			lockAcquired(lockStart);
+			checkArgument(StringUtils.isNotBlank(name), "Cannot get a blank channel");
+			CaseMappedKey nameKey = caseMapping.key(name);
+			C chan = channelNameMap.get(nameKey);
+			if (chan != null)
+				return chan;
+
+			//Channel does not exist, create one
+			chan = createChannel(name);
+			channelNameMap.put(nameKey, chan);
 			return chan;
-
-		//Channel does not exist, create one
-		chan = (C) botFactory.createChannel(bot, name);
-		channelNameMap.put(name.toLowerCase(locale), chan);
-		return chan;
+		}
 	}
 
 	/**
@@ -227,7 +292,33 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	 */
 	@Synchronized("accessLock")
 	public boolean channelExists(String name) {
-		return channelNameMap.containsKey(name.toLowerCase(locale));
+		return channelNameMap.containsKey(caseMapping.key(name));
+	}
+
+	public CaseMapping getCaseMapping() {
+		return caseMapping;
+	}
+
+	/**
+	 * Change how nicks and channel names are compared, rebuilding the name maps.
+	 * If two names become equal the one added last keeps its name, like renaming
+	 * a user to the nick of another
+	 * @param caseMapping The new mapping
+	 */
+	@Synchronized("accessLock")
+	protected void setCaseMapping(CaseMapping caseMapping) {
+		checkNotNull(caseMapping, "Must specify case mapping");
+		if (caseMapping == this.caseMapping)
+			return;
+		this.caseMapping = caseMapping;
+		List<U> users = new ArrayList<U>(userNickMap.values());
+		userNickMap.clear();
+		for (U curUser : users)
+			userNickMap.put(caseMapping.key(curUser.getNick()), curUser);
+		List<C> channels = new ArrayList<C>(channelNameMap.values());
+		channelNameMap.clear();
+		for (C curChannel : channels)
+			channelNameMap.put(caseMapping.key(curChannel.getName()), curChannel);
 	}
 
 	@Synchronized("accessLock")
@@ -235,6 +326,69 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 		return mainMap.getUsers(channel);
 	}
 
+	/**
+	 * Get the users of the channel in no particular order. Cheaper than
+	 * {@link #getUsers(org.pircbotx.Channel) } when the order doesn't matter
+	 * @param channel The channel
+	 * @return An immutable set of the users in the channel
+	 */
+	@Synchronized("accessLock")
+	public ImmutableSet<U> getUnsortedUsers(C channel) {
+		return mainMap.getUnsortedUsers(channel);
+	}
+
+	/**
+	 * Get the number of users in the channel without copying them.
+	 * @param channel The channel
+	 * @return The number of users in the channel
+	 */
+	@Synchronized("accessLock")
+	public int getUserCount(C channel) {
+		return mainMap.getUserCount(channel);
+	}
+
+	/**
+	 * Get the number of users with the level in the channel without copying them.
+	 * @param channel The channel
+	 * @param level The level
+	 * @return The number of users with the level
+	 */
+	@Synchronized("accessLock")
+	public int getUserCount(C channel, UserLevel level) {
+		return levelsMap.getUserCount(channel, level);
+	}
+
+	/**
+	 * Get the number of distinct users in at least one channel. Users only known
+	 * from private messages aren't counted
+	 * @return The number of users in channels
+	 */
+	@Synchronized("accessLock")
+	public int getUserCount() {
+		return mainMap.getUserCount();
+	}
+
+	/**
+	 * Get the number of channels the user is in without copying them.
+	 * @param user The user
+	 * @return The number of channels
+	 */
+	@Synchronized("accessLock")
+	public int getChannelCount(U user) {
+		return mainMap.getChannelCount(user);
+	}
+
+	/**
+	 * Check if the user is in the channel without copying its users.
+	 * @param user The user
+	 * @param channel The channel
+	 * @return True if the user is in the channel
+	 */
+	@Synchronized("accessLock")
+	public boolean containsEntry(U user, C channel) {
+		return mainMap.containsEntry(user, channel);
+	}
+
 	@Synchronized("accessLock")
 	public ImmutableSortedSet<C> getAllChannels() {
 		return ImmutableSortedSet.copyOf(channelNameMap.values());
@@ -245,11 +399,20 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 		return mainMap.getChannels(user);
 	}
 
+	/**
+	 * Get the channels of the user in no particular order
+	 * @param user The user
+	 * @return An immutable set of the user's channels
+	 */
+	@Synchronized("accessLock")
+	public ImmutableSet<C> getUnsortedChannels(U user) {
+		return mainMap.getUnsortedChannels(user);
+	}
+
 	@Synchronized("accessLock")
 	protected void removeChannel(C channel) {
 		mainMap.removeChannel(channel);
-		for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-			curLevelMap.removeChannel(channel);
+		levelsMap.removeChannel(channel);
 
 		//Remove remaining locations
 		channelNameMap.inverse().remove(channel);
@@ -258,15 +421,35 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 	@Synchronized("accessLock")
 	public void close() {
 		mainMap.clear();
-		for (UserChannelMap<U, C> curLevelMap : levelsMap.values())
-			curLevelMap.clear();
+		levelsMap.clear();
 		channelNameMap.clear();
 		privateUsers.clear();
 		userNickMap.clear();
 	}
 
-	@Synchronized("accessLock")
 	public UserChannelDaoSnapshot createSnapshot() {
+		long lockStart = lockStart();
+		synchronized (accessLock) {
+			lockAcquired(lockStart);
+			return createSnapshot(userNickMap, channelNameMap, privateUsers);
+		}
+	}
+
+	/**
+	 * Create a snapshot from the given maps and the relationship maps. Callers
+	 * must make sure nothing is modified while the snapshot is created
+	 */
+	protected UserChannelDaoSnapshot createSnapshot(Map<CaseMappedKey, U> userNickMap, Map<CaseMappedKey, C> channelNameMap, Set<U> privateUsers) {
+		return createSnapshot(userNickMap, channelNameMap, privateUsers, mainMap, levelsMap);
+	}
+
+	/**
+	 * Create a snapshot from the given maps, for subclasses that store
+	 * relationships somewhere else
+	 */
+	protected UserChannelDaoSnapshot createSnapshot(Map<CaseMappedKey, U> userNickMap, Map<CaseMappedKey, C> channelNameMap, Set<U> privateUsers,
+			UserChannelMap<U, C> mainMap, UserLevelMap<U, C> levelsMap) {
+		Object jfrEvent = FlightRecorderEvents.SNAPSHOT.begin();
 		//Create snapshots of all users and channels
 		ImmutableMap.Builder<U, UserSnapshot> userSnapshotBuilder = ImmutableMap.builder();
 		for (U curUser : userNickMap.values())
@@ -279,22 +462,24 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 
 		//Make snapshots of the relationship maps using the above user and channel snapshots
 		UserChannelMapSnapshot mainMapSnapshot = mainMap.createSnapshot(userSnapshotMap, channelSnapshotMap);
-		EnumMap<UserLevel, UserChannelMap<UserSnapshot, ChannelSnapshot>> levelsMapSnapshot = Maps.newEnumMap(UserLevel.class);
-		for (Map.Entry<UserLevel, UserChannelMap<U, C>> curLevel : levelsMap.entrySet())
-			levelsMapSnapshot.put(curLevel.getKey(), curLevel.getValue().createSnapshot(userSnapshotMap, channelSnapshotMap));
-		ImmutableBiMap.Builder<String, UserSnapshot> userNickMapSnapshotBuilder = ImmutableBiMap.builder();
-		for (Map.Entry<String, U> curNick : userNickMap.entrySet())
-			userNickMapSnapshotBuilder.put(curNick.getKey(), curNick.getValue().createSnapshot());
-		ImmutableBiMap.Builder<String, ChannelSnapshot> channelNameMapSnapshotBuilder = ImmutableBiMap.builder();
-		for (Map.Entry<String, C> curName : channelNameMap.entrySet())
-			channelNameMapSnapshotBuilder.put(curName.getKey(), curName.getValue().createSnapshot());
+		UserLevelMapSnapshot levelsMapSnapshot = levelsMap.createSnapshot(userSnapshotMap, channelSnapshotMap);
+		//Reuse the above snapshots so every user and channel is only copied once
+		ImmutableBiMap.Builder<CaseMappedKey, UserSnapshot> userNickMapSnapshotBuilder = ImmutableBiMap.builder();
+		for (Map.Entry<CaseMappedKey, U> curNick : userNickMap.entrySet())
+			userNickMapSnapshotBuilder.put(curNick.getKey(), userSnapshotMap.get(curNick.getValue()));
+		ImmutableBiMap.Builder<CaseMappedKey, ChannelSnapshot> channelNameMapSnapshotBuilder = ImmutableBiMap.builder();
+		for (Map.Entry<CaseMappedKey, C> curName : channelNameMap.entrySet())
+			channelNameMapSnapshotBuilder.put(curName.getKey(), channelSnapshotMap.get(curName.getValue()));
 		ImmutableSortedSet.Builder<UserSnapshot> privateUserSnapshotBuilder = ImmutableSortedSet.naturalOrder();
-		for (User curUser : privateUsers)
-			privateUserSnapshotBuilder.add(curUser.createSnapshot());
+		for (U curUser : privateUsers) {
+			UserSnapshot curUserSnapshot = userSnapshotMap.get(curUser);
+			privateUserSnapshotBuilder.add(curUserSnapshot != null ? curUserSnapshot : curUser.createSnapshot());
+		}
 
 		//Finally can create the snapshot object
 		UserChannelDaoSnapshot daoSnapshot = new UserChannelDaoSnapshot(bot,
 				locale,
+				caseMapping,
 				mainMapSnapshot,
 				levelsMapSnapshot,
 				userNickMapSnapshotBuilder.build(),
@@ -306,8 +491,107 @@ public class UserChannelDao<U extends User, C extends Channel> implements Closea
 			curUserSnapshot.setDao(daoSnapshot);
 		for(ChannelSnapshot curChannelSnapshot : channelSnapshotMap.values())
 			curChannelSnapshot.setDao(daoSnapshot);
+
+		if (jfrEvent != null) {
+			int memberships = 0;
+			for (C curChannel : channelSnapshotMap.keySet())
+				memberships += mainMap.getUserCount(curChannel);
+			FlightRecorderEvents.SNAPSHOT.commit(jfrEvent, Utils.getBotId(bot), userSnapshotMap.size(), channelSnapshotMap.size(), memberships);
+		}
 		
 		//Finally
 		return daoSnapshot;
 	}
+
+	/**
+	 * Create a snapshot of a single user, the channels they're in, and every 
+	 * user in those channels with their levels. Other users and channels 
+	 * aren't included, so it's cheap enough to create for every PART and QUIT
+	 * while still showing those channels as they were
+	 * @param user The user to snapshot
+	 * @return A snapshot of the user and their channels
+	 */
+	@Synchronized("accessLock")
+	public UserChannelDaoSnapshot createSnapshot(U user) {
+		return createUserSnapshot(user, null);
+	}
+
+	/**
+	 * Same as {@link #createSnapshot(org.pircbotx.User) } but also include the
+	 * channel even if the user isn't in it
+	 * @param user The user to snapshot
+	 * @param channel A channel to include in the snapshot
+	 * @return A snapshot of the user and their channels
+	 */
+	@Synchronized("accessLock")
+	public UserChannelDaoSnapshot createSnapshot(U user, C channel) {
+		return createUserSnapshot(user, channel);
+	}
+
+	/**
+	 * Create a snapshot of the user and their channels. Callers must make
+	 * sure nothing is modified while the snapshot is created
+	 */
+	protected UserChannelDaoSnapshot createUserSnapshot(U user, C extraChannel) {
+		return createUserSnapshot(user, extraChannel, mainMap, levelsMap, privateUsers);
+	}
+
+	/**
+	 * Create a snapshot of the user from the given maps, for subclasses that
+	 * store relationships somewhere else. The maps need every membership of 
+	 * the user's channels
+	 */
+	protected UserChannelDaoSnapshot createUserSnapshot(U user, C extraChannel, UserChannelMap<U, C> mainMap,
+			UserLevelMap<U, C> levelsMap, Set<U> privateUsers) {
+		Set<C> channels = Sets.newHashSet(mainMap.getUnsortedChannels(user));
+		if (extraChannel != null)
+			channels.add(extraChannel);
+
+		//Copy the channels and everyone in them, creating each user snapshot once
+		Map<U, UserSnapshot> userSnapshotMap = Maps.newHashMap();
+		userSnapshotMap.put(user, user.createSnapshot());
+		Map<C, ChannelSnapshot> channelSnapshotMap = Maps.newHashMap();
+		ImmutableSetMultimap.Builder<UserSnapshot, ChannelSnapshot> userToChannelBuilder = ImmutableSetMultimap.builder();
+		ImmutableSetMultimap.Builder<ChannelSnapshot, UserSnapshot> channelToUserBuilder = ImmutableSetMultimap.builder();
+		UserLevelMapSnapshot levelsMapSnapshot = new UserLevelMapSnapshot();
+		for (C curChannel : channels) {
+			ChannelSnapshot curChannelSnapshot = curChannel.createSnapshot();
+			channelSnapshotMap.put(curChannel, curChannelSnapshot);
+			for (U curUser : mainMap.getUnsortedUsers(curChannel)) {
+				UserSnapshot curUserSnapshot = userSnapshotMap.get(curUser);
+				if (curUserSnapshot == null)
+					userSnapshotMap.put(curUser, curUserSnapshot = curUser.createSnapshot());
+				userToChannelBuilder.put(curUserSnapshot, curChannelSnapshot);
+				channelToUserBuilder.put(curChannelSnapshot, curUserSnapshot);
+				levelsMapSnapshot.putLevels(curUserSnapshot, curChannelSnapshot, levelsMap.getLevelMask(curUser, curChannel));
+			}
+		}
+
+		ImmutableBiMap.Builder<CaseMappedKey, UserSnapshot> userNickMapSnapshotBuilder = ImmutableBiMap.builder();
+		ImmutableSortedSet.Builder<UserSnapshot> privateUserSnapshotBuilder = ImmutableSortedSet.naturalOrder();
+		for (Map.Entry<U, UserSnapshot> curUser : userSnapshotMap.entrySet()) {
+			userNickMapSnapshotBuilder.put(caseMapping.key(curUser.getKey().getNick()), curUser.getValue());
+			if (privateUsers.contains(curUser.getKey()))
+				privateUserSnapshotBuilder.add(curUser.getValue());
+		}
+		ImmutableBiMap.Builder<CaseMappedKey, ChannelSnapshot> channelNameMapSnapshotBuilder = ImmutableBiMap.builder();
+		for (ChannelSnapshot curChannelSnapshot : channelSnapshotMap.values())
+			channelNameMapSnapshotBuilder.put(caseMapping.key(curChannelSnapshot.getName()), curChannelSnapshot);
+
+		UserChannelDaoSnapshot daoSnapshot = new UserChannelDaoSnapshot(bot,
+				locale,
+				caseMapping,
+				new UserChannelMapSnapshot(userToChannelBuilder.build(), channelToUserBuilder.build()),
+				levelsMapSnapshot,
+				userNickMapSnapshotBuilder.build(),
+				channelNameMapSnapshotBuilder.build(),
+				privateUserSnapshotBuilder.build());
+
+		//Tell UserSnapshots and ChannelSnapshots what the new backing dao is
+		for (UserSnapshot curUserSnapshot : userSnapshotMap.values())
+			curUserSnapshot.setDao(daoSnapshot);
+		for (ChannelSnapshot curChannelSnapshot : channelSnapshotMap.values())
+			curChannelSnapshot.setDao(daoSnapshot);
+		return daoSnapshot;
+	}
 }
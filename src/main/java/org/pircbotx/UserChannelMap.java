@@ -20,8 +20,10 @@ package org.pircbotx;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Multimap;
+import java.util.Collection;
 import java.util.Map;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -31,13 +33,21 @@ import org.pircbotx.snapshot.UserChannelMapSnapshot;
 import org.pircbotx.snapshot.UserSnapshot;
 
 /**
- * A many to many map of users to channels.
+ * A many to many map of users to channels. The users of each channel and
+ * channels of each user are cached in a {@link ViewCache} until they change, so
+ * asking repeatedly doesn't copy or sort each time.
  */
 @RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 @Slf4j
 public class UserChannelMap<U extends User, C extends Channel> {
 	protected final Multimap<U, C> userToChannelMap;
 	protected final Multimap<C, U> channelToUserMap;
+	/**
+	 * Users of each channel, sorted or unsorted depending on what was asked for
+	 * first. A sorted set is also used for unsorted requests
+	 */
+	protected final ViewCache<C, ImmutableSet<U>> userViews = new ViewCache<C, ImmutableSet<U>>();
+	protected final ViewCache<U, ImmutableSet<C>> channelViews = new ViewCache<U, ImmutableSet<C>>();
 
 	/**
 	 * Create with HashMultimaps.
@@ -48,34 +58,128 @@ public class UserChannelMap<U extends User, C extends Channel> {
 	}
 
 	public void addUserToChannel(U user, C channel) {
-		userToChannelMap.put(user, channel);
-		channelToUserMap.put(channel, user);
+		boolean userAdded = userToChannelMap.put(user, channel);
+		boolean channelAdded = channelToUserMap.put(channel, user);
+		if (userAdded || channelAdded)
+			invalidate(user, channel);
 	}
 
 	public void removeUserFromChannel(U user, C channel) {
-		userToChannelMap.remove(user, channel);
-		channelToUserMap.remove(channel, user);
+		boolean userRemoved = userToChannelMap.remove(user, channel);
+		boolean channelRemoved = channelToUserMap.remove(channel, user);
+		if (userRemoved || channelRemoved)
+			invalidate(user, channel);
 	}
 
 	public void removeUser(U user) {
 		//Remove the user from each channel
-		for (Channel curChannel : userToChannelMap.removeAll(user))
+		for (C curChannel : userToChannelMap.removeAll(user)) {
 			channelToUserMap.remove(curChannel, user);
+			userViews.invalidate(curChannel);
+		}
+		channelViews.invalidate(user);
 	}
 
 	public void removeChannel(C channel) {
 		//Remove the channel from each user
-		for (User curUser : channelToUserMap.removeAll(channel))
+		for (U curUser : channelToUserMap.removeAll(channel)) {
 			//This will automatically remove the user if they have no more channels
 			userToChannelMap.remove(curUser, channel);
+			channelViews.invalidate(curUser);
+		}
+		userViews.invalidate(channel);
+	}
+
+	/**
+	 * Drop the cached views of the user and channel. Must be called after
+	 * modifying them
+	 */
+	protected void invalidate(U user, C channel) {
+		userViews.invalidate(channel);
+		channelViews.invalidate(user);
+	}
+
+	/**
+	 * Drop the cached views of every channel the user is in. Must be called
+	 * after renaming the user since views are sorted by nick
+	 */
+	public void invalidateUser(U user) {
+		for (C curChannel : getChannelSource(user))
+			userViews.invalidate(curChannel);
+	}
+
+	/**
+	 * @return The current users of the channel, only read after getting the
+	 * version of the channel's view
+	 */
+	protected Collection<U> getUserSource(C channel) {
+		return channelToUserMap.get(channel);
+	}
+
+	protected Collection<C> getChannelSource(U user) {
+		return userToChannelMap.get(user);
 	}
 
 	public ImmutableSortedSet<U> getUsers(C channel) {
-		return ImmutableSortedSet.copyOf(channelToUserMap.get(channel));
+		long version = userViews.getVersion(channel);
+		ImmutableSet<U> users = userViews.get(channel);
+		if (users instanceof ImmutableSortedSet)
+			return (ImmutableSortedSet<U>) users;
+		//An unsorted view is already a copy
+		return (ImmutableSortedSet<U>) userViews.put(channel, version, ImmutableSortedSet.copyOf(users != null ? users : getUserSource(channel)));
 	}
 
 	public ImmutableSortedSet<C> getChannels(U user) {
-		return ImmutableSortedSet.copyOf(userToChannelMap.get(user));
+		long version = channelViews.getVersion(user);
+		ImmutableSet<C> channels = channelViews.get(user);
+		if (channels instanceof ImmutableSortedSet)
+			return (ImmutableSortedSet<C>) channels;
+		return (ImmutableSortedSet<C>) channelViews.put(user, version, ImmutableSortedSet.copyOf(channels != null ? channels : getChannelSource(user)));
+	}
+
+	/**
+	 * Get the users of the channel in no particular order. Unlike
+	 * {@link #getUsers(org.pircbotx.Channel) } this never sorts, and only copies
+	 * after the channel changed
+	 */
+	public ImmutableSet<U> getUnsortedUsers(C channel) {
+		long version = userViews.getVersion(channel);
+		ImmutableSet<U> users = userViews.get(channel);
+		if (users == null)
+			users = userViews.put(channel, version, ImmutableSet.copyOf(getUserSource(channel)));
+		return users;
+	}
+
+	/**
+	 * Get the channels of the user in no particular order without sorting
+	 */
+	public ImmutableSet<C> getUnsortedChannels(U user) {
+		long version = channelViews.getVersion(user);
+		ImmutableSet<C> channels = channelViews.get(user);
+		if (channels == null)
+			channels = channelViews.put(user, version, ImmutableSet.copyOf(getChannelSource(user)));
+		return channels;
+	}
+
+	/**
+	 * @return Number of users in the channel without copying them
+	 */
+	public int getUserCount(C channel) {
+		return channelToUserMap.get(channel).size();
+	}
+
+	/**
+	 * @return Number of channels the user is in without copying them
+	 */
+	public int getChannelCount(U user) {
+		return userToChannelMap.get(user).size();
+	}
+
+	/**
+	 * @return Number of distinct users in at least one channel
+	 */
+	public int getUserCount() {
+		return userToChannelMap.keySet().size();
 	}
 
 	public boolean containsEntry(U user, C channel) {
@@ -97,6 +201,8 @@ public class UserChannelMap<U extends User, C extends Channel> {
 	public void clear() {
 		userToChannelMap.clear();
 		channelToUserMap.clear();
+		userViews.clear();
+		channelViews.clear();
 	}
 
 	public UserChannelMapSnapshot createSnapshot(Map<U, UserSnapshot> userSnapshots, Map<C, ChannelSnapshot> channelSnapshots) {
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableSortedSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.pircbotx.snapshot.ChannelSnapshot;
+import org.pircbotx.snapshot.UserLevelMapSnapshot;
+import org.pircbotx.snapshot.UserSnapshot;
+
+/**
+ * Levels of users in channels. Each user with a level in a channel has a
+ * bitmask of {@link UserLevel} ordinals, and each channel has a set of users
+ * per level. Normal users aren't stored at all, so memory scales with the
+ * number of users that have a level instead of every membership.
+ * <p>
+ * Checking or getting the levels of a user is O(1), getting the users of a
+ * level is O(result). Getting the channels of a user is O(channels)
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class UserLevelMap<U extends User, C extends Channel> {
+	protected static final UserLevel[] LEVELS = UserLevel.values();
+	/**
+	 * Every combination of levels indexed by bitmask
+	 */
+	protected static final ImmutableSortedSet<UserLevel>[] MASK_LEVELS = createMaskLevels();
+	protected final Map<C, ChannelLevels<U>> channelLevels;
+
+	public UserLevelMap() {
+		this(new HashMap<C, ChannelLevels<U>>());
+	}
+
+	protected UserLevelMap(Map<C, ChannelLevels<U>> channelLevels) {
+		this.channelLevels = channelLevels;
+	}
+
+	protected static ImmutableSortedSet<UserLevel>[] createMaskLevels() {
+		@SuppressWarnings("unchecked")
+		ImmutableSortedSet<UserLevel>[] maskLevels = new ImmutableSortedSet[1 << LEVELS.length];
+		for (int mask = 0; mask < maskLevels.length; mask++) {
+			ImmutableSortedSet.Builder<UserLevel> builder = ImmutableSortedSet.naturalOrder();
+			for (UserLevel curLevel : LEVELS)
+				if ((mask & getBit(curLevel)) != 0)
+					builder.add(curLevel);
+			maskLevels[mask] = builder.build();
+		}
+		return maskLevels;
+	}
+
+	public static int getBit(UserLevel level) {
+		return 1 << level.ordinal();
+	}
+
+	/**
+	 * Convert a bitmask from {@link #getLevelMask(org.pircbotx.User, org.pircbotx.Channel) }
+	 * to levels
+	 * @param mask Bitmask of level ordinals
+	 * @return The levels in the mask
+	 */
+	public static ImmutableSortedSet<UserLevel> toLevels(int mask) {
+		return MASK_LEVELS[mask];
+	}
+
+	protected ChannelLevels<U> createChannelLevels() {
+		@SuppressWarnings("unchecked")
+		Set<U>[] levelUsers = new Set[LEVELS.length];
+		for (int i = 0; i < levelUsers.length; i++)
+			levelUsers[i] = new HashSet<U>();
+		return new ChannelLevels<U>(new HashMap<U, Integer>(), levelUsers);
+	}
+
+	protected ChannelLevels<U> getOrCreateLevels(C channel) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		if (levels == null) {
+			levels = createChannelLevels();
+			channelLevels.put(channel, levels);
+		}
+		return levels;
+	}
+
+	public void addUserToLevel(UserLevel level, U user, C channel) {
+		putLevels(user, channel, getBit(level));
+	}
+
+	/**
+	 * Add the user to every level in the mask
+	 */
+	protected void putLevels(U user, C channel, int mask) {
+		if (mask == 0)
+			return;
+		ChannelLevels<U> levels = getOrCreateLevels(channel);
+		Integer curMask = levels.masks.get(user);
+		levels.masks.put(user, curMask == null ? mask : curMask | mask);
+		for (UserLevel curLevel : LEVELS)
+			if ((mask & getBit(curLevel)) != 0)
+				levels.levelUsers[curLevel.ordinal()].add(user);
+	}
+
+	public void removeUserFromLevel(UserLevel level, U user, C channel) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		if (levels == null)
+			return;
+		Integer curMask = levels.masks.get(user);
+		if (curMask == null)
+			return;
+		int newMask = curMask & ~getBit(level);
+		if (newMask == 0)
+			levels.masks.remove(user);
+		else
+			levels.masks.put(user, newMask);
+		levels.levelUsers[level.ordinal()].remove(user);
+	}
+
+	public void removeUserFromChannel(U user, C channel) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		if (levels == null)
+			return;
+		Integer curMask = levels.masks.remove(user);
+		if (curMask == null)
+			return;
+		for (UserLevel curLevel : LEVELS)
+			if ((curMask & getBit(curLevel)) != 0)
+				levels.levelUsers[curLevel.ordinal()].remove(user);
+	}
+
+	public void removeUser(U user) {
+		for (C curChannel : channelLevels.keySet())
+			removeUserFromChannel(user, curChannel);
+	}
+
+	public void removeChannel(C channel) {
+		channelLevels.remove(channel);
+	}
+
+	/**
+	 * @return Bitmask of the ordinals of the user's levels in the channel, 0 if
+	 * the user is a normal user or isn't in the channel
+	 */
+	public int getLevelMask(U user, C channel) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		if (levels == null)
+			return 0;
+		Integer mask = levels.masks.get(user);
+		return mask == null ? 0 : mask;
+	}
+
+	public boolean containsEntry(UserLevel level, U user, C channel) {
+		return (getLevelMask(user, channel) & getBit(level)) != 0;
+	}
+
+	public ImmutableSortedSet<UserLevel> getLevels(U user, C channel) {
+		return toLevels(getLevelMask(user, channel));
+	}
+
+	public ImmutableSortedSet<U> getUsers(C channel, UserLevel level) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		if (levels == null)
+			return ImmutableSortedSet.of();
+		return ImmutableSortedSet.copyOf(levels.levelUsers[level.ordinal()]);
+	}
+
+	/**
+	 * @return Number of users with the level in the channel without copying them
+	 */
+	public int getUserCount(C channel, UserLevel level) {
+		ChannelLevels<U> levels = channelLevels.get(channel);
+		return levels == null ? 0 : levels.levelUsers[level.ordinal()].size();
+	}
+
+	public ImmutableSortedSet<C> getChannels(U user, UserLevel level) {
+		ImmutableSortedSet.Builder<C> builder = ImmutableSortedSet.naturalOrder();
+		for (Map.Entry<C, ChannelLevels<U>> curEntry : channelLevels.entrySet())
+			if (curEntry.getValue().levelUsers[level.ordinal()].contains(user))
+				builder.add(curEntry.getKey());
+		return builder.build();
+	}
+
+	public void clear() {
+		channelLevels.clear();
+	}
+
+	public UserLevelMapSnapshot createSnapshot(Map<U, UserSnapshot> userSnapshots, Map<C, ChannelSnapshot> channelSnapshots) {
+		//Copy each mask replacing each user and channel with their respective snapshots
+		UserLevelMapSnapshot snapshot = new UserLevelMapSnapshot();
+		for (Map.Entry<C, ChannelLevels<U>> curChannel : channelLevels.entrySet()) {
+			ChannelSnapshot channelSnapshot = channelSnapshots.get(curChannel.getKey());
+			for (Map.Entry<U, Integer> curMask : curChannel.getValue().masks.entrySet())
+				snapshot.putLevels(userSnapshots.get(curMask.getKey()), channelSnapshot, curMask.getValue());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Levels of a single channel
+	 */
+	protected static class ChannelLevels<U> {
+		/**
+		 * Bitmask of level ordinals for each user that has a level
+		 */
+		protected final Map<U, Integer> masks;
+		/**
+		 * Users of each level indexed by ordinal
+		 */
+		protected final Set<U>[] levelUsers;
+
+		protected ChannelLevels(Map<U, Integer> masks, Set<U>[] levelUsers) {
+			this.masks = masks;
+			this.levelUsers = levelUsers;
+		}
+	}
+}
@@ -19,9 +19,14 @@
 package org.pircbotx;
 
 import com.google.common.base.CharMatcher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.metrics.FlightRecorderEvents;
 import org.slf4j.MDC;
 
 /**
@@ -39,29 +44,112 @@ public final class Utils {
 	}
 	
 	/**
-	 * Try to parse int string, returning -1 if it fails.
-	 * @param longString
-	 * @return The string as an int or -1
+	 * Try to parse int string, returning the default value if it fails. Doesn't
+	 * throw and catch a NumberFormatException like Integer.parseInt
+	 * @param intString
+	 * @return The string as an int or the default value
 	 */
 	public static int tryParseInt(String intString, int defaultValue) {
-		try {
-			return Integer.parseInt(intString);
-		} catch (NumberFormatException e) {
+		if (intString == null)
 			return defaultValue;
-		}
+		return parseInt(intString, 0, intString.length(), defaultValue);
 	}
 
 	/**
-	 * Try to parse long string, returning -1 if it fails.
+	 * Try to parse long string, returning the default value if it fails.
 	 * @param longString
-	 * @return The string as a long or -1
+	 * @return The string as a long or the default value
 	 */
 	public static long tryParseLong(String longString, int defaultValue) {
-		try {
-			return Long.parseLong(longString);
-		} catch (NumberFormatException e) {
+		if (longString == null)
+			return defaultValue;
+		return parseLong(longString, 0, longString.length(), defaultValue);
+	}
+
+	/**
+	 * Parse part of the characters as an int without creating a String or
+	 * throwing an exception. Accepts the same ASCII input as Integer.parseInt:
+	 * an optional sign followed by digits
+	 * @param chars Characters to parse
+	 * @param start Index of the first character
+	 * @param end Index after the last character
+	 * @param defaultValue Value returned if the range isn't a valid int
+	 * @return The parsed int or the default value
+	 */
+	public static int parseInt(CharSequence chars, int start, int end, int defaultValue) {
+		long value = parseLong(chars, start, end, Long.MIN_VALUE);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
 			return defaultValue;
+		return (int) value;
+	}
+
+	/**
+	 * Parse part of the characters as a long without creating a String or
+	 * throwing an exception. See {@link #parseInt(java.lang.CharSequence, int, int, int) }
+	 * @return The parsed long or the default value
+	 */
+	public static long parseLong(CharSequence chars, int start, int end, long defaultValue) {
+		if (start >= end)
+			return defaultValue;
+		boolean negative = false;
+		char first = chars.charAt(start);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			if (++start == end)
+				return defaultValue;
+		}
+		//Accumulate negatively like Long.parseLong so Long.MIN_VALUE fits
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = chars.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || value < limit / 10)
+				return defaultValue;
+			value *= 10;
+			if (value < limit + digit)
+				return defaultValue;
+			value -= digit;
+		}
+		return negative ? value : -value;
+	}
+
+	/**
+	 * Check if the command is a 3 digit numeric reply, eg 001 or 353
+	 * @param command The command
+	 * @return True if the command is numeric
+	 */
+	public static boolean isNumeric(CharSequence command) {
+		return isNumeric(command, 0, command.length());
+	}
+
+	/**
+	 * Check if part of the characters is a 3 digit numeric reply without
+	 * creating a String
+	 * @param chars Characters to check
+	 * @param start Index of the first character
+	 * @param end Index after the last character
+	 * @return True if the range is numeric
+	 */
+	public static boolean isNumeric(CharSequence chars, int start, int end) {
+		if (end - start != 3)
+			return false;
+		for (int i = start; i < end; i++) {
+			char curChar = chars.charAt(i);
+			if (curChar < '0' || curChar > '9')
+				return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Parse a 3 digit numeric reply
+	 * @return The numeric or -1 if the range isn't numeric
+	 * @see #isNumeric(java.lang.CharSequence, int, int)
+	 */
+	public static int parseNumeric(CharSequence chars, int start, int end) {
+		if (!isNumeric(chars, start, end))
+			return -1;
+		return (chars.charAt(start) - '0') * 100 + (chars.charAt(start + 1) - '0') * 10 + (chars.charAt(start + 2) - '0');
 	}
 
 	public static <V> V tryGetIndex(List<V> list, int index, V defaultValue) {
@@ -71,6 +159,84 @@ public final class Utils {
 			return defaultValue;
 	}
 
+	/**
+	 * Hold a reference to a recycled event so it isn't reused while a listener
+	 * is queued or running. Does nothing for normal events
+	 * @see MessageEvent.Transient
+	 */
+	public static void acquireEvent(Event event) {
+		if (event instanceof MessageEvent.Transient)
+			((MessageEvent.Transient) event).acquire();
+	}
+
+	/**
+	 * Release a reference taken with {@link #acquireEvent(org.pircbotx.hooks.Event) }
+	 */
+	public static void releaseEvent(Event event) {
+		if (event instanceof MessageEvent.Transient)
+			((MessageEvent.Transient) event).release();
+	}
+
+	/**
+	 * Report a dispatched event to the bot's {@link org.pircbotx.metrics.Instrumentation}
+	 * and the flight recorder. Events without a bot are only recorded by the
+	 * flight recorder
+	 */
+	public static void recordDispatch(Event event) {
+		PircBotX bot = event.getBot();
+		if (bot != null)
+			bot.getConfiguration().getInstrumentation().eventDispatched(bot, event.getClass());
+		if (FlightRecorderEvents.DISPATCH.isEnabled())
+			FlightRecorderEvents.DISPATCH.commitNow(getBotId(bot), event.getClass());
+	}
+
+	/**
+	 * Start timing something for the bot's {@link org.pircbotx.metrics.Instrumentation}
+	 * @param bot The bot, can be null
+	 * @return {@link System#nanoTime() }, or 0 if there's no bot or its 
+	 * instrumentation is disabled
+	 */
+	public static long startTiming(PircBotX bot) {
+		if (bot == null || !bot.getConfiguration().getInstrumentation().isEnabled())
+			return 0;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Report that a listener finished executing an event to the bot's 
+	 * {@link org.pircbotx.metrics.Instrumentation}
+	 * @param bot The bot of the event, read before the event could be recycled
+	 * @param listener The listener that executed the event
+	 * @param startNanos {@link #startTiming(org.pircbotx.PircBotX) } when the
+	 * listener started, does nothing if 0
+	 */
+	public static void recordListener(PircBotX bot, Listener listener, long startNanos) {
+		if (startNanos != 0)
+			bot.getConfiguration().getInstrumentation().listenerExecuted(bot, listener, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Commit a {@link FlightRecorderEvents#LISTENER} event begun before the
+	 * listener executed the event
+	 * @param jfrEvent The begun flight recorder event, does nothing if null
+	 * @param bot The bot of the event, read before the event could be recycled
+	 * @param listener The listener that executed the event
+	 * @param event The event
+	 * @param exception What the listener threw or null
+	 */
+	public static void commitListenerEvent(Object jfrEvent, PircBotX bot, Listener listener, Event event, Throwable exception) {
+		if (jfrEvent != null)
+			FlightRecorderEvents.LISTENER.commit(jfrEvent, getBotId(bot), listener.getClass(), event.getClass(),
+					exception == null ? null : exception.getClass());
+	}
+
+	/**
+	 * @return The bot's id or -1 if there is no bot
+	 */
+	public static int getBotId(PircBotX bot) {
+		return (bot == null) ? -1 : bot.getBotId();
+	}
+
 	public static void addBotToMDC(PircBotX bot) {
 		Configuration<PircBotX> configuration = bot.getConfiguration();
 		MDC.put("pircbotx.id", String.valueOf(bot.getBotId()));
@@ -88,6 +254,17 @@ public final class Utils {
 		bot.sendRawLineToServer(rawLine);
 	}
 
+	/**
+	 * Writes encoded lines to the server. Needed so {@link PircBotX#sendRawBytesToServer(java.nio.ByteBuffer) }
+	 * can stay protected but still be callable from the org.pircbotx.output package
+	 * @param bot The bot that sends the lines
+	 * @param buffer Encoded lines including line endings
+	 * @throws IOException If writing to the socket fails
+	 */
+	public static void sendRawBytesToServer(PircBotX bot, ByteBuffer buffer) throws IOException {
+		bot.sendRawBytesToServer(buffer);
+	}
+
 	/**
 	 * Tokenize IRC raw input into it's components, keeping the
 	 * 'sender' and 'message' fields intact.
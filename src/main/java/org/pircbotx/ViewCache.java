@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache of immutable views, eg the sorted users of a channel, that are rebuilt
+ * only after the key changes. Keys hash to one of a fixed number of version
+ * stripes which {@link #invalidate(java.lang.Object) } bumps. A view is only
+ * returned if its stripe wasn't bumped since the view started being built, so a
+ * view built while another thread modifies the key is never cached.
+ * <p>
+ * Usage:
+ * <pre>
+ * V view = cache.get(key);
+ * if (view == null) {
+ *     long version = cache.getVersion(key);
+ *     view = cache.put(key, version, buildView(key));
+ * }
+ * </pre>
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ViewCache<K, V> {
+	protected static final int STRIPES = 64;
+	protected final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+	protected final ConcurrentMap<K, View<V>> views = new ConcurrentHashMap<K, View<V>>();
+
+	protected static int getStripe(Object key) {
+		int hash = key.hashCode();
+		return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+	}
+
+	/**
+	 * Get the version to pass to {@link #put(java.lang.Object, long, java.lang.Object) }.
+	 * Must be called before reading the data the view is built from
+	 */
+	public long getVersion(K key) {
+		return versions.get(getStripe(key));
+	}
+
+	/**
+	 * @return The cached view or null if there is none or its outdated
+	 */
+	public V get(K key) {
+		View<V> view = views.get(key);
+		if (view == null || view.version != versions.get(getStripe(key)))
+			return null;
+		return view.value;
+	}
+
+	/**
+	 * Cache the view built after {@link #getVersion(java.lang.Object) } returned
+	 * the given version
+	 * @return The view
+	 */
+	public V put(K key, long version, V value) {
+		views.put(key, new View<V>(version, value));
+		return value;
+	}
+
+	/**
+	 * Drop the view of the key. Must be called after the data changed
+	 */
+	public void invalidate(K key) {
+		versions.incrementAndGet(getStripe(key));
+		views.remove(key);
+	}
+
+	public void clear() {
+		for (int i = 0; i < STRIPES; i++)
+			versions.incrementAndGet(i);
+		views.clear();
+	}
+
+	protected static class View<V> {
+		protected final long version;
+		protected final V value;
+
+		protected View(long version, V value) {
+			this.version = version;
+			this.value = value;
+		}
+	}
+}
@@ -18,7 +18,6 @@
  */
 package org.pircbotx.hooks;
 
-import com.google.common.collect.ComparisonChain;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.managers.ListenerManager;
 import org.pircbotx.hooks.types.GenericEvent;
@@ -29,6 +28,7 @@ import org.pircbotx.hooks.types.GenericEvent;
  */
 public abstract class Event<T extends PircBotX> implements GenericEvent<T> {
 	protected final long timestamp;
+	protected final long nanoTime;
 	protected final T bot;
 	protected final long id;
 
@@ -42,6 +42,7 @@ public abstract class Event<T extends PircBotX> implements GenericEvent<T> {
 
 	public Event(T bot, ListenerManager listenerManager) {
 		this.timestamp = System.currentTimeMillis();
+		this.nanoTime = bot != null && bot.getConfiguration().isEventNanoTimestamps() ? System.nanoTime() : 0;
 		this.bot = bot;
 		this.id = listenerManager.incrementCurrentId();
 	}
@@ -62,6 +63,16 @@ public abstract class Event<T extends PircBotX> implements GenericEvent<T> {
 		return timestamp;
 	}
 
+	/**
+	 * Returns the {@link System#nanoTime() } of when the event was created, only
+	 * useful for comparing to other events.
+	 * @return The nano time or 0 if 
+	 * {@link org.pircbotx.Configuration#isEventNanoTimestamps() } is disabled
+	 */
+	public long getNanoTime() {
+		return nanoTime;
+	}
+
 	/**
 	 * Returns the id of this event. This id is guaranteed to be unique in the
 	 * context of other events dispatched from the same listener manager.
@@ -81,17 +92,27 @@ public abstract class Event<T extends PircBotX> implements GenericEvent<T> {
 	public abstract void respond(String response);
 
 	/**
-	 * Compare events by {@link #getTimestamp()} and then {@link #getId()} to 
-	 * order by when they are received. This is useful for sorting lists of Channel objects.
+	 * Compare events by {@link #getTimestamp()}, {@link #getNanoTime()} if
+	 * both events have one, and then {@link #getId()} to order by when they
+	 * are received. This is useful for sorting lists of Channel objects.
 	 * @param other Other Event to compare to
 	 * @return the result of the comparison
 	 */
 	public int compareTo(Event<T> other) {
-		ComparisonChain comparison = ComparisonChain.start()
-				.compare(getTimestamp(), other.getTimestamp())
-				.compare(getId(), other.getId());
-		if (bot != null && other.getBot() != null)
-			comparison.compare(bot.getBotId(), other.getBot().getBotId());
-		return comparison.result();
+		//Use getters as recycled events override them
+		long timestamp = getTimestamp(), otherTimestamp = other.getTimestamp();
+		if (timestamp != otherTimestamp)
+			return timestamp < otherTimestamp ? -1 : 1;
+		long nanoTime = getNanoTime(), otherNanoTime = other.getNanoTime();
+		if (nanoTime != 0 && otherNanoTime != 0 && nanoTime != otherNanoTime)
+			//nanoTime can overflow so only the difference is meaningful
+			return nanoTime - otherNanoTime < 0 ? -1 : 1;
+		long id = getId(), otherId = other.getId();
+		if (id != otherId)
+			return id < otherId ? -1 : 1;
+		T bot = getBot(), otherBot = other.getBot();
+		if (bot == null || otherBot == null || bot.getBotId() == otherBot.getBotId())
+			return 0;
+		return bot.getBotId() < otherBot.getBotId() ? -1 : 1;
 	}
 }
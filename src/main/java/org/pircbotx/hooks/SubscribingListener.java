@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableSet;
+import org.pircbotx.PircBotX;
+
+/**
+ * A listener that declares up front which events it wants. Listener managers
+ * will only dispatch events that are instances of one of the subscribed classes
+ * or interfaces, so a {@link org.pircbotx.hooks.types.GenericMessageEvent}
+ * subscription receives every message event.
+ * <p>
+ * Subscriptions are read once when the listener is added, changing them
+ * afterwards has no effect
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ * @see org.pircbotx.hooks.managers.ListenerIndex
+ */
+public interface SubscribingListener<T extends PircBotX> extends Listener<T> {
+	/**
+	 * @return The event classes or interfaces this listener handles
+	 */
+	public ImmutableSet<Class<?>> getSubscribedEvents();
+}
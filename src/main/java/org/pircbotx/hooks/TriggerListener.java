@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableList;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.types.GenericMessageEvent;
+
+/**
+ * Receives messages that matched one of its triggers registered with a
+ * {@link TriggerRouter}
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public interface TriggerListener<T extends PircBotX> {
+	/**
+	 * Called once per message that matched at least one trigger
+	 * @param event The message
+	 * @param triggers The triggers of this listener that matched, as registered
+	 */
+	public void onTrigger(GenericMessageEvent<T> event, ImmutableList<String> triggers) throws Exception;
+}
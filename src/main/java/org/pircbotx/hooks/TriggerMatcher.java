@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import lombok.Getter;
+import lombok.NonNull;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Matches many literal triggers against a message in a single pass using an
+ * Aho-Corasick automaton. Triggers and messages are lower cased with the 
+ * given locale so matching ignores case.
+ * <p>
+ * A matcher is immutable, create a new one with a {@link Builder} to change
+ * the triggers
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ * @param <V> Value returned for each matched trigger
+ * @see TriggerRouter
+ */
+public class TriggerMatcher<V> {
+	public enum Type {
+		/**
+		 * Message starts with the trigger, eg a <code>!pokedex</code> command
+		 */
+		PREFIX,
+		/**
+		 * Trigger appears anywhere in the message as a whole word
+		 */
+		WORD,
+		/**
+		 * Trigger appears anywhere in the message, even inside a word
+		 */
+		CONTAINS
+	}
+	@Getter
+	protected final Locale locale;
+	protected final String[] triggers;
+	protected final Type[] types;
+	protected final Object[] values;
+	//Automaton: sorted transition characters and target states for each state
+	protected final char[][] transitionChars;
+	protected final int[][] transitionStates;
+	protected final int[] failStates;
+	//Triggers ending at each state, including through fail states
+	protected final int[][] outputs;
+
+	protected TriggerMatcher(Locale locale, List<String> triggers, List<Type> types, List<V> values) {
+		this.locale = locale;
+		this.triggers = triggers.toArray(new String[triggers.size()]);
+		this.types = types.toArray(new Type[types.size()]);
+		this.values = values.toArray();
+
+		//Build the trie
+		List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+		List<List<Integer>> trieOutputs = new ArrayList<List<Integer>>();
+		trie.add(new TreeMap<Character, Integer>());
+		trieOutputs.add(new ArrayList<Integer>());
+		for (int i = 0; i < this.triggers.length; i++) {
+			int state = 0;
+			for (int j = 0; j < this.triggers[i].length(); j++) {
+				char curChar = this.triggers[i].charAt(j);
+				Integer nextState = trie.get(state).get(curChar);
+				if (nextState == null) {
+					nextState = trie.size();
+					trie.get(state).put(curChar, nextState);
+					trie.add(new TreeMap<Character, Integer>());
+					trieOutputs.add(new ArrayList<Integer>());
+				}
+				state = nextState;
+			}
+			trieOutputs.get(state).add(i);
+		}
+
+		//Link each state to the longest suffix that is also in the trie, breadth first
+		//so shorter states are done first
+		int stateCount = trie.size();
+		failStates = new int[stateCount];
+		Queue<Integer> queue = new ArrayDeque<Integer>();
+		for (int curChild : trie.get(0).values())
+			queue.add(curChild);
+		while (!queue.isEmpty()) {
+			int state = queue.remove();
+			for (Map.Entry<Character, Integer> curEntry : trie.get(state).entrySet()) {
+				char curChar = curEntry.getKey();
+				int child = curEntry.getValue();
+				int fail = failStates[state];
+				while (fail != 0 && !trie.get(fail).containsKey(curChar))
+					fail = failStates[fail];
+				Integer failChild = trie.get(fail).get(curChar);
+				failStates[child] = failChild != null ? failChild : 0;
+				trieOutputs.get(child).addAll(trieOutputs.get(failStates[child]));
+				queue.add(child);
+			}
+		}
+
+		//Flatten into arrays
+		transitionChars = new char[stateCount][];
+		transitionStates = new int[stateCount][];
+		outputs = new int[stateCount][];
+		for (int i = 0; i < stateCount; i++) {
+			TreeMap<Character, Integer> curTransitions = trie.get(i);
+			transitionChars[i] = new char[curTransitions.size()];
+			transitionStates[i] = new int[curTransitions.size()];
+			int j = 0;
+			for (Map.Entry<Character, Integer> curEntry : curTransitions.entrySet()) {
+				transitionChars[i][j] = curEntry.getKey();
+				transitionStates[i][j++] = curEntry.getValue();
+			}
+			List<Integer> curOutputs = trieOutputs.get(i);
+			outputs[i] = new int[curOutputs.size()];
+			for (j = 0; j < outputs[i].length; j++)
+				outputs[i][j] = curOutputs.get(j);
+		}
+	}
+
+	/**
+	 * Find the values of every trigger in the message
+	 * @param message The message to search
+	 * @return Matched values in the order their triggers end in the message,
+	 * without duplicates
+	 */
+	@SuppressWarnings("unchecked")
+	public ImmutableList<V> match(@NonNull String message) {
+		String text = message.toLowerCase(locale);
+		Set<V> matched = null;
+		int state = 0;
+		for (int i = 0, length = text.length(); i < length; i++) {
+			char curChar = text.charAt(i);
+			int nextState;
+			while ((nextState = getTransition(state, curChar)) == -1 && state != 0)
+				state = failStates[state];
+			state = nextState == -1 ? 0 : nextState;
+			for (int curTrigger : outputs[state]) {
+				int start = i - triggers[curTrigger].length() + 1;
+				if (!isMatch(types[curTrigger], text, start, i + 1))
+					continue;
+				if (matched == null)
+					matched = new LinkedHashSet<V>();
+				matched.add((V) values[curTrigger]);
+			}
+		}
+		return matched == null ? ImmutableList.<V>of() : ImmutableList.copyOf(matched);
+	}
+
+	protected int getTransition(int state, char curChar) {
+		int index = Arrays.binarySearch(transitionChars[state], curChar);
+		return index < 0 ? -1 : transitionStates[state][index];
+	}
+
+	protected static boolean isMatch(Type type, String text, int start, int end) {
+		switch (type) {
+			case PREFIX:
+				return start == 0;
+			case WORD:
+				return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+						&& (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * @return Number of triggers in this matcher
+	 */
+	public int getTriggerCount() {
+		return triggers.length;
+	}
+
+	public static class Builder<V> {
+		protected final List<String> triggers = new ArrayList<String>();
+		protected final List<Type> types = new ArrayList<Type>();
+		protected final List<V> values = new ArrayList<V>();
+
+		/**
+		 * Add a trigger
+		 * @param trigger Text to match, case is ignored
+		 * @param type How the trigger must appear in the message
+		 * @param value Value returned by {@link TriggerMatcher#match(java.lang.String) }
+		 * when the trigger matches
+		 * @return This builder
+		 */
+		public Builder<V> add(@NonNull String trigger, @NonNull Type type, @NonNull V value) {
+			checkArgument(trigger.length() > 0, "Trigger cannot be empty");
+			triggers.add(trigger);
+			types.add(type);
+			values.add(value);
+			return this;
+		}
+
+		/**
+		 * Compile the triggers added so far
+		 * @param locale Locale to lower case triggers and messages with, usually
+		 * {@link org.pircbotx.Configuration#getLocale() }
+		 * @return A new matcher
+		 */
+		public TriggerMatcher<V> build(@NonNull Locale locale) {
+			List<String> lowerTriggers = new ArrayList<String>(triggers.size());
+			for (String curTrigger : triggers)
+				lowerTriggers.add(curTrigger.toLowerCase(locale));
+			return new TriggerMatcher<V>(locale, lowerTriggers, types, values);
+		}
+	}
+}
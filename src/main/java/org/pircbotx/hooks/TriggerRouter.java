@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.pircbotx.hooks.types.GenericMessageEvent;
+
+/**
+ * Routes channel and private messages to {@link TriggerListener}s based on the triggers they
+ * registered, eg command names or Pokemon names. All triggers are compiled
+ * into one {@link TriggerMatcher} so each message is scanned once no matter
+ * how many triggers there are, and only listeners whose triggers matched are
+ * called.
+ * <p>
+ * Add the router to the listener manager like any other listener. The matcher
+ * is rebuilt on the next message after triggers change, using the
+ * {@link org.pircbotx.Configuration#getLocale() locale} of the bot that
+ * received it
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public class TriggerRouter<T extends PircBotX> extends ListenerAdapter<T> {
+	protected final List<Registration<T>> registrations = new ArrayList<Registration<T>>();
+	protected volatile TriggerMatcher<Registration<T>> matcher;
+
+	/**
+	 * Register triggers that must appear as whole words in the message
+	 * @return This router
+	 */
+	public TriggerRouter<T> addTriggers(TriggerListener<T> listener, String... triggers) {
+		return addTriggers(listener, TriggerMatcher.Type.WORD, triggers);
+	}
+
+	/**
+	 * Register triggers that the message must start with
+	 * @return This router
+	 */
+	public TriggerRouter<T> addPrefixes(TriggerListener<T> listener, String... prefixes) {
+		return addTriggers(listener, TriggerMatcher.Type.PREFIX, prefixes);
+	}
+
+	/**
+	 * Register triggers for a listener
+	 * @param listener Listener called when any trigger matches
+	 * @param type How the triggers must appear in the message
+	 * @param triggers Triggers to match, case is ignored
+	 * @return This router
+	 */
+	public synchronized TriggerRouter<T> addTriggers(@NonNull TriggerListener<T> listener, @NonNull TriggerMatcher.Type type, String... triggers) {
+		for (String curTrigger : triggers)
+			registrations.add(new Registration<T>(listener, curTrigger, type));
+		matcher = null;
+		return this;
+	}
+
+	/**
+	 * Remove all triggers of the listener
+	 * @return True if the listener had any triggers
+	 */
+	public synchronized boolean removeTriggers(TriggerListener<T> listener) {
+		boolean removed = false;
+		for (Iterator<Registration<T>> itr = registrations.iterator(); itr.hasNext();)
+			if (itr.next().listener == listener) {
+				itr.remove();
+				removed = true;
+			}
+		if (removed)
+			matcher = null;
+		return removed;
+	}
+
+	@Override
+	public void onMessage(MessageEvent<T> event) throws Exception {
+		route(event);
+	}
+
+	@Override
+	public void onPrivateMessage(PrivateMessageEvent<T> event) throws Exception {
+		route(event);
+	}
+
+	protected void route(GenericMessageEvent<T> event) {
+		ImmutableList<Registration<T>> matched = getMatcher(event.getBot().getConfiguration().getLocale()).match(event.getMessage());
+		if (matched.isEmpty())
+			return;
+
+		//Group triggers by listener, keeping the order listeners were matched
+		ListMultimap<TriggerListener<T>, String> matchedTriggers = LinkedListMultimap.create();
+		for (Registration<T> curRegistration : matched)
+			matchedTriggers.put(curRegistration.listener, curRegistration.trigger);
+		for (TriggerListener<T> curListener : matchedTriggers.keySet())
+			try {
+				curListener.onTrigger(event, ImmutableList.copyOf(matchedTriggers.get(curListener)));
+			} catch (Exception e) {
+				log.error("Exception encountered when executing event " + event + " on trigger listener " + curListener, e);
+			}
+	}
+
+	protected TriggerMatcher<Registration<T>> getMatcher(Locale locale) {
+		TriggerMatcher<Registration<T>> curMatcher = matcher;
+		if (curMatcher != null && curMatcher.getLocale().equals(locale))
+			return curMatcher;
+		synchronized (this) {
+			if (matcher == null || !matcher.getLocale().equals(locale)) {
+				TriggerMatcher.Builder<Registration<T>> builder = new TriggerMatcher.Builder<Registration<T>>();
+				for (Registration<T> curRegistration : registrations)
+					builder.add(curRegistration.trigger, curRegistration.type, curRegistration);
+				matcher = builder.build(locale);
+			}
+			return matcher;
+		}
+	}
+
+	@RequiredArgsConstructor
+	protected static class Registration<T extends PircBotX> {
+		protected final TriggerListener<T> listener;
+		protected final String trigger;
+		protected final TriggerMatcher.Type type;
+	}
+}
@@ -26,6 +26,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import lombok.NonNull;
 import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.events.MessageEvent;
 
 /**
  * Stores all events in a queue for processing. This is useful for sequential 
@@ -103,6 +104,9 @@ public class WaitForQueue implements Closeable {
 
 	protected class WaitForQueueListener implements Listener {
 		public void onEvent(Event event) throws Exception {
+			//Events are used after this returns so recycled events must be kept
+			if (event instanceof MessageEvent)
+				event = ((MessageEvent) event).retain();
 			eventQueue.add(event);
 		}
 	}
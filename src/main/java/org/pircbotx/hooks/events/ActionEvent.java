@@ -24,6 +24,7 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 import org.pircbotx.Channel;
+import org.pircbotx.MessageTags;
 import org.pircbotx.PircBotX;
 import org.pircbotx.User;
 import org.pircbotx.hooks.Event;
@@ -43,6 +44,11 @@ public class ActionEvent<T extends PircBotX> extends Event<T> implements Generic
 	@Getter(onMethod = @_(@Override))
 	protected final Channel channel;
 	protected final String action;
+	/**
+	 * IRCv3 message tags sent with the message
+	 */
+	@Getter(onMethod = @_(@Override))
+	protected final MessageTags tags;
 
 	/**
 	 * Default constructor to setup object. Timestamp is automatically set
@@ -52,12 +58,14 @@ public class ActionEvent<T extends PircBotX> extends Event<T> implements Generic
 	 * action. A value of <code>null</code> means that this is
 	 * is a private message, not a channel
 	 * @param action The action carried out by the user.
+	 * @param tags Message tags sent with the action
 	 */
-	public ActionEvent(T bot, @NonNull User user, Channel channel, @NonNull String action) {
+	public ActionEvent(T bot, @NonNull User user, Channel channel, @NonNull String action, @NonNull MessageTags tags) {
 		super(bot);
 		this.user = user;
 		this.channel = channel;
 		this.action = action;
+		this.tags = tags;
 	}
 
 	/**
@@ -18,8 +18,10 @@
  */
 package org.pircbotx.hooks.events;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import org.pircbotx.Channel;
+import org.pircbotx.MessageTags;
 import org.pircbotx.User;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -43,6 +45,11 @@ public class MessageEvent<T extends PircBotX> extends Event<T> implements Generi
 	protected final User user;
 	@Getter(onMethod = @_(@Override))
 	protected final String message;
+	/**
+	 * IRCv3 message tags sent with the message
+	 */
+	@Getter(onMethod = @_(@Override))
+	protected final MessageTags tags;
 
 	/**
 	 * Default constructor to setup object. Timestamp is automatically set
@@ -50,12 +57,32 @@ public class MessageEvent<T extends PircBotX> extends Event<T> implements Generi
 	 * @param channel The channel to which the message was sent.
 	 * @param user The user who sent the message.
 	 * @param message The actual message sent to the channel.
+	 * @param tags Message tags sent with the message
 	 */
-	public MessageEvent(T bot, @NonNull Channel channel, @NonNull User user, @NonNull String message) {
+	public MessageEvent(T bot, @NonNull Channel channel, @NonNull User user, @NonNull String message, @NonNull MessageTags tags) {
 		super(bot);
 		this.channel = channel;
 		this.user = user;
 		this.message = message;
+		this.tags = tags;
+	}
+
+	/**
+	 * Keep this event after the listener returns. Normal events are never
+	 * reused so this returns itself, see {@link Transient#retain() }
+	 * @return An event that is safe to keep
+	 */
+	public MessageEvent<T> retain() {
+		return this;
+	}
+
+	/**
+	 * Get an immutable copy of this event. Normal events are already immutable
+	 * so this returns itself, see {@link Transient#copy() }
+	 * @return An event that is safe to keep
+	 */
+	public MessageEvent<T> copy() {
+		return this;
 	}
 
 	/**
@@ -68,4 +95,170 @@ public class MessageEvent<T extends PircBotX> extends Event<T> implements Generi
 	public void respond(@Nullable String response) {
 		getChannel().send().message(getUser(), response);
 	}
+
+	/**
+	 * A recycled message event used when 
+	 * {@link org.pircbotx.Configuration#isTransientMessageEvents() } is enabled.
+	 * The InputParser fills it with a new message once every listener that 
+	 * received it has returned, so it is only valid during 
+	 * {@link org.pircbotx.hooks.Listener#onEvent(org.pircbotx.hooks.Event) }.
+	 * Listeners that keep the event must call {@link #retain() } or 
+	 * {@link #copy() }.
+	 * <p>
+	 * Listener managers that run listeners asynchronously must hold a reference
+	 * with {@link org.pircbotx.Utils#acquireEvent(org.pircbotx.hooks.Event) }
+	 * until the listener returns
+	 */
+	public static class Transient<T extends PircBotX> extends MessageEvent<T> {
+		protected final AtomicInteger references = new AtomicInteger(1);
+		protected volatile boolean retained = false;
+		protected Channel transientChannel;
+		protected User transientUser;
+		protected String transientMessage;
+		protected MessageTags transientTags;
+		protected long transientId;
+		protected long transientTimestamp;
+		protected long transientNanoTime;
+
+		/**
+		 * Create a new event that is already acquired by the caller
+		 */
+		public Transient(T bot, @NonNull Channel channel, @NonNull User user, @NonNull String message, @NonNull MessageTags tags) {
+			super(bot, channel, user, message, tags);
+			transientChannel = channel;
+			transientUser = user;
+			transientMessage = message;
+			transientTags = tags;
+			transientId = super.getId();
+			transientTimestamp = super.getTimestamp();
+			transientNanoTime = super.getNanoTime();
+		}
+
+		/**
+		 * Try to claim this event for a new message
+		 * @return True if nothing references this event and it can be reset
+		 */
+		public boolean tryReuse() {
+			if (!references.compareAndSet(0, 1))
+				return false;
+			//Checked after claiming since a listener can retain right before releasing
+			if (retained) {
+				references.decrementAndGet();
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Fill this event with a new message. Only call after 
+		 * {@link #tryReuse() } succeeds
+		 */
+		public void reset(@NonNull Channel channel, @NonNull User user, @NonNull String message, @NonNull MessageTags tags) {
+			T bot = getBot();
+			transientChannel = channel;
+			transientUser = user;
+			transientMessage = message;
+			transientTags = tags;
+			transientId = bot.getConfiguration().getListenerManager().incrementCurrentId();
+			transientTimestamp = System.currentTimeMillis();
+			transientNanoTime = bot.getConfiguration().isEventNanoTimestamps() ? System.nanoTime() : 0;
+		}
+
+		public void acquire() {
+			references.incrementAndGet();
+		}
+
+		public void release() {
+			references.decrementAndGet();
+		}
+
+		/**
+		 * Stop this event from being reused so it can be kept
+		 * @return This event
+		 */
+		@Override
+		public MessageEvent<T> retain() {
+			retained = true;
+			return this;
+		}
+
+		/**
+		 * @return An immutable copy of this event with the same id and timestamps
+		 */
+		@Override
+		public MessageEvent<T> copy() {
+			return new Copy<T>(this);
+		}
+
+		public boolean isRetained() {
+			return retained;
+		}
+
+		@Override
+		public Channel getChannel() {
+			return transientChannel;
+		}
+
+		@Override
+		public User getUser() {
+			return transientUser;
+		}
+
+		@Override
+		public String getMessage() {
+			return transientMessage;
+		}
+
+		@Override
+		public MessageTags getTags() {
+			return transientTags;
+		}
+
+		@Override
+		public long getId() {
+			return transientId;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return transientTimestamp;
+		}
+
+		@Override
+		public long getNanoTime() {
+			return transientNanoTime;
+		}
+	}
+
+	/**
+	 * Immutable copy of a {@link Transient} event that keeps its id and 
+	 * timestamps
+	 */
+	protected static class Copy<T extends PircBotX> extends MessageEvent<T> {
+		protected final long copiedId;
+		protected final long copiedTimestamp;
+		protected final long copiedNanoTime;
+
+		public Copy(MessageEvent<T> other) {
+			super(other.getBot(), other.getChannel(), other.getUser(), other.getMessage(), other.getTags());
+			this.copiedId = other.getId();
+			this.copiedTimestamp = other.getTimestamp();
+			this.copiedNanoTime = other.getNanoTime();
+		}
+
+		@Override
+		public long getId() {
+			return copiedId;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return copiedTimestamp;
+		}
+
+		@Override
+		public long getNanoTime() {
+			return copiedNanoTime;
+		}
+	}
 }
@@ -24,6 +24,7 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 import org.pircbotx.Channel;
+import org.pircbotx.MessageTags;
 import org.pircbotx.User;
 import org.pircbotx.hooks.Event;
 import org.pircbotx.PircBotX;
@@ -42,6 +43,11 @@ public class NoticeEvent<T extends PircBotX> extends Event<T> implements Generic
 	@Getter(onMethod = @_(@Override))
 	protected final Channel channel;
 	protected final String notice;
+	/**
+	 * IRCv3 message tags sent with the message
+	 */
+	@Getter(onMethod = @_(@Override))
+	protected final MessageTags tags;
 
 	/**
 	 * Default constructor to setup object. Timestamp is automatically set
@@ -50,12 +56,14 @@ public class NoticeEvent<T extends PircBotX> extends Event<T> implements Generic
 	 * @param channel The target channel of the notice. A value of <code>null</code>
 	 * means that the target is us
 	 * @param notice The notice message.
+	 * @param tags Message tags sent with the notice
 	 */
-	public NoticeEvent(T bot, @NonNull User user, Channel channel, @NonNull String notice) {
+	public NoticeEvent(T bot, @NonNull User user, Channel channel, @NonNull String notice, @NonNull MessageTags tags) {
 		super(bot);
 		this.user = user;
 		this.channel = channel;
 		this.notice = notice;
+		this.tags = tags;
 	}
 
 	/**
@@ -19,6 +19,7 @@
 package org.pircbotx.hooks.events;
 
 import javax.annotation.Nullable;
+import org.pircbotx.MessageTags;
 import org.pircbotx.User;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -39,17 +40,24 @@ public class PrivateMessageEvent<T extends PircBotX> extends Event<T> implements
 	protected final User user;
 	@Getter(onMethod = @_(@Override))
 	protected final String message;
+	/**
+	 * IRCv3 message tags sent with the message
+	 */
+	@Getter(onMethod = @_(@Override))
+	protected final MessageTags tags;
 
 	/**
 	 * Default constructor to setup object. Timestamp is automatically set
 	 * to current time as reported by {@link System#currentTimeMillis() }
 	 * @param user The user who sent the private message.
 	 * @param message The actual message.
+	 * @param tags Message tags sent with the message
 	 */
-	public PrivateMessageEvent(T bot, @NonNull User user, @NonNull String message) {
+	public PrivateMessageEvent(T bot, @NonNull User user, @NonNull String message, @NonNull MessageTags tags) {
 		super(bot);
 		this.user = user;
 		this.message = message;
+		this.tags = tags;
 	}
 
 	/**
@@ -60,7 +60,8 @@ public class BackgroundListenerManager extends ThreadedListenerManager {
 		//Dispatch to both standard listeners and background listeners
 		super.dispatchEvent(event);
 		for (Map.Entry<Listener, ExecutorService> curEntry : backgroundListeners.entrySet())
-			submitEvent(curEntry.getValue(), curEntry.getKey(), event);
+			if (ListenerIndex.isSubscribed(curEntry.getKey(), event.getClass()))
+				submitEvent(curEntry.getValue(), curEntry.getKey(), event);
 	}
 
 	@Override
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Hands out event ids from a shared counter, or optionally in per-thread 
+ * blocks so threads creating events don't all contend on a single counter.
+ * <p>
+ * The default block size of 1 uses the shared counter directly, giving 
+ * strictly sequential ids. With larger blocks ids are unique across all 
+ * threads and increase within a thread, but events created at the same time 
+ * on different threads can have ids from different blocks, so 
+ * {@link org.pircbotx.hooks.Event#compareTo(org.pircbotx.hooks.Event) } can
+ * order events from the same millisecond differently than they were created
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class EventIdAllocator {
+	public static final int DEFAULT_BLOCK_SIZE = 1;
+	protected final int blockSize;
+	protected final AtomicLong nextBlock = new AtomicLong();
+	protected volatile int generation;
+	protected final ThreadLocal<Block> blocks = new ThreadLocal<Block>() {
+		@Override
+		protected Block initialValue() {
+			return new Block();
+		}
+	};
+
+	public EventIdAllocator() {
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	public EventIdAllocator(int blockSize) {
+		checkArgument(blockSize > 0, "Block size must be positive");
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * @return A new unique id
+	 */
+	public long nextId() {
+		if (blockSize == 1)
+			return nextBlock.getAndIncrement();
+		Block block = blocks.get();
+		if (block.next == block.end || block.generation != generation) {
+			//Read the generation first so a concurrent reset discards this block
+			block.generation = generation;
+			block.next = nextBlock.getAndAdd(blockSize);
+			block.end = block.next + blockSize;
+		}
+		return block.next++;
+	}
+
+	/**
+	 * The next id that will be reserved. Ids already reserved in thread blocks
+	 * but not handed out yet are lower than this
+	 * @return The next unreserved id
+	 */
+	public long getCurrentId() {
+		return nextBlock.get();
+	}
+
+	/**
+	 * Start handing out ids from the given id, discarding any reserved blocks
+	 * @param currentId The next id
+	 */
+	public synchronized void setCurrentId(long currentId) {
+		nextBlock.set(currentId);
+		generation++;
+	}
+
+	protected static class Block {
+		protected long next;
+		protected long end;
+		protected int generation;
+	}
+}
@@ -28,6 +28,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.pircbotx.hooks.Event;
 import org.pircbotx.hooks.Listener;
 import org.pircbotx.PircBotX;
+import org.pircbotx.Utils;
+import org.pircbotx.metrics.FlightRecorderEvents;
 
 /**
  * Generic ListenerManager based off of a normal event system. This is backed
@@ -51,16 +53,27 @@ import org.pircbotx.PircBotX;
 @Slf4j
 public class GenericListenerManager<B extends PircBotX> implements ListenerManager<B> {
 	protected Set<Listener<B>> listeners = new HashSet<Listener<B>>();
+	protected final ListenerIndex<B> listenerIndex = new ListenerIndex<B>();
 	@Getter
 	@Setter
 	protected long currentId = 0;
 
 	public boolean addListener(Listener listener) {
-		return listeners.add(listener);
+		@SuppressWarnings("unchecked")
+		Listener<B> typedListener = (Listener<B>) listener;
+		if (!listeners.add(typedListener))
+			return false;
+		listenerIndex.add(typedListener);
+		return true;
 	}
 
 	public boolean removeListener(Listener listener) {
-		return listeners.remove(listener);
+		@SuppressWarnings("unchecked")
+		Listener<B> typedListener = (Listener<B>) listener;
+		if (!listeners.remove(typedListener))
+			return false;
+		listenerIndex.remove(typedListener);
+		return true;
 	}
 
 	public ImmutableSet<Listener<B>> getListeners() {
@@ -68,9 +81,23 @@ public class GenericListenerManager<B extends PircBotX> implements ListenerManag
 	}
 
 	public void dispatchEvent(Event<B> event) {
+		Utils.recordDispatch(event);
+		B bot = event.getBot();
 		try {
-			for (Listener<B> curListener : listeners)
-				curListener.onEvent(event);
+			for (Listener<B> curListener : listenerIndex.getListeners(event.getClass())) {
+				long startNanos = Utils.startTiming(bot);
+				Object jfrEvent = FlightRecorderEvents.LISTENER.begin();
+				Exception exception = null;
+				try {
+					curListener.onEvent(event);
+				} catch (Exception e) {
+					exception = e;
+					throw e;
+				} finally {
+					Utils.commitListenerEvent(jfrEvent, bot, curListener, event, exception);
+				}
+				Utils.recordListener(bot, curListener, startNanos);
+			}
 		} catch (Exception e) {
 			log.error("Exception encountered when dispatching event " + event, e);
 		}
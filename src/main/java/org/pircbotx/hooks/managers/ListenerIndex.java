@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.SubscribingListener;
+
+/**
+ * Index of which listeners handle which events, so managers only schedule
+ * listeners that will actually do something with the event.
+ * <p>
+ * Subscriptions are found once per listener when added:
+ * <ul>
+ * <li>{@link SubscribingListener}s declare them</li>
+ * <li>{@link ListenerAdapter} subclasses subscribe to the event of each 
+ * overridden <code>on*</code> method. Overriding 
+ * {@link ListenerAdapter#onEvent(org.pircbotx.hooks.Event) } subscribes to 
+ * everything</li>
+ * <li>Any other listener subscribes to everything</li>
+ * </ul>
+ * Lookups are cached per event class, including matches through supertypes
+ * and <code>Generic*Event</code> interfaces. The cache is cleared whenever a
+ * listener is added or removed.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ListenerIndex<B extends PircBotX> {
+	protected static final ImmutableSet<Class<?>> ALL_EVENTS = ImmutableSet.<Class<?>>of(Event.class);
+	protected static final ConcurrentMap<Class<?>, ImmutableSet<Class<?>>> ADAPTER_SUBSCRIPTIONS = new ConcurrentHashMap<Class<?>, ImmutableSet<Class<?>>>();
+	protected final Map<Listener<B>, ImmutableSet<Class<?>>> subscriptions = new LinkedHashMap<Listener<B>, ImmutableSet<Class<?>>>();
+	protected final ConcurrentMap<Class<?>, ImmutableList<Listener<B>>> routes = new ConcurrentHashMap<Class<?>, ImmutableList<Listener<B>>>();
+
+	public synchronized void add(Listener<B> listener) {
+		subscriptions.put(listener, getSubscribedEvents(listener));
+		routes.clear();
+	}
+
+	public synchronized void remove(Listener<B> listener) {
+		if (subscriptions.remove(listener) != null)
+			routes.clear();
+	}
+
+	/**
+	 * Get the listeners subscribed to the given event class
+	 * @param eventClass The class of the event being dispatched
+	 * @return An immutable, cached list of listeners in the order they were added
+	 */
+	public ImmutableList<Listener<B>> getListeners(Class<?> eventClass) {
+		ImmutableList<Listener<B>> route = routes.get(eventClass);
+		if (route != null)
+			return route;
+		//Build under the lock so a concurrent add or remove can't cache a stale route
+		synchronized (this) {
+			route = routes.get(eventClass);
+			if (route == null) {
+				ImmutableList.Builder<Listener<B>> builder = ImmutableList.builder();
+				for (Map.Entry<Listener<B>, ImmutableSet<Class<?>>> curEntry : subscriptions.entrySet())
+					if (isSubscribed(curEntry.getValue(), eventClass))
+						builder.add(curEntry.getKey());
+				routes.put(eventClass, route = builder.build());
+			}
+			return route;
+		}
+	}
+
+	/**
+	 * Check if the listener handles the given event class without using an
+	 * index, for managers that store some listeners separately
+	 */
+	public static boolean isSubscribed(Listener<?> listener, Class<?> eventClass) {
+		return isSubscribed(getSubscribedEvents(listener), eventClass);
+	}
+
+	protected static boolean isSubscribed(ImmutableSet<Class<?>> subscribedEvents, Class<?> eventClass) {
+		for (Class<?> curSubscribed : subscribedEvents)
+			if (curSubscribed.isAssignableFrom(eventClass))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Get the event classes and interfaces the listener handles
+	 * @param listener The listener to introspect
+	 * @return A set of event classes, containing only {@link Event} if the 
+	 * listener handles everything
+	 */
+	public static ImmutableSet<Class<?>> getSubscribedEvents(Listener<?> listener) {
+		if (listener instanceof SubscribingListener)
+			return ((SubscribingListener<?>) listener).getSubscribedEvents();
+		if (!(listener instanceof ListenerAdapter))
+			return ALL_EVENTS;
+		ImmutableSet<Class<?>> subscribedEvents = ADAPTER_SUBSCRIPTIONS.get(listener.getClass());
+		if (subscribedEvents == null) {
+			subscribedEvents = introspectAdapter(listener.getClass());
+			ADAPTER_SUBSCRIPTIONS.putIfAbsent(listener.getClass(), subscribedEvents);
+		}
+		return subscribedEvents;
+	}
+
+	protected static ImmutableSet<Class<?>> introspectAdapter(Class<?> listenerClass) {
+		ImmutableSet.Builder<Class<?>> builder = ImmutableSet.builder();
+		for (Class<?> curClass = listenerClass; curClass != ListenerAdapter.class; curClass = curClass.getSuperclass())
+			for (Method curMethod : curClass.getDeclaredMethods()) {
+				Class<?>[] parameterTypes = curMethod.getParameterTypes();
+				if (curMethod.isBridge() || !curMethod.getName().startsWith("on") || parameterTypes.length != 1)
+					continue;
+				if (curMethod.getName().equals("onEvent") && parameterTypes[0] == Event.class)
+					//Custom dispatching, can't tell what it handles
+					return ALL_EVENTS;
+				try {
+					//Only count methods that override an adapter method
+					ListenerAdapter.class.getMethod(curMethod.getName(), parameterTypes);
+					builder.add(parameterTypes[0]);
+				} catch (NoSuchMethodException e) {
+					//Helper method that happens to look like a hook
+				}
+			}
+		return builder.build();
+	}
+}
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import static com.google.common.base.Preconditions.*;
+import com.google.common.collect.ImmutableSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.PircBotX;
+import org.pircbotx.Utils;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.types.GenericChannelEvent;
+import org.pircbotx.hooks.types.GenericUserEvent;
+import org.pircbotx.metrics.FlightRecorderEvents;
+
+/**
+ * A listener manager that executes listeners on a fixed number of worker 
+ * threads, each with a bounded queue. Each listener's events for the same 
+ * channel (or user for events without a channel, or bot for events with 
+ * neither) always go to the same worker, so a listener sees them in order 
+ * while other listeners and channels run in parallel.
+ * <p>
+ * When a worker's queue is full the {@link OverflowPolicy} decides what happens
+ * to the thread dispatching the event, which is normally the bot's input thread.
+ * {@link #shutdown(org.pircbotx.PircBotX) } waits for every event queued 
+ * before it was called.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public class ShardedListenerManager<B extends PircBotX> implements ListenerManager<B> {
+	protected static final AtomicInteger MANAGER_COUNT = new AtomicInteger();
+	protected final int managerNumber;
+	protected final CopyOnWriteArraySet<Listener<B>> listeners = new CopyOnWriteArraySet<Listener<B>>();
+	protected final ListenerIndex<B> listenerIndex = new ListenerIndex<B>();
+	protected volatile EventIdAllocator currentId = new EventIdAllocator();
+	protected final Worker[] workers;
+	protected final OverflowPolicy overflowPolicy;
+	protected final AtomicLong droppedEvents = new AtomicLong();
+
+	/**
+	 * What to do when a worker's queue is full.
+	 */
+	public static enum OverflowPolicy {
+		/**
+		 * Block the dispatching thread until there is room, slowing the input 
+		 * thread down to the speed of the listeners
+		 */
+		BLOCK,
+		/**
+		 * Execute the listener on the dispatching thread. Note that this can 
+		 * run the listener out of order
+		 */
+		CALLER_RUNS,
+		/**
+		 * Log and drop the event for that listener
+		 */
+		DROP
+	}
+
+	/**
+	 * Create with one worker per processor, queues of 1024 events, and
+	 * {@link OverflowPolicy#BLOCK}.
+	 */
+	public ShardedListenerManager() {
+		this(Runtime.getRuntime().availableProcessors(), 1024, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Create with the specified options.
+	 * @param threads Number of worker threads
+	 * @param queueSize Maximum number of queued events per worker
+	 * @param overflowPolicy What to do when a worker's queue is full
+	 */
+	public ShardedListenerManager(int threads, int queueSize, OverflowPolicy overflowPolicy) {
+		checkArgument(threads > 0, "Must have at least 1 thread");
+		checkArgument(queueSize > 0, "Queue size must be positive");
+		checkNotNull(overflowPolicy, "Overflow policy cannot be null");
+		this.managerNumber = MANAGER_COUNT.getAndIncrement();
+		this.overflowPolicy = overflowPolicy;
+		this.workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(queueSize);
+			workers[i].setName("listenerShards" + managerNumber + "-thread" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	@Override
+	public boolean addListener(Listener listener) {
+		@SuppressWarnings("unchecked")
+		Listener<B> typedListener = (Listener<B>) listener;
+		if (!listeners.add(typedListener))
+			return false;
+		listenerIndex.add(typedListener);
+		return true;
+	}
+
+	@Override
+	public boolean removeListener(Listener listener) {
+		@SuppressWarnings("unchecked")
+		Listener<B> typedListener = (Listener<B>) listener;
+		if (!listeners.remove(typedListener))
+			return false;
+		listenerIndex.remove(typedListener);
+		return true;
+	}
+
+	@Override
+	public ImmutableSet<Listener<B>> getListeners() {
+		return ImmutableSet.copyOf(listeners);
+	}
+
+	@Override
+	public boolean listenerExists(Listener listener) {
+		return listeners.contains(listener);
+	}
+
+	@Override
+	public void dispatchEvent(Event<B> event) {
+		Utils.recordDispatch(event);
+		int keyHash = getShardKey(event).hashCode();
+		for (Listener<B> curListener : listenerIndex.getListeners(event.getClass())) {
+			//Spread so the same channel on different listeners uses different workers
+			int hash = keyHash * 31 + System.identityHashCode(curListener);
+			hash ^= (hash >>> 16);
+			Worker worker = workers[(hash & Integer.MAX_VALUE) % workers.length];
+			submitEvent(worker, new ListenerTask(curListener, event));
+		}
+	}
+
+	/**
+	 * Get what events are ordered by: the channel, user, or bot of the event
+	 * @param event The event being dispatched
+	 * @return A key whose hash code picks the worker
+	 */
+	protected Object getShardKey(Event<B> event) {
+		if (event instanceof GenericChannelEvent && ((GenericChannelEvent) event).getChannel() != null)
+			return ((GenericChannelEvent) event).getChannel();
+		if (event instanceof GenericUserEvent && ((GenericUserEvent) event).getUser() != null)
+			return ((GenericUserEvent) event).getUser();
+		if (event.getBot() != null)
+			return event.getBot();
+		return event.getClass();
+	}
+
+	protected void submitEvent(Worker worker, ListenerTask task) {
+		if (worker.queue.offer(task))
+			return;
+		switch (overflowPolicy) {
+			case BLOCK:
+				try {
+					worker.queue.put(task);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					Utils.releaseEvent(task.event);
+					throw new RuntimeException("Interrupted while waiting to queue event " + task.event, e);
+				}
+				break;
+			case CALLER_RUNS:
+				task.run();
+				break;
+			case DROP:
+				droppedEvents.incrementAndGet();
+				Utils.releaseEvent(task.event);
+				log.warn("Listener queue full, dropping event " + task.event + " for listener " + task.listener);
+				break;
+		}
+	}
+
+	/**
+	 * @return Number of events dropped by {@link OverflowPolicy#DROP}
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	/**
+	 * @return Number of events waiting in all worker queues
+	 */
+	public int getQueuedEvents() {
+		int queued = 0;
+		for (Worker curWorker : workers)
+			queued += curWorker.queue.size();
+		return queued;
+	}
+
+	@Override
+	public void setCurrentId(long currentId) {
+		this.currentId.setCurrentId(currentId);
+	}
+
+	@Override
+	public long getCurrentId() {
+		return currentId.getCurrentId();
+	}
+
+	@Override
+	public long incrementCurrentId() {
+		return currentId.nextId();
+	}
+
+	/**
+	 * Hand out event ids in per-thread blocks of the given size, continuing 
+	 * from the current id. See {@link EventIdAllocator} for how this changes 
+	 * the order of ids
+	 * @param blockSize Ids reserved by each thread at a time, 1 to disable
+	 */
+	public void setIdBlockSize(int blockSize) {
+		EventIdAllocator allocator = new EventIdAllocator(blockSize);
+		allocator.setCurrentId(currentId.getCurrentId());
+		currentId = allocator;
+	}
+
+	/**
+	 * Wait for all events queued so far to finish executing. Queues are FIFO, 
+	 * so this queues a marker on every worker and waits for all of them to run
+	 */
+	public void shutdown(B bot) {
+		final CountDownLatch doneLatch = new CountDownLatch(workers.length);
+		for (Worker curWorker : workers)
+			if (curWorker == Thread.currentThread())
+				//Called from a listener, can't wait for ourselves
+				doneLatch.countDown();
+			else
+				try {
+					curWorker.queue.put(new Runnable() {
+						public void run() {
+							doneLatch.countDown();
+						}
+					});
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while shutting down listeners for bot " + bot.getBotId(), e);
+				}
+		try {
+			doneLatch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while shutting down listeners for bot " + bot.getBotId(), e);
+		}
+	}
+
+	/**
+	 * Stop all worker threads. Queued events are discarded
+	 */
+	public void shutdown() {
+		for (Worker curWorker : workers)
+			curWorker.interrupt();
+	}
+
+	protected class ListenerTask implements Runnable {
+		protected final Listener<B> listener;
+		protected final Event<B> event;
+
+		public ListenerTask(Listener<B> listener, Event<B> event) {
+			this.listener = listener;
+			this.event = event;
+			//Keep recycled events from being reused until the listener finishes
+			Utils.acquireEvent(event);
+		}
+
+		public void run() {
+			B bot = event.getBot();
+			long startNanos = Utils.startTiming(bot);
+			Object jfrEvent = FlightRecorderEvents.LISTENER.begin();
+			Exception exception = null;
+			try {
+				Utils.addBotToMDC(bot);
+				listener.onEvent(event);
+			} catch (Exception e) {
+				exception = e;
+				log.error("Exception encountered when executing event " + event + " on listener " + listener, e);
+			} finally {
+				Utils.commitListenerEvent(jfrEvent, bot, listener, event, exception);
+				Utils.releaseEvent(event);
+				Utils.recordListener(bot, listener, startNanos);
+			}
+		}
+	}
+
+	protected static class Worker extends Thread {
+		protected final BlockingQueue<Runnable> queue;
+
+		public Worker(int queueSize) {
+			this.queue = new ArrayBlockingQueue<Runnable>(queueSize);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!isInterrupted())
+					queue.take().run();
+			} catch (InterruptedException e) {
+				log.debug("Listener worker " + getName() + " interrupted, stopping");
+			}
+		}
+	}
+}
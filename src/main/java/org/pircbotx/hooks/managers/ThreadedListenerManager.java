@@ -18,19 +18,19 @@
  */
 package org.pircbotx.hooks.managers;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Multimap;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import lombok.Getter;
 import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
@@ -39,6 +39,7 @@ import org.pircbotx.PircBotX;
 import org.pircbotx.Utils;
 import org.pircbotx.hooks.Event;
 import org.pircbotx.hooks.Listener;
+import org.pircbotx.metrics.FlightRecorderEvents;
 
 /**
  * A listener manager that executes individual listeners in a thread pool. Will 
@@ -51,8 +52,14 @@ public class ThreadedListenerManager<B extends PircBotX> implements ListenerMana
 	protected final int managerNumber;
 	protected ExecutorService pool;
 	protected Set<Listener<B>> listeners = Collections.synchronizedSet(new HashSet<Listener<B>>());
-	protected AtomicLong currentId = new AtomicLong();
-	protected final Multimap<B, ManagedFutureTask> runningListeners = LinkedListMultimap.create();
+	protected final ListenerIndex<B> listenerIndex = new ListenerIndex<B>();
+	protected volatile EventIdAllocator currentId = new EventIdAllocator();
+	/**
+	 * Listeners that haven't finished for each bot. Not guarded by a monitor 
+	 * so finishing listeners never block on {@link #shutdown(org.pircbotx.PircBotX) },
+	 * which would also pin virtual threads to their carrier
+	 */
+	protected final ConcurrentMap<B, Set<ManagedFutureTask>> runningListeners = new ConcurrentHashMap<B, Set<ManagedFutureTask>>();
 
 	/**
 	 * Configures with default options: perHook is false and a
@@ -81,12 +88,22 @@ public class ThreadedListenerManager<B extends PircBotX> implements ListenerMana
 
 	@Override
 	public boolean addListener(Listener listener) {
-		return getListenersReal().add(listener);
+		@SuppressWarnings("unchecked")
+		Listener<B> typedListener = (Listener<B>) listener;
+		if (!getListenersReal().add(typedListener))
+			return false;
+		listenerIndex.add(typedListener);
+		return true;
 	}
 
 	@Override
 	public boolean removeListener(Listener listener) {
-		return getListenersReal().remove(listener);
+		@SuppressWarnings("unchecked")
+		Listener<B> typedListener = (Listener<B>) listener;
+		if (!getListenersReal().remove(typedListener))
+			return false;
+		listenerIndex.remove(typedListener);
+		return true;
 	}
 
 	@Override
@@ -106,38 +123,65 @@ public class ThreadedListenerManager<B extends PircBotX> implements ListenerMana
 	@Override
 	@Synchronized("listeners")
 	public void dispatchEvent(Event<B> event) {
-		//For each Listener, add a new Runnable
-		for (Listener<B> curListener : getListenersReal())
+		Utils.recordDispatch(event);
+		//Add a new Runnable for each Listener that handles this event
+		for (Listener<B> curListener : listenerIndex.getListeners(event.getClass()))
 			submitEvent(pool, curListener, event);
 	}
 
 	protected void submitEvent(ExecutorService pool, final Listener<B> listener, final Event<B> event) {
-		pool.execute(new ManagedFutureTask(listener, event, new Callable<Void>() {
-			public Void call() {
-				try {
-					Utils.addBotToMDC(event.getBot());
-					listener.onEvent(event);
-				} catch (Exception e) {
-					log.error("Exception encountered when executing event " + event + " on listener " + listener, e);
+		//Keep recycled events from being reused until the listener finishes
+		Utils.acquireEvent(event);
+		try {
+			pool.execute(new ManagedFutureTask(listener, event, new Callable<Void>() {
+				public Void call() {
+					B bot = event.getBot();
+					Object jfrEvent = FlightRecorderEvents.LISTENER.begin();
+					Exception exception = null;
+					try {
+						Utils.addBotToMDC(bot);
+						listener.onEvent(event);
+					} catch (Exception e) {
+						exception = e;
+						log.error("Exception encountered when executing event " + event + " on listener " + listener, e);
+					} finally {
+						Utils.commitListenerEvent(jfrEvent, bot, listener, event, exception);
+						Utils.releaseEvent(event);
+					}
+					return null;
 				}
-				return null;
-			}
-		}));
+			}));
+		} catch (RuntimeException e) {
+			Utils.releaseEvent(event);
+			throw e;
+		}
 	}
 
 	@Override
 	public void setCurrentId(long currentId) {
-		this.currentId.set(currentId);
+		this.currentId.setCurrentId(currentId);
 	}
 
 	@Override
 	public long getCurrentId() {
-		return currentId.get();
+		return currentId.getCurrentId();
 	}
 
 	@Override
 	public long incrementCurrentId() {
-		return currentId.getAndIncrement();
+		return currentId.nextId();
+	}
+
+	/**
+	 * Hand out event ids in per-thread blocks of the given size, continuing 
+	 * from the current id. See {@link EventIdAllocator} for how this changes 
+	 * the order of ids
+	 * @param blockSize Ids reserved by each thread at a time, 1 to disable
+	 */
+	public void setIdBlockSize(int blockSize) {
+		EventIdAllocator allocator = new EventIdAllocator(blockSize);
+		allocator.setCurrentId(currentId.getCurrentId());
+		currentId = allocator;
 	}
 
 	/**
@@ -151,38 +195,63 @@ public class ThreadedListenerManager<B extends PircBotX> implements ListenerMana
 	}
 
 	public void shutdown(B bot) {
-		synchronized (runningListeners) {
-			for (ManagedFutureTask curFuture : runningListeners.get(bot))
-				try {
-					log.debug("Waiting for listener " + curFuture.getListener() + " to execute event " + curFuture.getEvent());
-					curFuture.get();
-				} catch (Exception e) {
-					throw new RuntimeException("Cannot shutdown listener " + curFuture.getListener() + " executing event " + curFuture.getEvent(), e);
-				}
-		}
+		Set<ManagedFutureTask> botListeners = runningListeners.get(bot);
+		if (botListeners == null)
+			return;
+		//Wait on a copy so finishing listeners can remove themselves
+		for (ManagedFutureTask curFuture : ImmutableList.copyOf(botListeners))
+			try {
+				log.debug("Waiting for listener " + curFuture.getListener() + " to execute event " + curFuture.getEvent());
+				curFuture.get();
+			} catch (Exception e) {
+				throw new RuntimeException("Cannot shutdown listener " + curFuture.getListener() + " executing event " + curFuture.getEvent(), e);
+			}
 	}
 
 	@Getter
 	public class ManagedFutureTask extends FutureTask<Void> {
 		protected final Listener<B> listener;
 		protected final Event<B> event;
+		/**
+		 * Bot of the event, read once as a recycled event can be reused as 
+		 * soon as the listener finishes
+		 */
+		protected final B bot;
 
 		public ManagedFutureTask(Listener<B> listener, Event<B> event, Callable<Void> callable) {
 			super(callable);
 			this.listener = listener;
 			this.event = event;
-			if (event.getBot() != null)
-				synchronized (runningListeners) {
-					runningListeners.put(event.getBot(), this);
-				}
+			this.bot = event.getBot();
+			if (bot != null)
+				getRunningListeners(bot).add(this);
+		}
+
+		@Override
+		public void run() {
+			long startNanos = Utils.startTiming(bot);
+			try {
+				super.run();
+			} finally {
+				Utils.recordListener(bot, listener, startNanos);
+			}
 		}
 
 		@Override
 		protected void done() {
-			if (event.getBot() != null)
-				synchronized (runningListeners) {
-					runningListeners.remove(event.getBot(), this);
-				}
+			if (bot != null)
+				getRunningListeners(bot).remove(this);
+		}
+	}
+
+	protected Set<ManagedFutureTask> getRunningListeners(B bot) {
+		Set<ManagedFutureTask> botListeners = runningListeners.get(bot);
+		if (botListeners == null) {
+			Set<ManagedFutureTask> newListeners = Collections.newSetFromMap(new ConcurrentHashMap<ManagedFutureTask, Boolean>());
+			botListeners = runningListeners.putIfAbsent(bot, newListeners);
+			if (botListeners == null)
+				botListeners = newListeners;
 		}
+		return botListeners;
 	}
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.pircbotx.PircBotX;
+
+/**
+ * A listener manager that executes every listener invocation on its own
+ * virtual thread, so listeners that block on a database, a
+ * {@link org.pircbotx.hooks.WaitForQueue} or a channel mode request don't tie
+ * up a platform thread each. Running listeners are tracked exactly like
+ * {@link ThreadedListenerManager} so {@link #shutdown(org.pircbotx.PircBotX) }
+ * still waits for them.
+ * <p>
+ * Virtual threads need Java 21+ and are looked up reflectively. On older JVMs
+ * this falls back to a cached pool of daemon threads, see {@link #isVirtual() }
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public class VirtualThreadListenerManager<B extends PircBotX> extends ThreadedListenerManager<B> {
+	/**
+	 * True if this manager is running listeners on virtual threads, false if
+	 * it fell back to a cached thread pool
+	 */
+	@Getter
+	protected final boolean virtual;
+
+	public VirtualThreadListenerManager() {
+		super(createVirtualPool(MANAGER_COUNT.get()));
+		if (pool == null) {
+			log.warn("Virtual threads are not supported by this JVM, falling back to a cached thread pool");
+			BasicThreadFactory factory = new BasicThreadFactory.Builder()
+					.namingPattern("listenerVirtual" + managerNumber + "-thread%d")
+					.daemon(true)
+					.build();
+			ThreadPoolExecutor defaultPool = (ThreadPoolExecutor) Executors.newCachedThreadPool(factory);
+			defaultPool.allowCoreThreadTimeOut(true);
+			pool = defaultPool;
+			virtual = false;
+		} else
+			virtual = true;
+	}
+
+	/**
+	 * @return True if the running JVM supports virtual threads
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Create a thread-per-task executor of named virtual threads with
+	 * {@code Thread.ofVirtual().name(prefix, 0).factory()}
+	 * @return The executor or null if virtual threads are unavailable
+	 */
+	protected static ExecutorService createVirtualPool(int managerNumber) {
+		if (!isSupported())
+			return null;
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class)
+					.invoke(builder, "listenerVirtual" + managerNumber + "-thread", 0L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (Exception e) {
+			log.warn("Unable to create virtual thread executor", e);
+			return null;
+		}
+	}
+}
@@ -18,6 +18,7 @@
  */
 package org.pircbotx.hooks.types;
 
+import org.pircbotx.MessageTags;
 import org.pircbotx.PircBotX;
 import org.pircbotx.hooks.events.MessageEvent;
 import org.pircbotx.hooks.events.PrivateMessageEvent;
@@ -35,4 +36,10 @@ public interface GenericMessageEvent<T extends PircBotX> extends GenericUserEven
 	 * @return The message
 	 */
 	public String getMessage();
+
+	/**
+	 * The IRCv3 message tags sent with the message
+	 * @return The tags, empty if there are none
+	 */
+	public MessageTags getTags();
 }
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.pircbotx.hooks.Listener;
+
+/**
+ * Live metrics of a bot, updated by {@link MetricsRegistry} as the bot runs.
+ * All getters are safe to call from any thread. Byte counts are the length of
+ * the line plus the CRLF and assume single byte characters
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class BotMetrics {
+	protected final ConcurrentMap<String, LatencyHistogram> lineLatency = new ConcurrentHashMap<String, LatencyHistogram>();
+	protected final ConcurrentMap<Class<?>, AtomicLong> eventCounts = new ConcurrentHashMap<Class<?>, AtomicLong>();
+	protected final ConcurrentMap<Listener<?>, LatencyHistogram> listenerTime = new ConcurrentHashMap<Listener<?>, LatencyHistogram>();
+	protected final LatencyHistogram daoLockWait = new LatencyHistogram();
+	protected final LatencyHistogram outputWait = new LatencyHistogram();
+	protected final LatencyHistogram outputThrottle = new LatencyHistogram();
+	protected final AtomicLong linesIn = new AtomicLong();
+	protected final AtomicLong bytesIn = new AtomicLong();
+	protected final AtomicLong linesOut = new AtomicLong();
+	protected final AtomicLong bytesOut = new AtomicLong();
+
+	protected static <K> LatencyHistogram histogram(ConcurrentMap<K, LatencyHistogram> map, K key) {
+		LatencyHistogram histogram = map.get(key);
+		if (histogram == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = map.putIfAbsent(key, newHistogram);
+			if (histogram == null)
+				histogram = newHistogram;
+		}
+		return histogram;
+	}
+
+	protected static <K> AtomicLong counter(ConcurrentMap<K, AtomicLong> map, K key) {
+		AtomicLong counter = map.get(key);
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = map.putIfAbsent(key, newCounter);
+			if (counter == null)
+				counter = newCounter;
+		}
+		return counter;
+	}
+
+	protected void lineRead(String line) {
+		linesIn.incrementAndGet();
+		bytesIn.addAndGet(line.length() + 2);
+	}
+
+	protected void lineProcessed(String command, long nanos) {
+		histogram(lineLatency, command).record(nanos);
+	}
+
+	protected void eventDispatched(Class<?> eventClass) {
+		counter(eventCounts, eventClass).incrementAndGet();
+	}
+
+	protected void listenerExecuted(Listener<?> listener, long nanos) {
+		histogram(listenerTime, listener).record(nanos);
+	}
+
+	protected void lineWritten(String line) {
+		linesOut.incrementAndGet();
+		bytesOut.addAndGet(line.length() + 2);
+	}
+
+	/**
+	 * Get the time taken to process lines
+	 * @return Map of upper case command (eg PRIVMSG or 353) to histogram
+	 */
+	public ImmutableMap<String, LatencyHistogram> getLineLatency() {
+		return ImmutableMap.copyOf(lineLatency);
+	}
+
+	/**
+	 * Get the number of events dispatched
+	 * @return Map of event class to count
+	 */
+	public ImmutableMap<Class<?>, Long> getEventCounts() {
+		ImmutableMap.Builder<Class<?>, Long> builder = ImmutableMap.builder();
+		for (Map.Entry<Class<?>, AtomicLong> curEntry : eventCounts.entrySet())
+			builder.put(curEntry.getKey(), curEntry.getValue().get());
+		return builder.build();
+	}
+
+	/**
+	 * Get the time listeners spent executing events
+	 * @return Map of listener to histogram
+	 */
+	public ImmutableMap<Listener<?>, LatencyHistogram> getListenerTime() {
+		return ImmutableMap.copyOf(listenerTime);
+	}
+
+	/**
+	 * @return Time spent waiting for the {@link org.pircbotx.UserChannelDao} lock
+	 */
+	public LatencyHistogram getDaoLockWait() {
+		return daoLockWait;
+	}
+
+	/**
+	 * @return Time between sending lines and writing them to the server
+	 */
+	public LatencyHistogram getOutputWait() {
+		return outputWait;
+	}
+
+	/**
+	 * @return Time lines were held back by the message delay or rate limit
+	 */
+	public LatencyHistogram getOutputThrottle() {
+		return outputThrottle;
+	}
+
+	public long getLinesIn() {
+		return linesIn.get();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getLinesOut() {
+		return linesOut.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * Combine metrics of several bots. The result is a copy that isn't updated
+	 * @param metrics Metrics to combine
+	 * @return New metrics with everything added together
+	 */
+	public static BotMetrics merge(Iterable<BotMetrics> metrics) {
+		BotMetrics merged = new BotMetrics();
+		for (BotMetrics curMetrics : metrics) {
+			for (Map.Entry<String, LatencyHistogram> curEntry : curMetrics.lineLatency.entrySet())
+				histogram(merged.lineLatency, curEntry.getKey()).add(curEntry.getValue());
+			for (Map.Entry<Class<?>, AtomicLong> curEntry : curMetrics.eventCounts.entrySet())
+				counter(merged.eventCounts, curEntry.getKey()).addAndGet(curEntry.getValue().get());
+			for (Map.Entry<Listener<?>, LatencyHistogram> curEntry : curMetrics.listenerTime.entrySet())
+				histogram(merged.listenerTime, curEntry.getKey()).add(curEntry.getValue());
+			merged.daoLockWait.add(curMetrics.daoLockWait);
+			merged.outputWait.add(curMetrics.outputWait);
+			merged.outputThrottle.add(curMetrics.outputThrottle);
+			merged.linesIn.addAndGet(curMetrics.linesIn.get());
+			merged.bytesIn.addAndGet(curMetrics.bytesIn.get());
+			merged.linesOut.addAndGet(curMetrics.linesOut.get());
+			merged.bytesOut.addAndGet(curMetrics.bytesOut.get());
+		}
+		return merged;
+	}
+}
@@ -0,0 +1,346 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.metrics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Custom JDK Flight Recorder events for lines, dispatched events, listeners,
+ * output throttling, and dao snapshots, so a recording shows which listener
+ * or snapshot caused a latency spike.
+ * <p>
+ * JFR needs Java 11+ and is looked up reflectively, the event types are
+ * created with jdk.jfr.EventFactory. On older JVMs every type is always
+ * disabled. A type is only enabled while a recording that enables it is
+ * running, until then {@link Type#begin() } is a single branch that returns null:
+ * <pre>
+ * Object jfrEvent = FlightRecorderEvents.LISTENER.begin();
+ * //Do the work
+ * if (jfrEvent != null)
+ *     FlightRecorderEvents.LISTENER.commit(jfrEvent, values...);
+ * </pre>
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public final class FlightRecorderEvents {
+	/**
+	 * Reflective access to jdk.jfr, null if this JVM doesn't have it
+	 */
+	protected static final Jfr JFR = Jfr.load();
+	protected static final List<Type> TYPES = new CopyOnWriteArrayList<Type>();
+	/**
+	 * A line read from the server was parsed and its events dispatched
+	 */
+	public static final Type LINE = new Type("org.pircbotx.Line", "Line Processed",
+			"A line read from the server was parsed and its events dispatched",
+			new Field(int.class, "botId", "Bot Id"),
+			new Field(String.class, "command", "Command"),
+			new Field(long.class, "parseNanos", "Parse Time", true));
+	/**
+	 * An event was given to the listener manager
+	 */
+	public static final Type DISPATCH = new Type("org.pircbotx.Dispatch", "Event Dispatched",
+			"An event was given to the listener manager",
+			new Field(int.class, "botId", "Bot Id"),
+			new Field(Class.class, "eventType", "Event Type"));
+	/**
+	 * A listener executed an event
+	 */
+	public static final Type LISTENER = new Type("org.pircbotx.Listener", "Listener Executed",
+			"A listener executed an event",
+			new Field(int.class, "botId", "Bot Id"),
+			new Field(Class.class, "listener", "Listener"),
+			new Field(Class.class, "eventType", "Event Type"),
+			new Field(Class.class, "exception", "Exception"));
+	/**
+	 * Sending a line was held back by the message delay or rate limit
+	 */
+	public static final Type THROTTLE = new Type("org.pircbotx.Throttle", "Output Throttled",
+			"Sending a line was held back by the message delay or rate limit",
+			new Field(int.class, "botId", "Bot Id"),
+			new Field(String.class, "command", "Command"));
+	/**
+	 * Every user and channel was copied into a dao snapshot
+	 */
+	public static final Type SNAPSHOT = new Type("org.pircbotx.Snapshot", "Dao Snapshot",
+			"Every user and channel was copied into a dao snapshot",
+			new Field(int.class, "botId", "Bot Id"),
+			new Field(int.class, "users", "Users"),
+			new Field(int.class, "channels", "Channels"),
+			new Field(int.class, "memberships", "Memberships"));
+
+	static {
+		//Recordings enable and disable event types when they start and stop
+		if (JFR != null)
+			try {
+				JFR.addListener(new Runnable() {
+					public void run() {
+						for (Type curType : TYPES)
+							curType.update();
+					}
+				});
+			} catch (Exception e) {
+				log.warn("Cannot listen for flight recordings, events are only recorded if a recording was already running", e);
+			}
+	}
+
+	//Do not create instances of this
+	private FlightRecorderEvents() {
+	}
+
+	/**
+	 * @return True if the running JVM supports flight recorder events
+	 */
+	public static boolean isSupported() {
+		return JFR != null;
+	}
+
+	/**
+	 * A custom flight recorder event type
+	 */
+	public static class Type {
+		protected final String name;
+		protected final Object factory;
+		protected final Object eventType;
+		protected volatile boolean enabled;
+
+		protected Type(String name, String label, String description, Field... fields) {
+			this.name = name;
+			Object newFactory = null;
+			Object newEventType = null;
+			if (JFR != null)
+				try {
+					newFactory = JFR.createFactory(name, label, description, fields);
+					newEventType = JFR.getEventType.invoke(newFactory);
+				} catch (Exception e) {
+					log.warn("Cannot create flight recorder event " + name, e);
+					newFactory = null;
+					newEventType = null;
+				}
+			this.factory = newFactory;
+			this.eventType = newEventType;
+			TYPES.add(this);
+			update();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return True if a running recording enables this type
+		 */
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		protected void update() {
+			if (eventType == null)
+				return;
+			try {
+				enabled = (Boolean) JFR.isEnabled.invoke(eventType);
+			} catch (Exception e) {
+				log.warn("Cannot check if flight recorder event " + name + " is enabled", e);
+				enabled = false;
+			}
+		}
+
+		/**
+		 * Start timing a new event
+		 * @return The started event or null if this type is disabled
+		 */
+		public Object begin() {
+			if (!enabled)
+				return null;
+			try {
+				Object event = JFR.newEvent.invoke(factory);
+				JFR.begin.invoke(event);
+				return event;
+			} catch (Exception e) {
+				log.warn("Cannot begin flight recorder event " + name, e);
+				enabled = false;
+				return null;
+			}
+		}
+
+		/**
+		 * End the event and give it to the recording
+		 * @param event Event returned by {@link #begin() }, does nothing if null
+		 * @param values Field values in the order the fields were declared
+		 */
+		public void commit(Object event, Object... values) {
+			if (event == null)
+				return;
+			try {
+				for (int i = 0; i < values.length; i++)
+					JFR.set.invoke(event, i, values[i]);
+				JFR.commit.invoke(event);
+			} catch (Exception e) {
+				log.warn("Cannot commit flight recorder event " + name, e);
+				enabled = false;
+			}
+		}
+
+		/**
+		 * Record an event without a duration. Check {@link #isEnabled() }
+		 * first so the values aren't created when disabled
+		 * @param values Field values in the order the fields were declared
+		 */
+		public void commitNow(Object... values) {
+			commit(begin(), values);
+		}
+	}
+
+	/**
+	 * A field of an event type
+	 */
+	protected static class Field {
+		protected final Class<?> type;
+		protected final String name;
+		protected final String label;
+		protected final boolean timespan;
+
+		public Field(Class<?> type, String name, String label) {
+			this(type, name, label, false);
+		}
+
+		/**
+		 * @param timespan True if the field is a duration in nanoseconds
+		 */
+		public Field(Class<?> type, String name, String label, boolean timespan) {
+			this.type = type;
+			this.name = name;
+			this.label = label;
+			this.timespan = timespan;
+		}
+	}
+
+	/**
+	 * Everything used from jdk.jfr, looked up once
+	 */
+	protected static class Jfr {
+		protected Class<?> nameAnnotation;
+		protected Class<?> labelAnnotation;
+		protected Class<?> descriptionAnnotation;
+		protected Class<?> categoryAnnotation;
+		protected Class<?> timespanAnnotation;
+		protected Class<?> stackTraceAnnotation;
+		protected Constructor<?> annotationElement;
+		protected Constructor<?> valueDescriptor;
+		protected Method createFactory;
+		protected Method getEventType;
+		protected Method newEvent;
+		protected Method isEnabled;
+		protected Method begin;
+		protected Method set;
+		protected Method commit;
+		protected Class<?> recorderListener;
+		protected Method addListener;
+
+		/**
+		 * @return Access to jdk.jfr or null if this JVM doesn't support it
+		 */
+		protected static Jfr load() {
+			try {
+				Jfr jfr = new Jfr();
+				jfr.nameAnnotation = Class.forName("jdk.jfr.Name");
+				jfr.labelAnnotation = Class.forName("jdk.jfr.Label");
+				jfr.descriptionAnnotation = Class.forName("jdk.jfr.Description");
+				jfr.categoryAnnotation = Class.forName("jdk.jfr.Category");
+				jfr.timespanAnnotation = Class.forName("jdk.jfr.Timespan");
+				jfr.stackTraceAnnotation = Class.forName("jdk.jfr.StackTrace");
+				Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+				jfr.annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+				jfr.valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor")
+						.getConstructor(Class.class, String.class, List.class);
+				Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+				jfr.createFactory = eventFactoryClass.getMethod("create", List.class, List.class);
+				jfr.getEventType = eventFactoryClass.getMethod("getEventType");
+				jfr.newEvent = eventFactoryClass.getMethod("newEvent");
+				jfr.isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+				Class<?> eventClass = Class.forName("jdk.jfr.Event");
+				jfr.begin = eventClass.getMethod("begin");
+				jfr.set = eventClass.getMethod("set", int.class, Object.class);
+				jfr.commit = eventClass.getMethod("commit");
+				jfr.recorderListener = Class.forName("jdk.jfr.FlightRecorderListener");
+				jfr.addListener = Class.forName("jdk.jfr.FlightRecorder")
+						.getMethod("addListener", jfr.recorderListener);
+				return jfr;
+			} catch (Exception e) {
+				log.debug("Flight recorder events are not supported by this JVM", e);
+				return null;
+			} catch (LinkageError e) {
+				log.debug("Flight recorder events are not supported by this JVM", e);
+				return null;
+			}
+		}
+
+		protected Object annotation(Class<?> annotationClass, Object value) throws Exception {
+			return annotationElement.newInstance(annotationClass, value);
+		}
+
+		protected Object createFactory(String name, String label, String description, Field[] fields) throws Exception {
+			List<Object> annotations = Arrays.asList(
+					annotation(nameAnnotation, name),
+					annotation(labelAnnotation, label),
+					annotation(descriptionAnnotation, description),
+					annotation(categoryAnnotation, new String[]{"PircBotX"}),
+					//Stack traces would only show the reflective commit
+					annotation(stackTraceAnnotation, false));
+			List<Object> valueDescriptors = new ArrayList<Object>();
+			for (Field curField : fields) {
+				List<Object> fieldAnnotations = new ArrayList<Object>();
+				fieldAnnotations.add(annotation(labelAnnotation, curField.label));
+				if (curField.timespan)
+					fieldAnnotations.add(annotation(timespanAnnotation, "NANOSECONDS"));
+				valueDescriptors.add(valueDescriptor.newInstance(curField.type, curField.name, fieldAnnotations));
+			}
+			return createFactory.invoke(null, annotations, valueDescriptors);
+		}
+
+		/**
+		 * Run the callback whenever the flight recorder is initialized or a
+		 * recording changes state
+		 */
+		protected void addListener(final Runnable callback) throws Exception {
+			Object listener = Proxy.newProxyInstance(recorderListener.getClassLoader(), new Class<?>[]{recorderListener}, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					String methodName = method.getName();
+					if (methodName.equals("equals"))
+						return proxy == args[0];
+					if (methodName.equals("hashCode"))
+						return System.identityHashCode(proxy);
+					if (methodName.equals("toString"))
+						return "FlightRecorderEvents listener";
+					callback.run();
+					return null;
+				}
+			});
+			addListener.invoke(null, listener);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.metrics;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Listener;
+
+/**
+ * Receives measurements from inside the bot: how long lines take to process,
+ * how many events are dispatched, how long listeners run, how long threads
+ * wait for the {@link org.pircbotx.UserChannelDao} lock and to send lines,
+ * and the lines read and written. Set with
+ * {@link org.pircbotx.Configuration.Builder#setInstrumentation(org.pircbotx.metrics.Instrumentation) }.
+ * <p>
+ * Methods are called on the input, output, and listener threads so they must
+ * be fast and thread safe. Defaults to {@link NoOpInstrumentation}, use
+ * {@link MetricsRegistry} to record everything in memory.
+ * <p>
+ * Durations are only measured when {@link #isEnabled() } is true, so a 
+ * disabled instrumentation costs nothing on hot paths like the
+ * {@link org.pircbotx.UserChannelDao} lock.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public interface Instrumentation {
+	/**
+	 * Check if durations should be measured and reported. Checked once per
+	 * measurement, before {@link System#nanoTime() } is read
+	 * @return False to skip timing listeners, lines, and lock waits
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * A line was read from the server, before it's processed
+	 * @param bot The bot that read the line
+	 * @param line The raw line
+	 */
+	public void lineRead(PircBotX bot, String line);
+
+	/**
+	 * A line was processed, including creating and dispatching its events but
+	 * not running listeners on other threads
+	 * @param bot The bot that read the line
+	 * @param command The upper case command of the line, eg PRIVMSG or 353
+	 * @param nanos How long processing took
+	 */
+	public void lineProcessed(PircBotX bot, String command, long nanos);
+
+	/**
+	 * An event was given to the listener manager
+	 * @param bot The bot of the event
+	 * @param eventClass The class of the event
+	 */
+	public void eventDispatched(PircBotX bot, Class<?> eventClass);
+
+	/**
+	 * A listener finished executing an event
+	 * @param bot The bot of the event
+	 * @param listener The listener
+	 * @param nanos How long the listener ran
+	 */
+	public void listenerExecuted(PircBotX bot, Listener<?> listener, long nanos);
+
+	/**
+	 * A thread got the {@link org.pircbotx.UserChannelDao} lock to look up or
+	 * change users and channels
+	 * @param bot The bot of the dao
+	 * @param nanos How long the thread waited for the lock
+	 */
+	public void daoLockWaited(PircBotX bot, long nanos);
+
+	/**
+	 * A line was written after waiting to be sent
+	 * @param bot The bot that sent the line
+	 * @param nanos Time between sending the line and writing it to the server
+	 */
+	public void outputWaited(PircBotX bot, long nanos);
+
+	/**
+	 * Sending a line was held back by the message delay or 
+	 * {@link org.pircbotx.output.RateLimitPolicy}
+	 * @param bot The bot that sent the line
+	 * @param nanos How long the line was held back
+	 */
+	public void outputThrottled(PircBotX bot, long nanos);
+
+	/**
+	 * A line was written to the server
+	 * @param bot The bot that wrote the line
+	 * @param line The raw line
+	 */
+	public void lineWritten(PircBotX bot, String line);
+
+	/**
+	 * Get what was recorded for the bot
+	 * @param bot The bot
+	 * @return The bot's metrics or null if nothing is recorded
+	 */
+	public BotMetrics getMetrics(PircBotX bot);
+}
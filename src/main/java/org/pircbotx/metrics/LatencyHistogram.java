@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in power of 2 nanosecond buckets, so
+ * percentiles are accurate to within a factor of 2. Also keeps the exact
+ * count, total, and max.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class LatencyHistogram {
+	/**
+	 * Bucket i holds durations from 2^(i-1) up to 2^i - 1 nanoseconds, bucket
+	 * 0 holds 0
+	 */
+	protected final AtomicLongArray buckets = new AtomicLongArray(64);
+	protected final AtomicLong count = new AtomicLong();
+	protected final AtomicLong totalNanos = new AtomicLong();
+	protected final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long curMax;
+		while (nanos > (curMax = maxNanos.get()))
+			if (maxNanos.compareAndSet(curMax, nanos))
+				break;
+	}
+
+	/**
+	 * Add everything recorded by the other histogram to this one
+	 * @param other The histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < 64; i++)
+			buckets.addAndGet(i, other.buckets.get(i));
+		count.addAndGet(other.count.get());
+		totalNanos.addAndGet(other.totalNanos.get());
+		long otherMax = other.maxNanos.get();
+		long curMax;
+		while (otherMax > (curMax = maxNanos.get()))
+			if (maxNanos.compareAndSet(curMax, otherMax))
+				break;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotal(TimeUnit unit) {
+		return unit.convert(totalNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	public long getMax(TimeUnit unit) {
+		return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	public long getAverage(TimeUnit unit) {
+		long curCount = count.get();
+		return (curCount == 0) ? 0 : unit.convert(totalNanos.get() / curCount, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Estimate the duration that the given fraction of durations are at or
+	 * below, eg 0.99 for the 99th percentile
+	 * @param fraction Between 0 and 1
+	 * @param unit Unit of the result
+	 * @return Upper bound of the bucket holding the percentile, capped at the max
+	 */
+	public long getPercentile(double fraction, TimeUnit unit) {
+		long curCount = count.get();
+		if (curCount == 0)
+			return 0;
+		long rank = Math.max((long) Math.ceil(fraction * curCount), 1);
+		long seen = 0;
+		for (int i = 0; i < 64; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				long upperBound = (i == 0) ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+				return unit.convert(Math.min(upperBound, maxNanos.get()), TimeUnit.NANOSECONDS);
+			}
+		}
+		return getMax(unit);
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram(count=" + getCount()
+				+ ", averageMicros=" + getAverage(TimeUnit.MICROSECONDS)
+				+ ", p99Micros=" + getPercentile(0.99, TimeUnit.MICROSECONDS)
+				+ ", maxMicros=" + getMax(TimeUnit.MICROSECONDS) + ")";
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Listener;
+
+/**
+ * {@link Instrumentation} that keeps {@link BotMetrics} in memory for each
+ * bot. Share one registry between bots to see them all with
+ * {@link #getAllMetrics() } and {@link #getTotal() }
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class MetricsRegistry implements Instrumentation {
+	protected final ConcurrentMap<Integer, BotMetrics> botMetrics = new ConcurrentHashMap<Integer, BotMetrics>();
+
+	protected BotMetrics metrics(PircBotX bot) {
+		Integer botId = bot.getBotId();
+		BotMetrics metrics = botMetrics.get(botId);
+		if (metrics == null) {
+			BotMetrics newMetrics = new BotMetrics();
+			metrics = botMetrics.putIfAbsent(botId, newMetrics);
+			if (metrics == null)
+				metrics = newMetrics;
+		}
+		return metrics;
+	}
+
+	/**
+	 * @return Always true
+	 */
+	public boolean isEnabled() {
+		return true;
+	}
+
+	public void lineRead(PircBotX bot, String line) {
+		metrics(bot).lineRead(line);
+	}
+
+	public void lineProcessed(PircBotX bot, String command, long nanos) {
+		metrics(bot).lineProcessed(command, nanos);
+	}
+
+	public void eventDispatched(PircBotX bot, Class<?> eventClass) {
+		metrics(bot).eventDispatched(eventClass);
+	}
+
+	public void listenerExecuted(PircBotX bot, Listener<?> listener, long nanos) {
+		metrics(bot).listenerExecuted(listener, nanos);
+	}
+
+	public void daoLockWaited(PircBotX bot, long nanos) {
+		metrics(bot).daoLockWait.record(nanos);
+	}
+
+	public void outputWaited(PircBotX bot, long nanos) {
+		metrics(bot).outputWait.record(nanos);
+	}
+
+	public void outputThrottled(PircBotX bot, long nanos) {
+		metrics(bot).outputThrottle.record(nanos);
+	}
+
+	public void lineWritten(PircBotX bot, String line) {
+		metrics(bot).lineWritten(line);
+	}
+
+	public BotMetrics getMetrics(PircBotX bot) {
+		return metrics(bot);
+	}
+
+	/**
+	 * Get the metrics of every bot seen so far
+	 * @return Map of bot id to live metrics
+	 */
+	public ImmutableMap<Integer, BotMetrics> getAllMetrics() {
+		return ImmutableMap.copyOf(botMetrics);
+	}
+
+	/**
+	 * @return Metrics of every bot added together
+	 */
+	public BotMetrics getTotal() {
+		return BotMetrics.merge(botMetrics.values());
+	}
+
+	/**
+	 * Stop tracking a bot, eg after it's been shutdown for good
+	 * @param bot The bot to forget
+	 */
+	public void remove(PircBotX bot) {
+		botMetrics.remove(bot.getBotId());
+	}
+}
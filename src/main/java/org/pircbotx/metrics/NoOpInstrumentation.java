@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.metrics;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Listener;
+
+/**
+ * {@link Instrumentation} that ignores everything, the default
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class NoOpInstrumentation implements Instrumentation {
+	public static final NoOpInstrumentation INSTANCE = new NoOpInstrumentation();
+
+	/**
+	 * @return Always false, nothing is timed
+	 */
+	public boolean isEnabled() {
+		return false;
+	}
+
+	public void lineRead(PircBotX bot, String line) {
+	}
+
+	public void lineProcessed(PircBotX bot, String command, long nanos) {
+	}
+
+	public void eventDispatched(PircBotX bot, Class<?> eventClass) {
+	}
+
+	public void listenerExecuted(PircBotX bot, Listener<?> listener, long nanos) {
+	}
+
+	public void daoLockWaited(PircBotX bot, long nanos) {
+	}
+
+	public void outputWaited(PircBotX bot, long nanos) {
+	}
+
+	public void outputThrottled(PircBotX bot, long nanos) {
+	}
+
+	public void lineWritten(PircBotX bot, String line) {
+	}
+
+	/**
+	 * @return Always null
+	 */
+	public BotMetrics getMetrics(PircBotX bot) {
+		return null;
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+import static com.google.common.base.Preconditions.*;
+import java.util.Locale;
+import lombok.Getter;
+
+/**
+ * Raw line being sent to the server with its command and first target parsed
+ * once, so a {@link RateLimitPolicy} can check it repeatedly without
+ * tokenizing the line each time.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Getter
+public class OutgoingLine {
+	protected final String line;
+	/**
+	 * Upper case command, skipping any tags or prefix
+	 */
+	protected final String command;
+	/**
+	 * First target of the command (eg the channel of a PRIVMSG, or the first
+	 * channel of a JOIN to several channels), or null if there are no parameters
+	 */
+	protected final String target;
+	/**
+	 * Index of the trailing parameter in the line, after its ':', or -1 if
+	 * there is none
+	 */
+	protected final int messageStart;
+
+	public OutgoingLine(String line) {
+		checkNotNull(line, "Line cannot be null");
+		this.line = line;
+
+		//Skip tags and prefix
+		int start = 0;
+		int end;
+		while ((end = line.indexOf(' ', start)) != -1 && (line.charAt(start) == '@' || line.charAt(start) == ':'))
+			start = end + 1;
+		if (end == -1) {
+			this.command = line.substring(start).toUpperCase(Locale.ENGLISH);
+			this.target = null;
+			this.messageStart = -1;
+			return;
+		}
+		this.command = line.substring(start, end).toUpperCase(Locale.ENGLISH);
+
+		//Target ends at the next space or comma
+		start = end + 1;
+		boolean trailingTarget = start < line.length() && line.charAt(start) == ':';
+		if (trailingTarget)
+			start++;
+		end = start;
+		while (end < line.length() && line.charAt(end) != ' ' && line.charAt(end) != ',')
+			end++;
+		this.target = (start == end) ? null : line.substring(start, end);
+
+		//Only the trailing parameter can start with a ':'
+		if (trailingTarget)
+			this.messageStart = start;
+		else {
+			end = line.indexOf(" :", end);
+			this.messageStart = (end == -1) ? -1 : end + 2;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+/**
+ * Lanes of the {@link QueuedOutputRaw} outgoing queue, in the order they are 
+ * sent.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public enum OutputPriority {
+	/**
+	 * Lines that keep the connection alive, eg PONG. Sent ahead of everything
+	 * else without waiting for the message delay or rate limit and never dropped
+	 */
+	IMMEDIATE,
+	/**
+	 * Moderation actions, eg KICK, MODE, or Twitch's /timeout and /ban
+	 */
+	MODERATION,
+	/**
+	 * Everything else
+	 */
+	NORMAL
+}
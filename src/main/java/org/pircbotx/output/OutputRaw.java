@@ -19,14 +19,24 @@
 package org.pircbotx.output;
 
 import static com.google.common.base.Preconditions.*;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.pircbotx.PircBotX;
 import org.pircbotx.Utils;
+import org.pircbotx.metrics.FlightRecorderEvents;
+import org.pircbotx.metrics.Instrumentation;
+import org.pircbotx.wirelog.WireLogger;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
@@ -43,11 +53,27 @@ public class OutputRaw {
 	protected final ReentrantLock writeLock = new ReentrantLock(true);
 	protected final Condition writeNowCondition = writeLock.newCondition();
 	protected final long delayNanos;
-	protected long lastSentLine = 0;
+	protected volatile long lastSentLine = 0;
+	protected final RateLimitPolicy rateLimitPolicy;
+	protected final WireLogger wireLogger;
+	protected final Instrumentation instrumentation;
+	/**
+	 * How long all lines waited to be written
+	 */
+	@Getter
+	protected final WaitStats waitStats = new WaitStats();
+	protected final ConcurrentMap<String, WaitStats> commandWaitStats = new ConcurrentHashMap<String, WaitStats>();
+	/**
+	 * Threads currently in {@link #rawLine(java.lang.String) }
+	 */
+	protected final AtomicInteger pendingLines = new AtomicInteger();
 
 	public OutputRaw(PircBotX bot) {
 		this.bot = bot;
 		this.delayNanos = bot.getConfiguration().getMessageDelay() * 1000000;
+		this.rateLimitPolicy = bot.getConfiguration().getRateLimitPolicy();
+		this.wireLogger = bot.getConfiguration().getWireLogger();
+		this.instrumentation = bot.getConfiguration().getInstrumentation();
 	}
 
 	/**
@@ -57,26 +83,123 @@ public class OutputRaw {
 	 */
 	public void rawLine(String line) {
 		checkNotNull(line, "Line cannot be null");
-		if (line == null)
-			throw new NullPointerException("Cannot send null messages to server");
 		if (!bot.isConnected())
 			throw new RuntimeException("Not connected to server");
-		writeLock.lock();
+		long startNanos = System.nanoTime();
+		OutgoingLine outgoingLine = new OutgoingLine(line);
+		pendingLines.incrementAndGet();
+		long waitNanos;
+		long throttleStart = 0;
+		boolean throttled = false;
+		Object jfrEvent = null;
 		try {
-			//Block until we can send, taking into account a changing lastSentLine
-			long curNanos = System.nanoTime();
-			while (lastSentLine + delayNanos > curNanos) {
-				writeNowCondition.await(lastSentLine + delayNanos - curNanos, TimeUnit.NANOSECONDS);
-				curNanos = System.nanoTime();
+			//Wait for the policy without the write lock so lines to other 
+			//targets aren't held back
+			while ((waitNanos = getPolicyWaitNanos(outgoingLine)) > 0) {
+				if (!throttled) {
+					throttled = true;
+					throttleStart = System.nanoTime();
+					jfrEvent = FlightRecorderEvents.THROTTLE.begin();
+				}
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			}
+
+			writeLock.lock();
+			try {
+				//Block until we can send, taking into account a changing lastSentLine
+				while ((waitNanos = getDelayNanos()) > 0) {
+					if (!throttled) {
+						throttled = true;
+						throttleStart = System.nanoTime();
+						jfrEvent = FlightRecorderEvents.THROTTLE.begin();
+					}
+					writeNowCondition.await(waitNanos, TimeUnit.NANOSECONDS);
+				}
+				if (throttled) {
+					instrumentation.outputThrottled(bot, System.nanoTime() - throttleStart);
+					if (jfrEvent != null)
+						FlightRecorderEvents.THROTTLE.commit(jfrEvent, bot.getBotId(), outgoingLine.getCommand());
+				}
+				wireLogger.logOutput(bot, line);
+				instrumentation.lineWritten(bot, line);
+				Utils.sendRawLineToServer(bot, line);
+				lastSentLine = System.nanoTime();
+				recordWait(outgoingLine.getCommand(), lastSentLine - startNanos);
+			} finally {
+				writeLock.unlock();
 			}
-			log.info(OUTPUT_MARKER, line);
-			Utils.sendRawLineToServer(bot, line);
-			lastSentLine = System.nanoTime();
 		} catch (Exception e) {
 			throw new RuntimeException("Couldn't pause thread for message delay", e);
 		} finally {
-			writeLock.unlock();
+			pendingLines.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return 0 if the message delay has passed, otherwise nanoseconds to wait
+	 */
+	protected long getDelayNanos() {
+		return lastSentLine + delayNanos - System.nanoTime();
+	}
+
+	/**
+	 * Check the {@link RateLimitPolicy}, which consumes a permit when it 
+	 * allows the line.
+	 * @return 0 if the policy allows the line now, otherwise nanoseconds to wait
+	 */
+	protected long getPolicyWaitNanos(OutgoingLine line) {
+		return (rateLimitPolicy == null) ? 0 : rateLimitPolicy.tryAcquire(bot, line);
+	}
+
+	protected void recordWait(String command, long waitNanos) {
+		waitStats.record(waitNanos);
+		instrumentation.outputWaited(bot, waitNanos);
+		WaitStats stats = commandWaitStats.get(command);
+		if (stats == null) {
+			WaitStats existingStats = commandWaitStats.putIfAbsent(command, stats = new WaitStats());
+			if (existingStats != null)
+				stats = existingStats;
 		}
+		stats.record(waitNanos);
+	}
+
+	/**
+	 * How long lines with the command waited to be written.
+	 * @param command An IRC command, eg PRIVMSG
+	 * @return The stats or null if no lines have been sent with the command
+	 */
+	public WaitStats getWaitStats(String command) {
+		return commandWaitStats.get(command.toUpperCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Sends a raw line through the outgoing message queue, returning a future
+	 * that completes once the line is written. This blocks like {@link #rawLine(java.lang.String) }
+	 * unless {@link org.pircbotx.Configuration#isOutputQueueEnabled() } is set
+	 *
+	 * @param line The raw line to send to the IRC server.
+	 * @return A future that completes once the line is written to the server
+	 */
+	public ListenableFuture<Void> rawLineAsync(String line) {
+		try {
+			rawLine(line);
+			return Futures.immediateFuture(null);
+		} catch (RuntimeException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+	}
+
+	/**
+	 * Sends a raw line through the outgoing message queue in the given lane. 
+	 * Lanes are only used when {@link org.pircbotx.Configuration#isOutputQueueEnabled() }
+	 * is set, otherwise this is the same as {@link #rawLineAsync(java.lang.String) }
+	 *
+	 * @param line The raw line to send to the IRC server.
+	 * @param priority The lane to queue the line in
+	 * @return A future that completes once the line is written to the server
+	 */
+	public ListenableFuture<Void> rawLineAsync(String line, OutputPriority priority) {
+		return rawLineAsync(line);
 	}
 
 	/**
@@ -101,7 +224,8 @@ public class OutputRaw {
 			throw new RuntimeException("Not connected to server");
 		writeLock.lock();
 		try {
-			log.info(OUTPUT_MARKER, line);
+			wireLogger.logOutput(bot, line);
+			instrumentation.lineWritten(bot, line);
 			Utils.sendRawLineToServer(bot, line);
 			lastSentLine = System.nanoTime();
 			if (resetDelay)
@@ -142,7 +266,9 @@ public class OutputRaw {
 	}
 
 	/**
-	 * Gets the number of lines currently waiting in the outgoing message Queue.
+	 * Gets the number of lines currently waiting in the outgoing message Queue,
+	 * which without {@link org.pircbotx.Configuration#isOutputQueueEnabled() }
+	 * is the number of threads waiting in {@link #rawLine(java.lang.String) }.
 	 * If this returns 0, then the Queue is empty and any new message is likely
 	 * to be sent to the IRC server immediately.
 	 *
@@ -151,6 +277,12 @@ public class OutputRaw {
 	 * @return The number of lines in the outgoing message Queue.
 	 */
 	public int getOutgoingQueueSize() {
-		return writeLock.getHoldCount();
+		return pendingLines.get();
+	}
+
+	/**
+	 * Called when the bot disconnects. Nothing to release by default
+	 */
+	public void close() {
 	}
 }
@@ -0,0 +1,479 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+import static com.google.common.base.Preconditions.*;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.PircBotX;
+import org.pircbotx.Utils;
+import org.pircbotx.metrics.FlightRecorderEvents;
+
+/**
+ * OutputRaw that queues lines instead of blocking the caller for the message 
+ * delay. A single writer thread per bot drains the queue, encodes lines into a 
+ * reusable direct buffer, and writes several lines per flush. The message 
+ * delay spaces out flushes, so like {@link OutputRaw} the 
+ * {@link RateLimitPolicy} is applied on top of it. Each flush only takes 
+ * following {@link OutputPriority#IMMEDIATE} lines, or every following line 
+ * the policy has a permit for when the message delay is 0.
+ * <p>
+ * Lines are queued in {@link OutputPriority} lanes so a flood of replies 
+ * can't delay a PONG. When the policy holds back a line the writer sends the 
+ * next line it allows instead, looking up to {@link #MAX_SCAN_LINES} lines 
+ * into each lane. Lines with the same target are always sent in order. The 
+ * queue can be bounded with {@link org.pircbotx.Configuration#getOutputQueueMaxDepth() },
+ * and identical lines can be coalesced with {@link org.pircbotx.Configuration#isOutputQueueCoalesce() }.
+ * <p>
+ * {@link #rawLineNow(java.lang.String) } still writes immediately on the 
+ * calling thread. Enable with {@link org.pircbotx.Configuration.Builder#setOutputQueueEnabled(boolean) }
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public class QueuedOutputRaw extends OutputRaw {
+	protected static final int BUFFER_SIZE = 16 * 1024;
+	protected static final int MAX_BATCH_SIZE = 64;
+	/**
+	 * Lines in each lane checked for one the policy allows
+	 */
+	protected static final int MAX_SCAN_LINES = 64;
+	protected static final OutputPriority[] PRIORITIES = OutputPriority.values();
+	protected static final ImmutableSet<String> MODERATION_COMMANDS = ImmutableSet.of("KICK", "MODE");
+	protected static final ImmutableList<String> MODERATION_MESSAGES = ImmutableList.of("/ban ", "/unban ",
+			"/timeout ", "/untimeout ", "/delete ", "/clear");
+	protected final ReentrantLock queueLock = new ReentrantLock();
+	protected final Condition queueCondition = queueLock.newCondition();
+	/**
+	 * Queued lines for each {@link OutputPriority}, guarded by queueLock
+	 */
+	protected final ArrayDeque<QueuedLine>[] lanes;
+	/**
+	 * Lines that can be coalesced, guarded by queueLock
+	 */
+	protected final Map<String, QueuedLine> coalesceLines = new HashMap<String, QueuedLine>();
+	protected int queueSize = 0;
+	protected final int maxQueueSize;
+	protected final boolean dropOldest;
+	protected final boolean coalesce;
+	protected final AtomicLong droppedLines = new AtomicLong();
+	protected final AtomicLong coalescedLines = new AtomicLong();
+	/**
+	 * Current writer thread, guarded by queueLock. Started on the first queued
+	 * line and stopped by {@link #close() }
+	 */
+	protected Thread writerThread;
+	//Only used by the thread holding writeLock
+	protected final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	protected final CharsetEncoder encoder;
+
+	@SuppressWarnings("unchecked")
+	public QueuedOutputRaw(PircBotX bot) {
+		super(bot);
+		this.encoder = bot.getConfiguration().getEncoding().newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.lanes = new ArrayDeque[PRIORITIES.length];
+		for (int i = 0; i < lanes.length; i++)
+			lanes[i] = new ArrayDeque<QueuedLine>();
+		int maxDepth = bot.getConfiguration().getOutputQueueMaxDepth();
+		this.maxQueueSize = (maxDepth == 0) ? Integer.MAX_VALUE : maxDepth;
+		this.dropOldest = bot.getConfiguration().isOutputQueueDropOldest();
+		this.coalesce = bot.getConfiguration().isOutputQueueCoalesce();
+	}
+
+	/**
+	 * Queue the line and return immediately.
+	 * @param line The raw line to send to the IRC server.
+	 */
+	@Override
+	public void rawLine(String line) {
+		rawLineAsync(line);
+	}
+
+	/**
+	 * Queue the line and return immediately.
+	 * @param line The raw line to send to the IRC server.
+	 * @return A future that completes once the line is written to the server
+	 */
+	@Override
+	public ListenableFuture<Void> rawLineAsync(String line) {
+		checkNotNull(line, "Line cannot be null");
+		OutgoingLine outgoingLine = new OutgoingLine(line);
+		return queueLine(outgoingLine, getPriority(outgoingLine));
+	}
+
+	/**
+	 * Queue the line in the lane and return immediately. If the queue is full 
+	 * the returned future fails with a {@link RejectedExecutionException}
+	 * @param line The raw line to send to the IRC server.
+	 * @param priority The lane to queue the line in
+	 * @return A future that completes once the line is written to the server
+	 */
+	@Override
+	public ListenableFuture<Void> rawLineAsync(String line, OutputPriority priority) {
+		checkNotNull(line, "Line cannot be null");
+		return queueLine(new OutgoingLine(line), priority);
+	}
+
+	protected ListenableFuture<Void> queueLine(OutgoingLine outgoingLine, OutputPriority priority) {
+		checkNotNull(priority, "Priority cannot be null");
+		if (!bot.isConnected())
+			throw new RuntimeException("Not connected to server");
+		String line = outgoingLine.getLine();
+		QueuedLine queuedLine = new QueuedLine(outgoingLine, priority);
+		QueuedLine droppedLine = null;
+		queueLock.lock();
+		try {
+			if (coalesce && priority != OutputPriority.IMMEDIATE) {
+				QueuedLine existingLine = coalesceLines.get(line);
+				if (existingLine != null) {
+					coalescedLines.incrementAndGet();
+					return existingLine.getFuture();
+				}
+			}
+			if (queueSize >= maxQueueSize && priority != OutputPriority.IMMEDIATE) {
+				ArrayDeque<QueuedLine> normalLane = lanes[OutputPriority.NORMAL.ordinal()];
+				if (!dropOldest || normalLane.isEmpty()) {
+					droppedLines.incrementAndGet();
+					log.warn("Outgoing queue full, dropping line {}", line);
+					return Futures.immediateFailedFuture(new RejectedExecutionException("Outgoing queue full"));
+				}
+				droppedLine = normalLane.poll();
+				removed(droppedLine);
+			}
+
+			lanes[priority.ordinal()].add(queuedLine);
+			queueSize++;
+			if (coalesce && priority != OutputPriority.IMMEDIATE)
+				coalesceLines.put(line, queuedLine);
+			if (writerThread == null) {
+				writerThread = new Thread(new Writer(), "bot" + bot.getBotId() + "-output");
+				writerThread.setDaemon(true);
+				writerThread.start();
+			}
+			queueCondition.signal();
+		} finally {
+			queueLock.unlock();
+		}
+
+		if (droppedLine != null) {
+			droppedLines.incrementAndGet();
+			log.warn("Outgoing queue full, dropping oldest line {}", droppedLine.getLine());
+			droppedLine.getFuture().setException(new RejectedExecutionException("Outgoing queue full"));
+		}
+		return queuedLine.getFuture();
+	}
+
+	/**
+	 * Pick the lane for a line sent with {@link #rawLine(java.lang.String) }.
+	 * PONG and PING are {@link OutputPriority#IMMEDIATE}, KICK, MODE, and 
+	 * Twitch moderation commands like /timeout are {@link OutputPriority#MODERATION}
+	 */
+	protected OutputPriority getPriority(OutgoingLine line) {
+		String command = line.getCommand();
+		if (command.equals("PONG") || command.equals("PING"))
+			return OutputPriority.IMMEDIATE;
+		if (MODERATION_COMMANDS.contains(command))
+			return OutputPriority.MODERATION;
+		if (command.equals("PRIVMSG") && line.getMessageStart() != -1)
+			for (String curMessage : MODERATION_MESSAGES)
+				if (line.getLine().startsWith(curMessage, line.getMessageStart()))
+					return OutputPriority.MODERATION;
+		return OutputPriority.NORMAL;
+	}
+
+	/**
+	 * Must hold queueLock
+	 */
+	protected void removed(QueuedLine line) {
+		queueSize--;
+		if (coalesce && coalesceLines.get(line.getLine()) == line)
+			coalesceLines.remove(line.getLine());
+	}
+
+	/**
+	 * @return The number of lines waiting to be written
+	 */
+	@Override
+	public int getOutgoingQueueSize() {
+		queueLock.lock();
+		try {
+			return queueSize;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of lines waiting to be written in the lane
+	 */
+	public int getOutgoingQueueSize(OutputPriority priority) {
+		queueLock.lock();
+		try {
+			return lanes[priority.ordinal()].size();
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * @return How long the oldest line in the queue has been waiting, or 0 if
+	 * the queue is empty
+	 */
+	public long getOldestQueuedAge(TimeUnit unit) {
+		long oldestNanos = Long.MAX_VALUE;
+		queueLock.lock();
+		try {
+			for (ArrayDeque<QueuedLine> curLane : lanes)
+				if (!curLane.isEmpty())
+					oldestNanos = Math.min(oldestNanos, curLane.peek().getQueuedNanos());
+		} finally {
+			queueLock.unlock();
+		}
+		if (oldestNanos == Long.MAX_VALUE)
+			return 0;
+		return unit.convert(System.nanoTime() - oldestNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return Number of lines dropped because the queue was full
+	 */
+	public long getDroppedLines() {
+		return droppedLines.get();
+	}
+
+	/**
+	 * @return Number of lines that were coalesced with an identical queued line
+	 */
+	public long getCoalescedLines() {
+		return coalescedLines.get();
+	}
+
+	/**
+	 * Stop the writer thread and fail any lines that haven't been written.
+	 */
+	@Override
+	public void close() {
+		List<QueuedLine> unsent = new ArrayList<QueuedLine>();
+		queueLock.lock();
+		try {
+			if (writerThread != null)
+				writerThread.interrupt();
+			writerThread = null;
+			for (ArrayDeque<QueuedLine> curLane : lanes) {
+				unsent.addAll(curLane);
+				curLane.clear();
+			}
+			coalesceLines.clear();
+			queueSize = 0;
+		} finally {
+			queueLock.unlock();
+		}
+		for (QueuedLine curLine : unsent)
+			curLine.getFuture().setException(new IOException("Disconnected before line was sent"));
+	}
+
+	/**
+	 * Wait until lines can be sent, then move them to the batch.
+	 * @return False if this thread should stop
+	 */
+	protected boolean takeBatch(List<QueuedLine> batch) throws InterruptedException {
+		queueLock.lock();
+		try {
+			ArrayDeque<QueuedLine> immediateLane = lanes[OutputPriority.IMMEDIATE.ordinal()];
+			long throttleStart = 0;
+			boolean throttled = false;
+			Object jfrEvent = null;
+			while (true) {
+				if (writerThread != Thread.currentThread())
+					return false;
+				if (queueSize == 0)
+					queueCondition.await();
+				else {
+					//Immediate lines don't wait for the message delay
+					long waitNanos = getDelayNanos();
+					if ((waitNanos <= 0 || !immediateLane.isEmpty()) && (waitNanos = pollAllowedLine(batch)) <= 0)
+						break;
+					if (!throttled) {
+						throttled = true;
+						throttleStart = System.nanoTime();
+						jfrEvent = FlightRecorderEvents.THROTTLE.begin();
+					}
+					queueCondition.awaitNanos(waitNanos);
+				}
+			}
+			if (throttled) {
+				instrumentation.outputThrottled(bot, System.nanoTime() - throttleStart);
+				if (jfrEvent != null)
+					FlightRecorderEvents.THROTTLE.commit(jfrEvent, bot.getBotId(), batch.get(0).getOutgoingLine().getCommand());
+			}
+
+			//Keep adding lines that can be sent now. The message delay limits 
+			//each line, so unless it's 0 only immediate lines can follow
+			boolean delayEachLine = delayNanos != 0;
+			while (batch.size() < MAX_BATCH_SIZE && queueSize != 0) {
+				if (delayEachLine && immediateLane.isEmpty())
+					break;
+				if (pollAllowedLine(batch) > 0)
+					break;
+			}
+			return true;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Move the first line the policy allows to the batch, consuming its permit.
+	 * Lanes are checked in priority order, skipping lines with the same target
+	 * as a line that was held back so each target's lines stay in order. Must
+	 * hold queueLock
+	 * @return 0 if a line was added, otherwise nanoseconds until the policy 
+	 * may allow one
+	 */
+	protected long pollAllowedLine(List<QueuedLine> batch) {
+		long minWaitNanos = Long.MAX_VALUE;
+		for (ArrayDeque<QueuedLine> curLane : lanes) {
+			Set<String> heldTargets = null;
+			int scannedLines = 0;
+			for (Iterator<QueuedLine> itr = curLane.iterator(); itr.hasNext() && scannedLines++ < MAX_SCAN_LINES;) {
+				QueuedLine curLine = itr.next();
+				String target = curLine.getOutgoingLine().getTarget();
+				if (heldTargets != null && heldTargets.contains(target))
+					continue;
+				long waitNanos = (curLine.getPriority() == OutputPriority.IMMEDIATE) ? 0 : getPolicyWaitNanos(curLine.getOutgoingLine());
+				if (waitNanos <= 0) {
+					itr.remove();
+					removed(curLine);
+					batch.add(curLine);
+					return 0;
+				}
+				minWaitNanos = Math.min(minWaitNanos, waitNanos);
+				if (heldTargets == null)
+					heldTargets = new HashSet<String>();
+				heldTargets.add(target);
+			}
+		}
+		return minWaitNanos;
+	}
+
+	protected void writeBatch(List<QueuedLine> batch) {
+		writeLock.lock();
+		try {
+			buffer.clear();
+			for (QueuedLine curLine : batch) {
+				String line = curLine.getLine();
+				wireLogger.logOutput(bot, line);
+				instrumentation.lineWritten(bot, line);
+				if (line.length() > bot.getConfiguration().getMaxLineLength() - 2)
+					line = line.substring(0, bot.getConfiguration().getMaxLineLength() - 2);
+				encode(CharBuffer.wrap(line));
+				encode(CharBuffer.wrap("\r\n"));
+			}
+			flushBuffer();
+			lastSentLine = System.nanoTime();
+			for (QueuedLine curLine : batch) {
+				recordWait(curLine.getOutgoingLine().getCommand(), lastSentLine - curLine.getQueuedNanos());
+				curLine.getFuture().set(null);
+			}
+		} catch (Exception e) {
+			log.error("Exception encountered when writing to socket", e);
+			for (QueuedLine curLine : batch)
+				curLine.getFuture().setException(e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Encode into the buffer, flushing it to the server whenever it fills up
+	 */
+	protected void encode(CharBuffer chars) throws IOException {
+		encoder.reset();
+		CoderResult result;
+		while ((result = encoder.encode(chars, buffer, true)).isOverflow())
+			flushBuffer();
+		if (!result.isUnderflow())
+			result.throwException();
+		//Encoding is done, only flush the encoder from now on
+		while ((result = encoder.flush(buffer)).isOverflow())
+			flushBuffer();
+		if (!result.isUnderflow())
+			result.throwException();
+	}
+
+	protected void flushBuffer() throws IOException {
+		buffer.flip();
+		if (buffer.hasRemaining())
+			Utils.sendRawBytesToServer(bot, buffer);
+		buffer.clear();
+	}
+
+	protected class Writer implements Runnable {
+		public void run() {
+			List<QueuedLine> batch = new ArrayList<QueuedLine>(MAX_BATCH_SIZE);
+			try {
+				while (takeBatch(batch)) {
+					writeBatch(batch);
+					batch.clear();
+				}
+			} catch (InterruptedException e) {
+				log.debug("Output writer interrupted, stopping");
+			}
+		}
+	}
+
+	@RequiredArgsConstructor
+	@Getter
+	protected static class QueuedLine {
+		protected final OutgoingLine outgoingLine;
+		protected final OutputPriority priority;
+		protected final SettableFuture<Void> future = SettableFuture.create();
+		protected final long queuedNanos = System.nanoTime();
+
+		public String getLine() {
+			return outgoingLine.getLine();
+		}
+	}
+}
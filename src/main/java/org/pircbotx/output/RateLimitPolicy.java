@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+import org.pircbotx.PircBotX;
+
+/**
+ * Decides when a line sent through {@link OutputRaw#rawLine(java.lang.String) }
+ * may be written. This is applied on top of 
+ * {@link org.pircbotx.Configuration#getMessageDelay() }, set that to 0 to let 
+ * the policy allow bursts.
+ * <p>
+ * The policy is part of the configuration, so bots sharing a configuration 
+ * share its state. Implementations must be thread safe.
+ * @see TokenBucketPolicy
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public interface RateLimitPolicy {
+	/**
+	 * Reserve permission to send the line now. This is called again for the
+	 * same line until it's allowed, and must not block.
+	 * @param bot The bot sending the line
+	 * @param line The line to send, parsed once
+	 * @return 0 if the line can be sent immediately (consuming any permits), 
+	 * otherwise the nanoseconds to wait before trying again
+	 */
+	public long tryAcquire(PircBotX bot, OutgoingLine line);
+}
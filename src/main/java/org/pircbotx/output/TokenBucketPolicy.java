@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+import static com.google.common.base.Preconditions.*;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import org.pircbotx.Channel;
+import org.pircbotx.PircBotX;
+import org.pircbotx.User;
+import org.pircbotx.UserChannelDao;
+import org.pircbotx.UserLevel;
+
+/**
+ * Rate limit policy using token buckets that allow bursts up to the limit and 
+ * then refill evenly over the period. Lines can be limited by command (eg all 
+ * PRIVMSG's) and by command and target channel (eg PRIVMSG's to #channel). 
+ * Moderator limits raise the limit for lines sent to channels where the bot 
+ * has one of the {@link #getModeratorLevels() moderator levels}. They're 
+ * shared by every line with the command, so other lines also count against 
+ * them and the normal limit only further limits lines to channels where the 
+ * bot isn't a moderator.
+ * <p>
+ * Example for Twitch, also available from {@link #twitch() }:
+ * <pre>
+ * new TokenBucketPolicy()
+ *	.limitCommand("PRIVMSG", 20, 30, TimeUnit.SECONDS)
+ *	.limitCommandAsModerator("PRIVMSG", 100, 30, TimeUnit.SECONDS)
+ *	.limitCommand("JOIN", 20, 10, TimeUnit.SECONDS);
+ * </pre>
+ * Lines with no matching limit are never held back.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class TokenBucketPolicy implements RateLimitPolicy {
+	protected final Map<String, Limit> commandLimits = new HashMap<String, Limit>();
+	protected final Map<String, Limit> moderatorCommandLimits = new HashMap<String, Limit>();
+	protected final Map<String, Limit> targetLimits = new HashMap<String, Limit>();
+	protected final Map<String, Limit> moderatorTargetLimits = new HashMap<String, Limit>();
+	/**
+	 * Buckets created so far, keyed by limit type, command, and target
+	 */
+	protected final Map<String, TokenBucket> buckets = new HashMap<String, TokenBucket>();
+	@Getter
+	protected ImmutableSet<UserLevel> moderatorLevels = ImmutableSet.of(UserLevel.OP, UserLevel.SUPEROP, UserLevel.OWNER);
+
+	/**
+	 * Limits used by Twitch: 20 PRIVMSG's per 30 seconds, 100 when moderator, 
+	 * and 20 JOIN's per 10 seconds.
+	 */
+	public static TokenBucketPolicy twitch() {
+		return new TokenBucketPolicy()
+				.limitCommand("PRIVMSG", 20, 30, TimeUnit.SECONDS)
+				.limitCommandAsModerator("PRIVMSG", 100, 30, TimeUnit.SECONDS)
+				.limitCommand("JOIN", 20, 10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Limit all lines with the command
+	 */
+	public synchronized TokenBucketPolicy limitCommand(String command, int permits, long period, TimeUnit unit) {
+		commandLimits.put(normalizeCommand(command), new Limit(permits, period, unit));
+		return this;
+	}
+
+	/**
+	 * Limit all lines with the command, instead of the {@link #limitCommand(java.lang.String, int, long, java.util.concurrent.TimeUnit) command limit}
+	 * for lines sent to channels where the bot is a moderator
+	 */
+	public synchronized TokenBucketPolicy limitCommandAsModerator(String command, int permits, long period, TimeUnit unit) {
+		moderatorCommandLimits.put(normalizeCommand(command), new Limit(permits, period, unit));
+		return this;
+	}
+
+	/**
+	 * Limit lines with the command for each target channel separately
+	 */
+	public synchronized TokenBucketPolicy limitTarget(String command, int permits, long period, TimeUnit unit) {
+		targetLimits.put(normalizeCommand(command), new Limit(permits, period, unit));
+		return this;
+	}
+
+	/**
+	 * Limit lines with the command for each target channel, instead of the 
+	 * {@link #limitTarget(java.lang.String, int, long, java.util.concurrent.TimeUnit) target limit}
+	 * when the bot is a moderator in the channel
+	 */
+	public synchronized TokenBucketPolicy limitTargetAsModerator(String command, int permits, long period, TimeUnit unit) {
+		moderatorTargetLimits.put(normalizeCommand(command), new Limit(permits, period, unit));
+		return this;
+	}
+
+	/**
+	 * Set the levels in a channel that make the bot a moderator. Defaults to 
+	 * OP, SUPEROP, and OWNER
+	 */
+	public synchronized TokenBucketPolicy setModeratorLevels(Set<UserLevel> moderatorLevels) {
+		this.moderatorLevels = ImmutableSet.copyOf(moderatorLevels);
+		return this;
+	}
+
+	/**
+	 * Parse the line and reserve permission to send it now.
+	 * @see #tryAcquire(org.pircbotx.PircBotX, org.pircbotx.output.OutgoingLine) 
+	 */
+	public long tryAcquire(PircBotX bot, String line) {
+		return tryAcquire(bot, new OutgoingLine(line));
+	}
+
+	public long tryAcquire(PircBotX bot, OutgoingLine line) {
+		String command = line.getCommand();
+		if (command.isEmpty())
+			return 0;
+		//Only channels have target limits
+		String target = line.getTarget();
+		if (target != null) {
+			if (bot.getConfiguration().getChannelPrefixes().indexOf(target.charAt(0)) == -1)
+				target = null;
+			else
+				target = target.toLowerCase(bot.getConfiguration().getLocale());
+		}
+
+		boolean moderator = target != null && isModerator(bot, target);
+		synchronized (this) {
+			long curNanos = System.nanoTime();
+			TokenBucket[] lineBuckets = new TokenBucket[]{
+				getBucket(moderator, command, null, curNanos, true),
+				getBucket(moderator, command, null, curNanos, false),
+				(target == null) ? null : getBucket(moderator, command, target, curNanos, true),
+				(target == null) ? null : getBucket(moderator, command, target, curNanos, false)
+			};
+
+			long waitNanos = 0;
+			for (TokenBucket curBucket : lineBuckets)
+				if (curBucket != null)
+					waitNanos = Math.max(waitNanos, curBucket.nanosUntilToken(curNanos));
+			if (waitNanos > 0)
+				return waitNanos;
+
+			for (TokenBucket curBucket : lineBuckets)
+				if (curBucket != null)
+					curBucket.take();
+			return 0;
+		}
+	}
+
+	protected boolean isModerator(PircBotX bot, String target) {
+		UserChannelDao<User, Channel> dao = bot.getUserChannelDao();
+		if (!dao.channelExists(target) || !dao.userExists(bot.getNick()))
+			return false;
+		for (UserLevel curLevel : dao.getLevels(dao.getChannel(target), dao.getUser(bot.getNick())))
+			if (moderatorLevels.contains(curLevel))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Get or create the bucket of the moderator limit, which every line takes 
+	 * from, or of the normal limit, which only lines where the bot isn't a 
+	 * moderator (or there is no moderator limit) take from. Must hold the lock
+	 * @return The bucket or null if the line doesn't take from it
+	 */
+	protected TokenBucket getBucket(boolean moderator, String command, String target, long curNanos, boolean moderatorBucket) {
+		Limit moderatorLimit = (target == null) ? moderatorCommandLimits.get(command) : moderatorTargetLimits.get(command);
+		Limit limit;
+		String key;
+		if (moderatorBucket) {
+			limit = moderatorLimit;
+			key = "moderator";
+		} else if (!moderator || moderatorLimit == null) {
+			limit = (target == null) ? commandLimits.get(command) : targetLimits.get(command);
+			key = "normal";
+		} else
+			return null;
+		if (limit == null)
+			return null;
+
+		key = key + " " + command + (target == null ? "" : " " + target);
+		TokenBucket bucket = buckets.get(key);
+		if (bucket == null)
+			buckets.put(key, bucket = new TokenBucket(limit, curNanos));
+		return bucket;
+	}
+
+	protected static String normalizeCommand(String command) {
+		checkArgument(command != null && !command.isEmpty(), "Command cannot be blank");
+		return command.toUpperCase(Locale.ENGLISH);
+	}
+
+	protected static class Limit {
+		protected final int permits;
+		protected final double nanosPerPermit;
+
+		public Limit(int permits, long period, TimeUnit unit) {
+			checkArgument(permits > 0, "Permits must be positive");
+			checkArgument(period > 0, "Period must be positive");
+			this.permits = permits;
+			this.nanosPerPermit = unit.toNanos(period) / (double) permits;
+		}
+	}
+
+	protected static class TokenBucket {
+		protected final Limit limit;
+		protected double tokens;
+		protected long lastRefillNanos;
+
+		public TokenBucket(Limit limit, long curNanos) {
+			this.limit = limit;
+			this.tokens = limit.permits;
+			this.lastRefillNanos = curNanos;
+		}
+
+		public long nanosUntilToken(long curNanos) {
+			tokens = Math.min(limit.permits, tokens + (curNanos - lastRefillNanos) / limit.nanosPerPermit);
+			lastRefillNanos = curNanos;
+			if (tokens >= 1)
+				return 0;
+			return (long) Math.ceil((1 - tokens) * limit.nanosPerPermit);
+		}
+
+		public void take() {
+			tokens--;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of how long lines waited between being sent with 
+ * {@link OutputRaw#rawLine(java.lang.String) } and being written to the server.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class WaitStats {
+	protected final AtomicLong count = new AtomicLong();
+	protected final AtomicLong totalNanos = new AtomicLong();
+	protected final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long waitNanos) {
+		count.incrementAndGet();
+		totalNanos.addAndGet(waitNanos);
+		long curMax;
+		while (waitNanos > (curMax = maxNanos.get()))
+			if (maxNanos.compareAndSet(curMax, waitNanos))
+				break;
+	}
+
+	/**
+	 * @return Number of lines written
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalWait(TimeUnit unit) {
+		return unit.convert(totalNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	public long getMaxWait(TimeUnit unit) {
+		return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	public long getAverageWait(TimeUnit unit) {
+		long curCount = count.get();
+		return (curCount == 0) ? 0 : unit.convert(totalNanos.get() / curCount, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "WaitStats(count=" + getCount()
+				+ ", averageMillis=" + getAverageWait(TimeUnit.MILLISECONDS)
+				+ ", maxMillis=" + getMaxWait(TimeUnit.MILLISECONDS) + ")";
+	}
+}
@@ -20,11 +20,11 @@ package org.pircbotx.snapshot;
 
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableSortedSet;
-import java.util.EnumMap;
 import java.util.Locale;
+import org.pircbotx.CaseMappedKey;
+import org.pircbotx.CaseMapping;
 import org.pircbotx.PircBotX;
 import org.pircbotx.UserChannelDao;
-import org.pircbotx.UserChannelMap;
 import org.pircbotx.UserLevel;
 
 /**
@@ -32,13 +32,14 @@ import org.pircbotx.UserLevel;
  * @author Leon
  */
 public class UserChannelDaoSnapshot extends UserChannelDao<UserSnapshot, ChannelSnapshot> {
-	public UserChannelDaoSnapshot(PircBotX bot, Locale locale, UserChannelMapSnapshot mainMap, EnumMap<UserLevel, UserChannelMap<UserSnapshot, ChannelSnapshot>> levelsMap, ImmutableBiMap<String, UserSnapshot> userNickMap, ImmutableBiMap<String, ChannelSnapshot> channelNameMap, ImmutableSortedSet<UserSnapshot> privateUsers) {
+	public UserChannelDaoSnapshot(PircBotX bot, Locale locale, CaseMapping caseMapping, UserChannelMapSnapshot mainMap, UserLevelMapSnapshot levelsMap, ImmutableBiMap<CaseMappedKey, UserSnapshot> userNickMap, ImmutableBiMap<CaseMappedKey, ChannelSnapshot> channelNameMap, ImmutableSortedSet<UserSnapshot> privateUsers) {
 		super(bot, null, locale, mainMap, levelsMap, userNickMap, channelNameMap, privateUsers);
+		this.caseMapping = caseMapping;
 	}
 
 	@Override
 	public UserSnapshot getUser(String nick) {
-		UserSnapshot user = userNickMap.get(nick.toLowerCase());
+		UserSnapshot user = userNickMap.get(caseMapping.key(nick));
 		if (user == null)
 			throw new RuntimeException("User " + nick + " does not exist");
 		return user;
@@ -46,7 +47,7 @@ public class UserChannelDaoSnapshot extends UserChannelDao<UserSnapshot, Channel
 
 	@Override
 	public ChannelSnapshot getChannel(String name) {
-		ChannelSnapshot channel = channelNameMap.get(name.toLowerCase());
+		ChannelSnapshot channel = channelNameMap.get(caseMapping.key(name));
 		if (channel == null)
 			throw new RuntimeException("Channel " + channel + " does not exist");
 		return channel;
@@ -92,6 +93,11 @@ public class UserChannelDaoSnapshot extends UserChannelDao<UserSnapshot, Channel
 		SnapshotUtils.fail();
 	}
 
+	@Override
+	protected void setCaseMapping(CaseMapping caseMapping) {
+		SnapshotUtils.fail();
+	}
+
 	@Override
 	public void close() {
 		SnapshotUtils.fail();
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.snapshot;
+
+import org.pircbotx.UserLevel;
+import org.pircbotx.UserLevelMap;
+
+/**
+ * A snapshot of a {@link UserLevelMap}. Any attempts to modify data throw an
+ * exception
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class UserLevelMapSnapshot extends UserLevelMap<UserSnapshot, ChannelSnapshot> {
+	/**
+	 * Add levels while the snapshot is created. Snapshots are only shared 
+	 * after this isn't called anymore
+	 */
+	@Override
+	public void putLevels(UserSnapshot user, ChannelSnapshot channel, int mask) {
+		super.putLevels(user, channel, mask);
+	}
+
+	@Override
+	public void addUserToLevel(UserLevel level, UserSnapshot user, ChannelSnapshot channel) {
+		SnapshotUtils.fail();
+	}
+
+	@Override
+	public void removeUserFromLevel(UserLevel level, UserSnapshot user, ChannelSnapshot channel) {
+		SnapshotUtils.fail();
+	}
+
+	@Override
+	public void removeUserFromChannel(UserSnapshot user, ChannelSnapshot channel) {
+		SnapshotUtils.fail();
+	}
+
+	@Override
+	public void removeUser(UserSnapshot user) {
+		SnapshotUtils.fail();
+	}
+
+	@Override
+	public void removeChannel(ChannelSnapshot channel) {
+		SnapshotUtils.fail();
+	}
+
+	@Override
+	public void clear() {
+		SnapshotUtils.fail();
+	}
+}
@@ -47,9 +47,11 @@ public class UserSnapshot extends User {
 		//Clone fields
 		super.setAwayMessage(user.getAwayMessage());
 		super.setHops(user.getHops());
+		//Login first so the hostmask can share it
+		super.setLogin(user.getLogin());
 		super.setHostmask(user.getHostmask());
 		super.setIrcop(user.isIrcop());
-		super.setLogin(user.getLogin());
+		super.setLastSpokenTime(user.getLastSpokenTime());
 		super.setRealName(user.getRealName());
 		super.setServer(user.getServer());
 	}
@@ -90,6 +92,11 @@ public class UserSnapshot extends User {
 		throw new UnsupportedOperationException("Attempting to set field on user snapshot");
 	}
 
+	@Override
+	protected void setLastSpokenTime(long lastSpokenTime) {
+		throw new UnsupportedOperationException("Attempting to set field on user snapshot");
+	}
+
 	@Override
 	protected void setNick(String nick) {
 		throw new UnsupportedOperationException("Attempting to set field on user snapshot");
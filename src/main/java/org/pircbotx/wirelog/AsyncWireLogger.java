@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.wirelog;
+
+import static com.google.common.base.Preconditions.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.PircBotX;
+import org.pircbotx.Utils;
+
+/**
+ * Hands lines to another {@link WireLogger} on a background thread so the
+ * input thread never waits on logging. Lines are put in a fixed size lock-free
+ * ring buffer of reused slots, so logging a line doesn't allocate. When the
+ * buffer is full the line is dropped and counted instead of blocking, see
+ * {@link #getDropped() }.
+ * <p>
+ * The background thread sets the MDC of each line's bot with
+ * {@link Utils#addBotToMDC(org.pircbotx.PircBotX) } so log patterns using the
+ * bot id still work. The thread is a daemon; call {@link #close() } to log
+ * the remaining lines, stop the thread, and close the delegate if it's
+ * {@link Closeable}.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public class AsyncWireLogger implements WireLogger, Closeable {
+	public static final int DEFAULT_CAPACITY = 8192;
+	protected static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	/**
+	 * Tail once the background thread stopped, so no producer can claim a
+	 * slot that would never be logged
+	 */
+	protected static final long CLOSED_TAIL = -1;
+	protected final WireLogger delegate;
+	protected final int capacity;
+	protected final int mask;
+	protected final Entry[] entries;
+	/**
+	 * Sequence of each slot: its position when it can be written, position + 1
+	 * once written and ready to log
+	 */
+	protected final AtomicLongArray sequences;
+	/**
+	 * Next position producers claim, or {@link #CLOSED_TAIL}
+	 */
+	protected final AtomicLong tail = new AtomicLong();
+	/**
+	 * Next position the background thread logs, only written by it
+	 */
+	protected volatile long head;
+	protected final AtomicLong dropped = new AtomicLong();
+	protected final Thread thread;
+	protected volatile boolean closed;
+
+	public AsyncWireLogger(WireLogger delegate) {
+		this(delegate, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param delegate Logger called on the background thread
+	 * @param capacity Number of lines that can wait to be logged, must be a
+	 * power of 2
+	 */
+	public AsyncWireLogger(WireLogger delegate, int capacity) {
+		checkNotNull(delegate, "Must specify wire logger");
+		checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "Capacity %s must be a power of 2", capacity);
+		this.delegate = delegate;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.entries = new Entry[capacity];
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			entries[i] = new Entry();
+			sequences.set(i, i);
+		}
+		thread = new Thread(new Runnable() {
+			public void run() {
+				runLogger();
+			}
+		}, "pircbotx-wirelog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void logInput(PircBotX bot, String line) {
+		offer(bot, line, false);
+	}
+
+	public void logOutput(PircBotX bot, String line) {
+		offer(bot, line, true);
+	}
+
+	protected void offer(PircBotX bot, String line, boolean output) {
+		if (closed) {
+			dropped.incrementAndGet();
+			return;
+		}
+		long position;
+		int slot;
+		while (true) {
+			position = tail.get();
+			if (position == CLOSED_TAIL) {
+				dropped.incrementAndGet();
+				return;
+			}
+			slot = (int) position & mask;
+			long sequence = sequences.get(slot);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1))
+					break;
+			} else if (sequence < position) {
+				//Slot from the previous lap wasn't logged yet, buffer is full
+				dropped.incrementAndGet();
+				return;
+			}
+			//Otherwise another thread claimed this position first
+		}
+		Entry entry = entries[slot];
+		entry.bot = bot;
+		entry.line = line;
+		entry.output = output;
+		sequences.lazySet(slot, position + 1);
+	}
+
+	protected void runLogger() {
+		PircBotX lastBot = null;
+		while (true) {
+			long position = head;
+			int slot = (int) position & mask;
+			if (sequences.get(slot) != position + 1) {
+				//Stop claims so a producer that passed the closed check can't
+				//add a line after the thread stopped
+				if (closed && tail.compareAndSet(position, CLOSED_TAIL))
+					break;
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+				continue;
+			}
+			Entry entry = entries[slot];
+			PircBotX bot = entry.bot;
+			String line = entry.line;
+			boolean output = entry.output;
+			entry.bot = null;
+			entry.line = null;
+			//Free the slot for the next lap
+			sequences.lazySet(slot, position + capacity);
+			head = position + 1;
+
+			try {
+				if (bot != lastBot) {
+					Utils.addBotToMDC(bot);
+					lastBot = bot;
+				}
+				if (output)
+					delegate.logOutput(bot, line);
+				else
+					delegate.logInput(bot, line);
+			} catch (RuntimeException e) {
+				log.error("Wire logger failed to log " + line, e);
+			}
+		}
+
+		if (delegate instanceof Closeable)
+			try {
+				((Closeable) delegate).close();
+			} catch (IOException e) {
+				log.error("Could not close wire logger", e);
+			}
+	}
+
+	/**
+	 * Number of lines dropped because the buffer was full or the logger was
+	 * closed
+	 * @return The number of dropped lines
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Number of lines waiting to be logged
+	 * @return The number of waiting lines
+	 */
+	public int getPending() {
+		long curTail = tail.get();
+		return (curTail == CLOSED_TAIL) ? 0 : (int) (curTail - head);
+	}
+
+	/**
+	 * Wait until every line logged before this call is passed to the delegate
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void flush() throws InterruptedException {
+		long target = tail.get();
+		while (head < target && thread.isAlive())
+			Thread.sleep(1);
+	}
+
+	/**
+	 * Log the remaining lines and stop the background thread. Lines logged
+	 * afterwards are dropped
+	 */
+	public void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing wire logger");
+		}
+	}
+
+	protected static class Entry {
+		protected PircBotX bot;
+		protected String line;
+		protected boolean output;
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.wirelog;
+
+import static com.google.common.base.Preconditions.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.pircbotx.PircBotX;
+
+/**
+ * Only passes some of the lines of each command to another {@link WireLogger},
+ * eg every JOIN and PART but 1% of PRIVMSG's:
+ * <pre>
+ * new SampledWireLogger(new AsyncWireLogger(new Slf4jWireLogger()))
+ *     .sample("PRIVMSG", 0.01)
+ * </pre>
+ * Sampling is deterministic, a rate of 0.01 logs the first and then every
+ * 100th line of the command, counting input and output lines together. The
+ * command is found without creating any Strings, skipping IRCv3 tags and the
+ * prefix. Commands without a rate use the default rate, which is 1.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class SampledWireLogger implements WireLogger {
+	protected final WireLogger delegate;
+	/**
+	 * Replaced when the rates change
+	 */
+	protected volatile Samples samples = new Samples(new String[0], new long[0], 1);
+	protected final AtomicLong skipped = new AtomicLong();
+
+	public SampledWireLogger(WireLogger delegate) {
+		this.delegate = checkNotNull(delegate, "Must specify wire logger");
+	}
+
+	/**
+	 * Log only part of the lines with the command
+	 * @param command The command, eg PRIVMSG or 353
+	 * @param rate Fraction of lines to log, 0 to log none and 1 to log all
+	 * @return This object
+	 */
+	public synchronized SampledWireLogger sample(String command, double rate) {
+		checkArgument(command.length() > 0 && command.indexOf(' ') == -1, "Invalid command %s", command);
+		int index = Arrays.asList(samples.commands).indexOf(command);
+		if (index == -1)
+			index = samples.commands.length;
+		String[] commands = Arrays.copyOf(samples.commands, Math.max(index + 1, samples.commands.length));
+		long[] intervals = Arrays.copyOf(samples.intervals, commands.length);
+		commands[index] = command;
+		intervals[index] = toInterval(rate);
+		samples = new Samples(commands, intervals, samples.defaultInterval);
+		return this;
+	}
+
+	/**
+	 * Fraction of lines to log for commands without their own rate
+	 * @param rate Fraction of lines to log, 0 to log none and 1 to log all
+	 * @return This object
+	 */
+	public synchronized SampledWireLogger setDefaultRate(double rate) {
+		samples = new Samples(samples.commands, samples.intervals, toInterval(rate));
+		return this;
+	}
+
+	/**
+	 * @return Log every nth line, or 0 for none
+	 */
+	protected static long toInterval(double rate) {
+		checkArgument(rate >= 0 && rate <= 1, "Rate %s must be between 0 and 1", rate);
+		return rate == 0 ? 0 : Math.max(Math.round(1 / rate), 1);
+	}
+
+	/**
+	 * Number of lines that weren't logged
+	 * @return The number of skipped lines
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	public void logInput(PircBotX bot, String line) {
+		if (keep(line))
+			delegate.logInput(bot, line);
+	}
+
+	public void logOutput(PircBotX bot, String line) {
+		if (keep(line))
+			delegate.logOutput(bot, line);
+	}
+
+	protected boolean keep(String line) {
+		if (samples.keep(line))
+			return true;
+		skipped.incrementAndGet();
+		return false;
+	}
+
+	protected static class Samples {
+		protected final String[] commands;
+		protected final long[] intervals;
+		protected final AtomicLongArray counters;
+		protected final long defaultInterval;
+		protected final AtomicLong defaultCounter = new AtomicLong();
+
+		public Samples(String[] commands, long[] intervals, long defaultInterval) {
+			this.commands = commands;
+			this.intervals = intervals;
+			this.counters = new AtomicLongArray(commands.length);
+			this.defaultInterval = defaultInterval;
+		}
+
+		public boolean keep(String line) {
+			//Skip tags and prefix
+			int start = 0;
+			int length = line.length();
+			if (start < length && line.charAt(start) == '@')
+				start = skipToken(line, start);
+			if (start < length && line.charAt(start) == ':')
+				start = skipToken(line, start);
+			int end = line.indexOf(' ', start);
+			if (end == -1)
+				end = length;
+
+			for (int i = 0; i < commands.length; i++)
+				if (commands[i].length() == end - start && line.regionMatches(true, start, commands[i], 0, end - start))
+					//Only count lines that are sampled
+					return intervals[i] == 1 || (intervals[i] != 0 && counters.getAndIncrement(i) % intervals[i] == 0);
+			return defaultInterval == 1 || (defaultInterval != 0 && defaultCounter.getAndIncrement() % defaultInterval == 0);
+		}
+
+		/**
+		 * @return Start of the next token
+		 */
+		protected static int skipToken(String line, int start) {
+			int end = line.indexOf(' ', start);
+			if (end == -1)
+				return line.length();
+			while (end < line.length() && line.charAt(end) == ' ')
+				end++;
+			return end;
+		}
+	}
+}
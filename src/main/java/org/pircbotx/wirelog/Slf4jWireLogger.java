@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.wirelog;
+
+import org.pircbotx.InputParser;
+import org.pircbotx.PircBotX;
+import org.pircbotx.output.OutputRaw;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs lines to the {@link InputParser} and {@link OutputRaw} loggers with
+ * {@link InputParser#INPUT_MARKER} and {@link OutputRaw#OUTPUT_MARKER} at info
+ * level, on the calling thread. The default {@link WireLogger}
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class Slf4jWireLogger implements WireLogger {
+	protected static final Logger INPUT_LOG = LoggerFactory.getLogger(InputParser.class);
+	protected static final Logger OUTPUT_LOG = LoggerFactory.getLogger(OutputRaw.class);
+
+	public void logInput(PircBotX bot, String line) {
+		INPUT_LOG.info(InputParser.INPUT_MARKER, line);
+	}
+
+	public void logOutput(PircBotX bot, String line) {
+		OUTPUT_LOG.info(OutputRaw.OUTPUT_MARKER, line);
+	}
+}
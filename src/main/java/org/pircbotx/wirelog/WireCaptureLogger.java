@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.wirelog;
+
+import static com.google.common.base.Preconditions.*;
+import com.google.common.base.Charsets;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import lombok.extern.slf4j.Slf4j;
+import org.pircbotx.PircBotX;
+
+/**
+ * Writes lines to rotating binary capture files that can be read with
+ * {@link WireCaptureReader} and replayed with the test ReplayServer. Each file
+ * starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per
+ * line:
+ * <ul>
+ * <li>byte: {@link #INPUT} or {@link #OUTPUT}</li>
+ * <li>long: time logged in milliseconds since the epoch</li>
+ * <li>int: {@link PircBotX#getBotId() bot id}</li>
+ * <li>int: length of the line in bytes, then the line in UTF-8</li>
+ * </ul>
+ * A new file named <code>prefix.timestamp.wire</code> is started when the
+ * current file would grow past the max size. Only the newest max files files
+ * this logger created are kept. Writes are buffered and synchronized, so wrap
+ * in an {@link AsyncWireLogger} to keep disk IO off the input thread. IO errors
+ * are logged and the line is dropped.
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Slf4j
+public class WireCaptureLogger implements WireLogger, Closeable {
+	public static final int MAGIC = 0x50425857;
+	public static final int VERSION = 1;
+	public static final byte INPUT = 0;
+	public static final byte OUTPUT = 1;
+	/**
+	 * Bytes in the file header
+	 */
+	protected static final int HEADER_SIZE = 8;
+	/**
+	 * Bytes in each record besides the line
+	 */
+	protected static final int RECORD_OVERHEAD = 17;
+	protected final File directory;
+	protected final String prefix;
+	protected final long maxFileSize;
+	protected final int maxFiles;
+	protected final Deque<File> files = new ArrayDeque<File>();
+	protected DataOutputStream output;
+	protected long fileSize;
+	protected boolean closed;
+
+	/**
+	 * @param directory Directory to write files to
+	 * @param prefix Start of every file name
+	 * @param maxFileSize Size in bytes to rotate files at
+	 * @param maxFiles Number of files to keep, including the current file
+	 */
+	public WireCaptureLogger(File directory, String prefix, long maxFileSize, int maxFiles) {
+		checkNotNull(directory, "Must specify directory");
+		checkArgument(prefix != null && prefix.length() > 0, "Must specify prefix");
+		checkArgument(maxFileSize > HEADER_SIZE, "Max file size must be larger than %s", HEADER_SIZE);
+		checkArgument(maxFiles > 0, "Max files must be positive");
+		this.directory = directory;
+		this.prefix = prefix;
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+	}
+
+	public void logInput(PircBotX bot, String line) {
+		write(INPUT, bot, line);
+	}
+
+	public void logOutput(PircBotX bot, String line) {
+		write(OUTPUT, bot, line);
+	}
+
+	protected synchronized void write(byte direction, PircBotX bot, String line) {
+		if (closed)
+			return;
+		byte[] lineBytes = line.getBytes(Charsets.UTF_8);
+		int recordSize = RECORD_OVERHEAD + lineBytes.length;
+		try {
+			if (output == null || (fileSize > HEADER_SIZE && fileSize + recordSize > maxFileSize))
+				rotate();
+			output.writeByte(direction);
+			output.writeLong(System.currentTimeMillis());
+			output.writeInt(bot.getBotId());
+			output.writeInt(lineBytes.length);
+			output.write(lineBytes);
+			fileSize += recordSize;
+		} catch (IOException e) {
+			log.error("Could not write wire capture", e);
+		}
+	}
+
+	/**
+	 * Start a new file, deleting the oldest if there are too many
+	 */
+	protected void rotate() throws IOException {
+		if (output != null)
+			output.close();
+		File file = new File(directory, prefix + "." + System.currentTimeMillis() + ".wire");
+		for (int i = 1; file.exists(); i++)
+			file = new File(directory, prefix + "." + System.currentTimeMillis() + "-" + i + ".wire");
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		fileSize = HEADER_SIZE;
+		files.addLast(file);
+		while (files.size() > maxFiles) {
+			File oldFile = files.removeFirst();
+			if (!oldFile.delete())
+				log.warn("Could not delete old wire capture " + oldFile);
+		}
+	}
+
+	/**
+	 * Files written so far that haven't been deleted, oldest first
+	 * @return The capture files
+	 */
+	public synchronized File[] getFiles() {
+		return files.toArray(new File[files.size()]);
+	}
+
+	/**
+	 * Write buffered records to the current file
+	 */
+	public synchronized void flush() throws IOException {
+		if (output != null)
+			output.flush();
+	}
+
+	public synchronized void close() throws IOException {
+		closed = true;
+		if (output != null) {
+			output.close();
+			output = null;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.wirelog;
+
+import com.google.common.base.Charsets;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import lombok.Data;
+
+/**
+ * Reads the records of a file written by {@link WireCaptureLogger}
+ * <pre>
+ * WireCaptureReader reader = new WireCaptureReader(new FileInputStream(file));
+ * WireCaptureReader.Record record;
+ * while ((record = reader.next()) != null)
+ *     System.out.println(record.getLine());
+ * </pre>
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class WireCaptureReader implements Closeable {
+	protected final DataInputStream input;
+
+	/**
+	 * @param input Stream starting with the capture header
+	 * @throws IOException If the stream isn't a capture of a known version
+	 */
+	public WireCaptureReader(InputStream input) throws IOException {
+		this.input = new DataInputStream(new BufferedInputStream(input));
+		int magic = this.input.readInt();
+		if (magic != WireCaptureLogger.MAGIC)
+			throw new IOException("Not a wire capture");
+		int version = this.input.readInt();
+		if (version != WireCaptureLogger.VERSION)
+			throw new IOException("Unknown wire capture version " + version);
+	}
+
+	/**
+	 * Check if the file starts with the capture header
+	 * @param file The file to check
+	 * @return True if the file is a capture
+	 */
+	public static boolean isCapture(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new FileInputStream(file));
+		try {
+			return input.readInt() == WireCaptureLogger.MAGIC;
+		} catch (EOFException e) {
+			return false;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Read the next record
+	 * @return The record or null at the end of the capture
+	 * @throws IOException If the capture can't be read or the last record is
+	 * cut off
+	 */
+	public Record next() throws IOException {
+		int direction = input.read();
+		if (direction == -1)
+			return null;
+		long timestamp = input.readLong();
+		int botId = input.readInt();
+		byte[] lineBytes = new byte[input.readInt()];
+		input.readFully(lineBytes);
+		return new Record(direction == WireCaptureLogger.OUTPUT, timestamp, botId, new String(lineBytes, Charsets.UTF_8));
+	}
+
+	public void close() throws IOException {
+		input.close();
+	}
+
+	@Data
+	public static class Record {
+		/**
+		 * True if the line was sent to the server, false if it was received
+		 */
+		protected final boolean output;
+		protected final long timestamp;
+		protected final int botId;
+		protected final String line;
+	}
+}
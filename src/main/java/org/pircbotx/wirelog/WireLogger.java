@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.wirelog;
+
+import org.pircbotx.InputParser;
+import org.pircbotx.PircBotX;
+
+/**
+ * Logs every raw line read from and written to the server. Called on the
+ * input thread and the threads sending lines, so implementations must be fast
+ * and thread safe.
+ * <p>
+ * The default {@link Slf4jWireLogger} logs synchronously with
+ * {@link InputParser#INPUT_MARKER} and {@link org.pircbotx.output.OutputRaw#OUTPUT_MARKER}.
+ * For busy bots wrap it:
+ * <pre>
+ * new SampledWireLogger(new AsyncWireLogger(new Slf4jWireLogger()))
+ *     .sample("PRIVMSG", 0.01)
+ * </pre>
+ * @see AsyncWireLogger
+ * @see SampledWireLogger
+ * @see WireCaptureLogger
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public interface WireLogger {
+	/**
+	 * Log a line read from the server
+	 * @param bot The bot that read the line
+	 * @param line The raw line, without the line ending
+	 */
+	public void logInput(PircBotX bot, String line);
+
+	/**
+	 * Log a line written to the server
+	 * @param bot The bot that wrote the line
+	 * @param line The raw line, without the line ending
+	 */
+	public void logOutput(PircBotX bot, String line);
+}
@@ -24,7 +24,11 @@ import ch.qos.logback.core.util.StatusPrinter;
 import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.security.SecureRandom;
+import java.util.List;
+import java.util.Locale;
 import java.util.Random;
 import java.util.concurrent.Executors;
 import org.apache.commons.lang3.StringUtils;
@@ -135,14 +139,20 @@ public class Benchmark {
 		};
 		inputParser = bot.getInputParser();
 
+		measureTokenizeAllocations(bot.getConfiguration().getLocale());
+
 		System.out.println("Waiting 5 seconds");
 		Thread.sleep(5000);
 
 		System.out.println("Executing with " + responseGroups.length + " response groups");
+		long allocatedBefore = getAllocatedBytes();
 		int counter = run(stopWatch);
+		long allocatedAfter = getAllocatedBytes();
 
 		System.out.println("Parsed " + counter + " enteries in " + stopWatch.toString());
 		System.out.println("Average parse speed: " + ((float) counter / (stopWatch.getTime() / 1000)) + " per second");
+		if (allocatedBefore != -1)
+			System.out.println("Allocated on parser thread: " + ((allocatedAfter - allocatedBefore) / counter) + " bytes per line");
 
 		System.out.println("Memory usage: " + (runtime.totalMemory() / 1024));
 
@@ -166,6 +176,57 @@ public class Benchmark {
 		}
 	}
 
+	/**
+	 * Compare the bytes allocated per line by the old {@link Utils#tokenizeLine(java.lang.String) }
+	 * handling in InputParser and the reusable {@link ParsedLine}
+	 */
+	private static void measureTokenizeAllocations(Locale locale) {
+		if (getAllocatedBytes() == -1) {
+			System.out.println("Allocation measurement not supported on this JVM");
+			return;
+		}
+		int lineCount = 0;
+		for (String[] curGroup : responseGroups)
+			lineCount += curGroup.length;
+
+		//Before: List of substrings, shifting removes, and upper casing
+		long tokenizeStart = getAllocatedBytes();
+		for (String[] curGroup : responseGroups)
+			for (String curLine : curGroup) {
+				List<String> parsedLine = Utils.tokenizeLine(curLine);
+				if (parsedLine.get(0).charAt(0) == ':')
+					parsedLine.remove(0);
+				String command = parsedLine.remove(0).toUpperCase(locale);
+				String target = !parsedLine.isEmpty() ? parsedLine.get(0) : "";
+			}
+		long tokenizeBytes = getAllocatedBytes() - tokenizeStart;
+
+		//After: offsets into the original line
+		ParsedLine parsedLine = new ParsedLine();
+		long parsedLineStart = getAllocatedBytes();
+		for (String[] curGroup : responseGroups)
+			for (String curLine : curGroup) {
+				parsedLine.parse(curLine);
+				String command = parsedLine.getCommand(locale);
+				String target = parsedLine.getParam(0, "");
+			}
+		long parsedLineBytes = getAllocatedBytes() - parsedLineStart;
+
+		System.out.println("Tokenize allocations before (Utils.tokenizeLine): " + (tokenizeBytes / lineCount) + " bytes per line");
+		System.out.println("Tokenize allocations after (ParsedLine): " + (parsedLineBytes / lineCount) + " bytes per line");
+	}
+
+	/**
+	 * Bytes allocated by the current thread
+	 * @return The allocated bytes or -1 if unsupported
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
 	private static final int run(StopWatch stopWatch) throws IOException, IrcException {
 		int counter = 0;
 		stopWatch.start();
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import org.pircbotx.snapshot.UserChannelDaoSnapshot;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test case mapped name lookups in every dao
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class CaseMappingTest {
+	@Test
+	public void mappingTest() {
+		assertEquals(CaseMapping.RFC1459.toLowerCase('^'), '~');
+		assertEquals(CaseMapping.STRICT_RFC1459.toLowerCase('^'), '^');
+		assertEquals(CaseMapping.STRICT_RFC1459.toLowerCase('['), '{');
+		assertEquals(CaseMapping.ASCII.toLowerCase('['), '[');
+		assertEquals(CaseMapping.ASCII.toLowerCase('Q'), 'q');
+		assertTrue(CaseMapping.RFC1459.equals("Nick[^]", "nick{~}"));
+		assertFalse(CaseMapping.ASCII.equals("Nick[]", "nick{}"));
+		assertEquals(CaseMapping.RFC1459.key("Nick[^]"), CaseMapping.RFC1459.key("NICK{~}"));
+		assertEquals(CaseMapping.RFC1459.key("Nick[^]").hashCode(), CaseMapping.RFC1459.key("nick{~}").hashCode());
+		assertNotEquals(CaseMapping.RFC1459.key("nick"), CaseMapping.ASCII.key("nick"));
+		assertEquals(CaseMapping.fromName("strict-rfc1459"), CaseMapping.STRICT_RFC1459);
+		assertNull(CaseMapping.fromName("rfc7613"));
+	}
+
+	@DataProvider
+	public Object[][] botFactoryProvider() {
+		return new Object[][]{
+			{new Configuration.BotFactory()},
+			{new Configuration.BotFactory() {
+				@Override
+				public UserChannelDao createUserChannelDao(PircBotX bot) {
+					return new ConcurrentUserChannelDao(bot, this);
+				}
+			}},
+			{new Configuration.BotFactory() {
+				@Override
+				public UserChannelDao createUserChannelDao(PircBotX bot) {
+					return new CompactUserChannelDao(bot, this);
+				}
+			}}
+		};
+	}
+
+	@Test(dataProvider = "botFactoryProvider")
+	public void daoTest(Configuration.BotFactory botFactory) throws Exception {
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setBotFactory(botFactory)
+				.buildConfiguration());
+		bot.nick = "PircBotXBot";
+		UserChannelDao<User, Channel> dao = bot.getUserChannelDao();
+		InputParser inputParser = bot.getInputParser();
+		inputParser.handleLine(":AUser[^]!~ALogin@some.host JOIN :#aChannel[]");
+		User aUser = dao.getUser("auser{~}");
+		assertSame(dao.getUser("AUSER[^]"), aUser);
+		assertTrue(dao.channelExists("#ACHANNEL{}"));
+		assertSame(dao.getChannel("#achannel[]"), aUser.getChannels().first());
+
+		inputParser.handleLine(":AUser[^]!~ALogin@some.host NICK :BUser^");
+		assertFalse(dao.userExists("auser{~}"));
+		assertSame(dao.getUser("buser~"), aUser);
+
+		//Names are re-keyed when the server says otherwise
+		inputParser.handleLine(":irc.someserver.net 005 PircBotXBot CASEMAPPING=ascii :are supported by this server");
+		assertEquals(dao.getCaseMapping(), CaseMapping.ASCII);
+		assertFalse(dao.userExists("buser~"));
+		assertSame(dao.getUser("buser^"), aUser);
+		assertFalse(dao.channelExists("#achannel{}"));
+		assertTrue(dao.channelExists("#achannel[]"));
+
+		UserChannelDaoSnapshot snapshot = dao.createSnapshot();
+		assertEquals(snapshot.getUser("BUSER^").getNick(), "BUser^");
+		assertEquals(snapshot.getChannel("#ACHANNEL[]").getName(), "#aChannel[]");
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.pircbotx.snapshot.UserChannelDaoSnapshot;
+import org.pircbotx.snapshot.UserSnapshot;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Test(singleThreaded = true)
+public class CompactUserChannelDaoTest {
+	protected PircBotX bot;
+	protected CompactUserChannelDao<User, Channel> dao;
+
+	@BeforeMethod
+	public void setUp() {
+		Configuration configuration = TestUtils.generateConfigurationBuilder()
+				.setBotFactory(new Configuration.BotFactory() {
+			@Override
+			public UserChannelDao createUserChannelDao(PircBotX bot) {
+				return new CompactUserChannelDao(bot, this);
+			}
+		})
+				.buildConfiguration();
+		bot = new PircBotX(configuration);
+		bot.nick = "PircBotXBot";
+		dao = (CompactUserChannelDao<User, Channel>) bot.getUserChannelDao();
+	}
+
+	@Test
+	public void lineTest() throws Exception {
+		InputParser inputParser = bot.getInputParser();
+		inputParser.handleLine(":AUser!~ALogin@some.host JOIN :#aChannel");
+		inputParser.handleLine(":AUser2!~ALogin@some.host JOIN :#aChannel");
+		User aUser = dao.getUser("AUser");
+		Channel aChannel = dao.getChannel("#aChannel");
+		assertEquals(dao.getUsers(aChannel).size(), 2);
+		assertEquals(dao.getChannels(aUser).first(), aChannel);
+		assertSame(dao.getUsers(aChannel), dao.getUsers(aChannel), "Users weren't cached");
+		assertSame(dao.getUnsortedUsers(aChannel), dao.getUsers(aChannel));
+
+		inputParser.handleLine(":AUser!~ALogin@some.host NICK :AUserRenamed");
+		assertFalse(dao.userExists("AUser"));
+		assertSame(dao.getUser("auserrenamed"), aUser);
+		assertEquals(dao.getUsers(aChannel).first().getNick(), "AUser2", "Users weren't resorted after rename");
+
+		inputParser.handleLine(":AUserRenamed!~ALogin@some.host PART #aChannel");
+		assertFalse(dao.userExists("AUserRenamed"), "User not in any channel wasn't removed");
+		assertEquals(dao.getUsers(aChannel).size(), 1);
+
+		UserChannelDaoSnapshot snapshot = dao.createSnapshot();
+		assertEquals(snapshot.getUsers(snapshot.getChannel("#aChannel")).first().getNick(), "AUser2");
+	}
+
+	@Test
+	public void levelTest() {
+		Channel aChannel = dao.getChannel("#aChannel");
+		Channel otherChannel = dao.getChannel("#otherChannel");
+		User aUser = dao.getUser("AUser");
+		User otherUser = dao.getUser("OtherUser");
+		dao.addUserToChannel(aUser, aChannel);
+		dao.addUserToChannel(aUser, otherChannel);
+		dao.addUserToChannel(otherUser, aChannel);
+		dao.addUserToLevel(UserLevel.OP, aUser, aChannel);
+		dao.addUserToLevel(UserLevel.VOICE, aUser, aChannel);
+
+		assertEquals(dao.getUsers(aChannel, UserLevel.OP).first(), aUser);
+		assertEquals(dao.getLevels(aChannel, aUser).size(), 2);
+		assertTrue(dao.levelContainsUser(UserLevel.VOICE, aChannel, aUser));
+		assertEquals(dao.getNormalUsers(aChannel).first(), otherUser);
+		assertEquals(dao.getNormalUserChannels(aUser).first(), otherChannel);
+		assertEquals(dao.getChannels(aUser, UserLevel.OP).first(), aChannel);
+
+		UserChannelDaoSnapshot snapshot = dao.createSnapshot(aUser);
+		UserSnapshot userSnapshot = snapshot.getUser("AUser");
+		assertEquals(snapshot.getChannels(userSnapshot).size(), 2);
+		assertEquals(snapshot.getLevels(snapshot.getChannel("#aChannel"), userSnapshot).size(), 2);
+
+		dao.removeUserFromLevel(UserLevel.OP, aUser, aChannel);
+		assertTrue(dao.getUsers(aChannel, UserLevel.OP).isEmpty());
+		dao.removeChannel(aChannel);
+		assertFalse(dao.channelExists("#aChannel"));
+		assertEquals(dao.getChannels(aUser).size(), 1);
+		assertTrue(dao.getChannels(otherUser).isEmpty());
+	}
+
+	@Test
+	public void countTest() throws Exception {
+		InputParser inputParser = bot.getInputParser();
+		inputParser.handleLine(":AUser!~ALogin@some.host JOIN :#aChannel");
+		inputParser.handleLine(":AUser!~ALogin@some.host JOIN :#otherChannel");
+		inputParser.handleLine(":OtherUser!~ALogin@some.host JOIN :#aChannel");
+		Channel aChannel = dao.getChannel("#aChannel");
+		//The bot joining would send WHO and MODE, add it directly since there's no connection
+		dao.addUserToChannel(dao.getUser("PircBotXBot"), aChannel);
+		User aUser = dao.getUser("AUser");
+		User otherUser = dao.getUser("OtherUser");
+		dao.addUserToLevel(UserLevel.OP, aUser, aChannel);
+		assertEquals(aChannel.getUserCount(), 3);
+		assertEquals(aChannel.getUserCount(UserLevel.OP), 1);
+		assertEquals(aChannel.getUserCount(UserLevel.VOICE), 0);
+		assertEquals(aUser.getChannelCount(), 2);
+		assertEquals(dao.getUserCount(), 3);
+		assertTrue(aChannel.containsUser(otherUser));
+		assertFalse(otherUser.isInChannel(dao.getChannel("#otherChannel")));
+
+		inputParser.handleLine(":PircBotXBot!~PircBotX@some.host KICK #aChannel AUser :Bye");
+		assertEquals(aChannel.getUserCount(), 2);
+		assertEquals(aChannel.getUserCount(UserLevel.OP), 0);
+		assertEquals(aUser.getChannelCount(), 1);
+		assertFalse(aUser.isInChannel(aChannel));
+		inputParser.handleLine(":AUser!~ALogin@some.host QUIT :Bye");
+		inputParser.handleLine(":OtherUser!~ALogin@some.host PART #aChannel");
+		assertEquals(aChannel.getUserCount(), 1);
+		assertEquals(dao.getUserCount(), 1);
+	}
+
+	@Test
+	public void handleReuseTest() {
+		Channel aChannel = dao.getChannel("#aChannel");
+		for (int i = 0; i < 1000; i++)
+			dao.addUserToChannel(dao.getUser("User" + i), aChannel);
+		for (int i = 0; i < 1000; i += 2)
+			dao.removeUserFromChannel(dao.getUser("User" + i), aChannel);
+		for (int i = 0; i < 1000; i++)
+			dao.addUserToChannel(dao.getUser("NewUser" + i), aChannel);
+		assertEquals(dao.getUsers(aChannel).size(), 1500);
+		assertEquals(dao.getAllUsers().size(), 1500);
+		assertEquals(dao.users.limit, 1500, "Freed handles weren't reused");
+		for (int i = 1; i < 1000; i += 2)
+			assertTrue(dao.userExists("user" + i), "Missing User" + i);
+		for (int i = 0; i < 1000; i += 2)
+			assertFalse(dao.userExists("user" + i), "Didn't remove User" + i);
+	}
+
+	@Test
+	public void intSetTest() {
+		Random random = new Random(42);
+		CompactUserChannelDao.IntSet set = new CompactUserChannelDao.IntSet();
+		Set<Integer> expected = new HashSet<Integer>();
+		for (int i = 0; i < 100000; i++) {
+			int value = random.nextInt(2000);
+			if (random.nextInt(3) == 0)
+				assertEquals(set.remove(value), expected.remove(value));
+			else
+				assertEquals(set.add(value), expected.add(value));
+		}
+		assertEquals(set.size(), expected.size());
+		for (int i = 0; i < 2000; i++)
+			assertEquals(set.contains(i), expected.contains(i));
+	}
+
+	@Test
+	public void twitchHostmaskTest() throws Exception {
+		bot.getInputParser().handleLine(":someuser!someuser@someuser.tmi.twitch.tv JOIN #aChannel");
+		User user = dao.getUser("someuser");
+		assertSame(user.getLogin(), user.getNick(), "Login didn't share the nick");
+		assertEquals(user.getHostmask(), "someuser.tmi.twitch.tv");
+		assertEquals(user.createSnapshot().getHostmask(), "someuser.tmi.twitch.tv");
+	}
+}
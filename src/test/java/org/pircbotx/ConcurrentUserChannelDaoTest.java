@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.pircbotx.snapshot.UserChannelDaoSnapshot;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Test(singleThreaded = true)
+public class ConcurrentUserChannelDaoTest {
+	protected PircBotX bot;
+	protected ConcurrentUserChannelDao<User, Channel> dao;
+
+	@BeforeMethod
+	public void setUp() {
+		Configuration configuration = TestUtils.generateConfigurationBuilder()
+				.setBotFactory(new Configuration.BotFactory() {
+			@Override
+			public UserChannelDao createUserChannelDao(PircBotX bot) {
+				return new ConcurrentUserChannelDao(bot, this);
+			}
+		})
+				.buildConfiguration();
+		bot = new PircBotX(configuration);
+		bot.nick = "PircBotXBot";
+		dao = (ConcurrentUserChannelDao<User, Channel>) bot.getUserChannelDao();
+	}
+
+	@Test
+	public void lineTest() throws Exception {
+		InputParser inputParser = bot.getInputParser();
+		inputParser.handleLine(":AUser!~ALogin@some.host JOIN :#aChannel");
+		inputParser.handleLine(":AUser2!~ALogin@some.host JOIN :#aChannel");
+		User aUser = dao.getUser("AUser");
+		Channel aChannel = dao.getChannel("#aChannel");
+		assertEquals(dao.getUsers(aChannel).size(), 2);
+		assertEquals(dao.getChannels(aUser).first(), aChannel);
+
+		inputParser.handleLine(":AUser!~ALogin@some.host NICK :AUserRenamed");
+		assertFalse(dao.userExists("AUser"));
+		assertSame(dao.getUser("auserrenamed"), aUser);
+
+		inputParser.handleLine(":AUserRenamed!~ALogin@some.host PART #aChannel");
+		assertFalse(dao.userExists("AUserRenamed"), "User not in any channel wasn't removed");
+		assertEquals(dao.getUsers(aChannel).size(), 1);
+
+		UserChannelDaoSnapshot snapshot = dao.createSnapshot();
+		assertEquals(snapshot.getUsers(snapshot.getChannel("#aChannel")).first().getNick(), "AUser2");
+	}
+
+	@Test
+	public void concurrentReadTest() throws Exception {
+		final Channel aChannel = dao.getChannel("#aChannel");
+		final AtomicReference<Throwable> readerError = new AtomicReference<Throwable>();
+		final CountDownLatch writerDone = new CountDownLatch(1);
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (writerDone.getCount() != 0)
+						for (User curUser : dao.getUsers(aChannel)) {
+							//Throws if the maps are inconsistent
+							dao.getLevels(aChannel, curUser);
+							dao.getChannels(curUser);
+						}
+				} catch (Throwable e) {
+					readerError.set(e);
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < 20000; i++) {
+			User curUser = dao.getUser("User" + (i % 100));
+			dao.addUserToChannel(curUser, aChannel);
+			dao.addUserToLevel(UserLevel.VOICE, curUser, aChannel);
+			if (i % 3 == 0)
+				dao.removeUserFromChannel(curUser, aChannel);
+		}
+		writerDone.countDown();
+		reader.join();
+		assertNull(readerError.get(), "Reader failed");
+	}
+
+	@Test
+	public void removeChannelTest() throws Exception {
+		final ConcurrentUserChannelMap<User, Channel> map = new ConcurrentUserChannelMap<User, Channel>();
+		final Channel aChannel = dao.getChannel("#aChannel");
+		final User[] users = new User[20];
+		for (int i = 0; i < users.length; i++)
+			users[i] = dao.getUser("User" + i);
+		final AtomicReference<Throwable> readerError = new AtomicReference<Throwable>();
+		final CountDownLatch writerDone = new CountDownLatch(1);
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (writerDone.getCount() != 0)
+						for (User curUser : users) {
+							//Throws if the channel is removed from only one side
+							map.containsEntry(curUser, aChannel);
+							map.containsUser(curUser);
+						}
+				} catch (Throwable e) {
+					readerError.set(e);
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < 5000; i++) {
+			for (User curUser : users)
+				map.addUserToChannel(curUser, aChannel);
+			map.removeChannel(aChannel);
+		}
+		writerDone.countDown();
+		reader.join();
+		assertNull(readerError.get(), "Reader failed");
+		for (User curUser : users)
+			assertFalse(map.containsUser(curUser), "User " + curUser + " still in removed channel");
+	}
+}
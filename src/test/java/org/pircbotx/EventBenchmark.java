@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.managers.ThreadedListenerManager;
+
+/**
+ * Measure event creation throughput with a shared id counter versus per-thread
+ * id blocks, and the cost of sorting events. Each measurement is warmed up
+ * first and reports the best of several runs
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class EventBenchmark {
+	protected static final int WARMUP_RUNS = 3;
+	protected static final int MEASURED_RUNS = 5;
+	protected static final int EVENTS_PER_THREAD = 1000000;
+	protected static final int SORT_EVENTS = 1000000;
+	protected static final int BLOCK_SIZE = 64;
+
+	public static void main(String[] args) throws Exception {
+		int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		System.out.println("Creating events on " + threadCount + " threads");
+
+		for (boolean nanoTimestamps : new boolean[]{false, true}) {
+			System.out.println("Nano timestamps: " + nanoTimestamps);
+			report(" Shared counter", measureCreate(createBot(1, nanoTimestamps), threadCount));
+			report(" Id blocks of " + BLOCK_SIZE, measureCreate(createBot(BLOCK_SIZE, nanoTimestamps), threadCount));
+			report(" Sort", measureSort(createBot(BLOCK_SIZE, nanoTimestamps)));
+		}
+	}
+
+	protected static PircBotX createBot(int blockSize, boolean nanoTimestamps) {
+		ThreadedListenerManager<PircBotX> listenerManager = new ThreadedListenerManager<PircBotX>();
+		listenerManager.setIdBlockSize(blockSize);
+		return new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setListenerManager(listenerManager)
+				.setEventNanoTimestamps(nanoTimestamps)
+				.buildConfiguration());
+	}
+
+	/**
+	 * @return Events created per second, best run
+	 */
+	protected static double measureCreate(final PircBotX bot, int threadCount) throws Exception {
+		final Channel channel = bot.getUserChannelDao().getChannel("#benchmark");
+		final User user = bot.getUserChannelDao().getUser("benchmarkUser");
+		double best = 0;
+		for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+			final CountDownLatch startLatch = new CountDownLatch(1);
+			final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+			for (int i = 0; i < threadCount; i++)
+				new Thread() {
+					@Override
+					public void run() {
+						try {
+							startLatch.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						long idSum = 0;
+						for (int j = 0; j < EVENTS_PER_THREAD; j++)
+							idSum += new MessageEvent<PircBotX>(bot, channel, user, "benchmark", MessageTags.EMPTY).getId();
+						//Keep the JIT from discarding the events
+						if (idSum == 42)
+							System.out.println();
+						doneLatch.countDown();
+					}
+				}.start();
+			long start = System.nanoTime();
+			startLatch.countDown();
+			doneLatch.await();
+			double perSecond = (double) threadCount * EVENTS_PER_THREAD / (System.nanoTime() - start) * TimeUnit.SECONDS.toNanos(1);
+			if (run >= WARMUP_RUNS)
+				best = Math.max(best, perSecond);
+		}
+		return best;
+	}
+
+	/**
+	 * @return Events sorted per second, best run
+	 */
+	protected static double measureSort(PircBotX bot) {
+		Channel channel = bot.getUserChannelDao().getChannel("#benchmark");
+		User user = bot.getUserChannelDao().getUser("benchmarkUser");
+		List<Event<PircBotX>> events = new ArrayList<Event<PircBotX>>(SORT_EVENTS);
+		for (int i = 0; i < SORT_EVENTS; i++)
+			events.add(new MessageEvent<PircBotX>(bot, channel, user, "benchmark", MessageTags.EMPTY));
+		double best = 0;
+		for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+			Collections.shuffle(events);
+			long start = System.nanoTime();
+			Collections.sort(events);
+			double perSecond = (double) SORT_EVENTS / (System.nanoTime() - start) * TimeUnit.SECONDS.toNanos(1);
+			if (run >= WARMUP_RUNS)
+				best = Math.max(best, perSecond);
+		}
+		return best;
+	}
+
+	protected static void report(String name, double perSecond) {
+		System.out.println(name + ": " + String.format("%,.0f", perSecond) + " events/sec");
+	}
+}
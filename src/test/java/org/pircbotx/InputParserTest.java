@@ -19,6 +19,7 @@
 package org.pircbotx;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
 import org.pircbotx.hooks.events.MotdEvent;
 import org.pircbotx.hooks.events.HalfOpEvent;
@@ -67,12 +68,15 @@ import org.pircbotx.hooks.events.SetTopicProtectionEvent;
 import org.pircbotx.hooks.events.TimeEvent;
 import org.pircbotx.hooks.events.UserListEvent;
 import org.pircbotx.hooks.events.UserModeEvent;
+import org.pircbotx.hooks.events.UnknownEvent;
 import org.pircbotx.hooks.events.VersionEvent;
 import org.pircbotx.hooks.events.VoiceEvent;
 import org.pircbotx.hooks.events.WhoisEvent;
 import org.pircbotx.hooks.types.GenericChannelModeEvent;
 import org.pircbotx.hooks.types.GenericUserModeEvent;
 import org.pircbotx.output.OutputRaw;
+import org.pircbotx.snapshot.ChannelSnapshot;
+import org.pircbotx.snapshot.UserSnapshot;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -785,6 +789,54 @@ public class InputParserTest {
 		assertEquals(event.getReason(), "", "PartEvent's reason doesn't match given");
 	}
 
+	@Test(dependsOnMethods = "partWithMessageTest", description = "Verify part snapshot contains every user of the channel")
+	public void partSnapshotTest() throws IOException, IrcException {
+		User otherUser = dao.getUser("OtherUser");
+		Channel aChannel = dao.getChannel("#aChannel");
+		Channel anotherChannel = dao.getChannel("#anotherChannel");
+		inputParser.handleLine(":OtherUser!~OtherLogin@some.host1 JOIN :#aChannel");
+		inputParser.handleLine(":OtherUser!~OtherLogin@some.host1 JOIN :#anotherChannel");
+		inputParser.handleLine(":AUser!~ALogin@some.host JOIN :#aChannel");
+		dao.addUserToLevel(UserLevel.OP, otherUser, aChannel);
+		inputParser.handleLine(":OtherUser!~OtherLogin@some.host1 PART #aChannel");
+
+		PartEvent event = getEvent(PartEvent.class, "PartEvent not dispatched");
+		UserSnapshot userSnapshot = event.getUser();
+		ChannelSnapshot channelSnapshot = event.getChannel();
+		assertEquals(userSnapshot.getChannels(), ImmutableSortedSet.of(aChannel, anotherChannel));
+		assertEquals(channelSnapshot.getUsers(), ImmutableSortedSet.of(dao.getUser("AUser"), otherUser));
+		assertTrue(channelSnapshot.isOp(userSnapshot), "Snapshot missing user's level");
+		assertTrue(event.getDaoSnapshot().userExists("AUser"), "Snapshot missing other user in channel");
+		assertSame(event.getDaoSnapshot().getUser("OtherUser"), userSnapshot);
+
+		//Live channel no longer has the user
+		assertFalse(aChannel.getUsers().contains(otherUser));
+		assertTrue(anotherChannel.getUsers().contains(otherUser));
+	}
+
+	@Test
+	public void partSnapshotLaterPartTest() throws IOException, IrcException {
+		inputParser.handleLine(":PircBotXBot!~PircBotX@some.host JOIN :#aChannel");
+		inputParser.handleLine(":AUser!~ALogin@some.host JOIN :#aChannel");
+		inputParser.handleLine(":BUser!~BLogin@some.host JOIN :#aChannel");
+		inputParser.handleLine(":CUser!~CLogin@some.host JOIN :#aChannel");
+		inputParser.handleLine(":AUser!~ALogin@some.host PART #aChannel");
+		PartEvent event = getEvent(PartEvent.class, "PartEvent not dispatched");
+
+		//Later parts must not change the earlier snapshot
+		inputParser.handleLine(":BUser!~BLogin@some.host PART #aChannel");
+		ImmutableSortedSet<User> expectedUsers = event.getChannel().getUsers();
+		inputParser.handleLine(":PircBotXBot!~PircBotX@some.host PART #aChannel");
+		assertFalse(dao.channelExists("#aChannel"), "Channel wasn't removed when the bot parted");
+
+		ImmutableSortedSet.Builder<String> nicks = ImmutableSortedSet.naturalOrder();
+		for (User curUser : event.getChannel().getUsers())
+			nicks.add(curUser.getNick());
+		assertEquals(nicks.build(), ImmutableSortedSet.of("AUser", "BUser", "CUser", "PircBotXBot"));
+		assertEquals(event.getChannel().getUsers(), expectedUsers);
+		assertTrue(event.getDaoSnapshot().getUser("BUser").getChannels().contains(event.getChannel()), "Snapshot lost a later parting user's channel");
+	}
+
 	@Test(dependsOnMethods = "partWithMessageTest", description = "Verify part with us")
 	public void partUs() throws IOException, IrcException {
 		User otherUser = dao.getUser("PircBotXBot");
@@ -872,6 +924,39 @@ public class InputParserTest {
 		assertEquals(event.getUser(), bot.getUserBot());
 	}
 
+	@Test
+	public void taggedMessageTest() throws IOException, IrcException {
+		User aUser = dao.getUser("AUser");
+		Channel aChannel = dao.getChannel("#aChannel");
+		inputParser.handleLine("@badges=moderator/1;user-id=1234 :AUser!~ALogin@some.host PRIVMSG #aChannel :" + aString);
+
+		MessageEvent mevent = getEvent(MessageEvent.class, "MessageEvent not dispatched for tagged line");
+		assertEquals(mevent.getUser(), aUser);
+		assertEquals(mevent.getChannel(), aChannel);
+		assertEquals(mevent.getMessage(), aString);
+		assertEquals(mevent.getTags().get("user-id"), "1234");
+		assertEquals(mevent.getTags().get("badges"), "moderator/1");
+	}
+
+	@Test
+	public void customCommandHandlerTest() throws IOException, IrcException {
+		final List<String> handledTargets = new ArrayList<String>();
+		Configuration configuration = new Configuration.Builder(bot.getConfiguration())
+				.addCommandHandler(new CommandHandler("CLEARCHAT") {
+			@Override
+			public void handleCommand(PircBotX bot, InputParser inputParser, String target, String sourceNick, String sourceLogin, String sourceHostname, String line, List<String> parsedLine, MessageTags tags) {
+				handledTargets.add(target);
+			}
+		})
+				.buildConfiguration();
+		InputParser customParser = new InputParser(new PircBotX(configuration));
+		customParser.handleLine(":tmi.twitch.tv CLEARCHAT #aChannel :AUser");
+
+		assertEquals(handledTargets, ImmutableList.of("#aChannel"));
+		for (Event curEvent : events)
+			assertFalse(curEvent instanceof UnknownEvent, "UnknownEvent dispatched for handled command");
+	}
+
 	/**
 	 * After simulating a server response, call this to get a specific Event from
 	 * the Event set. Note that if the event does not exist an Assertion error will
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.managers.ThreadedListenerManager;
+import org.pircbotx.hooks.managers.VirtualThreadListenerManager;
+
+/**
+ * Compare the cached thread pool of {@link ThreadedListenerManager} with
+ * {@link VirtualThreadListenerManager} when every listener is blocked at once,
+ * like listeners waiting on a database or a WaitForQueue
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ListenerManagerBenchmark {
+	public static void main(String[] args) throws Exception {
+		int blockedCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		System.out.println("Virtual threads supported: " + VirtualThreadListenerManager.isSupported());
+
+		run("ThreadedListenerManager (cached pool)", new ThreadedListenerManager<PircBotX>(), blockedCount);
+		run("VirtualThreadListenerManager", new VirtualThreadListenerManager<PircBotX>(), blockedCount);
+	}
+
+	protected static void run(String name, ThreadedListenerManager<PircBotX> manager, int blockedCount) throws Exception {
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setListenerManager(manager)
+				.buildConfiguration());
+		//Only measure the blocked listener
+		for (Listener<PircBotX> curListener : manager.getListeners())
+			manager.removeListener(curListener);
+		final CountDownLatch startedLatch = new CountDownLatch(blockedCount);
+		final CountDownLatch releaseLatch = new CountDownLatch(1);
+		manager.addListener(new Listener<PircBotX>() {
+			public void onEvent(Event<PircBotX> event) throws Exception {
+				startedLatch.countDown();
+				releaseLatch.await();
+			}
+		});
+		Channel channel = bot.getUserChannelDao().getChannel("#benchmark");
+		User user = bot.getUserChannelDao().getUser("benchmarkUser");
+
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		threadBean.resetPeakThreadCount();
+		long memoryBefore = runtime.totalMemory() - runtime.freeMemory();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < blockedCount; i++)
+			manager.dispatchEvent(new MessageEvent<PircBotX>(bot, channel, user, "benchmark", MessageTags.EMPTY));
+		if (!startedLatch.await(5, TimeUnit.MINUTES))
+			throw new RuntimeException("Only " + (blockedCount - startedLatch.getCount()) + " listeners started");
+		long blockedNanos = System.nanoTime() - start;
+		long memoryBlocked = runtime.totalMemory() - runtime.freeMemory();
+
+		releaseLatch.countDown();
+		manager.shutdown(bot);
+		long finishedNanos = System.nanoTime() - start;
+		manager.shutdown();
+
+		System.out.println(name);
+		System.out.println(" " + blockedCount + " listeners blocked after " + TimeUnit.NANOSECONDS.toMillis(blockedNanos) + "ms");
+		System.out.println(" All listeners finished after " + TimeUnit.NANOSECONDS.toMillis(finishedNanos) + "ms");
+		System.out.println(" Peak platform threads: " + threadBean.getPeakThreadCount());
+		System.out.println(" Heap growth while blocked: " + ((memoryBlocked - memoryBefore) / 1024) + "KB");
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.managers.GenericListenerManager;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test that filtered lines are discarded before any user is created
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class MessagePrefixFilterTest {
+	@Test
+	public void filterTest() throws Exception {
+		final List<String> messages = new ArrayList<String>();
+		InputFilter filter = new MessagePrefixFilter("!dex", "!help");
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setListenerManager(new GenericListenerManager<PircBotX>())
+				.addInputFilter(filter)
+				.addListener(new Listener<PircBotX>() {
+					public void onEvent(Event<PircBotX> event) throws Exception {
+						if (event instanceof MessageEvent)
+							messages.add(((MessageEvent<PircBotX>) event).getMessage());
+					}
+				})
+				.buildConfiguration());
+		InputParser inputParser = bot.getInputParser();
+
+		inputParser.handleLine(":AUser!~ALogin@some.host PRIVMSG #aChannel :just chatting");
+		assertFalse(bot.getUserChannelDao().userExists("AUser"), "Discarded line created a user");
+		assertTrue(messages.isEmpty());
+
+		inputParser.handleLine(":AUser!~ALogin@some.host PRIVMSG #aChannel :!dex pikachu");
+		inputParser.handleLine("@badges=moderator/1 :BUser!~BLogin@some.host PRIVMSG #aChannel :!help");
+		assertEquals(messages.size(), 2);
+		assertEquals(messages.get(0), "!dex pikachu");
+		assertTrue(bot.getUserChannelDao().userExists("AUser"));
+
+		//Only plain channel messages are filtered
+		inputParser.handleLine(":CUser!~CLogin@some.host JOIN :#aChannel");
+		assertTrue(bot.getUserChannelDao().userExists("CUser"));
+
+		assertEquals(inputParser.getInputFilterDiscards().get(filter), Long.valueOf(1));
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.DisconnectEvent;
+import org.pircbotx.hooks.events.ServerPingEvent;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Connect bots through a NioSelectorGroup to a local server
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Test(singleThreaded = true)
+public class NioSelectorGroupTest {
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	protected ServerSocket serverSocket;
+	protected ExecutorService serverPool;
+	protected NioSelectorGroup selectorGroup;
+	protected List<Event> events;
+	protected CountDownLatch pongLatch;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		serverPool = Executors.newCachedThreadPool();
+		selectorGroup = new NioSelectorGroup(1);
+		events = Collections.synchronizedList(new ArrayList<Event>());
+		pongLatch = new CountDownLatch(2);
+	}
+
+	@AfterMethod
+	public void cleanUp() throws Exception {
+		selectorGroup.close();
+		serverPool.shutdownNow();
+		serverSocket.close();
+	}
+
+	protected Configuration<PircBotX> buildConfiguration() {
+		return buildConfiguration(new Listener() {
+			public void onEvent(Event event) throws Exception {
+				events.add(event);
+			}
+		});
+	}
+
+	protected Configuration<PircBotX> buildConfiguration(Listener listener) {
+		return TestUtils.generateConfigurationBuilder()
+				.setCapEnabled(false)
+				.setServer("127.0.0.1", serverSocket.getLocalPort())
+				.setEncoding(UTF8)
+				.setNioSelectorGroup(selectorGroup)
+				.addListener(listener)
+				.buildConfiguration();
+	}
+
+	/**
+	 * Accept a bot, send it pings in fragments that don't line up with line 
+	 * endings, and return the lines sent back
+	 */
+	protected Future<List<String>> serveConnection(final String pingPrefix, final boolean waitForQuit) {
+		return serverPool.submit(new Callable<List<String>>() {
+			public List<String> call() throws Exception {
+				Socket socket = serverSocket.accept();
+				try {
+					BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF8));
+					OutputStream out = socket.getOutputStream();
+					List<String> lines = new ArrayList<String>();
+					String line;
+					while ((line = in.readLine()) != null && !line.startsWith("USER "))
+						lines.add(line);
+
+					out.write(("PING :" + pingPrefix + "1\r").getBytes(UTF8));
+					out.flush();
+					Thread.sleep(50);
+					out.write(("\n:ircd.test NOTICE * :héllo\nPING :" + pingPrefix + "2").getBytes(UTF8));
+					out.flush();
+					Thread.sleep(50);
+					out.write("\r\n".getBytes(UTF8));
+					out.flush();
+
+					lines.add(in.readLine());
+					lines.add(in.readLine());
+					pongLatch.countDown();
+					if (waitForQuit)
+						lines.add(in.readLine());
+					return lines;
+				} finally {
+					socket.close();
+				}
+			}
+		});
+	}
+
+	@Test
+	public void connectTest() throws Exception {
+		Future<List<String>> serverLines = serveConnection("", false);
+		PircBotX bot = new PircBotX(buildConfiguration());
+		//Blocks until the server disconnects
+		bot.connect();
+
+		List<String> lines = serverLines.get(5, TimeUnit.SECONDS);
+		assertEquals(lines.get(0), "NICK PircBotXBot");
+		assertEquals(lines.get(1), "PONG 1");
+		assertEquals(lines.get(2), "PONG 2");
+
+		List<String> pings = new ArrayList<String>();
+		for (Event curEvent : events)
+			if (curEvent instanceof ServerPingEvent)
+				pings.add(((ServerPingEvent) curEvent).getResponse());
+		assertEquals(pings, Arrays.asList("1", "2"));
+		assertTrue(events.get(events.size() - 1) instanceof DisconnectEvent, "Last event isn't a disconnect: " + events);
+		assertFalse(bot.isConnected());
+		assertEquals(bot.getState(), PircBotX.State.DISCONNECTED);
+	}
+
+	@Test
+	public void sharedSelectorTest() throws Exception {
+		Future<List<String>> serverLines1 = serveConnection("a", true);
+		Future<List<String>> serverLines2 = serveConnection("b", true);
+		MultiBotManager<PircBotX> manager = new MultiBotManager<PircBotX>();
+		manager.addBot(buildConfiguration());
+		manager.addBot(buildConfiguration());
+		manager.start();
+
+		//Wait for both bots to answer their pings before quitting
+		assertTrue(pongLatch.await(5, TimeUnit.SECONDS), "Bots didn't answer pings");
+		manager.stopAndWait();
+		assertTrue(manager.getBots().isEmpty(), "Bots still running: " + manager.getBots());
+
+		List<String> lines = new ArrayList<String>();
+		lines.addAll(serverLines1.get(5, TimeUnit.SECONDS).subList(1, 4));
+		lines.addAll(serverLines2.get(5, TimeUnit.SECONDS).subList(1, 4));
+		Collections.sort(lines);
+		assertEquals(lines, Arrays.asList("PONG a1", "PONG a2", "PONG b1", "PONG b2", "QUIT :", "QUIT :"));
+	}
+
+	@Test
+	public void blockedBotTest() throws Exception {
+		serveConnection("a", false);
+		serveConnection("b", false);
+		final CountDownLatch otherBotPings = new CountDownLatch(2);
+		final AtomicBoolean otherBotHandled = new AtomicBoolean();
+		//Block handling the first ping until the other bot on the selector got its pings
+		PircBotX blockedBot = new PircBotX(buildConfiguration(new Listener() {
+			protected boolean waited = false;
+
+			public void onEvent(Event event) throws Exception {
+				if (event instanceof ServerPingEvent && !waited) {
+					waited = true;
+					otherBotHandled.set(otherBotPings.await(5, TimeUnit.SECONDS));
+				}
+			}
+		}));
+		PircBotX otherBot = new PircBotX(buildConfiguration(new Listener() {
+			public void onEvent(Event event) throws Exception {
+				if (event instanceof ServerPingEvent)
+					otherBotPings.countDown();
+			}
+		}));
+		Future<Void> blockedDisconnect = blockedBot.connectAsync(MoreExecutors.sameThreadExecutor());
+		Future<Void> otherDisconnect = otherBot.connectAsync(MoreExecutors.sameThreadExecutor());
+
+		blockedDisconnect.get(10, TimeUnit.SECONDS);
+		otherDisconnect.get(10, TimeUnit.SECONDS);
+		assertTrue(otherBotHandled.get(), "Bot blocked handling a line stalled the other bot");
+		assertEquals(pongLatch.getCount(), 0, "Bots didn't answer pings");
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure classifying commands of a Twitch line mix as numeric by catching
+ * NumberFormatException versus {@link ParsedLine#getNumeric() }. Each
+ * measurement is warmed up first and reports the best of several runs
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class NumericParseBenchmark {
+	protected static final int WARMUP_RUNS = 3;
+	protected static final int MEASURED_RUNS = 5;
+	protected static final int LINES_PER_RUN = 2000000;
+	/**
+	 * Mostly chat with the server lines a Twitch bot sees in a busy channel
+	 */
+	protected static final String[] LINES = {
+		"@badge-info=;badges=;color=#1E90FF;display-name=AUser;emotes=;id=b34ccfc7-4977-403a-8a94-33c6bac34fb8;mod=0;room-id=1337;tmi-sent-ts=1507246572675;user-id=1337 :auser!auser@auser.tmi.twitch.tv PRIVMSG #achannel :!dex pikachu",
+		":auser!auser@auser.tmi.twitch.tv PRIVMSG #achannel :anyone know what beats onix",
+		":buser!buser@buser.tmi.twitch.tv JOIN #achannel",
+		":cuser!cuser@cuser.tmi.twitch.tv PART #achannel",
+		"@emote-only=0;followers-only=-1;r9k=0;room-id=1337;slow=0;subs-only=0 :tmi.twitch.tv ROOMSTATE #achannel",
+		"@badge-info=;badges=moderator/1;color=;display-name=PircBotXBot;emote-sets=0;mod=1;subscriber=0;user-type=mod :tmi.twitch.tv USERSTATE #achannel",
+		"@msg-id=slow_on :tmi.twitch.tv NOTICE #achannel :This room is now in slow mode.",
+		"@ban-duration=600;room-id=1337;target-user-id=1337;tmi-sent-ts=1642715756806 :tmi.twitch.tv CLEARCHAT #achannel :duser",
+		":tmi.twitch.tv HOSTTARGET #achannel :otherchannel 12",
+		":pircbotxbot.tmi.twitch.tv 353 pircbotxbot = #achannel :auser buser cuser",
+		":pircbotxbot.tmi.twitch.tv 366 pircbotxbot #achannel :End of /NAMES list"
+	};
+
+	public static void main(String[] args) throws Exception {
+		ParsedLine[] parsedLines = new ParsedLine[LINES.length];
+		for (int i = 0; i < LINES.length; i++)
+			parsedLines[i] = new ParsedLine().parse(LINES[i]);
+
+		report("Catching NumberFormatException", measure(parsedLines, true));
+		report("ParsedLine.getNumeric", measure(parsedLines, false));
+	}
+
+	/**
+	 * @return Lines classified per second, best run
+	 */
+	protected static double measure(ParsedLine[] parsedLines, boolean catchException) {
+		double best = 0;
+		for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+			long codeSum = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < LINES_PER_RUN; i++) {
+				ParsedLine parsedLine = parsedLines[i % parsedLines.length];
+				//Only lines from servers are checked, same as InputParser
+				if (parsedLine.isUserPrefix())
+					continue;
+				codeSum += catchException ? parseCatching(parsedLine.getCommand(Locale.US)) : parsedLine.getNumeric();
+			}
+			double perSecond = (double) LINES_PER_RUN / (System.nanoTime() - start) * TimeUnit.SECONDS.toNanos(1);
+			//Keep the JIT from discarding the parsing
+			if (codeSum == 42)
+				System.out.println();
+			if (run >= WARMUP_RUNS)
+				best = Math.max(best, perSecond);
+		}
+		return best;
+	}
+
+	/**
+	 * How Utils.tryParseInt used to work
+	 */
+	protected static int parseCatching(String command) {
+		try {
+			return Integer.parseInt(command);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	protected static void report(String name, double perSecond) {
+		System.out.println(name + ": " + String.format("%,.0f", perSecond) + " lines/sec");
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import java.util.List;
+import java.util.Locale;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ParsedLineTest {
+	@DataProvider
+	public Object[][] lineDataProvider() {
+		return new Object[][]{
+			{":AUser!~ALogin@some.host PRIVMSG #aChannel :Hi there: how are you?"},
+			{":AUser!~ALogin@some.host PRIVMSG #aChannel :Hi there: how are you?    "},
+			{"PING sa3214323"},
+			{"PING :sa3214323"},
+			{":irc.someserver.net 004 PircBotXUser irc.someserver.net ircd-seven-1.1.3 DOQRSZaghilopswz CFILMPQbcefgijklmnopqrstvz"},
+			{":AUser!~ALogin@some.host JOIN :#aChannel"},
+			{":AUser!~ALogin@some.host MODE #aChannel  +o AUser"},
+			{":irc.someserver.net NOTICE * :*** Looking up your hostname..."}
+		};
+	}
+
+	@Test(dataProvider = "lineDataProvider", description = "Make sure ParsedLine tokenizes the same way Utils.tokenizeLine does")
+	public void tokenizeLineCompatTest(String line) {
+		ParsedLine parsedLine = new ParsedLine().parse(line);
+		List<String> tokens = Utils.tokenizeLine(line);
+
+		if (tokens.get(0).startsWith(":")) {
+			assertTrue(parsedLine.hasPrefix());
+			assertEquals(parsedLine.getPrefix(), tokens.remove(0).substring(1));
+		} else
+			assertFalse(parsedLine.hasPrefix());
+		assertEquals(parsedLine.getCommand(Locale.US), tokens.remove(0));
+		assertEquals(parsedLine.getParams(), tokens);
+	}
+
+	@Test
+	public void userPrefixTest() {
+		ParsedLine parsedLine = new ParsedLine().parse(":AUser!~ALogin@some.host PRIVMSG #aChannel :Hi");
+		assertTrue(parsedLine.isUserPrefix());
+		assertEquals(parsedLine.getPrefixNick(), "AUser");
+		assertEquals(parsedLine.getPrefixLogin(), "~ALogin");
+		assertEquals(parsedLine.getPrefixHostname(), "some.host");
+
+		parsedLine.parse(":irc.someserver.net NOTICE * :Hi");
+		assertFalse(parsedLine.isUserPrefix());
+		assertEquals(parsedLine.getPrefixNick(), "irc.someserver.net");
+		assertEquals(parsedLine.getPrefixLogin(), "");
+		assertEquals(parsedLine.getPrefixHostname(), "");
+	}
+
+	@Test
+	public void reuseTest() {
+		ParsedLine parsedLine = new ParsedLine();
+		parsedLine.parse(":AUser!~ALogin@some.host PRIVMSG #aChannel :Hi");
+		assertEquals(parsedLine.getParam(1), "Hi");
+
+		parsedLine.parse("ping sa3214323");
+		assertFalse(parsedLine.hasPrefix());
+		assertTrue(parsedLine.commandEquals("PING"));
+		assertEquals(parsedLine.getCommand(Locale.US), "PING");
+		assertEquals(parsedLine.getParamCount(), 1);
+		assertEquals(parsedLine.getParam(0), "sa3214323");
+		assertEquals(parsedLine.getParam(1, "default"), "default");
+	}
+
+	@Test
+	public void tagsTest() {
+		ParsedLine parsedLine = new ParsedLine().parse("@badges=moderator/1,subscriber/12;display-name=AUser;empty=;novalue;msg=Hi\\sthere\\:\\\\;badges=broadcaster/1 "
+				+ ":auser!auser@auser.tmi.twitch.tv PRIVMSG #achannel :Hi");
+		assertTrue(parsedLine.hasTags());
+		assertEquals(parsedLine.getPrefixNick(), "auser");
+		assertEquals(parsedLine.getCommand(Locale.US), "PRIVMSG");
+		assertEquals(parsedLine.getParam(1), "Hi");
+
+		MessageTags tags = parsedLine.getTags();
+		assertEquals(tags.size(), 6);
+		assertEquals(tags.get("display-name"), "AUser");
+		assertEquals(tags.get("empty"), "");
+		assertEquals(tags.get("novalue"), "");
+		assertEquals(tags.get("msg"), "Hi there;\\");
+		assertEquals(tags.get("badges"), "broadcaster/1", "Last duplicate tag should win");
+		assertNull(tags.get("user-id"));
+		assertEquals(tags.asMap().size(), 5);
+
+		//Tags outlive reuse of the ParsedLine
+		parsedLine.parse(":irc.someserver.net NOTICE * :Hi");
+		assertFalse(parsedLine.hasTags());
+		assertSame(parsedLine.getTags(), MessageTags.EMPTY);
+		assertEquals(tags.get("display-name"), "AUser");
+	}
+
+	@Test
+	public void emptyLineTest() {
+		ParsedLine parsedLine = new ParsedLine().parse("   ");
+		assertFalse(parsedLine.hasPrefix());
+		assertFalse(parsedLine.hasCommand());
+		assertEquals(parsedLine.getCommand(Locale.US), "");
+		assertEquals(parsedLine.getParamCount(), 0);
+	}
+
+	@Test
+	public void paramStartsWithTest() {
+		ParsedLine parsedLine = new ParsedLine().parse(":AUser!~ALogin@some.host PRIVMSG #aChannel :!dex");
+		assertTrue(parsedLine.paramStartsWith(1, "!dex"));
+		assertTrue(parsedLine.paramStartsWith(1, "!"));
+		assertFalse(parsedLine.paramStartsWith(1, "!dex pikachu"));
+		assertTrue(parsedLine.paramStartsWith(0, "#a"));
+		assertFalse(parsedLine.paramStartsWith(2, ""));
+	}
+
+	@Test
+	public void numericTest() {
+		ParsedLine parsedLine = new ParsedLine();
+		assertEquals(parsedLine.parse(":irc.someserver.net 004 PircBotXUser irc.someserver.net").getNumeric(), 4);
+		assertEquals(parsedLine.parse("@msg-id=slow_on :tmi.twitch.tv NOTICE #aChannel :Slow mode").getNumeric(), -1);
+		assertEquals(parsedLine.parse(":tmi.twitch.tv 1234 PircBotXUser").getNumeric(), -1);
+		assertEquals(parsedLine.parse("").getNumeric(), -1);
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import org.pircbotx.hooks.managers.GenericListenerManager;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measure the heap used by {@link UserChannelDao} and
+ * {@link CompactUserChannelDao} after loading synthetic Twitch JOINs. Run with
+ * the dao ("default" or "compact"), the number of JOINs (default 1,000,000)
+ * and the number of channels they're spread across (default 1). Run each dao
+ * in its own JVM with a fixed heap, eg -Xmx4g, for comparable numbers
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class UserChannelDaoMemoryBenchmark {
+	public static void main(String[] args) throws Exception {
+		//Logging every line would dominate the run
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		JoranConfigurator configurator = new JoranConfigurator();
+		configurator.setContext(context);
+		context.reset();
+		configurator.doConfigure(UserChannelDaoMemoryBenchmark.class.getResource("/logback-nop.xml"));
+
+		final boolean compact = args.length > 0 && args[0].equals("compact");
+		int joinCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		int channelCount = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setListenerManager(new GenericListenerManager<PircBotX>())
+				.setBotFactory(new Configuration.BotFactory() {
+			@Override
+			public UserChannelDao createUserChannelDao(PircBotX bot) {
+				return compact ? new CompactUserChannelDao(bot, this) : super.createUserChannelDao(bot);
+			}
+		})
+				.buildConfiguration());
+		bot.nick = "PircBotXBot";
+		InputParser inputParser = bot.getInputParser();
+
+		long heapBefore = usedHeap();
+		long start = System.nanoTime();
+		for (int i = 0; i < joinCount; i++) {
+			//Same line format Twitch sends, users are spread round robin across channels
+			String nick = "chatter" + (i / channelCount);
+			inputParser.handleLine(":" + nick + "!" + nick + "@" + nick + ".tmi.twitch.tv JOIN #channel" + (i % channelCount));
+		}
+		long loadNanos = System.nanoTime() - start;
+		long heapAfter = usedHeap();
+
+		int userCount = bot.getUserChannelDao().getAllUsers().size();
+		long used = heapAfter - heapBefore;
+		System.out.println((compact ? "CompactUserChannelDao" : "UserChannelDao") + ": " + joinCount + " JOINs, "
+				+ userCount + " users, " + channelCount + " channels");
+		System.out.println(" Load time: " + loadNanos / 1000000 + " ms");
+		System.out.println(" Heap used: " + used / (1024 * 1024) + " MB");
+		System.out.println(" Bytes per JOIN: " + used / joinCount);
+		//Keep the bot reachable until measured
+		if (bot.getUserChannelDao().getAllChannels().isEmpty())
+			System.out.println();
+	}
+
+	protected static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
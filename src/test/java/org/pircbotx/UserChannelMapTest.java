@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Test(singleThreaded = true)
+public class UserChannelMapTest {
+	protected UserChannelDao<User, Channel> dao;
+	protected User aUser;
+	protected User otherUser;
+	protected Channel aChannel;
+
+	@BeforeMethod
+	public void setUp() {
+		dao = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration()).getUserChannelDao();
+		aUser = dao.getUser("AUser");
+		otherUser = dao.getUser("OtherUser");
+		aChannel = dao.getChannel("#aChannel");
+	}
+
+	@DataProvider
+	public Object[][] mapDataProvider() {
+		return new Object[][]{{new UserChannelMap<User, Channel>()}, {new ConcurrentUserChannelMap<User, Channel>()}};
+	}
+
+	@Test(dataProvider = "mapDataProvider")
+	public void cachedViewTest(UserChannelMap<User, Channel> map) {
+		map.addUserToChannel(aUser, aChannel);
+		ImmutableSortedSet<User> users = map.getUsers(aChannel);
+		assertSame(map.getUsers(aChannel), users, "Unchanged channel wasn't cached");
+		assertSame(map.getUnsortedUsers(aChannel), users, "Sorted view wasn't reused");
+		assertSame(map.getChannels(aUser), map.getChannels(aUser));
+
+		//Joining again doesn't change anything
+		map.addUserToChannel(aUser, aChannel);
+		assertSame(map.getUsers(aChannel), users);
+
+		map.addUserToChannel(otherUser, aChannel);
+		assertEquals(map.getUsers(aChannel), ImmutableSortedSet.of(aUser, otherUser));
+		map.removeUserFromChannel(aUser, aChannel);
+		assertEquals(map.getUsers(aChannel), ImmutableSortedSet.of(otherUser));
+		assertTrue(map.getChannels(aUser).isEmpty());
+		map.removeChannel(aChannel);
+		assertTrue(map.getUsers(aChannel).isEmpty());
+		assertTrue(map.getChannels(otherUser).isEmpty());
+	}
+
+	@Test(dataProvider = "mapDataProvider")
+	public void unsortedViewTest(UserChannelMap<User, Channel> map) {
+		map.addUserToChannel(aUser, aChannel);
+		map.addUserToChannel(otherUser, aChannel);
+		ImmutableSet<User> users = map.getUnsortedUsers(aChannel);
+		assertFalse(users instanceof ImmutableSortedSet, "Unsorted view was sorted");
+		assertEquals(users, ImmutableSet.of(aUser, otherUser));
+		assertSame(map.getUnsortedUsers(aChannel), users);
+		//Sorted view replaces the unsorted one
+		assertEquals(map.getUsers(aChannel).first(), aUser);
+		assertSame(map.getUnsortedUsers(aChannel), map.getUsers(aChannel));
+
+		map.removeUser(otherUser);
+		assertEquals(map.getUnsortedUsers(aChannel), ImmutableSet.of(aUser));
+	}
+
+	@Test(dataProvider = "mapDataProvider")
+	public void countTest(UserChannelMap<User, Channel> map) {
+		Channel otherChannel = dao.getChannel("#otherChannel");
+		map.addUserToChannel(aUser, aChannel);
+		map.addUserToChannel(aUser, otherChannel);
+		map.addUserToChannel(otherUser, aChannel);
+		assertEquals(map.getUserCount(aChannel), 2);
+		assertEquals(map.getChannelCount(aUser), 2);
+		assertEquals(map.getUserCount(), 2);
+		assertTrue(map.containsEntry(otherUser, aChannel));
+		assertFalse(map.containsEntry(otherUser, otherChannel));
+
+		map.removeUserFromChannel(otherUser, aChannel);
+		assertEquals(map.getUserCount(aChannel), 1);
+		assertEquals(map.getUserCount(), 1, "User without channels was counted");
+		map.removeChannel(aChannel);
+		assertEquals(map.getUserCount(aChannel), 0);
+		assertEquals(map.getChannelCount(aUser), 1);
+		map.removeUser(aUser);
+		assertEquals(map.getUserCount(), 0);
+		assertEquals(map.getChannelCount(aUser), 0);
+	}
+
+	@Test
+	public void renameTest() {
+		dao.addUserToChannel(aUser, aChannel);
+		dao.addUserToChannel(otherUser, aChannel);
+		assertEquals(aChannel.getUsers().first(), aUser);
+		dao.renameUser(aUser, "ZUser");
+		assertEquals(aChannel.getUsers().last(), aUser, "Cached view wasn't resorted after rename");
+		assertTrue(aChannel.getUsers().contains(aUser));
+		assertEquals(aChannel.getUnsortedUsers().size(), 2);
+		assertEquals(aUser.getUnsortedChannels(), ImmutableSet.of(aChannel));
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import org.pircbotx.snapshot.ChannelSnapshot;
+import org.pircbotx.snapshot.UserLevelMapSnapshot;
+import org.pircbotx.snapshot.UserSnapshot;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ *
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Test(singleThreaded = true)
+public class UserLevelMapTest {
+	protected UserChannelDao<User, Channel> dao;
+	protected User aUser;
+	protected User otherUser;
+	protected Channel aChannel;
+	protected Channel otherChannel;
+
+	@BeforeMethod
+	public void setUp() {
+		dao = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration()).getUserChannelDao();
+		aUser = dao.getUser("AUser");
+		otherUser = dao.getUser("OtherUser");
+		aChannel = dao.getChannel("#aChannel");
+		otherChannel = dao.getChannel("#otherChannel");
+	}
+
+	@Test
+	public void levelTest() {
+		UserLevelMap<User, Channel> levelsMap = new UserLevelMap<User, Channel>();
+		levelsMap.addUserToLevel(UserLevel.OP, aUser, aChannel);
+		levelsMap.addUserToLevel(UserLevel.VOICE, aUser, aChannel);
+		levelsMap.addUserToLevel(UserLevel.VOICE, otherUser, aChannel);
+		levelsMap.addUserToLevel(UserLevel.OWNER, aUser, otherChannel);
+
+		assertEquals(levelsMap.getLevels(aUser, aChannel), ImmutableSortedSet.of(UserLevel.VOICE, UserLevel.OP));
+		assertEquals(levelsMap.getLevelMask(aUser, aChannel), UserLevelMap.getBit(UserLevel.VOICE) | UserLevelMap.getBit(UserLevel.OP));
+		assertTrue(levelsMap.containsEntry(UserLevel.OP, aUser, aChannel));
+		assertFalse(levelsMap.containsEntry(UserLevel.OP, otherUser, aChannel));
+		assertEquals(levelsMap.getUsers(aChannel, UserLevel.VOICE), ImmutableSortedSet.of(aUser, otherUser));
+		assertEquals(levelsMap.getChannels(aUser, UserLevel.OWNER), ImmutableSortedSet.of(otherChannel));
+
+		levelsMap.removeUserFromLevel(UserLevel.VOICE, aUser, aChannel);
+		assertEquals(levelsMap.getLevels(aUser, aChannel), ImmutableSortedSet.of(UserLevel.OP));
+		assertEquals(levelsMap.getUsers(aChannel, UserLevel.VOICE), ImmutableSortedSet.of(otherUser));
+
+		levelsMap.removeUserFromChannel(aUser, aChannel);
+		assertEquals(levelsMap.getLevelMask(aUser, aChannel), 0);
+		assertTrue(levelsMap.getUsers(aChannel, UserLevel.OP).isEmpty());
+		assertEquals(levelsMap.getChannels(aUser, UserLevel.OWNER), ImmutableSortedSet.of(otherChannel));
+
+		levelsMap.removeUser(aUser);
+		assertTrue(levelsMap.getChannels(aUser, UserLevel.OWNER).isEmpty());
+		levelsMap.removeChannel(aChannel);
+		assertTrue(levelsMap.getLevels(otherUser, aChannel).isEmpty());
+	}
+
+	@Test
+	public void snapshotTest() {
+		UserLevelMap<User, Channel> levelsMap = new UserLevelMap<User, Channel>();
+		levelsMap.addUserToLevel(UserLevel.HALFOP, aUser, aChannel);
+		UserSnapshot userSnapshot = aUser.createSnapshot();
+		ChannelSnapshot channelSnapshot = aChannel.createSnapshot();
+		UserLevelMapSnapshot snapshot = levelsMap.createSnapshot(ImmutableMap.of(aUser, userSnapshot), ImmutableMap.of(aChannel, channelSnapshot));
+		assertEquals(snapshot.getLevels(userSnapshot, channelSnapshot), ImmutableSortedSet.of(UserLevel.HALFOP));
+		try {
+			snapshot.addUserToLevel(UserLevel.OP, userSnapshot, channelSnapshot);
+			fail("Snapshot was modified");
+		} catch (RuntimeException e) {
+			//Expected
+		}
+	}
+
+	@Test
+	public void daoNormalUsersTest() {
+		dao.addUserToChannel(aUser, aChannel);
+		dao.addUserToChannel(otherUser, aChannel);
+		dao.addUserToChannel(aUser, otherChannel);
+		dao.addUserToLevel(UserLevel.OP, aUser, aChannel);
+		assertEquals(dao.getNormalUsers(aChannel), ImmutableSortedSet.of(otherUser));
+		assertEquals(dao.getNormalUserChannels(aUser), ImmutableSortedSet.of(otherChannel));
+		assertTrue(aChannel.isOp(aUser));
+		assertEquals(aChannel.getOps(), ImmutableSortedSet.of(aUser));
+
+		dao.removeUserFromChannel(aUser, aChannel);
+		assertFalse(aChannel.isOp(aUser));
+		assertTrue(dao.getUsers(aChannel, UserLevel.OP).isEmpty());
+	}
+}
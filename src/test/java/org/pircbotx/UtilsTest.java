@@ -54,4 +54,32 @@ public class UtilsTest {
 		assertEquals(tokens.get(0), "PING");
 		assertEquals(tokens.get(1), "sa3214323");
 	}
+
+	@Test
+	public void parseIntTest() {
+		assertEquals(Utils.tryParseInt("353", -1), 353);
+		assertEquals(Utils.tryParseInt("-12", 0), -12);
+		assertEquals(Utils.tryParseInt("+12", 0), 12);
+		assertEquals(Utils.tryParseInt(String.valueOf(Integer.MIN_VALUE), 0), Integer.MIN_VALUE);
+		assertEquals(Utils.tryParseInt("2147483648", -1), -1);
+		assertEquals(Utils.tryParseInt("PRIVMSG", -1), -1);
+		assertEquals(Utils.tryParseInt("", -1), -1);
+		assertEquals(Utils.tryParseInt("-", -1), -1);
+		assertEquals(Utils.tryParseInt(null, -1), -1);
+		assertEquals(Utils.parseInt("slow=120;r9k=0", 5, 8, -1), 120);
+		assertEquals(Utils.tryParseLong("1507246572675", -1), 1507246572675L);
+		assertEquals(Utils.tryParseLong(String.valueOf(Long.MIN_VALUE), 0), Long.MIN_VALUE);
+		assertEquals(Utils.tryParseLong("9223372036854775808", -1), -1);
+	}
+
+	@Test
+	public void numericTest() {
+		assertTrue(Utils.isNumeric("001"));
+		assertFalse(Utils.isNumeric("1"));
+		assertFalse(Utils.isNumeric("0010"));
+		assertFalse(Utils.isNumeric("NOTICE"));
+		assertFalse(Utils.isNumeric("-01"));
+		assertEquals(Utils.parseNumeric("x 366 y", 2, 5), 366);
+		assertEquals(Utils.parseNumeric("ROOMSTATE", 0, 9), -1);
+	}
 }
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.pircbotx.Channel;
+import org.pircbotx.MessageTags;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.User;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.types.GenericMessageEvent;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test trigger matching and routing
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class TriggerMatcherTest {
+	@Test
+	public void matchTest() {
+		TriggerMatcher<String> matcher = new TriggerMatcher.Builder<String>()
+				.add("!dex", TriggerMatcher.Type.PREFIX, "dex")
+				.add("mew", TriggerMatcher.Type.WORD, "mew")
+				.add("mewtwo", TriggerMatcher.Type.WORD, "mewtwo")
+				.add("chu", TriggerMatcher.Type.CONTAINS, "chu")
+				.add("he", TriggerMatcher.Type.CONTAINS, "he")
+				.add("she", TriggerMatcher.Type.CONTAINS, "she")
+				.build(Locale.US);
+
+		assertEquals(matcher.match("!DEX Mewtwo"), ImmutableList.of("dex", "mewtwo"));
+		assertEquals(matcher.match("is !dex here"), ImmutableList.of("he"));
+		assertEquals(matcher.match("mew, pikachu"), ImmutableList.of("mew", "chu"));
+		//Overlapping triggers found through fail links
+		assertEquals(matcher.match("ushers"), ImmutableList.of("she", "he"));
+		assertEquals(matcher.match("nothing to see"), ImmutableList.of());
+	}
+
+	@Test
+	public void localeTest() {
+		TriggerMatcher<String> matcher = new TriggerMatcher.Builder<String>()
+				.add("TITAN", TriggerMatcher.Type.WORD, "titan")
+				.build(new Locale("tr"));
+		//Turkish lower cases I to a dotless i, for both the trigger and message
+		assertEquals(matcher.match("TITAN"), ImmutableList.of("titan"));
+		assertEquals(matcher.match("titan"), ImmutableList.of());
+	}
+
+	@Test
+	public void routerTest() throws Exception {
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		Channel channel = bot.getUserChannelDao().getChannel("#aChannel");
+		User user = bot.getUserChannelDao().getUser("aUser");
+		final List<ImmutableList<String>> dexTriggers = new ArrayList<ImmutableList<String>>();
+		final List<ImmutableList<String>> nameTriggers = new ArrayList<ImmutableList<String>>();
+		TriggerListener<PircBotX> dexListener = new TriggerListener<PircBotX>() {
+			public void onTrigger(GenericMessageEvent<PircBotX> event, ImmutableList<String> triggers) throws Exception {
+				dexTriggers.add(triggers);
+			}
+		};
+		TriggerRouter<PircBotX> router = new TriggerRouter<PircBotX>()
+				.addPrefixes(dexListener, "!dex", "!pokedex")
+				.addTriggers(new TriggerListener<PircBotX>() {
+			public void onTrigger(GenericMessageEvent<PircBotX> event, ImmutableList<String> triggers) throws Exception {
+				nameTriggers.add(triggers);
+			}
+		}, "Pikachu", "Eevee");
+
+		router.onEvent(new MessageEvent<PircBotX>(bot, channel, user, "!dex pikachu", MessageTags.EMPTY));
+		router.onEvent(new MessageEvent<PircBotX>(bot, channel, user, "eevee and PIKACHU", MessageTags.EMPTY));
+		router.onEvent(new MessageEvent<PircBotX>(bot, channel, user, "no triggers", MessageTags.EMPTY));
+		assertEquals(dexTriggers, ImmutableList.of(ImmutableList.of("!dex")));
+		assertEquals(nameTriggers, ImmutableList.of(ImmutableList.of("Pikachu"), ImmutableList.of("Eevee", "Pikachu")));
+
+		assertTrue(router.removeTriggers(dexListener));
+		router.onEvent(new MessageEvent<PircBotX>(bot, channel, user, "!pokedex", MessageTags.EMPTY));
+		assertEquals(dexTriggers.size(), 1);
+	}
+}
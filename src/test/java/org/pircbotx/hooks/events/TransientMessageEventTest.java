@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.managers.GenericListenerManager;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test that recycled message events are reused only when nothing keeps them
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class TransientMessageEventTest {
+	@Test
+	public void reuseTest() throws Exception {
+		final List<MessageEvent<PircBotX>> received = new ArrayList<MessageEvent<PircBotX>>();
+		final List<String> messages = new ArrayList<String>();
+		final List<MessageEvent<PircBotX>> kept = new ArrayList<MessageEvent<PircBotX>>();
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setListenerManager(new GenericListenerManager<PircBotX>())
+				.setTransientMessageEvents(true)
+				.addListener(new Listener<PircBotX>() {
+					public void onEvent(Event<PircBotX> event) throws Exception {
+						if (!(event instanceof MessageEvent))
+							return;
+						MessageEvent<PircBotX> messageEvent = (MessageEvent<PircBotX>) event;
+						received.add(messageEvent);
+						messages.add(messageEvent.getMessage());
+						if (messageEvent.getMessage().equals("!retain"))
+							kept.add(messageEvent.retain());
+						else if (messageEvent.getMessage().equals("!copy"))
+							kept.add(messageEvent.copy());
+					}
+				})
+				.buildConfiguration());
+
+		bot.getInputParser().handleLine(":AUser!~ALogin@some.host PRIVMSG #aChannel :first");
+		bot.getInputParser().handleLine(":AUser!~ALogin@some.host PRIVMSG #aChannel :second");
+		assertSame(received.get(1), received.get(0), "Event wasn't reused");
+		assertEquals(messages, Arrays.asList("first", "second"));
+		assertEquals(received.get(1).getMessage(), "second");
+
+		//A copy has the same values but isn't recycled
+		bot.getInputParser().handleLine(":AUser!~ALogin@some.host PRIVMSG #aChannel :!copy");
+		MessageEvent<PircBotX> copy = kept.get(0);
+		assertNotSame(copy, received.get(2));
+		assertEquals(copy.getId(), received.get(2).getId());
+		assertEquals(copy.getChannel().getName(), "#aChannel");
+
+		//A retained event must not be reused
+		bot.getInputParser().handleLine(":AUser!~ALogin@some.host PRIVMSG #aChannel :!retain");
+		bot.getInputParser().handleLine(":AUser!~ALogin@some.host PRIVMSG #aChannel :after");
+		assertNotSame(received.get(4), received.get(3));
+		assertEquals(kept.get(1).getMessage(), "!retain");
+		assertEquals(copy.getMessage(), "!copy");
+		assertTrue(received.get(4).getId() > kept.get(1).getId());
+	}
+}
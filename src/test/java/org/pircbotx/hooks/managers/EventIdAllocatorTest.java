@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test that block allocated ids stay unique and ordered per thread
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class EventIdAllocatorTest {
+	@Test
+	public void uniqueTest() throws Exception {
+		final EventIdAllocator allocator = new EventIdAllocator(16);
+		final Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+		final int threadCount = 4;
+		final int idsPerThread = 10000;
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+						long lastId = -1;
+						for (int j = 0; j < idsPerThread; j++) {
+							long id = allocator.nextId();
+							assertTrue(id > lastId, "Id " + id + " not after " + lastId);
+							assertTrue(ids.add(id), "Duplicate id " + id);
+							lastId = id;
+						}
+					} catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		startLatch.countDown();
+		for (Thread curThread : threads)
+			curThread.join();
+		if (failure[0] != null)
+			throw new AssertionError(failure[0]);
+		assertEquals(ids.size(), threadCount * idsPerThread);
+	}
+
+	@Test
+	public void setCurrentIdTest() {
+		EventIdAllocator allocator = new EventIdAllocator(16);
+		assertEquals(allocator.nextId(), 0);
+		assertEquals(allocator.nextId(), 1);
+		assertEquals(allocator.getCurrentId(), 16);
+
+		//Reserved block must be discarded
+		allocator.setCurrentId(100);
+		assertEquals(allocator.nextId(), 100);
+		assertEquals(allocator.getCurrentId(), 116);
+	}
+
+	@Test
+	public void sequentialTest() {
+		//Blocks are opt-in
+		EventIdAllocator allocator = new EventIdAllocator();
+		assertEquals(allocator.nextId(), 0);
+		assertEquals(allocator.getCurrentId(), 1);
+		allocator.setCurrentId(5);
+		assertEquals(allocator.nextId(), 5);
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.SubscribingListener;
+import org.pircbotx.hooks.events.ActionEvent;
+import org.pircbotx.hooks.events.JoinEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.events.PrivateMessageEvent;
+import org.pircbotx.hooks.types.GenericMessageEvent;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test listener subscription introspection and routing
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ListenerIndexTest {
+	@Test
+	public void adapterSubscriptionTest() {
+		ListenerAdapter<PircBotX> messageListener = new ListenerAdapter<PircBotX>() {
+			@Override
+			public void onMessage(MessageEvent<PircBotX> event) throws Exception {
+			}
+		};
+		assertEquals(ListenerIndex.getSubscribedEvents(messageListener), ImmutableSet.of(MessageEvent.class));
+
+		ListenerAdapter<PircBotX> eventListener = new ListenerAdapter<PircBotX>() {
+			@Override
+			public void onEvent(Event<PircBotX> event) throws Exception {
+			}
+		};
+		assertEquals(ListenerIndex.getSubscribedEvents(eventListener), ImmutableSet.of(Event.class));
+
+		Listener<PircBotX> plainListener = new Listener<PircBotX>() {
+			public void onEvent(Event<PircBotX> event) throws Exception {
+			}
+		};
+		assertEquals(ListenerIndex.getSubscribedEvents(plainListener), ImmutableSet.of(Event.class));
+	}
+
+	@Test
+	public void routeTest() {
+		ListenerIndex<PircBotX> index = new ListenerIndex<PircBotX>();
+		ListenerAdapter<PircBotX> messageListener = new ListenerAdapter<PircBotX>() {
+			@Override
+			public void onMessage(MessageEvent<PircBotX> event) throws Exception {
+			}
+		};
+		ListenerAdapter<PircBotX> genericListener = new ListenerAdapter<PircBotX>() {
+			@Override
+			public void onGenericMessage(GenericMessageEvent<PircBotX> event) throws Exception {
+			}
+		};
+		SubscribingListener<PircBotX> joinListener = new SubscribingListener<PircBotX>() {
+			public ImmutableSet<Class<?>> getSubscribedEvents() {
+				return ImmutableSet.<Class<?>>of(JoinEvent.class);
+			}
+
+			public void onEvent(Event<PircBotX> event) throws Exception {
+			}
+		};
+		index.add(messageListener);
+		index.add(genericListener);
+		index.add(joinListener);
+
+		assertEquals(index.getListeners(MessageEvent.class), ImmutableList.of(messageListener, genericListener));
+		assertEquals(index.getListeners(PrivateMessageEvent.class), ImmutableList.of(genericListener));
+		assertEquals(index.getListeners(JoinEvent.class), ImmutableList.of(joinListener));
+		assertEquals(index.getListeners(ActionEvent.class), ImmutableList.of(genericListener));
+
+		//Cached routes must be rebuilt after a change
+		index.remove(genericListener);
+		assertEquals(index.getListeners(MessageEvent.class), ImmutableList.of(messageListener));
+		assertEquals(index.getListeners(ActionEvent.class), ImmutableList.of());
+	}
+}
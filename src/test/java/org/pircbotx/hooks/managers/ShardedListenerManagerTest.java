@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.pircbotx.Channel;
+import org.pircbotx.MessageTags;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.User;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test ordering and overflow of the sharded listener manager
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class ShardedListenerManagerTest {
+	protected PircBotX createBot(ShardedListenerManager<PircBotX> manager) {
+		return new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setListenerManager(manager)
+				.buildConfiguration());
+	}
+
+	@Test
+	public void channelOrderTest() throws Exception {
+		ShardedListenerManager<PircBotX> manager = new ShardedListenerManager<PircBotX>(4, 16, ShardedListenerManager.OverflowPolicy.BLOCK);
+		PircBotX bot = createBot(manager);
+		final Map<String, List<Integer>> received = Collections.synchronizedMap(new HashMap<String, List<Integer>>());
+		for (int i = 0; i < 3; i++)
+			manager.addListener(new Listener<PircBotX>() {
+				public void onEvent(Event<PircBotX> event) throws Exception {
+					MessageEvent<PircBotX> messageEvent = (MessageEvent<PircBotX>) event;
+					String key = this + messageEvent.getChannel().getName();
+					List<Integer> numbers;
+					synchronized (received) {
+						numbers = received.get(key);
+						if (numbers == null)
+							received.put(key, numbers = new ArrayList<Integer>());
+					}
+					numbers.add(Integer.parseInt(messageEvent.getMessage()));
+				}
+			});
+
+		User user = bot.getUserChannelDao().getUser("aUser");
+		Channel[] channels = new Channel[8];
+		for (int i = 0; i < channels.length; i++)
+			channels[i] = bot.getUserChannelDao().getChannel("#channel" + i);
+		for (int i = 0; i < 2000; i++)
+			manager.dispatchEvent(new MessageEvent<PircBotX>(bot, channels[i % channels.length], user, String.valueOf(i), MessageTags.EMPTY));
+		manager.shutdown(bot);
+
+		assertEquals(received.size(), 3 * channels.length);
+		for (Map.Entry<String, List<Integer>> curEntry : received.entrySet()) {
+			List<Integer> numbers = curEntry.getValue();
+			assertEquals(numbers.size(), 2000 / channels.length, "Missing events for " + curEntry.getKey());
+			for (int i = 1; i < numbers.size(); i++)
+				assertTrue(numbers.get(i - 1) < numbers.get(i), "Events out of order for " + curEntry.getKey() + ": " + numbers);
+		}
+		manager.shutdown();
+	}
+
+	@Test
+	public void dropTest() throws Exception {
+		ShardedListenerManager<PircBotX> manager = new ShardedListenerManager<PircBotX>(1, 1, ShardedListenerManager.OverflowPolicy.DROP);
+		PircBotX bot = createBot(manager);
+		//Only use the blocking listener so the queue has a single slot
+		for (Listener<PircBotX> curListener : manager.getListeners())
+			manager.removeListener(curListener);
+		final CountDownLatch startedLatch = new CountDownLatch(1);
+		final CountDownLatch blockLatch = new CountDownLatch(1);
+		manager.addListener(new Listener<PircBotX>() {
+			public void onEvent(Event<PircBotX> event) throws Exception {
+				startedLatch.countDown();
+				blockLatch.await();
+			}
+		});
+
+		Channel channel = bot.getUserChannelDao().getChannel("#channel");
+		User user = bot.getUserChannelDao().getUser("aUser");
+		manager.dispatchEvent(new MessageEvent<PircBotX>(bot, channel, user, "running", MessageTags.EMPTY));
+		assertTrue(startedLatch.await(5, TimeUnit.SECONDS), "Listener never started");
+		manager.dispatchEvent(new MessageEvent<PircBotX>(bot, channel, user, "queued", MessageTags.EMPTY));
+		manager.dispatchEvent(new MessageEvent<PircBotX>(bot, channel, user, "dropped", MessageTags.EMPTY));
+		assertEquals(manager.getDroppedEvents(), 1);
+		assertEquals(manager.getQueuedEvents(), 1);
+
+		blockLatch.countDown();
+		manager.shutdown(bot);
+		assertEquals(manager.getQueuedEvents(), 0);
+		manager.shutdown();
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.hooks.managers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.pircbotx.Channel;
+import org.pircbotx.MessageTags;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.User;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test that blocked listeners run concurrently and are waited on at shutdown
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class VirtualThreadListenerManagerTest {
+	@Test
+	public void shutdownWaitsTest() throws Exception {
+		VirtualThreadListenerManager<PircBotX> manager = new VirtualThreadListenerManager<PircBotX>();
+		assertEquals(manager.isVirtual(), VirtualThreadListenerManager.isSupported());
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setListenerManager(manager)
+				.buildConfiguration());
+		manager.removeListener(manager.getListeners().iterator().next());
+
+		final int eventCount = 100;
+		final CountDownLatch startedLatch = new CountDownLatch(eventCount);
+		final CountDownLatch releaseLatch = new CountDownLatch(1);
+		final AtomicInteger finished = new AtomicInteger();
+		manager.addListener(new Listener<PircBotX>() {
+			public void onEvent(Event<PircBotX> event) throws Exception {
+				startedLatch.countDown();
+				releaseLatch.await();
+				finished.incrementAndGet();
+			}
+		});
+		Channel channel = bot.getUserChannelDao().getChannel("#aChannel");
+		User user = bot.getUserChannelDao().getUser("aUser");
+		for (int i = 0; i < eventCount; i++)
+			manager.dispatchEvent(new MessageEvent<PircBotX>(bot, channel, user, String.valueOf(i), MessageTags.EMPTY));
+
+		//Every listener must be blocked at the same time
+		assertTrue(startedLatch.await(10, TimeUnit.SECONDS), "Listeners didn't run concurrently");
+		assertEquals(finished.get(), 0);
+
+		releaseLatch.countDown();
+		manager.shutdown(bot);
+		assertEquals(finished.get(), eventCount, "Shutdown returned before listeners finished");
+		manager.shutdown();
+	}
+}
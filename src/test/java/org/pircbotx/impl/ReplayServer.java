@@ -21,15 +21,21 @@ package org.pircbotx.impl;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import org.pircbotx.PircBotX;
+import org.pircbotx.wirelog.WireCaptureLogger;
+import org.pircbotx.wirelog.WireCaptureReader;
 
 /**
- * Helpful server for replaying a raw log to the bot.
+ * Helpful server for replaying a raw log to the bot. The log is either plain
+ * text with one line per line, or a binary capture written by
+ * {@link WireCaptureLogger} where only the lines the bot received are replayed.
  * <p>
  * <b>NOTE:</b> In order to avoid write exceptions in the client you must override
  * {@link PircBotX#sendRawLine(java.lang.String) } to simply print the output
@@ -68,7 +74,12 @@ public class ReplayServer {
 		//Open up the streams
 		BufferedReader input = new BufferedReader(new InputStreamReader(client.getInputStream()));
 		BufferedWriter output = new BufferedWriter(new OutputStreamWriter(client.getOutputStream()));
-		BufferedReader fileStream = new BufferedReader(new FileReader(file));
+		WireCaptureReader captureReader = null;
+		BufferedReader fileStream = null;
+		if (WireCaptureReader.isCapture(file))
+			captureReader = new WireCaptureReader(new FileInputStream(file));
+		else
+			fileStream = new BufferedReader(new FileReader(file));
 
 		//Wait till we get the NICK and USER lines so were not racing the bot
 		boolean nickGood = false;
@@ -90,7 +101,7 @@ public class ReplayServer {
 		System.out.println("*** Replaying file");
 
 		//Replay
-		while ((line = fileStream.readLine()) != null) {
+		while ((line = readLine(fileStream, captureReader)) != null) {
 			if (input.ready())
 				System.out.println("<<<" + input.readLine());
 			output.write(line + "\r\n");
@@ -106,8 +117,25 @@ public class ReplayServer {
 		System.out.println("*** Done replaying file, closing");
 		input.close();
 		output.close();
-		fileStream.close();
+		if (captureReader != null)
+			captureReader.close();
+		else
+			fileStream.close();
 		client.close();
 		server.close();
 	}
+
+	/**
+	 * @return The next line from the text log or the next received line of the
+	 * capture, null at the end
+	 */
+	protected static String readLine(BufferedReader fileStream, WireCaptureReader captureReader) throws IOException {
+		if (captureReader == null)
+			return fileStream.readLine();
+		WireCaptureReader.Record record;
+		while ((record = captureReader.next()) != null)
+			if (!record.isOutput())
+				return record.getLine();
+		return null;
+	}
 }
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.metrics;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test that events are only created while a flight recording is running and
+ * that they end up in the recording. JFR is used reflectively like
+ * {@link FlightRecorderEvents} so this compiles on any JVM
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class FlightRecorderEventsTest {
+	@Test
+	public void disabledTest() {
+		if (FlightRecorderEvents.isSupported() && FlightRecorderEvents.LINE.isEnabled())
+			//Something else is recording
+			return;
+		assertFalse(FlightRecorderEvents.LINE.isEnabled());
+		assertNull(FlightRecorderEvents.LINE.begin());
+		assertNull(FlightRecorderEvents.LISTENER.begin());
+		//Committing nothing is ignored
+		FlightRecorderEvents.LINE.commit(null, 0, "PRIVMSG", 0L);
+	}
+
+	@Test
+	public void recordingTest() throws Exception {
+		if (!FlightRecorderEvents.isSupported())
+			return;
+		Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		Object recording = recordingClass.newInstance();
+		recordingClass.getMethod("start").invoke(recording);
+		int botId;
+		try {
+			assertTrue(FlightRecorderEvents.LINE.isEnabled(), "Starting a recording didn't enable events");
+			PircBotX bot = MetricsRegistryTest.createBot(NoOpInstrumentation.INSTANCE, new Listener() {
+				public void onEvent(Event event) throws Exception {
+					if (event instanceof MessageEvent)
+						throw new IllegalStateException("Expected exception");
+				}
+			});
+			botId = bot.getBotId();
+			bot.getInputParser().handleLine(":aUser!~ident@host.test JOIN :#aChannel");
+			bot.getInputParser().handleLine(":aUser!~ident@host.test PRIVMSG #aChannel :hello");
+			bot.getUserChannelDao().createSnapshot();
+		} finally {
+			recordingClass.getMethod("stop").invoke(recording);
+		}
+
+		File recordingFile = File.createTempFile("pircbotx", ".jfr");
+		recordingFile.deleteOnExit();
+		Object recordingPath = File.class.getMethod("toPath").invoke(recordingFile);
+		recordingClass.getMethod("dump", Class.forName("java.nio.file.Path")).invoke(recording, recordingPath);
+		recordingClass.getMethod("close").invoke(recording);
+
+		List<String> commands = new ArrayList<String>();
+		List<String> exceptions = new ArrayList<String>();
+		int snapshotMemberships = -1;
+		Class<?> recordingFileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+		List<?> events = (List<?>) recordingFileClass.getMethod("readAllEvents", Class.forName("java.nio.file.Path"))
+				.invoke(null, recordingPath);
+		for (Object curEvent : events) {
+			Object eventType = curEvent.getClass().getMethod("getEventType").invoke(curEvent);
+			String name = (String) eventType.getClass().getMethod("getName").invoke(eventType);
+			if (!name.startsWith("org.pircbotx.") || !getValue(curEvent, "botId").equals(botId))
+				//Other bots
+				continue;
+			if (name.equals("org.pircbotx.Line"))
+				commands.add((String) getValue(curEvent, "command"));
+			else if (name.equals("org.pircbotx.Listener")) {
+				Object exception = getValue(curEvent, "exception");
+				if (exception != null)
+					exceptions.add((String) exception.getClass().getMethod("getName").invoke(exception));
+			} else if (name.equals("org.pircbotx.Snapshot"))
+				snapshotMemberships = ((Number) getValue(curEvent, "memberships")).intValue();
+		}
+		assertTrue(commands.contains("JOIN"), "Missing JOIN line in " + commands);
+		assertTrue(commands.contains("PRIVMSG"), "Missing PRIVMSG line in " + commands);
+		assertEquals(exceptions, Collections.singletonList(IllegalStateException.class.getName()));
+		assertEquals(snapshotMemberships, 1);
+	}
+
+	protected static Object getValue(Object recordedEvent, String field) throws Exception {
+		Method getValue = recordedEvent.getClass().getMethod("getValue", String.class);
+		return getValue.invoke(recordedEvent, field);
+	}
+}
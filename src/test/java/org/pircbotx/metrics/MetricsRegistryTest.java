@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.pircbotx.Configuration;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.JoinEvent;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test histograms and that the registry sees lines, events, listeners, and
+ * output of bots
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class MetricsRegistryTest {
+	@Test
+	public void histogramTest() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(histogram.getPercentile(0.5, TimeUnit.NANOSECONDS), 0);
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000L);
+
+		assertEquals(histogram.getCount(), 1000);
+		assertEquals(histogram.getMax(TimeUnit.MICROSECONDS), 1000);
+		assertEquals(histogram.getAverage(TimeUnit.NANOSECONDS), 500500);
+		//Buckets are powers of 2 so percentiles are within a factor of 2
+		long median = histogram.getPercentile(0.5, TimeUnit.NANOSECONDS);
+		assertTrue(median >= 500000 && median < 1000000, "Unexpected median " + median);
+		assertEquals(histogram.getPercentile(1, TimeUnit.MICROSECONDS), 1000);
+
+		LatencyHistogram other = new LatencyHistogram();
+		other.record(5000000);
+		histogram.add(other);
+		assertEquals(histogram.getCount(), 1001);
+		assertEquals(histogram.getMax(TimeUnit.MILLISECONDS), 5);
+	}
+
+	@Test
+	public void registryTest() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		Listener listener = new Listener() {
+			public void onEvent(Event event) throws Exception {
+			}
+		};
+		PircBotX bot = createBot(registry, listener);
+		bot.getInputParser().handleLine(":aUser!~ident@host.test JOIN :#aChannel");
+		bot.getInputParser().handleLine(":aUser!~ident@host.test PRIVMSG #aChannel :hello");
+		bot.getInputParser().handleLine(":aUser!~ident@host.test PRIVMSG #aChannel :world");
+		bot.sendRaw().rawLine("PRIVMSG #aChannel :hi");
+
+		BotMetrics metrics = bot.getMetrics();
+		assertSame(metrics, registry.getMetrics(bot));
+		assertEquals(metrics.getLinesIn(), 3);
+		assertEquals(metrics.getBytesIn(), 3 * 2 + ":aUser!~ident@host.test JOIN :#aChannel".length()
+				+ 2 * ":aUser!~ident@host.test PRIVMSG #aChannel :hello".length());
+		assertEquals(metrics.getLineLatency().get("PRIVMSG").getCount(), 2);
+		assertEquals(metrics.getLineLatency().get("JOIN").getCount(), 1);
+		assertEquals(metrics.getEventCounts().get(MessageEvent.class), Long.valueOf(2));
+		assertEquals(metrics.getEventCounts().get(JoinEvent.class), Long.valueOf(1));
+
+		//Every event went to the listener
+		long totalEvents = 0;
+		for (Long curCount : metrics.getEventCounts().values())
+			totalEvents += curCount;
+		assertEquals(metrics.getListenerTime().get(listener).getCount(), totalEvents);
+		assertTrue(metrics.getDaoLockWait().getCount() > 0, "Dao lock wasn't recorded");
+
+		assertEquals(metrics.getLinesOut(), 1);
+		assertEquals(metrics.getBytesOut(), "PRIVMSG #aChannel :hi".length() + 2);
+		assertEquals(metrics.getOutputWait().getCount(), 1);
+		assertEquals(metrics.getOutputThrottle().getCount(), 0);
+	}
+
+	@Test
+	public void mergeTest() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		PircBotX bot1 = createBot(registry, null);
+		PircBotX bot2 = createBot(registry, null);
+		bot1.getInputParser().handleLine(":aUser!~ident@host.test PRIVMSG #aChannel :hello");
+		bot2.getInputParser().handleLine(":aUser!~ident@host.test PRIVMSG #aChannel :hello");
+		bot2.getInputParser().handleLine(":aUser!~ident@host.test PRIVMSG #aChannel :world");
+
+		assertEquals(registry.getAllMetrics().size(), 2);
+		BotMetrics total = registry.getTotal();
+		assertEquals(total.getLinesIn(), 3);
+		assertEquals(total.getLineLatency().get("PRIVMSG").getCount(), 3);
+		assertEquals(total.getEventCounts().get(MessageEvent.class), Long.valueOf(3));
+		//Merging copies, the bots keep their own counts
+		assertEquals(bot1.getMetrics().getLinesIn(), 1);
+
+		registry.remove(bot1);
+		assertEquals(registry.getTotal().getLinesIn(), 2);
+	}
+
+	@Test
+	public void noOpTest() {
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		assertNull(bot.getMetrics());
+	}
+
+	protected static PircBotX createBot(Instrumentation instrumentation, Listener listener) {
+		Configuration.Builder builder = TestUtils.generateConfigurationBuilder()
+				.setInstrumentation(instrumentation);
+		if (listener != null)
+			builder.addListener(listener);
+		return new PircBotX(builder.buildConfiguration()) {
+			@Override
+			public boolean isConnected() {
+				return true;
+			}
+
+			@Override
+			protected void sendRawLineToServer(String line) {
+				//Do nothing
+			}
+		};
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test parsing outgoing lines for rate limits
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class OutgoingLineTest {
+	@DataProvider
+	public Object[][] lineDataProvider() {
+		return new Object[][]{
+			{"PRIVMSG #chan :Hi there: how are you?", "PRIVMSG", "#chan", "Hi there: how are you?"},
+			{"privmsg aUser :hi", "PRIVMSG", "aUser", "hi"},
+			{"@tag=1 :prefix NOTICE #chan :hi", "NOTICE", "#chan", "hi"},
+			{"JOIN #chan1,#chan2 key1,key2", "JOIN", "#chan1", null},
+			{"JOIN :#chan", "JOIN", "#chan", "#chan"},
+			{"KICK #chan aUser :bye :(", "KICK", "#chan", "bye :("},
+			{"QUIT", "QUIT", null, null},
+			{"QUIT ", "QUIT", null, null},
+			{"", "", null, null}
+		};
+	}
+
+	@Test(dataProvider = "lineDataProvider")
+	public void parseTest(String line, String command, String target, String message) {
+		OutgoingLine outgoingLine = new OutgoingLine(line);
+		assertEquals(outgoingLine.getLine(), line);
+		assertEquals(outgoingLine.getCommand(), command);
+		assertEquals(outgoingLine.getTarget(), target);
+		if (message == null)
+			assertEquals(outgoingLine.getMessageStart(), -1);
+		else
+			assertEquals(line.substring(outgoingLine.getMessageStart()), message);
+	}
+}
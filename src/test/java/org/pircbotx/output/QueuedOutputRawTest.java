@@ -0,0 +1,271 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+import org.pircbotx.Configuration;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test the queued writer using a mocked socket
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+@Test(singleThreaded = true)
+public class QueuedOutputRawTest {
+	protected ByteArrayOutputStream botOut;
+
+	protected PircBotX createBot(long messageDelay) throws Exception {
+		return createBot(TestUtils.generateConfigurationBuilder().setMessageDelay(messageDelay));
+	}
+
+	protected PircBotX createBot(Configuration.Builder<PircBotX> configurationBuilder) throws Exception {
+		InetAddress localhost = InetAddress.getLocalHost();
+		botOut = new ByteArrayOutputStream();
+		Socket socket = mock(Socket.class);
+		when(socket.isConnected()).thenReturn(true);
+		when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+		when(socket.getOutputStream()).thenReturn(botOut);
+		SocketFactory socketFactory = mock(SocketFactory.class);
+		when(socketFactory.createSocket(localhost, 6667, null, 0)).thenReturn(socket);
+
+		PircBotX bot = new PircBotX(configurationBuilder
+				.setCapEnabled(false)
+				.setServer(localhost.getHostName(), 6667)
+				.setSocketFactory(socketFactory)
+				.setOutputQueueEnabled(true)
+				.buildConfiguration());
+		bot.startBot();
+		assertTrue(bot.sendRaw() instanceof QueuedOutputRaw, "Wrong OutputRaw: " + bot.sendRaw());
+		botOut.reset();
+		return bot;
+	}
+
+	protected String[] getOutput() {
+		return botOut.toString().split("\r\n");
+	}
+
+	@Test
+	public void queuedLinesTest() throws Exception {
+		PircBotX bot = createBot(0);
+		List<ListenableFuture<Void>> futures = new ArrayList<ListenableFuture<Void>>();
+		for (int i = 0; i < 200; i++)
+			futures.add(bot.sendRaw().rawLineAsync("PRIVMSG #chan :line " + i));
+		Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+
+		String[] lines = getOutput();
+		assertEquals(lines.length, 200);
+		for (int i = 0; i < 200; i++)
+			assertEquals(lines[i], "PRIVMSG #chan :line " + i);
+		assertEquals(bot.sendRaw().getOutgoingQueueSize(), 0);
+	}
+
+	@Test
+	public void messageDelayTest() throws Exception {
+		PircBotX bot = createBot(100);
+		long startNanos = System.nanoTime();
+		for (int i = 0; i < 3; i++)
+			bot.sendRaw().rawLine("PRIVMSG #chan :line " + i);
+		ListenableFuture<Void> lastLine = bot.sendRaw().rawLineAsync("PRIVMSG #chan :last");
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) < 100, "Caller waited for message delay");
+
+		lastLine.get(5, TimeUnit.SECONDS);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) >= 300, "Message delay not respected");
+		assertEquals(getOutput().length, 4);
+	}
+
+	@Test
+	public void policyBatchTest() throws Exception {
+		PircBotX bot = createBot(TestUtils.generateConfigurationBuilder()
+				.setMessageDelay(0)
+				.setRateLimitPolicy(new TokenBucketPolicy().limitCommand("PRIVMSG", 5, 10, TimeUnit.SECONDS)));
+		long startNanos = System.nanoTime();
+		List<ListenableFuture<Void>> futures = new ArrayList<ListenableFuture<Void>>();
+		for (int i = 0; i < 5; i++)
+			futures.add(bot.sendRaw().rawLineAsync("PRIVMSG #chan :line " + i));
+		Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) < 300, "Lines the policy allows weren't batched");
+		assertEquals(getOutput().length, 5);
+	}
+
+	@Test
+	public void policyDelayTest() throws Exception {
+		PircBotX bot = createBot(TestUtils.generateConfigurationBuilder()
+				.setMessageDelay(100)
+				.setRateLimitPolicy(new TokenBucketPolicy().limitCommand("PRIVMSG", 5, 10, TimeUnit.SECONDS)));
+		//Wait out the delay after connecting so the first line is sent now
+		Thread.sleep(100);
+		long startNanos = System.nanoTime();
+		List<ListenableFuture<Void>> futures = new ArrayList<ListenableFuture<Void>>();
+		for (int i = 0; i < 3; i++)
+			futures.add(bot.sendRaw().rawLineAsync("PRIVMSG #chan :line " + i));
+		Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) >= 190, "Message delay not applied on top of the policy");
+		assertEquals(getOutput().length, 3);
+	}
+
+	@Test
+	public void heldTargetTest() throws Exception {
+		PircBotX bot = createBot(TestUtils.generateConfigurationBuilder()
+				.setMessageDelay(0)
+				.setRateLimitPolicy(new TokenBucketPolicy().limitTarget("PRIVMSG", 1, 10, TimeUnit.SECONDS)));
+		ListenableFuture<Void> firstFuture = bot.sendRaw().rawLineAsync("PRIVMSG #slow :1");
+		ListenableFuture<Void> heldFuture = bot.sendRaw().rawLineAsync("PRIVMSG #slow :2");
+		ListenableFuture<Void> otherFuture = bot.sendRaw().rawLineAsync("PRIVMSG #fast :1");
+		Futures.allAsList(firstFuture, otherFuture).get(5, TimeUnit.SECONDS);
+		assertFalse(heldFuture.isDone(), "Target limit not applied");
+		assertEquals(getOutput(), new String[]{"PRIVMSG #slow :1", "PRIVMSG #fast :1"});
+		assertEquals(bot.sendRaw().getOutgoingQueueSize(), 1);
+	}
+
+	@Test
+	public void bufferOverflowTest() throws Exception {
+		PircBotX bot = createBot(0);
+		//Longer than the buffer in total so a batch needs several flushes
+		String message = String.format("%0400d", 0).replace('0', 'x');
+		List<ListenableFuture<Void>> futures = new ArrayList<ListenableFuture<Void>>();
+		for (int i = 0; i < 100; i++)
+			futures.add(bot.sendRaw().rawLineAsync("PRIVMSG #chan :" + i + message));
+		Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+
+		String[] lines = getOutput();
+		assertEquals(lines.length, 100);
+		for (int i = 0; i < 100; i++)
+			assertEquals(lines[i], "PRIVMSG #chan :" + i + message);
+	}
+
+	@Test
+	public void rawLineNowTest() throws Exception {
+		PircBotX bot = createBot(10000);
+		bot.sendRaw().rawLine("PRIVMSG #chan :waiting");
+		bot.sendRaw().rawLineNow("PONG now");
+		assertEquals(getOutput(), new String[]{"PONG now"});
+		assertEquals(bot.sendRaw().getOutgoingQueueSize(), 1);
+	}
+
+	@Test
+	public void closeTest() throws Exception {
+		PircBotX bot = createBot(10000);
+		ListenableFuture<Void> future = bot.sendRaw().rawLineAsync("PRIVMSG #chan :never sent");
+		bot.sendRaw().close();
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Line should of failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException, "Unexpected exception " + e.getCause());
+		}
+		assertEquals(bot.sendRaw().getOutgoingQueueSize(), 0);
+		assertEquals(botOut.size(), 0);
+	}
+
+	@Test
+	public void priorityTest() throws Exception {
+		PircBotX bot = createBot(10000);
+		QueuedOutputRaw output = (QueuedOutputRaw) bot.sendRaw();
+		output.rawLine("PRIVMSG #chan :reply");
+		output.rawLine("KICK #chan aUser");
+		output.rawLine("PRIVMSG #chan :/timeout aUser 10");
+		//Only messages starting with the command are moderation
+		output.rawLine("PRIVMSG #chan :don't /ban me");
+		output.rawLine("PRIVMSG #chan :/banana");
+		ListenableFuture<Void> pong = output.rawLineAsync("PONG :irc.test");
+		pong.get(5, TimeUnit.SECONDS);
+
+		//Only the pong skips the message delay
+		assertEquals(getOutput(), new String[]{"PONG :irc.test"});
+		assertEquals(output.getOutgoingQueueSize(), 5);
+		assertEquals(output.getOutgoingQueueSize(OutputPriority.IMMEDIATE), 0);
+		assertEquals(output.getOutgoingQueueSize(OutputPriority.MODERATION), 2);
+		assertEquals(output.getOutgoingQueueSize(OutputPriority.NORMAL), 3);
+		assertTrue(output.getOldestQueuedAge(TimeUnit.NANOSECONDS) > 0, "No age for oldest line");
+	}
+
+	@Test
+	public void maxDepthTest() throws Exception {
+		PircBotX bot = createBot(TestUtils.generateConfigurationBuilder()
+				.setMessageDelay(10000)
+				.setOutputQueueMaxDepth(2));
+		QueuedOutputRaw output = (QueuedOutputRaw) bot.sendRaw();
+		ListenableFuture<Void> first = output.rawLineAsync("PRIVMSG #chan :1");
+		output.rawLineAsync("PRIVMSG #chan :2");
+		ListenableFuture<Void> third = output.rawLineAsync("PRIVMSG #chan :3");
+		assertRejected(third);
+		assertFalse(first.isDone());
+		assertEquals(output.getDroppedLines(), 1);
+
+		//Pongs are never dropped
+		output.rawLineAsync("PONG :irc.test").get(5, TimeUnit.SECONDS);
+		assertEquals(output.getOutgoingQueueSize(), 2);
+	}
+
+	@Test
+	public void dropOldestTest() throws Exception {
+		PircBotX bot = createBot(TestUtils.generateConfigurationBuilder()
+				.setMessageDelay(10000)
+				.setOutputQueueMaxDepth(2)
+				.setOutputQueueDropOldest(true));
+		QueuedOutputRaw output = (QueuedOutputRaw) bot.sendRaw();
+		ListenableFuture<Void> first = output.rawLineAsync("PRIVMSG #chan :1");
+		ListenableFuture<Void> second = output.rawLineAsync("PRIVMSG #chan :2");
+		ListenableFuture<Void> third = output.rawLineAsync("PRIVMSG #chan :3");
+		assertRejected(first);
+		assertFalse(second.isDone());
+		assertFalse(third.isDone());
+		assertEquals(output.getDroppedLines(), 1);
+		assertEquals(output.getOutgoingQueueSize(), 2);
+	}
+
+	@Test
+	public void coalesceTest() throws Exception {
+		PircBotX bot = createBot(TestUtils.generateConfigurationBuilder()
+				.setMessageDelay(10000)
+				.setOutputQueueCoalesce(true));
+		QueuedOutputRaw output = (QueuedOutputRaw) bot.sendRaw();
+		ListenableFuture<Void> first = output.rawLineAsync("PRIVMSG #chan :Pikachu is an Electric type");
+		ListenableFuture<Void> second = output.rawLineAsync("PRIVMSG #chan :Pikachu is an Electric type");
+		output.rawLineAsync("PRIVMSG #other :Pikachu is an Electric type");
+		assertSame(second, first);
+		assertEquals(output.getCoalescedLines(), 1);
+		assertEquals(output.getOutgoingQueueSize(), 2);
+	}
+
+	protected void assertRejected(ListenableFuture<Void> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Line should of been rejected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException, "Unexpected exception " + e.getCause());
+		}
+	}
+}
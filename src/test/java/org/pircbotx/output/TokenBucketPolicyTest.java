@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.output;
+
+import java.util.concurrent.TimeUnit;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test token bucket rate limits
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class TokenBucketPolicyTest {
+	protected PircBotX bot;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration()) {
+			{
+				nick = "PircBotXBot";
+			}
+
+			@Override
+			public boolean isConnected() {
+				return true;
+			}
+
+			@Override
+			protected void sendRawLineToServer(String line) {
+				//Do nothing
+			}
+		};
+	}
+
+	@Test
+	public void commandLimitTest() {
+		TokenBucketPolicy policy = new TokenBucketPolicy()
+				.limitCommand("PRIVMSG", 3, 30, TimeUnit.SECONDS);
+		for (int i = 0; i < 3; i++)
+			assertEquals(policy.tryAcquire(bot, "PRIVMSG #chan" + i + " :burst " + i), 0, "Burst line " + i + " held back");
+		long waitNanos = policy.tryAcquire(bot, "PRIVMSG #other :too many");
+		assertTrue(waitNanos > TimeUnit.SECONDS.toNanos(9) && waitNanos <= TimeUnit.SECONDS.toNanos(10), "Unexpected wait " + waitNanos);
+
+		//Other commands aren't limited
+		assertEquals(policy.tryAcquire(bot, "JOIN #chan"), 0);
+		assertEquals(policy.tryAcquire(bot, "@tag=1 :prefix NOTICE #chan :hi"), 0);
+	}
+
+	@Test
+	public void targetLimitTest() {
+		TokenBucketPolicy policy = new TokenBucketPolicy()
+				.limitTarget("privmsg", 1, 1, TimeUnit.SECONDS);
+		assertEquals(policy.tryAcquire(bot, "PRIVMSG #chan :one"), 0);
+		assertTrue(policy.tryAcquire(bot, "PRIVMSG #CHAN :two") > 0, "Target limit not case insensitive");
+		assertEquals(policy.tryAcquire(bot, "PRIVMSG #other :one"), 0);
+		//Only channels are targets
+		assertEquals(policy.tryAcquire(bot, "PRIVMSG aUser :one"), 0);
+		assertEquals(policy.tryAcquire(bot, "PRIVMSG aUser :two"), 0);
+	}
+
+	@Test
+	public void moderatorLimitTest() throws Exception {
+		bot.getInputParser().handleLine(":PircBotXBot!~bot@host JOIN #mod");
+		bot.getInputParser().processUserStatus(bot.getUserChannelDao().getChannel("#mod"), bot.getUserBot(), "H@");
+		bot.getInputParser().handleLine(":PircBotXBot!~bot@host JOIN #normal");
+
+		TokenBucketPolicy policy = TokenBucketPolicy.twitch();
+		for (int i = 0; i < 20; i++)
+			assertEquals(policy.tryAcquire(bot, "PRIVMSG #normal :" + i), 0);
+		assertTrue(policy.tryAcquire(bot, "PRIVMSG #normal :limited") > 0, "Normal limit not applied");
+		//Normal lines also count against the moderator limit
+		for (int i = 0; i < 80; i++)
+			assertEquals(policy.tryAcquire(bot, "PRIVMSG #mod :" + i), 0, "Moderator line " + i + " held back");
+		assertTrue(policy.tryAcquire(bot, "PRIVMSG #mod :limited") > 0, "Moderator limit not applied");
+	}
+
+	@Test
+	public void mixedModeratorLimitTest() throws Exception {
+		bot.getInputParser().handleLine(":PircBotXBot!~bot@host JOIN #mod");
+		bot.getInputParser().processUserStatus(bot.getUserChannelDao().getChannel("#mod"), bot.getUserBot(), "H@");
+		bot.getInputParser().handleLine(":PircBotXBot!~bot@host JOIN #normal");
+
+		TokenBucketPolicy policy = TokenBucketPolicy.twitch();
+		for (int i = 0; i < 95; i++)
+			assertEquals(policy.tryAcquire(bot, "PRIVMSG #mod :" + i), 0, "Moderator line " + i + " held back");
+		for (int i = 0; i < 5; i++)
+			assertEquals(policy.tryAcquire(bot, "PRIVMSG #normal :" + i), 0, "Normal line " + i + " held back");
+		assertTrue(policy.tryAcquire(bot, "PRIVMSG #normal :limited") > 0, "Moderator lines didn't count against normal lines");
+		assertTrue(policy.tryAcquire(bot, "PRIVMSG #mod :limited") > 0, "Normal lines didn't count against moderator lines");
+	}
+
+	@Test
+	public void outputWaitTest() {
+		bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setRateLimitPolicy(new TokenBucketPolicy().limitCommand("PRIVMSG", 2, 100, TimeUnit.MILLISECONDS))
+				.buildConfiguration()) {
+			@Override
+			public boolean isConnected() {
+				return true;
+			}
+
+			@Override
+			protected void sendRawLineToServer(String line) {
+				//Do nothing
+			}
+		};
+		long startNanos = System.nanoTime();
+		for (int i = 0; i < 4; i++)
+			bot.sendRaw().rawLine("PRIVMSG #chan :" + i);
+		bot.sendRaw().rawLine("JOIN #chan");
+		assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(90), "Rate limit not applied");
+
+		assertEquals(bot.sendRaw().getWaitStats().getCount(), 5);
+		assertEquals(bot.sendRaw().getWaitStats("privmsg").getCount(), 4);
+		assertTrue(bot.sendRaw().getWaitStats("PRIVMSG").getMaxWait(TimeUnit.MILLISECONDS) >= 40);
+		assertEquals(bot.sendRaw().getWaitStats("JOIN").getCount(), 1);
+	}
+
+	@Test
+	public void heldTargetTest() throws Exception {
+		bot = new PircBotX(TestUtils.generateConfigurationBuilder()
+				.setRateLimitPolicy(new TokenBucketPolicy().limitTarget("PRIVMSG", 1, 2, TimeUnit.SECONDS))
+				.buildConfiguration()) {
+			@Override
+			public boolean isConnected() {
+				return true;
+			}
+
+			@Override
+			protected void sendRawLineToServer(String line) {
+				//Do nothing
+			}
+		};
+		bot.sendRaw().rawLine("PRIVMSG #slow :1");
+		Thread slowThread = new Thread() {
+			@Override
+			public void run() {
+				bot.sendRaw().rawLine("PRIVMSG #slow :2");
+			}
+		};
+		slowThread.start();
+		//Wait for the thread to be held back by the policy
+		Thread.sleep(100);
+
+		long startNanos = System.nanoTime();
+		bot.sendRaw().rawLine("PRIVMSG #fast :1");
+		assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1), "Line held back by another target");
+		assertTrue(slowThread.isAlive(), "Target limit not applied");
+		slowThread.join();
+	}
+}
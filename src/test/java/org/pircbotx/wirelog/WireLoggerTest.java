@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2010-2013 Leon Blakey <lord.quackstar at gmail.com>
+ *
+ * This file is part of PircBotX.
+ *
+ * PircBotX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PircBotX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PircBotX. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.pircbotx.wirelog;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.pircbotx.PircBotX;
+import org.pircbotx.TestUtils;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Test sampling, the async hand off, and rotating captures
+ * @author Leon Blakey <lord.quackstar at gmail.com>
+ */
+public class WireLoggerTest {
+	@Test
+	public void sampledTest() {
+		RecordingWireLogger recorder = new RecordingWireLogger();
+		SampledWireLogger sampled = new SampledWireLogger(recorder)
+				.sample("PRIVMSG", 0.25)
+				.sample("PING", 0);
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		for (int i = 0; i < 8; i++)
+			sampled.logInput(bot, "@badges=;color= :auser!auser@auser.tmi.twitch.tv PRIVMSG #aChannel :message " + i);
+		sampled.logInput(bot, ":auser!auser@auser.tmi.twitch.tv JOIN #aChannel");
+		sampled.logOutput(bot, "PART #aChannel");
+		sampled.logInput(bot, "PING :tmi.twitch.tv");
+
+		assertEquals(recorder.lines.size(), 4, "Unexpected lines " + recorder.lines);
+		assertTrue(recorder.lines.get(0).endsWith("message 0"));
+		assertTrue(recorder.lines.get(1).endsWith("message 4"));
+		assertEquals(recorder.lines.get(3), ">PART #aChannel");
+		assertEquals(sampled.getSkipped(), 7);
+	}
+
+	@Test
+	public void asyncTest() throws Exception {
+		RecordingWireLogger recorder = new RecordingWireLogger();
+		AsyncWireLogger async = new AsyncWireLogger(recorder, 4);
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		for (int i = 0; i < 1000; i++)
+			async.logInput(bot, "line " + i);
+		async.logOutput(bot, "PONG :tmi.twitch.tv");
+		async.flush();
+		assertEquals(recorder.lines.size() + async.getDropped(), 1001, "Lines were lost");
+
+		async.close();
+		assertTrue(recorder.closed, "Delegate wasn't closed");
+		async.logInput(bot, "after close");
+		assertEquals(recorder.lines.size() + async.getDropped(), 1002);
+		assertFalse(recorder.lines.contains("<after close"));
+	}
+
+	@Test
+	public void asyncCloseRaceTest() throws Exception {
+		final PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		final int linesPerThread = 10000;
+		for (int run = 0; run < 20; run++) {
+			RecordingWireLogger recorder = new RecordingWireLogger();
+			final AsyncWireLogger async = new AsyncWireLogger(recorder, 1024);
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						for (int j = 0; j < linesPerThread; j++)
+							async.logInput(bot, "line " + j);
+					}
+				};
+				threads[i].start();
+			}
+			//Close while lines are still being logged
+			async.close();
+			for (Thread curThread : threads)
+				curThread.join();
+			assertEquals(recorder.lines.size() + async.getDropped(), threads.length * linesPerThread, "Lines claimed after close were lost");
+		}
+	}
+
+	@Test
+	public void captureTest() throws Exception {
+		File directory = Files.createTempDir();
+		PircBotX bot = new PircBotX(TestUtils.generateConfigurationBuilder().buildConfiguration());
+		//Room for about 2 lines per file
+		WireCaptureLogger capture = new WireCaptureLogger(directory, "test", 140, 2);
+		for (int i = 0; i < 6; i++)
+			capture.logInput(bot, ":tmi.twitch.tv 353 bot = #aChannel :user" + i);
+		capture.logOutput(bot, "PRIVMSG #aChannel :héllo");
+		capture.close();
+
+		File[] files = capture.getFiles();
+		assertEquals(files.length, 2, "Old files weren't deleted");
+		assertEquals(directory.listFiles().length, 2);
+		List<WireCaptureReader.Record> records = new ArrayList<WireCaptureReader.Record>();
+		for (File curFile : files) {
+			assertTrue(WireCaptureReader.isCapture(curFile));
+			WireCaptureReader reader = new WireCaptureReader(new FileInputStream(curFile));
+			WireCaptureReader.Record record;
+			while ((record = reader.next()) != null)
+				records.add(record);
+			reader.close();
+			curFile.delete();
+		}
+		directory.delete();
+
+		WireCaptureReader.Record last = records.get(records.size() - 1);
+		assertTrue(last.isOutput());
+		assertEquals(last.getLine(), "PRIVMSG #aChannel :héllo");
+		assertEquals(last.getBotId(), bot.getBotId());
+		WireCaptureReader.Record first = records.get(0);
+		assertFalse(first.isOutput());
+		assertTrue(first.getLine().startsWith(":tmi.twitch.tv 353"));
+	}
+
+	protected static class RecordingWireLogger implements WireLogger, java.io.Closeable {
+		protected final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+		protected volatile boolean closed;
+
+		public void logInput(PircBotX bot, String line) {
+			lines.add("<" + line);
+		}
+
+		public void logOutput(PircBotX bot, String line) {
+			lines.add(">" + line);
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+}